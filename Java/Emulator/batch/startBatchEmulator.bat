@@ -0,0 +1,4 @@
+@echo off
+echo Starting batch emulator
+call java -Xmx1024m -Djava.awt.headless=true -cp "%~dp0/NikonEmulator.jar";"%~dp0/lib/commons-io-2.1.jar";"%~dp0/lib/commons-lang3-3.1.jar";"%~dp0/lib/xstream-1.4.2.jar";"%~dp0/lib/jacksum.jar";"%~dp0/lib/jgraphx.jar";"%~dp0/lib/rsyntaxtextarea.jar";"%~dp0/lib/miglayout-4.0.jar";"%~dp0/lib/glazedlists-1.8.0_java15.jar" com.nikonhacker.emu.BatchEmulator %*
+pause
@@ -0,0 +1,4 @@
+#!/bin/bash 
+echo "Starting batch emulator"
+cd $(dirname $0)
+java -Xmx1024m -Djava.awt.headless=true -cp "./NikonEmulator.jar":"./lib/commons-io-2.1.jar":"./lib/commons-lang3-3.1.jar":"./lib/xstream-1.4.2.jar":"./lib/jacksum.jar":"./lib/jgraphx.jar":"./lib/rsyntaxtextarea.jar":"./lib/miglayout-4.0.jar":"./lib/glazedlists-1.8.0_java15.jar" com.nikonhacker.emu.BatchEmulator "$@"
@@ -0,0 +1,61 @@
+package com.nikonhacker.bench;
+
+/**
+ * A single measurement, run repeatedly by the BenchmarkRunner.
+ * setUp() is called once before the warmup iterations, then run() is called as many times as fits in each
+ * iteration, and its results are summed to compute the throughput of that iteration.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+    private final String unit;
+
+    /**
+     * @param name the name of the benchmark, as printed in the results and matched by the runner filters
+     * @param unit the name of what run() counts (e.g. "instr", "bytes", "ticks")
+     */
+    protected Benchmark(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Prepares the state used by run(). Not measured.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Performs one invocation of the measured code
+     * @return the number of operations performed (instructions, bytes, ticks...)
+     */
+    public abstract long run() throws Exception;
+
+    /**
+     * Releases the state prepared by setUp(). Not measured.
+     */
+    public void tearDown() throws Exception {
+    }
+
+    /**
+     * A sink for values computed by the measured code, so that the JIT cannot consider that code as dead.
+     */
+    protected static volatile long blackhole;
+
+    protected static void consume(long value) {
+        blackhole += value;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,167 @@
+package com.nikonhacker.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the emulator benchmarks and prints their throughput.
+ * Measurements follow JMH's throughput mode : a number of warmup iterations, then measured iterations of a fixed
+ * duration, each one calling the benchmark as many times as possible. The score is the mean throughput of the
+ * measured iterations, and the error is the half-width of the 99.9% confidence interval.
+ *
+ * Usage: BenchmarkRunner [-wi warmupIterations] [-i iterations] [-r iterationMs] [-l] [regexp...]
+ *
+ * Benchmarks running real firmware are only enabled if the corresponding system properties are set :
+ * bench.fr.firmware and bench.fr.options (a conf/*.dfr.txt file), bench.tx.firmware and bench.tx.options (a
+ * conf/*.dtx.txt file), and bench.package (an encoded firmware update file).
+ */
+public class BenchmarkRunner {
+
+    private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    private static final int DEFAULT_ITERATIONS        = 5;
+    private static final int DEFAULT_ITERATION_MS      = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+        int iterations = DEFAULT_ITERATIONS;
+        int iterationMs = DEFAULT_ITERATION_MS;
+        boolean listOnly = false;
+        List<Pattern> filters = new ArrayList<Pattern>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-wi".equals(arg)) {
+                warmupIterations = Integer.parseInt(args[++i]);
+            }
+            else if ("-i".equals(arg)) {
+                iterations = Integer.parseInt(args[++i]);
+            }
+            else if ("-r".equals(arg)) {
+                iterationMs = Integer.parseInt(args[++i]);
+            }
+            else if ("-l".equals(arg)) {
+                listOnly = true;
+            }
+            else if (arg.length() > 0) {
+                filters.add(Pattern.compile(arg));
+            }
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (Benchmark benchmark : getAllBenchmarks()) {
+            if (matches(benchmark.getName(), filters)) {
+                benchmarks.add(benchmark);
+            }
+        }
+
+        if (listOnly) {
+            for (Benchmark benchmark : benchmarks) {
+                System.out.println(benchmark.getName());
+            }
+            return;
+        }
+
+        List<String> results = new ArrayList<String>();
+        for (Benchmark benchmark : benchmarks) {
+            System.out.println("# Benchmark: " + benchmark.getName());
+            benchmark.setUp();
+            try {
+                for (int i = 0; i < warmupIterations; i++) {
+                    double throughput = runIteration(benchmark, iterationMs);
+                    System.out.println(String.format(Locale.US, "# Warmup Iteration %3d: %,.3f %s/s", i + 1, throughput, benchmark.getUnit()));
+                }
+                double[] measures = new double[iterations];
+                for (int i = 0; i < iterations; i++) {
+                    measures[i] = runIteration(benchmark, iterationMs);
+                    System.out.println(String.format(Locale.US, "Iteration %3d: %,.3f %s/s", i + 1, measures[i], benchmark.getUnit()));
+                }
+                results.add(formatResult(benchmark, measures));
+            }
+            finally {
+                benchmark.tearDown();
+            }
+            System.out.println();
+        }
+
+        System.out.println(String.format(Locale.US, "%-50s %5s %20s   %15s  %s", "Benchmark", "Cnt", "Score", "Error", "Units"));
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * All benchmarks, in the order they are run.
+     * Firmware based benchmarks are only returned if their firmware is configured.
+     */
+    private static List<Benchmark> getAllBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        FrEmulatorBenchmark.addBenchmarks(benchmarks);
+        TxEmulatorBenchmark.addBenchmarks(benchmarks);
+        MemoryBenchmark.addBenchmarks(benchmarks);
+        MasterClockBenchmark.addBenchmarks(benchmarks);
+        DisassemblerBenchmark.addBenchmarks(benchmarks);
+        FirmwareBenchmark.addBenchmarks(benchmarks);
+        return benchmarks;
+    }
+
+    private static boolean matches(String name, List<Pattern> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (Pattern filter : filters) {
+            if (filter.matcher(name).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calls the benchmark repeatedly for (at least) the given duration
+     * @return the throughput, in operations per second
+     */
+    private static double runIteration(Benchmark benchmark, int iterationMs) throws Exception {
+        long operations = 0;
+        long start = System.nanoTime();
+        long end = start + iterationMs * 1000000L;
+        long now;
+        do {
+            operations += benchmark.run();
+            now = System.nanoTime();
+        } while (now < end);
+        return operations * 1e9 / (now - start);
+    }
+
+    private static String formatResult(Benchmark benchmark, double[] measures) {
+        double mean = 0;
+        for (double measure : measures) {
+            mean += measure;
+        }
+        mean /= measures.length;
+
+        double error = Double.NaN;
+        if (measures.length > 1) {
+            double sumOfSquares = 0;
+            for (double measure : measures) {
+                sumOfSquares += (measure - mean) * (measure - mean);
+            }
+            double stdDev = Math.sqrt(sumOfSquares / (measures.length - 1));
+            error = studentT999(measures.length - 1) * stdDev / Math.sqrt(measures.length);
+        }
+        return String.format(Locale.US, "%-50s %5d %,20.3f \u00B1 %,15.3f  %s/s", benchmark.getName(), measures.length, mean, error, benchmark.getUnit());
+    }
+
+    /**
+     * Two-sided 99.9% quantiles of Student's t distribution, for the given degrees of freedom
+     */
+    private static double studentT999(int degreesOfFreedom) {
+        final double[] quantiles = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850};
+        if (degreesOfFreedom <= quantiles.length) {
+            return quantiles[degreesOfFreedom - 1];
+        }
+        return 3.291; // normal approximation
+    }
+}
@@ -0,0 +1,97 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.disassembly.Disassembler;
+import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.Range;
+import com.nikonhacker.disassembly.fr.Dfr;
+import com.nikonhacker.disassembly.tx.Dtx;
+import com.nikonhacker.emu.memory.FastMemory;
+import com.nikonhacker.emu.memory.Memory;
+import org.apache.commons.io.output.NullWriter;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Measures the throughput of Disassembler.disassembleMemRanges() on a real firmware, in bytes of code per second,
+ * with and without structural analysis. The output is discarded.
+ * These benchmarks are only available if the firmware and options file are given as system properties.
+ */
+public class DisassemblerBenchmark extends Benchmark {
+
+    private final int     chip;
+    private final String  firmwareFilename;
+    private final String  optionsFilename;
+    private final boolean structure;
+
+    private Memory memory;
+    private long   codeBytes;
+
+    private DisassemblerBenchmark(String name, int chip, String firmwareFilename, String optionsFilename, boolean structure) {
+        super(name, "bytes");
+        this.chip = chip;
+        this.firmwareFilename = firmwareFilename;
+        this.optionsFilename = optionsFilename;
+        this.structure = structure;
+    }
+
+    public static void addBenchmarks(List<Benchmark> benchmarks) {
+        String frFirmware = System.getProperty("bench.fr.firmware");
+        String frOptions = System.getProperty("bench.fr.options");
+        if (frFirmware != null && frOptions != null) {
+            benchmarks.add(new DisassemblerBenchmark("Disassembler.fr", Constants.CHIP_FR, frFirmware, frOptions, false));
+            benchmarks.add(new DisassemblerBenchmark("Disassembler.frStructure", Constants.CHIP_FR, frFirmware, frOptions, true));
+        }
+        String txFirmware = System.getProperty("bench.tx.firmware");
+        String txOptions = System.getProperty("bench.tx.options");
+        if (txFirmware != null && txOptions != null) {
+            benchmarks.add(new DisassemblerBenchmark("Disassembler.tx", Constants.CHIP_TX, txFirmware, txOptions, false));
+            benchmarks.add(new DisassemblerBenchmark("Disassembler.txStructure", Constants.CHIP_TX, txFirmware, txOptions, true));
+        }
+    }
+
+    private Disassembler createDisassembler() throws Exception {
+        Disassembler disassembler = (chip == Constants.CHIP_FR) ? new Dfr() : new Dtx();
+        disassembler.setDebugPrintWriter(new PrintWriter(NullWriter.NULL_WRITER));
+        disassembler.setOutputFileName(null);
+        disassembler.readOptions(optionsFilename);
+        return disassembler;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        Disassembler disassembler = createDisassembler();
+        memory = new FastMemory();
+        memory.loadFile(new File(firmwareFilename), disassembler.getFileRanges(), true);
+        codeBytes = 0;
+        for (Range range : disassembler.getMemRanges()) {
+            if (range.getRangeType().isCode()) {
+                codeBytes += range.getEnd() - range.getStart();
+            }
+        }
+    }
+
+    @Override
+    public long run() throws Exception {
+        Disassembler disassembler = createDisassembler();
+        EnumSet<OutputOption> outputOptions = EnumSet.copyOf(OutputOption.defaultFormatOptions);
+        if (structure) {
+            outputOptions.add(OutputOption.STRUCTURE);
+        }
+        disassembler.setOutputOptions(outputOptions);
+        disassembler.setMemory(memory);
+        disassembler.initialize();
+        disassembler.setOutWriter(NullWriter.NULL_WRITER);
+        disassembler.disassembleMemRanges();
+        disassembler.cleanup();
+        return codeBytes;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        memory = null;
+    }
+}
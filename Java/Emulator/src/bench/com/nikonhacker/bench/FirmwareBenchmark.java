@@ -0,0 +1,90 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.encoding.FirmwareFileEntry;
+import com.nikonhacker.encoding.FirmwareUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the speed of firmware update decoding steps, in bytes per second : xor decoding, unpacking (which
+ * includes the package checksum) and file checksums.
+ * A synthetic package is used, unless a real firmware update file is given as the "bench.package" system property.
+ */
+public class FirmwareBenchmark extends Benchmark {
+
+    private static final int SYNTHETIC_FILE_LENGTH = 8 * 1024 * 1024;
+
+    private enum Operation {XOR, UNPACK, CHECKSUM}
+
+    private final Operation operation;
+    private final String    packageFilename;
+
+    /** The decoded package */
+    private byte[]                  packageData;
+    private List<FirmwareFileEntry> fileEntries;
+
+    private FirmwareBenchmark(String name, Operation operation, String packageFilename) {
+        super(name, "bytes");
+        this.operation = operation;
+        this.packageFilename = packageFilename;
+    }
+
+    public static void addBenchmarks(List<Benchmark> benchmarks) {
+        String packageFilename = System.getProperty("bench.package");
+        benchmarks.add(new FirmwareBenchmark("Firmware.xor", Operation.XOR, packageFilename));
+        benchmarks.add(new FirmwareBenchmark("Firmware.unpack", Operation.UNPACK, packageFilename));
+        benchmarks.add(new FirmwareBenchmark("Firmware.checksum", Operation.CHECKSUM, packageFilename));
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        if (packageFilename == null) {
+            // Build a package with two files of random contents
+            Random random = new Random(0);
+            List<FirmwareFileEntry> syntheticEntries = new ArrayList<FirmwareFileEntry>();
+            for (String fileName : new String[]{"a860_010101.bin", "b860_010101.bin"}) {
+                byte[] contents = new byte[SYNTHETIC_FILE_LENGTH];
+                random.nextBytes(contents);
+                int checkSum = FirmwareUtils.computeChecksum(contents, 0, contents.length);
+                syntheticEntries.add(new FirmwareFileEntry(fileName, contents, 0, contents.length, checkSum));
+            }
+            packageData = FirmwareUtils.pack(syntheticEntries);
+        }
+        else {
+            packageData = FirmwareUtils.load(new File(packageFilename));
+            if (FirmwareUtils.tryXor(packageData) == 0) {
+                throw new IllegalArgumentException(packageFilename + " could not be decoded");
+            }
+        }
+        fileEntries = FirmwareUtils.unpack(packageData, FirmwareUtils.STANDARD);
+    }
+
+    @Override
+    public long run() throws Exception {
+        switch (operation) {
+            case XOR:
+                // Encoding is its own inverse: the buffer is alternately encoded and decoded
+                FirmwareUtils.xor(packageData, FirmwareUtils.STANDARD);
+                return packageData.length;
+            case UNPACK:
+                consume(FirmwareUtils.unpack(packageData, FirmwareUtils.STANDARD).size());
+                return packageData.length;
+            default:
+                long bytes = 0;
+                for (FirmwareFileEntry fileEntry : fileEntries) {
+                    consume(FirmwareUtils.computeChecksum(fileEntry.getBuffer(), fileEntry.getOffset(), fileEntry.getLength()));
+                    bytes += fileEntry.getLength();
+                }
+                return bytes;
+        }
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        packageData = null;
+        fileEntries = null;
+    }
+}
@@ -0,0 +1,165 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.disassembly.Range;
+import com.nikonhacker.disassembly.fr.Dfr;
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import com.nikonhacker.emu.CycleCounterListener;
+import com.nikonhacker.emu.FrEmulator;
+import com.nikonhacker.emu.MasterClock;
+import com.nikonhacker.emu.Platform;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.peripherials.interruptController.fr.FrInterruptController;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the number of FR instructions emulated per second, either on a synthetic loop or on real firmware code.
+ */
+public class FrEmulatorBenchmark extends Benchmark {
+
+    private static final int BASE_ADDRESS = 0x40000;
+    private static final int DATA_ADDRESS = 0x100000;
+
+    private static final int TICKS_PER_RUN = 100000;
+
+    /**
+     * A counting loop that also stores and reloads the counter. Branch offsets are in halfwords, relative to the
+     * address following the branch.
+     */
+    private static final int[] LOOP_CODE = {
+            0xCFF0, // start: LDI:8  #0xFF,R0
+            0xA411, // loop:  ADD    #1,R1
+            0x1421, //        ST     R1,@R2
+            0x0423, //        LD     @R2,R3
+            0xA5F0, //        ADD2   #-1,R0
+            0xE3FB, //        BNE    loop
+            0xE0F9, //        BRA    start
+    };
+
+    private final String firmwareFilename;
+    private final String optionsFilename;
+    private final boolean observeFetches;
+
+    private DebuggableMemory memory;
+    private FrEmulator       emulator;
+    private long             instructions;
+
+    /** In firmware mode, the addresses at which emulation is restarted after an exception */
+    private List<Integer> startAddresses;
+    private int           nextStartAddressIndex;
+    private int           restarts;
+
+    /**
+     * @param name the benchmark name
+     * @param firmwareFilename the firmware binary to load, or null to run the synthetic loop
+     * @param optionsFilename the dfr options file describing the firmware
+     * @param observeFetches if true, a listener is registered so that all instruction fetches are observed
+     */
+    public FrEmulatorBenchmark(String name, String firmwareFilename, String optionsFilename, boolean observeFetches) {
+        super(name, "instr");
+        this.firmwareFilename = firmwareFilename;
+        this.optionsFilename = optionsFilename;
+        this.observeFetches = observeFetches;
+    }
+
+    public static void addBenchmarks(List<Benchmark> benchmarks) {
+        benchmarks.add(new FrEmulatorBenchmark("FrEmulator.syntheticLoop", null, null, false));
+        benchmarks.add(new FrEmulatorBenchmark("FrEmulator.syntheticLoopObservedFetches", null, null, true));
+        String firmware = System.getProperty("bench.fr.firmware");
+        String options = System.getProperty("bench.fr.options");
+        if (firmware != null && options != null) {
+            benchmarks.add(new FrEmulatorBenchmark("FrEmulator.firmware", firmware, options, false));
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        memory = new DebuggableMemory(false);
+        memory.setLogMemoryMessages(false);
+        startAddresses = new ArrayList<Integer>();
+
+        if (firmwareFilename == null) {
+            for (int i = 0; i < LOOP_CODE.length; i++) {
+                memory.store16(BASE_ADDRESS + 2 * i, LOOP_CODE[i]);
+            }
+            startAddresses.add(BASE_ADDRESS);
+        }
+        else {
+            Dfr dfr = new Dfr();
+            dfr.readOptions(optionsFilename);
+            memory.loadFile(new File(firmwareFilename), dfr.getFileRanges(), false);
+            if (dfr.getEntryPoint() != null) {
+                startAddresses.add(dfr.getEntryPoint());
+            }
+            for (Range range : dfr.getMemRanges()) {
+                if (range.getRangeType().isCode()) {
+                    startAddresses.add(range.getStart());
+                }
+            }
+        }
+
+        if (observeFetches) {
+            memory.addActivityListener(new NullActivityListener());
+        }
+
+        nextStartAddressIndex = 0;
+        restarts = 0;
+        startEmulator();
+    }
+
+    /**
+     * (Re)creates the CPU and emulator, starting at the next start address
+     */
+    private void startEmulator() {
+        int startAddress = startAddresses.get(nextStartAddressIndex);
+        nextStartAddressIndex = (nextStartAddressIndex + 1) % startAddresses.size();
+
+        MasterClock masterClock = new MasterClock();
+        Platform platform = new Platform(masterClock);
+
+        FrCPUState cpuState = new FrCPUState(startAddress);
+        cpuState.setReg(2, DATA_ADDRESS);
+        platform.setCpuState(cpuState);
+        platform.setMemory(memory);
+
+        FrInterruptController interruptController = new FrInterruptController(platform);
+        platform.setInterruptController(interruptController);
+
+        emulator = new FrEmulator(platform);
+        emulator.setContext(memory, cpuState, interruptController);
+        emulator.addCycleCounterListener(new CycleCounterListener() {
+            @Override
+            public boolean onCycleCountChange(long oldCount, int increment) {
+                instructions++;
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public long run() throws Exception {
+        long instructionsBefore = instructions;
+        for (int tick = 0; tick < TICKS_PER_RUN; tick++) {
+            try {
+                emulator.onClockTick();
+            }
+            catch (Exception e) {
+                // Firmware code run out of context can fail. Move on to another part of it
+                restarts++;
+                startEmulator();
+            }
+        }
+        return instructions - instructionsBefore;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (restarts > 0) {
+            System.out.println("# " + restarts + " restarts after an emulation exception");
+        }
+        memory = null;
+        emulator = null;
+    }
+}
@@ -0,0 +1,185 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.emu.ClockableCallbackHandler;
+import com.nikonhacker.emu.MasterClock;
+import com.nikonhacker.emu.SkippableClockable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the scheduling cost of the MasterClock, with a set of clockables similar to a running camera (two CPUs and
+ * a dozen timers at various frequencies). Clockables do nothing but count, so the result is the number of FR CPU
+ * ticks the clock can dispatch per second, all other clockables included.
+ */
+public class MasterClockBenchmark extends Benchmark {
+
+    private static final int CPU_TICKS_PER_RUN = 1000000;
+
+    private final boolean eventDriven;
+    private final boolean skipAhead;
+
+    private List<CountingClockable> clockables;
+
+    private MasterClockBenchmark(String name, boolean eventDriven, boolean skipAhead) {
+        super(name, "cpuTicks");
+        this.eventDriven = eventDriven;
+        this.skipAhead = skipAhead;
+    }
+
+    public static void addBenchmarks(List<Benchmark> benchmarks) {
+        benchmarks.add(new MasterClockBenchmark("MasterClock.steps", false, false));
+        benchmarks.add(new MasterClockBenchmark("MasterClock.eventDriven", true, false));
+        benchmarks.add(new MasterClockBenchmark("MasterClock.eventDrivenSkipAhead", true, true));
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        clockables = new ArrayList<CountingClockable>();
+        // CPUs
+        clockables.add(new CountingClockable(Constants.CHIP_FR, 100000000, 0));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 80000000, 0));
+        // FR reload timers and free run timer
+        clockables.add(new CountingClockable(Constants.CHIP_FR, 1562500, 1000));
+        clockables.add(new CountingClockable(Constants.CHIP_FR, 1562500, 15625));
+        clockables.add(new CountingClockable(Constants.CHIP_FR, 390625, 0x10000));
+        clockables.add(new CountingClockable(Constants.CHIP_FR, 1000000, 0x10000));
+        // TX 16-bit timers and input capture timer
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 2500000, 2500));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 2500000, 0x10000));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 625000, 625));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 625000, 0x10000));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 156250, 1562));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 156250, 0x10000));
+        clockables.add(new CountingClockable(Constants.CHIP_TX, 1250000, 12500));
+    }
+
+    @Override
+    public long run() throws Exception {
+        final CountDownLatch stopped = new CountDownLatch(clockables.size());
+        final StopCondition stopCondition = new StopCondition();
+
+        MasterClock masterClock = new MasterClock();
+        masterClock.setEventDriven(eventDriven);
+        masterClock.setSkipAhead(skipAhead);
+        masterClock.setupClockableCallbackHandlers(new ClockableCallbackHandler[]{
+                new ClockableCallbackHandler() {
+                    @Override
+                    public void onNormalExit(Object o) {
+                        stopped.countDown();
+                    }
+
+                    @Override
+                    public void onException(Exception e) {
+                        e.printStackTrace();
+                        stopped.countDown();
+                    }
+                }
+        });
+
+        CountingClockable cpu = clockables.get(0);
+        cpu.maxTicks = CPU_TICKS_PER_RUN;
+        for (CountingClockable clockable : clockables) {
+            clockable.reset(stopCondition);
+            masterClock.add(clockable, 0, true, false);
+        }
+
+        masterClock.start();
+        stopped.await();
+
+        long events = 0;
+        for (CountingClockable clockable : clockables) {
+            events += clockable.events;
+        }
+        consume(events);
+        return cpu.ticks;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        clockables = null;
+    }
+
+    private static class StopCondition {
+        private boolean stopRequested;
+    }
+
+    /**
+     * A clockable counting its ticks, and counting an "event" each time a reload value is reached, like a timer.
+     * The first one to reach its max number of ticks stops all the others.
+     */
+    private static class CountingClockable implements SkippableClockable {
+        private final int chip;
+        private final int frequencyHz;
+        private final int reloadValue;
+
+        private long maxTicks = Long.MAX_VALUE;
+        private StopCondition stopCondition;
+
+        private long ticks;
+        private int  value;
+        private long events;
+
+        /**
+         * @param reloadValue the number of ticks between events, or 0 if there is no event and ticks cannot be skipped
+         */
+        CountingClockable(int chip, int frequencyHz, int reloadValue) {
+            this.chip = chip;
+            this.frequencyHz = frequencyHz;
+            this.reloadValue = reloadValue;
+        }
+
+        void reset(StopCondition stopCondition) {
+            this.stopCondition = stopCondition;
+            ticks = 0;
+            value = reloadValue;
+            events = 0;
+        }
+
+        @Override
+        public int getChip() {
+            return chip;
+        }
+
+        @Override
+        public int getFrequencyHz() {
+            return frequencyHz;
+        }
+
+        @Override
+        public Object onClockTick() throws Exception {
+            if (stopCondition.stopRequested) {
+                return stopCondition;
+            }
+            ticks++;
+            if (reloadValue > 0 && --value == 0) {
+                value = reloadValue;
+                events++;
+            }
+            if (ticks == maxTicks) {
+                stopCondition.stopRequested = true;
+                return stopCondition;
+            }
+            return null;
+        }
+
+        @Override
+        public int getSkippableTicks() {
+            return reloadValue > 0 ? value - 1 : 0;
+        }
+
+        @Override
+        public void skipTicks(int ticks, long startPs, long periodPs) {
+            // Nobody reads the state in between, so skipped ticks can be accounted for immediately
+            this.ticks += ticks;
+            value -= ticks;
+        }
+
+        @Override
+        public int dropSkippedTicks() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.memory.FastMemory;
+import com.nikonhacker.emu.memory.Memory;
+
+import java.util.List;
+
+/**
+ * Measures the load/store throughput of memory implementations, and the cost of activity listeners.
+ * Each access is counted as one operation.
+ */
+public class MemoryBenchmark extends Benchmark {
+
+    private static final int BASE_ADDRESS = 0x8F000000;
+    private static final int AREA_SIZE    = 0x40000; // 4 pages
+
+    private enum ListenerSetup {
+        /** No listener at all */
+        NONE,
+        /** A listener on a page that is never accessed */
+        OTHER_PAGE,
+        /** A listener on all pages */
+        ALL_PAGES
+    }
+
+    private final boolean       fastMemory;
+    private final ListenerSetup listenerSetup;
+
+    private Memory memory;
+
+    private MemoryBenchmark(String name, boolean fastMemory, ListenerSetup listenerSetup) {
+        super(name, "accesses");
+        this.fastMemory = fastMemory;
+        this.listenerSetup = listenerSetup;
+    }
+
+    public static void addBenchmarks(List<Benchmark> benchmarks) {
+        benchmarks.add(new MemoryBenchmark("Memory.fastMemory", true, ListenerSetup.NONE));
+        benchmarks.add(new MemoryBenchmark("Memory.debuggableNoListener", false, ListenerSetup.NONE));
+        benchmarks.add(new MemoryBenchmark("Memory.debuggableListenerOtherPage", false, ListenerSetup.OTHER_PAGE));
+        benchmarks.add(new MemoryBenchmark("Memory.debuggableListenerAllPages", false, ListenerSetup.ALL_PAGES));
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        if (fastMemory) {
+            memory = new FastMemory();
+        }
+        else {
+            DebuggableMemory debuggableMemory = new DebuggableMemory(false);
+            debuggableMemory.setLogMemoryMessages(false);
+            switch (listenerSetup) {
+                case OTHER_PAGE:
+                    debuggableMemory.addActivityListener(new NullActivityListener(0xFF00));
+                    break;
+                case ALL_PAGES:
+                    debuggableMemory.addActivityListener(new NullActivityListener());
+                    break;
+            }
+            memory = debuggableMemory;
+        }
+        memory.map(BASE_ADDRESS, AREA_SIZE, true, true, true);
+    }
+
+    @Override
+    public long run() throws Exception {
+        Memory memory = this.memory;
+        int sum = 0;
+        // Words
+        for (int address = BASE_ADDRESS; address != BASE_ADDRESS + AREA_SIZE; address += 4) {
+            memory.store32(address, address);
+        }
+        for (int address = BASE_ADDRESS; address != BASE_ADDRESS + AREA_SIZE; address += 4) {
+            sum += memory.load32(address);
+        }
+        // Halfwords
+        for (int address = BASE_ADDRESS; address != BASE_ADDRESS + AREA_SIZE; address += 2) {
+            memory.store16(address, address);
+        }
+        for (int address = BASE_ADDRESS; address != BASE_ADDRESS + AREA_SIZE; address += 2) {
+            sum += memory.loadUnsigned16(address);
+        }
+        // Bytes, on a quarter of the area
+        for (int address = BASE_ADDRESS; address != BASE_ADDRESS + AREA_SIZE / 4; address++) {
+            memory.store8(address, address);
+        }
+        for (int address = BASE_ADDRESS; address != BASE_ADDRESS + AREA_SIZE / 4; address++) {
+            sum += memory.loadUnsigned8(address);
+        }
+        consume(sum);
+        return 2 * (AREA_SIZE / 4) + 2 * (AREA_SIZE / 2) + 2 * (AREA_SIZE / 4);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        memory = null;
+    }
+}
@@ -0,0 +1,93 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.memory.listener.MemoryActivityListener;
+
+/**
+ * A listener that does nothing, used to measure the cost of listener dispatch itself
+ */
+class NullActivityListener implements MemoryActivityListener {
+
+    /** The page this listener is interested in, or -1 for all pages */
+    private final int targetPage;
+
+    private int notifications;
+
+    /**
+     * Creates a listener interested in all addresses
+     */
+    NullActivityListener() {
+        this(-1);
+    }
+
+    NullActivityListener(int targetPage) {
+        this.targetPage = targetPage;
+    }
+
+    int getNotifications() {
+        return notifications;
+    }
+
+    @Override
+    public boolean matches(int address) {
+        return targetPage == -1 || (address >>> 16) == targetPage;
+    }
+
+    @Override
+    public boolean matchesPage(int page) {
+        return targetPage == -1 || page == targetPage;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+        return value;
+    }
+
+    @Override
+    public int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+        return value;
+    }
+
+    @Override
+    public int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+        return value;
+    }
+
+    @Override
+    public void onLoadInstruction8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+    }
+
+    @Override
+    public void onLoadInstruction16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+    }
+
+    @Override
+    public void onLoadInstruction32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+    }
+
+    @Override
+    public void onStore8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+    }
+
+    @Override
+    public void onStore16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+    }
+
+    @Override
+    public void onStore32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        notifications++;
+    }
+}
@@ -0,0 +1,176 @@
+package com.nikonhacker.bench;
+
+import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.Range;
+import com.nikonhacker.disassembly.tx.Dtx;
+import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.emu.MasterClock;
+import com.nikonhacker.emu.Platform;
+import com.nikonhacker.emu.TxEmulator;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.peripherials.interruptController.tx.TxInterruptController;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Measures the number of TX instructions emulated per second, either on a synthetic loop or on real firmware code,
+ * in step and in basic block execution modes.
+ */
+public class TxEmulatorBenchmark extends Benchmark {
+
+    private static final int BASE_ADDRESS = 0x10000;
+    private static final int DATA_ADDRESS = 0x100000;
+
+    private static final int TICKS_PER_RUN = 100000;
+
+    /**
+     * A counting loop that also stores and reloads the counter. Branch offsets are in words, relative to the
+     * delay slot.
+     */
+    private static final int[] LOOP_CODE = {
+            0x240300FF, // start: addiu  v1,zero,0xFF
+            0x24420001, // loop:  addiu  v0,v0,1
+            0xAC820000, //        sw     v0,0(a0)
+            0x8C850000, //        lw     a1,0(a0)
+            0x2463FFFF, //        addiu  v1,v1,-1
+            0x1460FFFB, //        bne    v1,zero,loop
+            0x00000000, //        nop
+            0x1000FFF8, //        b      start
+            0x00000000, //        nop
+    };
+
+    private final String firmwareFilename;
+    private final String optionsFilename;
+    private final boolean blockExecutionMode;
+
+    private DebuggableMemory memory;
+    private TxEmulator       emulator;
+    /** Instructions executed by the previous emulators, before they were replaced */
+    private long             previousInstructions;
+
+    /** In firmware mode, the addresses at which emulation is restarted after an exception */
+    private List<Integer> startAddresses;
+    private int           nextStartAddressIndex;
+    private int           restarts;
+
+    /**
+     * @param name the benchmark name
+     * @param firmwareFilename the firmware binary to load, or null to run the synthetic loop
+     * @param optionsFilename the dtx options file describing the firmware
+     * @param blockExecutionMode true to execute basic blocks instead of single instructions
+     */
+    public TxEmulatorBenchmark(String name, String firmwareFilename, String optionsFilename, boolean blockExecutionMode) {
+        super(name, "instr");
+        this.firmwareFilename = firmwareFilename;
+        this.optionsFilename = optionsFilename;
+        this.blockExecutionMode = blockExecutionMode;
+    }
+
+    public static void addBenchmarks(List<Benchmark> benchmarks) {
+        benchmarks.add(new TxEmulatorBenchmark("TxEmulator.syntheticLoop", null, null, false));
+        benchmarks.add(new TxEmulatorBenchmark("TxEmulator.syntheticLoopBlocks", null, null, true));
+        String firmware = System.getProperty("bench.tx.firmware");
+        String options = System.getProperty("bench.tx.options");
+        if (firmware != null && options != null) {
+            benchmarks.add(new TxEmulatorBenchmark("TxEmulator.firmware", firmware, options, false));
+            benchmarks.add(new TxEmulatorBenchmark("TxEmulator.firmwareBlocks", firmware, options, true));
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        memory = new DebuggableMemory(false);
+        memory.setLogMemoryMessages(false);
+        startAddresses = new ArrayList<Integer>();
+
+        if (firmwareFilename == null) {
+            for (int i = 0; i < LOOP_CODE.length; i++) {
+                memory.store32(BASE_ADDRESS + 4 * i, LOOP_CODE[i]);
+            }
+            startAddresses.add(BASE_ADDRESS);
+        }
+        else {
+            Dtx dtx = new Dtx();
+            dtx.readOptions(optionsFilename);
+            memory.loadFile(new File(firmwareFilename), dtx.getFileRanges(), false);
+            if (dtx.getEntryPoint() != null) {
+                startAddresses.add(dtx.getEntryPoint());
+            }
+            for (Range range : dtx.getMemRanges()) {
+                if (range.getRangeType().isCode()) {
+                    startAddresses.add(range.getStart());
+                }
+            }
+        }
+
+        nextStartAddressIndex = 0;
+        previousInstructions = 0;
+        restarts = 0;
+        startEmulator();
+    }
+
+    /**
+     * (Re)creates the CPU and emulator, starting at the next start address
+     */
+    private void startEmulator() {
+        if (emulator != null) {
+            previousInstructions += emulator.getTotalCycles();
+        }
+
+        int startAddress = startAddresses.get(nextStartAddressIndex);
+        nextStartAddressIndex = (nextStartAddressIndex + 1) % startAddresses.size();
+
+        MasterClock masterClock = new MasterClock();
+        Platform platform = new Platform(masterClock);
+
+        TxCPUState cpuState = new TxCPUState(startAddress);
+        cpuState.setAllRegistersDefined();
+        cpuState.setReg(TxCPUState.A0, DATA_ADDRESS);
+        platform.setCpuState(cpuState);
+        platform.setMemory(memory);
+
+        TxInterruptController interruptController = new TxInterruptController(platform);
+        platform.setInterruptController(interruptController);
+        cpuState.setInterruptController(interruptController);
+
+        emulator = new TxEmulator(platform);
+        emulator.setContext(memory, cpuState, interruptController);
+        emulator.setOutputOptions(EnumSet.noneOf(OutputOption.class));
+        emulator.setBlockExecutionMode(blockExecutionMode);
+    }
+
+    /**
+     * TxEmulator counts one cycle per instruction
+     */
+    private long getInstructions() {
+        return previousInstructions + emulator.getTotalCycles();
+    }
+
+    @Override
+    public long run() throws Exception {
+        long instructionsBefore = getInstructions();
+        for (int tick = 0; tick < TICKS_PER_RUN; tick++) {
+            try {
+                emulator.onClockTick();
+            }
+            catch (Exception e) {
+                // Firmware code run out of context can fail. Move on to another part of it
+                restarts++;
+                startEmulator();
+            }
+        }
+        return getInstructions() - instructionsBefore;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (restarts > 0) {
+            System.out.println("# " + restarts + " restarts after an emulation exception");
+        }
+        memory = null;
+        emulator = null;
+    }
+}
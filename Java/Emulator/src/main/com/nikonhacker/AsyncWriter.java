@@ -0,0 +1,198 @@
+package com.nikonhacker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Writer that returns immediately and lets a background thread write to the target Writer, so that the emulator
+ * does not run at the speed of a slow disk, network share or text area.
+ * Written strings are queued in a bounded lock-free queue. When it is full, the OverflowPolicy tells whether the
+ * caller waits or the string is dropped. Dropped strings are replaced by a single mark in the output.
+ * flush() waits until everything written so far reached the target, e.g. so that logs are complete when emulation
+ * stops at a breakpoint.
+ */
+public class AsyncWriter extends Writer {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    public enum OverflowPolicy {
+        /** The caller waits until there is room in the queue. Nothing is lost */
+        BLOCK,
+        /** The string is dropped, and the caller goes on */
+        DROP
+    }
+
+    /** Time to wait between checks of the queue while blocked or flushing */
+    private static final long WAIT_NS = 100_000;
+    /** Maximum time the writer thread sleeps when the queue is empty, in case a wake up was missed */
+    private static final long IDLE_NS = 10_000_000;
+
+    private final Writer         target;
+    private final int            capacity;
+    private final OverflowPolicy policy;
+
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger queueSize     = new AtomicInteger();
+    private final AtomicLong    numQueued     = new AtomicLong();
+    private final AtomicLong    numDropped    = new AtomicLong();
+    private volatile long       numProcessed;
+
+    private final    Thread  writerThread;
+    private volatile boolean writerWaiting;
+    private volatile boolean closed;
+
+    public AsyncWriter(Writer target, int capacity, OverflowPolicy policy, String name) {
+        this.target = target;
+        this.capacity = capacity;
+        this.policy = policy;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of strings dropped since creation
+     */
+    public long getNumDropped() {
+        return numDropped.get();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        write(new String(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write(str.substring(off, off + len));
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+        while (!reserveSlot()) {
+            if (policy == OverflowPolicy.DROP) {
+                numDropped.incrementAndGet();
+                return;
+            }
+            if (closed) {
+                // Closing drains the queue whatever its size: stop waiting
+                queueSize.incrementAndGet();
+                break;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(this, WAIT_NS);
+        }
+        queue.offer(str);
+        numQueued.incrementAndGet();
+        if (writerWaiting) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Reserves room for one string in the queue. The size is counted before the string is queued, so that concurrent
+     * writers cannot all see the last free slot and exceed the capacity together
+     * @return false if the queue is full
+     */
+    private boolean reserveSlot() {
+        while (true) {
+            int size = queueSize.get();
+            if (size >= capacity) {
+                return false;
+            }
+            if (queueSize.compareAndSet(size, size + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits until all strings written so far have been written to the target, then flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        waitForProcessing(numQueued.get());
+        target.flush();
+    }
+
+    private void waitForProcessing(long count) {
+        while (numProcessed < count && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(this, WAIT_NS);
+        }
+    }
+
+    /**
+     * Writes all pending strings, stops the writer thread and closes the target
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            target.close();
+        }
+    }
+
+    private void processQueue() {
+        boolean mustFlush = false;
+        long numReportedDropped = 0;
+        while (true) {
+            String str = queue.poll();
+            if (str == null) {
+                try {
+                    long dropped = numDropped.get() - numReportedDropped;
+                    if (dropped > 0) {
+                        target.write("[" + dropped + " log messages dropped]" + System.lineSeparator());
+                        numReportedDropped += dropped;
+                        mustFlush = true;
+                    }
+                    if (mustFlush) {
+                        // Queue is empty: a good time to push everything out
+                        target.flush();
+                        mustFlush = false;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error writing log: " + e.getMessage());
+                }
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                writerWaiting = true;
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_NS);
+                }
+                writerWaiting = false;
+                continue;
+            }
+            queueSize.decrementAndGet();
+            try {
+                target.write(str);
+                mustFlush = true;
+            } catch (IOException e) {
+                System.err.println("Error writing log: " + e.getMessage());
+            }
+            numProcessed++;
+        }
+    }
+}
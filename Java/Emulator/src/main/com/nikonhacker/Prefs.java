@@ -8,6 +8,7 @@ import com.nikonhacker.disassembly.WriteListenerRegister32;
 import com.nikonhacker.disassembly.tx.NullRegister32;
 import com.nikonhacker.emu.AddressRange;
 import com.nikonhacker.emu.EmulationFramework;
+import com.nikonhacker.emu.MasterClock;
 import com.nikonhacker.emu.trigger.BreakTrigger;
 import com.nikonhacker.gui.EmulatorUI;
 import com.nikonhacker.gui.component.memoryHexEditor.MemoryWatch;
@@ -71,6 +72,18 @@ public class Prefs {
 
     private String frontPanelName;
 
+    private boolean txBlockExecution;
+
+    private boolean eventDrivenClock;
+
+    private boolean timerSkipAhead;
+
+    private boolean keepCheckpoints;
+
+    private boolean parallelChips;
+
+    private int chipSyncQuantumUs;
+
     private static File getPreferenceFile() {
         return new File(System.getProperty("user.home") + File.separator + "." + ApplicationInfo.getName());
     }
@@ -142,7 +155,8 @@ public class Prefs {
         xStream.alias("wlr32", WriteListenerRegister32.class);
         xStream.useAttributeFor(Register32.class, "value");
         xStream.aliasField("v", Register32.class, "value");
-        xStream.aliasField("r", CPUState.class, "regValue");
+        // Former Register32[] regValue, now int[], is read from the legacy field
+        xStream.aliasField("r", CPUState.class, "legacyRegValue");
         return xStream;
     }
 
@@ -625,6 +639,58 @@ public class Prefs {
         this.frontPanelName = frontPanelName;
     }
 
+    public boolean isTxBlockExecution() {
+        return txBlockExecution;
+    }
+
+    public void setTxBlockExecution(boolean txBlockExecution) {
+        this.txBlockExecution = txBlockExecution;
+    }
+
+    public boolean isEventDrivenClock() {
+        return eventDrivenClock;
+    }
+
+    public void setEventDrivenClock(boolean eventDrivenClock) {
+        this.eventDrivenClock = eventDrivenClock;
+    }
+
+    public boolean isKeepCheckpoints() {
+        return keepCheckpoints;
+    }
+
+    public void setKeepCheckpoints(boolean keepCheckpoints) {
+        this.keepCheckpoints = keepCheckpoints;
+    }
+
+    public boolean isTimerSkipAhead() {
+        return timerSkipAhead;
+    }
+
+    public void setTimerSkipAhead(boolean timerSkipAhead) {
+        this.timerSkipAhead = timerSkipAhead;
+    }
+
+    public boolean isParallelChips() {
+        return parallelChips;
+    }
+
+    public void setParallelChips(boolean parallelChips) {
+        this.parallelChips = parallelChips;
+    }
+
+    public int getChipSyncQuantumUs() {
+        // Check bounds, e.g. for prefs saved before this setting existed
+        if (chipSyncQuantumUs < 1 || chipSyncQuantumUs > 1000000) {
+            chipSyncQuantumUs = (int) (MasterClock.DEFAULT_SYNC_QUANTUM_PS / MasterClock.PS_PER_US);
+        }
+        return chipSyncQuantumUs;
+    }
+
+    public void setChipSyncQuantumUs(int chipSyncQuantumUs) {
+        this.chipSyncQuantumUs = chipSyncQuantumUs;
+    }
+
 
     /**
      * This is basically just a structure with an X Y value.
@@ -16,7 +16,23 @@ public abstract class CPUState {
     /**
      * Register values
      */
-    protected Register32[] regValue;
+    protected int[] regValue;
+
+    /**
+     * Listeners to call after a write to the corresponding register, or null if no register is watched.
+     * See {@link #setRegisterWriteListener(int, RegisterWriteListener)}
+     */
+    private transient RegisterWriteListener[] registerWriteListeners;
+
+    /**
+     * Lowest watched register number, so that a write to a register below it costs a single comparison
+     */
+    private transient int firstWatchedRegister = Integer.MAX_VALUE;
+
+    /**
+     * Register values as they were stored before they became ints. Only set when loading an old state
+     */
+    private Register32[] legacyRegValue;
 
     /** Used for disassembly formatting
      *  TODO could be replaced by another CPUState instance, like the "flags" logic used in triggers
@@ -67,11 +83,61 @@ public abstract class CPUState {
     }
 
     public void setReg(int registerNumber, int newValue) {
-        regValue[registerNumber].setValue(newValue);
+        regValue[registerNumber] = newValue;
+        if (registerNumber >= firstWatchedRegister) {
+            RegisterWriteListener registerWriteListener = registerWriteListeners[registerNumber];
+            if (registerWriteListener != null) {
+                registerWriteListener.afterWrite(newValue);
+            }
+        }
     }
 
     public int getReg(int registerNumber) {
-        return regValue[registerNumber].getValue();
+        return regValue[registerNumber];
+    }
+
+    /**
+     * Requests the given listener to be called after each write to the given register using {@link #setReg(int, int)}.
+     * Only writes to watched registers pay for that call.
+     * Listeners are not saved with the state, so subclasses using them must set them again in {@link #readResolve()}
+     * @param registerNumber
+     * @param registerWriteListener the listener, or null to stop watching that register
+     */
+    protected void setRegisterWriteListener(int registerNumber, RegisterWriteListener registerWriteListener) {
+        if (registerWriteListeners == null) {
+            registerWriteListeners = new RegisterWriteListener[regValue.length];
+        }
+        registerWriteListeners[registerNumber] = registerWriteListener;
+        firstWatchedRegister = Integer.MAX_VALUE;
+        for (int i = 0; i < registerWriteListeners.length; i++) {
+            if (registerWriteListeners[i] != null) {
+                firstWatchedRegister = i;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Called by XStream after loading a state
+     */
+    protected Object readResolve() {
+        firstWatchedRegister = Integer.MAX_VALUE;
+        if (legacyRegValue != null) {
+            importLegacyRegisters(legacyRegValue);
+            legacyRegValue = null;
+        }
+        return this;
+    }
+
+    /**
+     * Initializes register values from a state saved when registers were stored as Register32 objects
+     * @param legacyRegisters the former register array
+     */
+    protected void importLegacyRegisters(Register32[] legacyRegisters) {
+        regValue = new int[legacyRegisters.length];
+        for (int i = 0; i < legacyRegisters.length; i++) {
+            regValue[i] = legacyRegisters[i].getValue();
+        }
     }
 
     public int getPc() {
@@ -90,6 +156,12 @@ public abstract class CPUState {
 
     public abstract boolean accepts(InterruptRequest interruptRequest);
 
+    /**
+     * Returns a bitmap of the priority classes of requests that would currently be accepted.
+     * Bit n is set if requests with {@link InterruptRequest#getPriorityClass()} n would pass {@link #accepts(InterruptRequest)}
+     */
+    public abstract long getAcceptedPriorityClasses();
+
     public abstract int getResetAddress();
 
     public abstract void applyRegisterChanges(CPUState newCpuStateValues, CPUState newCpuStateFlags);
@@ -111,6 +111,26 @@ public abstract class Disassembler {
         this.debugPrintWriter = debugPrintWriter;
     }
 
+    /** The file to memory mappings defined by the '-i' options */
+    public SortedSet<Range> getFileRanges() {
+        return fileRanges;
+    }
+
+    /** The memory ranges to disassemble, defined by the '-m' options */
+    public SortedSet<Range> getMemRanges() {
+        return memRanges;
+    }
+
+    /** The symbols defined by the '-s' options, by address */
+    public Map<Integer, Symbol> getSymbols() {
+        return symbols;
+    }
+
+    /** The entry point defined by the '-e' option, or null if none */
+    public Integer getEntryPoint() {
+        return entryPoint;
+    }
+
     public void closeDebugPrintWriter() {
         if (debugPrintWriter!=null) {
             debugPrintWriter.close();
@@ -0,0 +1,9 @@
+package com.nikonhacker.disassembly;
+
+/**
+ * This interface allows classes to be notified after a given CPU register has been written.
+ * See {@link CPUState#setRegisterWriteListener(int, RegisterWriteListener)}
+ */
+public interface RegisterWriteListener {
+    public void afterWrite(int newValue);
+}
@@ -158,6 +158,12 @@ public abstract class Statement {
 
     public abstract String getFormattedBinaryStatement();
 
+    /**
+     * @return the 16-bit or 32-bit units of this statement in fetch order, the last one in the lowest bits.
+     * StatementDecoder can decode the statement again from that value
+     */
+    public abstract long getOpcode();
+
     public abstract int getNumBytes();
 
     public abstract void formatOperandsAndComment(StatementContext context, boolean updateRegisters, Set<OutputOption> outputOptions) throws DisassemblyException;
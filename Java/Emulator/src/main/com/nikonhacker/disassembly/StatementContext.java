@@ -1,12 +1,10 @@
 package com.nikonhacker.disassembly;
 
-import com.nikonhacker.emu.CallStackItem;
+import com.nikonhacker.emu.CallStack;
 import com.nikonhacker.emu.interrupt.InterruptRequest;
 import com.nikonhacker.emu.memory.Memory;
 import com.nikonhacker.emu.peripherials.interruptController.InterruptController;
-import org.apache.commons.lang3.StringUtils;
 
-import java.util.Deque;
 import java.util.Set;
 
 /**
@@ -22,17 +20,36 @@ public class StatementContext {
     /** This is the interrupt controller used in this context */
     public InterruptController interruptController;
 
-    /** This is the requested PC to jump to after having executed the statement in the delay slot */
-    public Integer nextPc;
+    /** This is the requested PC to jump to after having executed the statement in the delay slot. Only valid if hasNextPc is true */
+    public int nextPc;
 
-    /** This is the requested return address to set after having executed the statement in the delay slot */
-    public Integer nextReturnAddress;
+    /** True if a jump to nextPc is pending */
+    public boolean hasNextPc;
 
-    /** A custom register to be used as target for the return address, after having executed the statement in the delay slot */
-    public Integer nextReturnAddressTargetRegister;
+    /** This is the requested return address to set after having executed the statement in the delay slot. Only valid if hasNextReturnAddress is true */
+    public int nextReturnAddress;
+
+    /** True if nextReturnAddress has to be stored after the delay slot */
+    public boolean hasNextReturnAddress;
+
+    /** A custom register to be used as target for the return address, after having executed the statement in the delay slot. Only valid if hasNextReturnAddressTargetRegister is true */
+    public int nextReturnAddressTargetRegister;
+
+    /** True if nextReturnAddress has to be stored to nextReturnAddressTargetRegister instead of the default return register */
+    public boolean hasNextReturnAddressTargetRegister;
+
+    /**
+     * Delayed jump as stored before it was split into values and flags, null meaning none. Only set when loading an old state
+     */
+    private Integer legacyNextPc;
+    private Integer legacyNextReturnAddress;
+    private Integer legacyNextReturnAddressTargetRegister;
 
     /** The function call stack */
-    public Deque<CallStackItem> callStack;
+    public CallStack callStack;
+
+    /** True if a frame was pushed by the statement being executed, and its target is to be set by resolveCallTarget() */
+    public boolean hasPendingCallTarget;
 
     public Set<OutputOption> outputOptions;
 
@@ -48,21 +65,46 @@ public class StatementContext {
 
     public int cycleIncrement;
 
-    public void setDelayedPc(Integer nextPc) {
+    protected Object readResolve() {
+        if (legacyNextPc != null) {
+            nextPc = legacyNextPc;
+            hasNextPc = true;
+            legacyNextPc = null;
+        }
+        if (legacyNextReturnAddress != null) {
+            nextReturnAddress = legacyNextReturnAddress;
+            hasNextReturnAddress = true;
+            legacyNextReturnAddress = null;
+        }
+        if (legacyNextReturnAddressTargetRegister != null) {
+            nextReturnAddressTargetRegister = legacyNextReturnAddressTargetRegister;
+            hasNextReturnAddressTargetRegister = true;
+            legacyNextReturnAddressTargetRegister = null;
+        }
+        return this;
+    }
+
+    public void setDelayedPc(int nextPc) {
         this.nextPc = nextPc;
+        this.hasNextPc = true;
         this.delaySlotDone = false;
     }
 
-    public void setDelayedPcAndRa(Integer nextPC, Integer nextReturnAddress) {
+    public void setDelayedPcAndRa(int nextPC, int nextReturnAddress) {
         this.nextPc = nextPC;
+        this.hasNextPc = true;
         this.nextReturnAddress = nextReturnAddress;
+        this.hasNextReturnAddress = true;
         this.delaySlotDone = false;
     }
 
-    public void setDelayedPcAndRaAndTarget(Integer nextPC, Integer nextReturnAddress, Integer nextReturnAddressTargetRegister) {
+    public void setDelayedPcAndRaAndTarget(int nextPC, int nextReturnAddress, int nextReturnAddressTargetRegister) {
         this.nextPc = nextPC;
+        this.hasNextPc = true;
         this.nextReturnAddress = nextReturnAddress;
+        this.hasNextReturnAddress = true;
         this.nextReturnAddressTargetRegister = nextReturnAddressTargetRegister;
+        this.hasNextReturnAddressTargetRegister = true;
         this.delaySlotDone = false;
     }
 
@@ -82,43 +124,40 @@ public class StatementContext {
         return isLineBreakRequested;
     }
 
+    /**
+     * Records the statement being executed in the call stack, if any. Nothing is formatted: the emulator calls
+     * resolveCallTarget() once the statement has computed where it goes
+     */
     public void pushStatement(Statement statement) {
+        CallStack callStack = this.callStack;
+        if (callStack != null) {
+            callStack.push(cpuState.getPc(), cpuState.getSp(), statement.getOpcode(), statement.getNumBytes(), statement.getInstruction().getFlowType());
+            hasPendingCallTarget = true;
+        }
+    }
+
+    /**
+     * Sets the target of the frame pushed by the statement just executed: the pending delayed PC, or else the new PC
+     */
+    public void resolveCallTarget() {
+        hasPendingCallTarget = false;
+        CallStack callStack = this.callStack;
         if (callStack != null) {
-            //Double test to avoid useless synchronization if not tracking, at the cost of a double test when tracking (debug)
-            synchronized (callStack) {
-                if (callStack != null) {
-                    try {
-                        statement.formatOperandsAndComment(this, false, outputOptions);
-                    } catch (DisassemblyException e) {
-                        e.printStackTrace();
-                    }
-                    String target = statement.getCommentString();
-                    if (StringUtils.isBlank(target)) target = statement.getOperandString();
-                    callStack.push(new CallStackItem(cpuState.pc, cpuState.getSp(), statement.getInstruction(), statement.toString(outputOptions), target));
-                }
-            }
+            callStack.setTopTarget(hasNextPc ? nextPc : cpuState.getPc());
         }
     }
 
-    public CallStackItem popItem() {
-        if (callStack != null && !callStack.isEmpty()) {
-            CallStackItem poppedItem = callStack.pop();
-            while (!callStack.isEmpty() && poppedItem != null && poppedItem.getInstruction() != null && poppedItem.getInstruction().getFlowType() == Instruction.FlowType.JMP) {
-                poppedItem = callStack.pop();
-            }
-            return poppedItem;
+    public void popItem() {
+        CallStack callStack = this.callStack;
+        if (callStack != null) {
+            callStack.pop();
         }
-        return null;
     }
 
     public void pushInterrupt(InterruptRequest interruptRequest) {
+        CallStack callStack = this.callStack;
         if (callStack != null) {
-            //Double test to avoid useless synchronization if not tracking, at the cost of a double test when tracking (debug)
-            synchronized (callStack) {
-                if (callStack != null) {
-                    callStack.push(new CallStackItem(cpuState.pc, cpuState.getSp(), null, interruptRequest.toString(), ""));
-                }
-            }
+            callStack.pushInterrupt(cpuState.getPc(), cpuState.getSp(), interruptRequest);
         }
     }
 }
\ No newline at end of file
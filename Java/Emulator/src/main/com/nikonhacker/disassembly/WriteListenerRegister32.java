@@ -1,20 +1,8 @@
 package com.nikonhacker.disassembly;
 
-public class WriteListenerRegister32 extends Register32{
-    private WriteListener writeListener;
-
-    public WriteListenerRegister32(WriteListener writeListener) {
-        this.writeListener = writeListener;
-    }
-
-    public void setValue(int value) {
-        super.setValue(value);
-        writeListener.afterWrite(value);
-    }
-
-
-    public interface WriteListener {
-        public void afterWrite(int newValue);
-    }
-
+/**
+ * Register that used to call a listener after each write.
+ * Only kept so that states saved before {@link RegisterWriteListener}s existed can be loaded. See {@link CPUState#readResolve()}
+ */
+public class WriteListenerRegister32 extends Register32 {
 }
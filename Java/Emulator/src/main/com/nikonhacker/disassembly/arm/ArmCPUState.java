@@ -3,10 +3,10 @@ package com.nikonhacker.disassembly.arm;
 import com.nikonhacker.Format;
 import com.nikonhacker.disassembly.CPUState;
 import com.nikonhacker.disassembly.OutputOption;
-import com.nikonhacker.disassembly.Register32;
 import com.nikonhacker.emu.interrupt.InterruptRequest;
 import com.nikonhacker.emu.interrupt.fr.FrInterruptRequest;
 
+import java.util.Arrays;
 import java.util.Set;
 
 public class ArmCPUState extends CPUState {
@@ -57,6 +57,9 @@ public class ArmCPUState extends CPUState {
     private int EPSR=0;
 
 
+    /** SP is not stored, it stands for MSP or PSP depending on thread mode. This is the register it currently stands for */
+    private int stackPointerRegister = MSP;
+
     public static String[] registerLabels;
 
     /**
@@ -139,12 +142,17 @@ public class ArmCPUState extends CPUState {
     }
 
     public void setThreadMode(int t) {
-        if (t == 0) {
-            regValue[SP] = regValue[MSP];
-        }
-        else {
-            regValue[SP] = regValue[PSP];
-        }
+        stackPointerRegister = (t == 0) ? MSP : PSP;
+    }
+
+    @Override
+    public int getReg(int registerNumber) {
+        return regValue[(registerNumber == SP) ? stackPointerRegister : registerNumber];
+    }
+
+    @Override
+    public void setReg(int registerNumber, int newValue) {
+        super.setReg((registerNumber == SP) ? stackPointerRegister : registerNumber, newValue);
     }
 
     public int getEPSR() {
@@ -182,11 +190,8 @@ public class ArmCPUState extends CPUState {
 
     @Override
     public void reset() {
-        regValue = new Register32[registerLabels.length];
-        for (int i = 0; i < regValue.length; i++) {
-            regValue[i] = new Register32(0);
-        }
-        regValue[SP] = regValue[MSP];
+        regValue = new int[registerLabels.length];
+        stackPointerRegister = MSP;
         regValidityBitmap = 0;
         setPc(RESET_ADDRESS);
         // read new MSP from +0
@@ -197,20 +202,28 @@ public class ArmCPUState extends CPUState {
     @Override
     public void clear() {
         pc = 0;
-        for (int i = 0; i < regValue.length; i++) {
-            regValue[i] = new Register32(0);
-        }
-        regValue[SP] = regValue[MSP];
+        Arrays.fill(regValue, 0);
+        stackPointerRegister = MSP;
         regValidityBitmap = 0;
     }
 
 
+    /**
+     * ARM code is only disassembled, never emulated, so there is no interrupt controller and no request to accept
+     */
     @Override
     public boolean accepts(InterruptRequest interruptRequest) {
-        // TODO
         return false;
     }
 
+    /**
+     * Consistent with {@link #accepts(InterruptRequest)}: no priority class is accepted
+     */
+    @Override
+    public long getAcceptedPriorityClasses() {
+        return 0;
+    }
+
     public ArmCPUState createCopy() {
         ArmCPUState cloneCpuState = new ArmCPUState();
         for (int i = 0; i <= regValue.length; i++) {
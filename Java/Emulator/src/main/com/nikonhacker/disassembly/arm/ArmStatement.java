@@ -292,6 +292,15 @@ public class ArmStatement extends Statement {
         return numData * 2;
     }
 
+    @Override
+    public long getOpcode() {
+        long opcode = 0;
+        for (int i = 0; i < numData; i++) {
+            opcode = (opcode << 16) | data[i];
+        }
+        return opcode;
+    }
+
     public void fillInstruction() {
         ArmInstruction instruction = ArmInstructionSet.instructionMap[data[0]];
 
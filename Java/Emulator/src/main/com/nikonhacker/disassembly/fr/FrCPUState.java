@@ -3,10 +3,10 @@ package com.nikonhacker.disassembly.fr;
 import com.nikonhacker.Format;
 import com.nikonhacker.disassembly.CPUState;
 import com.nikonhacker.disassembly.OutputOption;
-import com.nikonhacker.disassembly.Register32;
 import com.nikonhacker.emu.interrupt.InterruptRequest;
 import com.nikonhacker.emu.interrupt.fr.FrInterruptRequest;
 
+import java.util.Arrays;
 import java.util.Set;
 
 public class FrCPUState extends CPUState {
@@ -91,6 +91,9 @@ public class FrCPUState extends CPUState {
     public int V=0;
     public int C=0;
 
+    /** R15 is not stored, it stands for SSP or USP depending on S. This is the register it currently stands for */
+    private transient int stackPointerRegister = SSP;
+
     public static String[] registerLabels;
 
     /**
@@ -127,6 +130,23 @@ public class FrCPUState extends CPUState {
         pc = startPc;
     }
 
+    @Override
+    public int getReg(int registerNumber) {
+        return regValue[(registerNumber == SP) ? stackPointerRegister : registerNumber];
+    }
+
+    @Override
+    public void setReg(int registerNumber, int newValue) {
+        super.setReg((registerNumber == SP) ? stackPointerRegister : registerNumber, newValue);
+    }
+
+    @Override
+    protected Object readResolve() {
+        super.readResolve();
+        stackPointerRegister = (S == 0) ? SSP : USP;
+        return this;
+    }
+
     @Override
     public int getResetAddress() {
         return RESET_ADDRESS;
@@ -205,12 +225,7 @@ public class FrCPUState extends CPUState {
      */
     public void setS(int newS) {
         S = newS;
-        if (S == 0) {
-            regValue[15] = regValue[SSP];
-        }
-        else {
-            regValue[15] = regValue[USP];
-        }
+        stackPointerRegister = (S == 0) ? SSP : USP;
     }
 
     /**
@@ -298,11 +313,7 @@ public class FrCPUState extends CPUState {
 
     @Override
     public void reset() {
-        regValue = new Register32[registerLabels.length];
-        for (int i = 0; i < regValue.length; i++) {
-            regValue[i] = new Register32(0);
-        }
-        regValue[15] = regValue[SSP];
+        regValue = new int[registerLabels.length];
         setILM(0xf, false); // 0b1111
         T = 0;
         I = 0;
@@ -316,10 +327,7 @@ public class FrCPUState extends CPUState {
     @Override
     public void clear() {
         pc = 0;
-        for (int i = 0; i < regValue.length; i++) {
-            regValue[i] = new Register32(0);
-        }
-        regValue[15] = regValue[SSP];
+        Arrays.fill(regValue, 0);
         setILM(0, false);
         T = 0;
         I = 0;
@@ -339,6 +347,18 @@ public class FrCPUState extends CPUState {
               );
     }
 
+    @Override
+    public long getAcceptedPriorityClasses() {
+        int ilm = getILM();
+        // Requests have class 31-ICR (plus 32 for NMI), and are accepted if ICR < ILM, i.e. if class > 31-ILM
+        long classes = (I == 1) ? (0xFFFFFFFFL & ~((1L << (32 - ilm)) - 1)) : 0;
+        if (ilm > 15) {
+            // All NMIs
+            return classes | 0xFFFFFFFF00000000L;
+        }
+        return classes | (classes << 32);
+    }
+
     public FrCPUState createCopy() {
         FrCPUState cloneCpuState = new FrCPUState();
         for (int i = 0; i <= CCR; i++) {
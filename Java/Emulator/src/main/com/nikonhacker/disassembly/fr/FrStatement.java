@@ -596,6 +596,15 @@ public class FrStatement extends Statement {
         return out;
     }
 
+    @Override
+    public long getOpcode() {
+        long opcode = 0;
+        for (int i = 0; i < numData; i++) {
+            opcode = (opcode << 16) | data[i];
+        }
+        return opcode;
+    }
+
     public String getFormattedBinaryStatement() {
         String out = "";
         for (int i = 0; i < 3; ++i) {
@@ -4,7 +4,7 @@ import com.nikonhacker.Format;
 import com.nikonhacker.disassembly.CPUState;
 import com.nikonhacker.disassembly.OutputOption;
 import com.nikonhacker.disassembly.Register32;
-import com.nikonhacker.disassembly.WriteListenerRegister32;
+import com.nikonhacker.disassembly.RegisterWriteListener;
 import com.nikonhacker.emu.CpuPowerModeChangeListener;
 import com.nikonhacker.emu.interrupt.InterruptRequest;
 import com.nikonhacker.emu.interrupt.tx.TxInterruptRequest;
@@ -12,6 +12,7 @@ import com.nikonhacker.emu.interrupt.tx.Type;
 import com.nikonhacker.emu.peripherials.interruptController.tx.TxInterruptController;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -324,6 +325,17 @@ public class TxCPUState extends CPUState {
 
     // Fields
 
+    /**
+     * Values of the general registers of each shadow register set, indexed by set then by register number.
+     * regValue holds the values of the current set, and is swapped with this array when switching sets.
+     * See switchRegisterSet()
+     */
+    private int[][] shadowRegisterValues;
+
+    /** The register set regValue currently holds */
+    private int currentRegisterSet;
+
+    /** Shadow register sets as they were stored before registers became ints. Only set when loading an old state */
     private Register32[][] shadowRegisterSets;
 
     private PowerMode powerMode = PowerMode.IDLE;
@@ -352,6 +364,39 @@ public class TxCPUState extends CPUState {
         setPc(startPc);
     }
 
+    @Override
+    public void setReg(int registerNumber, int newValue) {
+        // r0 is always 0
+        if (registerNumber != 0) {
+            super.setReg(registerNumber, newValue);
+        }
+    }
+
+    @Override
+    protected Object readResolve() {
+        super.readResolve();
+        setRegisterWriteListeners();
+        return this;
+    }
+
+    @Override
+    protected void importLegacyRegisters(Register32[] legacyRegisters) {
+        super.importLegacyRegisters(legacyRegisters);
+        shadowRegisterValues = new int[8][HI];
+        currentRegisterSet = 0;
+        if (shadowRegisterSets != null) {
+            for (int registerSet = 0; registerSet < 8; registerSet++) {
+                if (shadowRegisterSets[registerSet] == legacyRegisters) {
+                    currentRegisterSet = registerSet;
+                }
+                for (int i = 0; i < HI; i++) {
+                    shadowRegisterValues[registerSet][i] = shadowRegisterSets[registerSet][i].getValue();
+                }
+            }
+            shadowRegisterSets = null;
+        }
+    }
+
     @Override
     public int getResetAddress() {
         return RESET_ADDRESS;
@@ -412,67 +457,70 @@ public class TxCPUState extends CPUState {
     }
 
     public int getShadowReg(int registerSet, int registerNumber) {
-        return shadowRegisterSets[registerSet][registerNumber].getValue();
+        if (isBankedRegister(registerNumber)
+                && getRegisterSetStoringBankedRegister(registerSet, registerNumber) != getRegisterSetStoringBankedRegister(currentRegisterSet, registerNumber)) {
+            return shadowRegisterValues[getRegisterSetStoringBankedRegister(registerSet, registerNumber)][registerNumber];
+        }
+        return regValue[registerNumber];
     }
 
-    public void reset() {
-        powerMode = PowerMode.RUN;
-        shadowRegisterSets = new Register32[8][registerLabels.length];
-        regValue = shadowRegisterSets[0];
-
-        Register32 reg0 = new NullRegister32();
-
-        // All general registers have different values in each set (except 0 is dummy)
-        for (int registerSet = 0; registerSet < 8; registerSet++) {
-            // register 0 is dummy
-            shadowRegisterSets[registerSet][0] = reg0;
-            // base layout : all sets have separate register values
-            for (int i = 1; i < HI; i++) {
-                shadowRegisterSets[registerSet][i] = new Register32(0);
-            }
-        }
+    /**
+     * r1-r25, r29-r31 have a separate value in each register set (r0 is always 0).
+     * Other general registers (r26-r28) and all registers starting from HI are common to all sets
+     */
+    private static boolean isBankedRegister(int registerNumber) {
+        return registerNumber > 0 && registerNumber < HI && (registerNumber < 26 || registerNumber > 28);
+    }
 
-        // patch exceptions: r26-27-28 are common to all sets
-        for (int registerSet = 1; registerSet < 8; registerSet++) {
-            //noinspection ManualArrayCopy
-            for (int i = 26; i <= 28; i++) {
-                shadowRegisterSets[registerSet][i] = shadowRegisterSets[0][i];
-            }
-        }
+    /**
+     * r29 is separate in set 0, but common to sets 1-7. Its value for sets 1-7 is stored as the one of set 1
+     */
+    private static int getRegisterSetStoringBankedRegister(int registerSet, int registerNumber) {
+        return (registerNumber == 29 && registerSet > 0) ? 1 : registerSet;
+    }
 
-        // other exception: r29 is separate in set 0, but common to sets 1-7
-        for (int registerSet = 2; registerSet < 8; registerSet++) {
-            shadowRegisterSets[registerSet][29] = shadowRegisterSets[1][29];
+    /**
+     * Makes regValue hold the values of the given register set
+     */
+    private void switchRegisterSet(int registerSet) {
+        if (registerSet == currentRegisterSet) {
+            return;
         }
-
-        // All registers starting from HI are a single set, so share them
-        for (int i = HI; i < regValue.length; i++) {
-            Register32 r = new Register32();
-            for (int registerSet = 0; registerSet < 8; registerSet++) {
-               shadowRegisterSets[registerSet][i] = r;
+        for (int i = 1; i < HI; i++) {
+            if (isBankedRegister(i)) {
+                int storingSet = getRegisterSetStoringBankedRegister(currentRegisterSet, i);
+                int newStoringSet = getRegisterSetStoringBankedRegister(registerSet, i);
+                if (storingSet != newStoringSet) {
+                    shadowRegisterValues[storingSet][i] = regValue[i];
+                    regValue[i] = shadowRegisterValues[newStoringSet][i];
+                }
             }
         }
+        currentRegisterSet = registerSet;
+    }
 
-        // Finally, create special registers with listeners:
-
-        // Status register (in all register sets) is special because it can trigger a software interrupt
-        shadowRegisterSets[0][Status] = new WriteListenerRegister32(new WriteListenerRegister32.WriteListener() {
+    /**
+     * Declares the registers whose writes have side effects
+     */
+    private void setRegisterWriteListeners() {
+        // Status register is special because it can trigger a software interrupt
+        setRegisterWriteListener(Status, new RegisterWriteListener() {
             @Override
             public void afterWrite(int newValue) {
                 checkSoftwareInterruptGeneration();
             }
         });
 
-        // Cause register (in all register sets) is special because it can trigger a software interrupt
-        shadowRegisterSets[0][Cause] = new WriteListenerRegister32(new WriteListenerRegister32.WriteListener() {
+        // Cause register is special because it can trigger a software interrupt
+        setRegisterWriteListener(Cause, new RegisterWriteListener() {
             @Override
             public void afterWrite(int newValue) {
                 checkSoftwareInterruptGeneration();
             }
         });
 
-        // IER register (in all register sets) is special because it toggles the IE bit
-        shadowRegisterSets[0][IER] = new WriteListenerRegister32(new WriteListenerRegister32.WriteListener() {
+        // IER register is special because it toggles the IE bit
+        setRegisterWriteListener(IER, new RegisterWriteListener() {
             @Override
             public void afterWrite(int newValue) {
                 if (newValue == 0) {
@@ -484,8 +532,8 @@ public class TxCPUState extends CPUState {
             }
         });
 
-        // SSCR register (in all register sets) is special because it switches the current register set
-        shadowRegisterSets[0][SSCR] = new WriteListenerRegister32(new WriteListenerRegister32.WriteListener() {
+        // SSCR register is special because it switches the current register set
+        setRegisterWriteListener(SSCR, new RegisterWriteListener() {
             @Override
             public void afterWrite(int newValue) {
                 if (isSscrSSDSet()) {
@@ -493,22 +541,23 @@ public class TxCPUState extends CPUState {
                      * When the SSD bit is set, the Shadow Register Set is not updated by any interruptions,
                      * only shadow set 0 is accessible, and the value of the CSS field is ignored.
                      */
-                    regValue = shadowRegisterSets[0];
+                    switchRegisterSet(0);
                 }
                 else {
                     /* Otherwise, switch to corresponding register set. */
-                    regValue = shadowRegisterSets[newValue & Sscr_CSS_mask];
+                    switchRegisterSet(newValue & Sscr_CSS_mask);
                 }
             }
         });
+    }
 
-        // And point to them in all register sets
-        for (int registerSet = 1; registerSet < 8; registerSet++) {
-            shadowRegisterSets[registerSet][Status] = shadowRegisterSets[0][Status];
-            shadowRegisterSets[registerSet][Cause] = shadowRegisterSets[0][Cause];
-            shadowRegisterSets[registerSet][IER] = shadowRegisterSets[0][IER];
-            shadowRegisterSets[registerSet][SSCR] = shadowRegisterSets[0][SSCR];
-        }
+    public void reset() {
+        powerMode = PowerMode.RUN;
+        regValue = new int[registerLabels.length];
+        shadowRegisterValues = new int[8][HI];
+        currentRegisterSet = 0;
+
+        setRegisterWriteListeners();
 
         regValidityBitmap = 0;
 
@@ -524,12 +573,10 @@ public class TxCPUState extends CPUState {
     public void clear() {
         setPc(0);
         for (int registerSet = 0; registerSet < 8; registerSet++) {
-            regValue = shadowRegisterSets[registerSet];
-            for (int i = 0; i < regValue.length; i++) {
-                setReg(i, 0);
-            }
+            Arrays.fill(shadowRegisterValues[registerSet], 0);
         }
-        regValue = shadowRegisterSets[0];
+        Arrays.fill(regValue, 0);
+        currentRegisterSet = 0;
 
         regValidityBitmap = 0;
     }
@@ -537,9 +584,7 @@ public class TxCPUState extends CPUState {
 
     public TxCPUState createCopy() {
         TxCPUState cloneCpuState = new TxCPUState();
-        for (int i = 0; i < regValue.length; i++) {
-            cloneCpuState.regValue[i] = new Register32(regValue[i].getValue());
-        }
+        System.arraycopy(regValue, 0, cloneCpuState.regValue, 0, regValue.length);
         cloneCpuState.regValidityBitmap = regValidityBitmap;
         cloneCpuState.pc = pc;
         cloneCpuState.is16bitIsaMode = is16bitIsaMode;
@@ -565,7 +610,7 @@ public class TxCPUState extends CPUState {
      *   @param val The desired float value for the register.
      **/
     public void setRegisterToFloat(int reg, float val){
-        regValue[reg].setValue(Float.floatToRawIntBits(val));
+        regValue[reg] = Float.floatToRawIntBits(val);
     }
 
     /**
@@ -575,7 +620,7 @@ public class TxCPUState extends CPUState {
      *   @param val The desired int bit pattern for the register.
      **/
     public void setRegisterToInt(int reg, int val){
-        regValue[reg].setValue(val);
+        regValue[reg] = val;
     }
 
     /**
@@ -592,8 +637,8 @@ public class TxCPUState extends CPUState {
             throw new InvalidRegisterAccessException();
         }
         long bits = Double.doubleToRawLongBits(val);
-        regValue[reg+1].setValue(Format.highOrderLongToInt(bits));  // high order 32 bits
-        regValue[reg].setValue(Format.lowOrderLongToInt(bits)); // low order 32 bits
+        regValue[reg+1] = Format.highOrderLongToInt(bits);  // high order 32 bits
+        regValue[reg] = Format.lowOrderLongToInt(bits); // low order 32 bits
     }
 
     /**
@@ -611,8 +656,8 @@ public class TxCPUState extends CPUState {
         if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
         }
-        regValue[reg+1].setValue(Format.highOrderLongToInt(val));  // high order 32 bits
-        regValue[reg].setValue(Format.lowOrderLongToInt(val)); // low order 32 bits
+        regValue[reg+1] = Format.highOrderLongToInt(val);  // high order 32 bits
+        regValue[reg] = Format.lowOrderLongToInt(val); // low order 32 bits
     }
 
 
@@ -623,7 +668,7 @@ public class TxCPUState extends CPUState {
      **/
 
     public float getFloatFromRegister(int reg){
-        return Float.intBitsToFloat(regValue[reg].getValue());
+        return Float.intBitsToFloat(regValue[reg]);
     }
 
     /**
@@ -637,7 +682,7 @@ public class TxCPUState extends CPUState {
         if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
         }
-        return Double.longBitsToDouble(Format.twoIntsToLong(regValue[reg + 1].getValue(), regValue[reg].getValue()));
+        return Double.longBitsToDouble(Format.twoIntsToLong(regValue[reg + 1], regValue[reg]));
     }
 
     /**
@@ -652,7 +697,7 @@ public class TxCPUState extends CPUState {
         if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
         }
-        return Format.twoIntsToLong(regValue[reg + 1].getValue(), regValue[reg].getValue());
+        return Format.twoIntsToLong(regValue[reg + 1], regValue[reg]);
     }
 
 
@@ -1166,6 +1211,16 @@ public class TxCPUState extends CPUState {
                 && ((TxInterruptRequest)interruptRequest).getLevel() > interruptController.getIlevCmask();
     }
 
+    @Override
+    public long getAcceptedPriorityClasses() {
+        if (interruptController == null
+                || getPowerMode() != PowerMode.RUN || !isStatusIESet() || isStatusERLSet() || isStatusEXLSet()) {
+            return 0;
+        }
+        // Classes are levels. Only levels above CMASK are accepted
+        return 0xFF & ~((1 << (interruptController.getIlevCmask() + 1)) - 1);
+    }
+
     public void addCpuPowerModeChangeListener(CpuPowerModeChangeListener cpuPowerModeChangeListener) {
         cpuPowerModeChangeListeners.add(cpuPowerModeChangeListener);
     }
@@ -2097,7 +2097,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2118,7 +2118,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2140,7 +2140,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2163,7 +2163,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2184,7 +2184,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2205,7 +2205,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2227,7 +2227,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2259,7 +2259,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2285,7 +2285,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2310,7 +2310,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2335,7 +2335,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2361,7 +2361,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2387,7 +2387,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2410,7 +2410,7 @@ public class TxInstructionSet
             new SimulationCode() {
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     if ((((TxCPUState)context.cpuState).getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2434,7 +2434,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2462,7 +2462,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
@@ -2490,7 +2490,7 @@ public class TxInstructionSet
                 public void simulate(Statement statement, StatementContext context) throws EmulationException {
                     final TxCPUState txCPUState = (TxCPUState)context.cpuState;
                     if ((txCPUState.getStatusCU()&2)==0) {
-                        if (context.nextPc != null)
+                        if (context.hasNextPc)
                             throw new TxEmulationException("FPU exception in delayed slot not implemented at 0x" + Format.asHex(context.cpuState.pc, 8));
                         context.pushStatement(statement);
                         context.interruptController.request(new CoprocessorUnusableException(1));
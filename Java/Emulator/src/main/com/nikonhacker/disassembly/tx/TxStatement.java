@@ -953,6 +953,11 @@ public class TxStatement extends Statement {
         }
     }
 
+    @Override
+    public long getOpcode() {
+        return binaryStatement & 0xFFFFFFFFL;
+    }
+
     @Override
     public int getNumBytes() {
         return numBytes;
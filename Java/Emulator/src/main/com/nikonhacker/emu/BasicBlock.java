@@ -0,0 +1,52 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.disassembly.Statement;
+
+/**
+ * A basic block is a sequence of straight-line statements, decoded once, that ends with a flow change instruction
+ * (and its delay slot, if any), or when a maximum length is reached.
+ */
+public class BasicBlock {
+    /** Address of the first statement of the block */
+    final int startAddress;
+
+    /** Address of the first byte after the last statement of the block */
+    final int endAddress;
+
+    /** The decoded statements, in execution order */
+    final Statement[] statements;
+
+    /** The address of each statement */
+    final int[] addresses;
+
+    /**
+     * The value of the break condition version at the time containsPcBreakCondition was computed,
+     * or -1 if never computed
+     */
+    int breakConditionsVersion = -1;
+
+    /** true if one of the statements (except the first one) has a PC-based break condition */
+    boolean containsPcBreakCondition;
+
+    /** Set when the block is dropped from its cache because its code was modified, possibly while it runs */
+    boolean invalidated;
+
+    public BasicBlock(int startAddress, int endAddress, Statement[] statements, int[] addresses) {
+        this.startAddress = startAddress;
+        this.endAddress = endAddress;
+        this.statements = statements;
+        this.addresses = addresses;
+    }
+
+    public int getStartAddress() {
+        return startAddress;
+    }
+
+    public int getEndAddress() {
+        return endAddress;
+    }
+
+    public int getNumStatements() {
+        return statements.length;
+    }
+}
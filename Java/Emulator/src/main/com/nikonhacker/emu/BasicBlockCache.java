@@ -0,0 +1,121 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.emu.memory.CodeModificationListener;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+
+/**
+ * A cache of basic blocks, indexed by start address with the same page/offset split as the memory page table.
+ * Each page also has a bitmap of the halfwords covered by at least one block, so that a store to plain data
+ * only costs a bit test, while a store to cached code drops all blocks that include the modified address.
+ */
+public class BasicBlockCache implements CodeModificationListener {
+
+    /** Maximum length of a block, in bytes. This bounds the search for blocks covering a modified address */
+    public static final int MAX_BLOCK_LENGTH = 256;
+
+    private final DebuggableMemory memory;
+    private final int              offsetBits;
+    private final int              offsetMask;
+    private final int              entriesPerPage;
+
+    private BasicBlock[][] pages;
+    private int[][]        coveredHalfwords;
+
+    public BasicBlockCache(DebuggableMemory memory) {
+        this.memory = memory;
+        int pageSize = memory.getPageSize();
+        offsetBits = Integer.numberOfTrailingZeros(pageSize);
+        offsetMask = pageSize - 1;
+        entriesPerPage = pageSize >>> 1;
+        clear();
+        memory.addCodeModificationListener(this);
+    }
+
+    private void clear() {
+        pages = new BasicBlock[memory.getNumPages()][];
+        coveredHalfwords = new int[memory.getNumPages()][];
+    }
+
+    public DebuggableMemory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the block starting at the given address, or null if none
+     * @param address the address of the first instruction
+     */
+    public final BasicBlock get(int address) {
+        BasicBlock[] page = pages[address >>> offsetBits];
+        if (page == null) {
+            return null;
+        }
+        return page[(address & offsetMask) >>> 1];
+    }
+
+    public final void put(BasicBlock block) {
+        int pte = block.startAddress >>> offsetBits;
+        BasicBlock[] page = pages[pte];
+        if (page == null) {
+            page = new BasicBlock[entriesPerPage];
+            pages[pte] = page;
+        }
+        page[(block.startAddress & offsetMask) >>> 1] = block;
+
+        // Mark covered halfwords
+        for (int address = block.startAddress; address != block.endAddress; address += 2) {
+            int coveredPte = address >>> offsetBits;
+            int[] bitmap = coveredHalfwords[coveredPte];
+            if (bitmap == null) {
+                bitmap = new int[entriesPerPage >>> 5];
+                coveredHalfwords[coveredPte] = bitmap;
+            }
+            int halfword = (address & offsetMask) >>> 1;
+            bitmap[halfword >>> 5] |= 1 << (halfword & 0x1F);
+        }
+    }
+
+    /**
+     * Stop being notified of code modifications. Must be called when the cache is discarded.
+     */
+    public void dispose() {
+        memory.removeCodeModificationListener(this);
+    }
+
+    @Override
+    public void onCodeModified(int address) {
+        int[] bitmap = coveredHalfwords[address >>> offsetBits];
+        if (bitmap == null) {
+            return;
+        }
+        int halfword = (address & offsetMask) >>> 1;
+        if ((bitmap[halfword >>> 5] & (1 << (halfword & 0x1F))) == 0) {
+            return;
+        }
+        // This address is part of at least one block. Drop all blocks that include it
+        for (int startAddress = (address - MAX_BLOCK_LENGTH) & ~1; startAddress != ((address + 2) & ~1); startAddress += 2) {
+            BasicBlock[] page = pages[startAddress >>> offsetBits];
+            if (page != null) {
+                int index = (startAddress & offsetMask) >>> 1;
+                BasicBlock block = page[index];
+                if (block != null && address - block.startAddress < block.endAddress - block.startAddress) {
+                    block.invalidated = true;
+                    page[index] = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onAllCodeModified() {
+        for (BasicBlock[] page : pages) {
+            if (page != null) {
+                for (BasicBlock block : page) {
+                    if (block != null) {
+                        block.invalidated = true;
+                    }
+                }
+            }
+        }
+        clear();
+    }
+}
@@ -0,0 +1,399 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.Format;
+import com.nikonhacker.Prefs;
+import com.nikonhacker.disassembly.ParsingException;
+import com.nikonhacker.emu.peripherials.interruptController.AbstractInterruptController;
+import com.nikonhacker.emu.peripherials.programmableTimer.ProgrammableTimer;
+import com.nikonhacker.emu.trigger.condition.AlwaysBreakCondition;
+import com.nikonhacker.emu.trace.ExecutionTraceRecorder;
+import com.nikonhacker.emu.trigger.condition.BreakCondition;
+import com.nikonhacker.gui.component.disassembly.DisassemblyLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless emulation runner.
+ * Builds the full EmulationFramework for one or both chips, as the UI does, runs them for a given emulated time or
+ * until a break trigger fires, then prints statistics : instructions executed, emulated vs wall time, ticks of each
+ * Clockable and processed interrupts.
+ * Preferences (break triggers, port overrides, eeprom, etc.) are read from the same file as the UI, but never saved.
+ */
+public class BatchEmulator {
+
+    private final Prefs              prefs;
+    private final EmulationFramework framework;
+
+    private final File[] imageFile = new File[2];
+    private long    emulatedTimeLimitMs = 0;
+    private boolean debugMode           = false;
+
+    /** One count per running chip, decremented when the chip stops */
+    private CountDownLatch runningChips;
+    private final boolean[] stopped    = new boolean[2];
+    private final String[]  stopReason = new String[2];
+    private final long[]    stopTimePs = new long[2];
+
+    private final InstructionCounter[] instructionCounters = new InstructionCounter[2];
+
+    private final File[]                   traceFile      = new File[2];
+    private final ExecutionTraceRecorder[] traceRecorders = new ExecutionTraceRecorder[2];
+    private long    traceCapacity  = 0;
+    private boolean traceRegisters = false;
+
+    public BatchEmulator(Prefs prefs) {
+        this.prefs = prefs;
+        framework = new EmulationFramework(prefs);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: " + BatchEmulator.class.getSimpleName() + " [options]");
+        System.err.println("Options:");
+        System.err.println(" -fr <file>      FR firmware image to run");
+        System.err.println(" -tx <file>      TX firmware image to run");
+        System.err.println(" -ms <n>         stop after n emulated milliseconds (default: run until a break trigger fires)");
+        System.err.println(" -debug          arm the break triggers defined in the preferences (default: plain run)");
+        System.err.println(" -timers         enable programmable timers at start (default: per preferences)");
+        System.err.println(" -eventdriven    use the event-driven clock scheduler (default: per preferences)");
+        System.err.println(" -skipahead      let timers skip ticks between interrupts, implies -eventdriven (default: per preferences)");
+        System.err.println(" -parallel       run each chip on its own thread (default: per preferences)");
+        System.err.println(" -quantum <us>   max emulated time skew between chips in parallel mode (default: per preferences)");
+        System.err.println(" -frtrace <file> record executed FR instructions to a binary trace (see ExecutionTraceDecoder)");
+        System.err.println(" -txtrace <file> record executed TX instructions to a binary trace (see ExecutionTraceDecoder)");
+        System.err.println(" -tracering <n>  only keep the last n records of traces (default: keep all)");
+        System.err.println(" -traceregs      also record register changes in traces");
+        System.err.println(" e.g. " + BatchEmulator.class.getSimpleName() + " -fr b640101b.bin -tx a640m010100.bin -ms 2000 -timers");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchEmulator batchEmulator = new BatchEmulator(Prefs.load());
+        boolean enableTimers = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (("-fr".equals(arg) || "-tx".equals(arg) || "-ms".equals(arg) || "-quantum".equals(arg)
+                    || "-frtrace".equals(arg) || "-txtrace".equals(arg) || "-tracering".equals(arg)) && i == args.length - 1) {
+                System.err.println("Option " + arg + " requires an argument");
+                usage();
+            }
+            if ("-fr".equals(arg)) {
+                batchEmulator.imageFile[Constants.CHIP_FR] = new File(args[++i]);
+            }
+            else if ("-tx".equals(arg)) {
+                batchEmulator.imageFile[Constants.CHIP_TX] = new File(args[++i]);
+            }
+            else if ("-ms".equals(arg)) {
+                try {
+                    batchEmulator.emulatedTimeLimitMs = Format.parseUnsigned(args[++i]);
+                } catch (ParsingException e) {
+                    System.err.println("Invalid number of milliseconds: " + args[i]);
+                    usage();
+                }
+            }
+            else if ("-debug".equals(arg)) {
+                batchEmulator.debugMode = true;
+            }
+            else if ("-timers".equals(arg)) {
+                enableTimers = true;
+            }
+            else if ("-eventdriven".equals(arg)) {
+                batchEmulator.prefs.setEventDrivenClock(true);
+            }
+            else if ("-skipahead".equals(arg)) {
+                batchEmulator.prefs.setEventDrivenClock(true);
+                batchEmulator.prefs.setTimerSkipAhead(true);
+            }
+            else if ("-parallel".equals(arg)) {
+                batchEmulator.prefs.setParallelChips(true);
+            }
+            else if ("-quantum".equals(arg)) {
+                try {
+                    batchEmulator.prefs.setChipSyncQuantumUs(Format.parseUnsigned(args[++i]));
+                } catch (ParsingException e) {
+                    System.err.println("Invalid number of microseconds: " + args[i]);
+                    usage();
+                }
+            }
+            else if ("-frtrace".equals(arg)) {
+                batchEmulator.traceFile[Constants.CHIP_FR] = new File(args[++i]);
+            }
+            else if ("-txtrace".equals(arg)) {
+                batchEmulator.traceFile[Constants.CHIP_TX] = new File(args[++i]);
+            }
+            else if ("-tracering".equals(arg)) {
+                try {
+                    batchEmulator.traceCapacity = Format.parseUnsigned(args[++i]);
+                } catch (ParsingException e) {
+                    System.err.println("Invalid number of records: " + args[i]);
+                    usage();
+                }
+            }
+            else if ("-traceregs".equals(arg)) {
+                batchEmulator.traceRegisters = true;
+            }
+            else {
+                System.err.println("Unknown option: " + arg);
+                usage();
+            }
+        }
+
+        if (batchEmulator.imageFile[Constants.CHIP_FR] == null && batchEmulator.imageFile[Constants.CHIP_TX] == null) {
+            usage();
+        }
+        for (File file : batchEmulator.imageFile) {
+            if (file != null && !file.exists()) {
+                System.err.println("File not found: " + file.getAbsolutePath());
+                System.exit(1);
+            }
+        }
+
+        batchEmulator.initialize(enableTimers);
+        batchEmulator.run();
+        batchEmulator.closeTraces();
+        batchEmulator.printReport(System.out);
+
+        // Some peripherals may still be clocked, and nobody will ever stop them
+        System.exit(0);
+    }
+
+    private void initialize(boolean enableTimers) throws IOException {
+        MasterClock masterClock = framework.getMasterClock();
+        masterClock.setEventDriven(prefs.isEventDrivenClock());
+        masterClock.setSkipAhead(prefs.isTimerSkipAhead());
+        masterClock.setParallel(prefs.isParallelChips());
+        masterClock.setSyncQuantumPs(prefs.getChipSyncQuantumUs() * MasterClock.PS_PER_US);
+        // When one chip stops, the other must stop too
+        masterClock.setSyncPlay(true);
+
+        for (int chip = 0; chip < 2; chip++) {
+            if (imageFile[chip] != null) {
+                framework.initialize(chip, imageFile[chip]);
+                // Full speed
+                framework.getEmulator(chip).setSleepIntervalMs(0);
+                if (enableTimers || prefs.isAutoEnableTimers(chip)) {
+                    for (ProgrammableTimer timer : framework.getPlatform(chip).getProgrammableTimers()) {
+                        timer.setActive(true);
+                    }
+                }
+                // FR notifies cycle counts per instruction. TX counts one cycle per instruction, and notifies per block
+                instructionCounters[chip] = new InstructionCounter(chip == Constants.CHIP_TX);
+                framework.getEmulator(chip).addCycleCounterListener(instructionCounters[chip]);
+
+                if (traceFile[chip] != null) {
+                    traceRecorders[chip] = new ExecutionTraceRecorder(traceFile[chip], chip, traceCapacity);
+                    traceRecorders[chip].setRecordRegisters(traceRegisters);
+                    // A logger without writers: instructions only go to the trace
+                    DisassemblyLogger logger = new DisassemblyLogger();
+                    logger.setTraceRecorder(traceRecorders[chip]);
+                    logger.setLogging(true);
+                    framework.getEmulator(chip).setDisassemblyLogger(logger);
+                }
+            }
+        }
+
+        framework.setupCallbacks(getCallbackHandler(Constants.CHIP_FR), getCallbackHandler(Constants.CHIP_TX));
+    }
+
+    private ClockableCallbackHandler getCallbackHandler(final int chip) {
+        return new ClockableCallbackHandler() {
+            @Override
+            public void onNormalExit(Object o) {
+                String reason;
+                if (o instanceof BreakCondition && ((BreakCondition) o).getBreakTrigger() != null) {
+                    reason = "Break trigger matched : " + ((BreakCondition) o).getBreakTrigger().getName();
+                }
+                else if (o instanceof AlwaysBreakCondition) {
+                    reason = "Time limit reached";
+                }
+                else {
+                    reason = (o == null) ? "Emulation complete" : o.toString();
+                }
+                onChipStopped(chip, reason);
+            }
+
+            @Override
+            public void onException(Exception e) {
+                onChipStopped(chip, "Exception : " + e.getMessage());
+            }
+        };
+    }
+
+    private void onChipStopped(int chip, String reason) {
+        if (!stopped[chip]) {
+            stopped[chip] = true;
+            stopReason[chip] = reason;
+            stopTimePs[chip] = framework.getMasterClock().getTotalElapsedTimePs();
+            runningChips.countDown();
+        }
+    }
+
+    private long wallStartNs;
+    private long wallEndNs;
+
+    private void run() throws InterruptedException {
+        int chipCount = 0;
+        for (int chip = 0; chip < 2; chip++) {
+            if (imageFile[chip] != null) {
+                chipCount++;
+            }
+        }
+        runningChips = new CountDownLatch(chipCount);
+
+        for (int chip = 0; chip < 2; chip++) {
+            if (imageFile[chip] != null) {
+                framework.prepareBreakTriggers(chip, debugMode ? EmulationFramework.ExecutionMode.DEBUG : EmulationFramework.ExecutionMode.RUN, null);
+                framework.prepareEmulation(chip);
+            }
+        }
+        framework.getMasterClock().add(new TimeLimit(), -1, true, false);
+
+        wallStartNs = System.nanoTime();
+        framework.getMasterClock().start();
+        runningChips.await();
+        wallEndNs = System.nanoTime();
+    }
+
+    private void closeTraces() throws IOException {
+        for (int chip = 0; chip < 2; chip++) {
+            if (traceRecorders[chip] != null) {
+                traceRecorders[chip].close();
+            }
+        }
+    }
+
+    private void printReport(java.io.PrintStream out) {
+        MasterClock masterClock = framework.getMasterClock();
+        long emulatedPs = 0;
+        for (int chip = 0; chip < 2; chip++) {
+            if (imageFile[chip] != null) {
+                emulatedPs = Math.max(emulatedPs, stopTimePs[chip]);
+            }
+        }
+        double wallS = (wallEndNs - wallStartNs) / 1e9;
+        double emulatedS = emulatedPs / (double) MasterClock.PS_PER_SEC;
+
+        out.println(String.format(Locale.US, "Emulated time : %,.3f ms", emulatedS * 1000));
+        out.println(String.format(Locale.US, "Wall time     : %,.3f ms", wallS * 1000));
+        out.println(String.format(Locale.US, "Ratio         : %.4f (emulated/wall)", emulatedS / wallS));
+        String clockMode;
+        if (masterClock.isParallel()) {
+            clockMode = String.format(Locale.US, "parallel, %,d us quantum", masterClock.getSyncQuantumPs() / MasterClock.PS_PER_US);
+        }
+        else {
+            clockMode = masterClock.isEventDriven() ? "event-driven" : "steps";
+        }
+        if (masterClock.isSkipAhead() && (masterClock.isParallel() || masterClock.isEventDriven())) {
+            clockMode += ", skip-ahead";
+        }
+        out.println("Clock mode    : " + clockMode);
+
+        for (int chip = 0; chip < 2; chip++) {
+            if (imageFile[chip] == null) {
+                continue;
+            }
+            String label = Constants.CHIP_LABEL[chip];
+            InstructionCounter counter = instructionCounters[chip];
+            out.println();
+            out.println(label + " " + imageFile[chip].getName());
+            out.println(String.format(Locale.US, "  Stopped       : %s (at %,.3f ms, PC=0x%s)", stopReason[chip], stopTimePs[chip] / (double) MasterClock.PS_PER_MS, Format.asHex(framework.getPlatform(chip).getCpuState().pc, 8)));
+            out.println(String.format(Locale.US, "  Instructions  : %,d", counter.instructions));
+            out.println(String.format(Locale.US, "  Cycles        : %,d", framework.getEmulator(chip).getTotalCycles()));
+            out.println(String.format(Locale.US, "  MIPS          : %,.3f", counter.instructions / wallS / 1e6));
+            if (traceRecorders[chip] != null) {
+                out.println(String.format(Locale.US, "  Trace records : %,d (%s)", traceRecorders[chip].getNumRecords(), traceFile[chip].getName()));
+            }
+
+            long[] interruptCounts = ((AbstractInterruptController) framework.getPlatform(chip).getInterruptController()).getProcessedInterruptCounts();
+            out.println("  Interrupts    :");
+            boolean none = true;
+            for (int interruptNumber = 0; interruptNumber < interruptCounts.length; interruptNumber++) {
+                if (interruptCounts[interruptNumber] > 0) {
+                    out.println(String.format(Locale.US, "    0x%02X %,15d", interruptNumber, interruptCounts[interruptNumber]));
+                    none = false;
+                }
+            }
+            if (none) {
+                out.println("    (none)");
+            }
+        }
+
+        out.println();
+        out.println("Clockable ticks :");
+        Map<Clockable, Long> tickCounts = masterClock.getTickCounts();
+        Map<Clockable, Long> skippedTickCounts = masterClock.getSkippedTickCounts();
+        for (Clockable clockable : tickCounts.keySet()) {
+            if (clockable instanceof TimeLimit) {
+                continue;
+            }
+            Long skippedTicks = skippedTickCounts.get(clockable);
+            out.println(String.format(Locale.US, "  %-40s %,18d%s", clockable.toString(), tickCounts.get(clockable),
+                    (skippedTicks == null || skippedTicks == 0) ? "" : String.format(Locale.US, " (+%,d skipped)", skippedTicks)));
+        }
+    }
+
+    /**
+     * Counts executed instructions from cycle count notifications
+     */
+    private static class InstructionCounter implements CycleCounterListener {
+        /** If true, each cycle is an instruction. Otherwise, each notification is an instruction */
+        private final boolean oneInstructionPerCycle;
+        private long instructions;
+
+        InstructionCounter(boolean oneInstructionPerCycle) {
+            this.oneInstructionPerCycle = oneInstructionPerCycle;
+        }
+
+        @Override
+        public boolean onCycleCountChange(long oldCount, int increment) {
+            instructions += oneInstructionPerCycle ? increment : 1;
+            return true;
+        }
+    }
+
+    /**
+     * A 1kHz clockable that breaks all emulators when the time limit is reached,
+     * and stops itself once all of them are stopped.
+     */
+    private class TimeLimit implements Clockable {
+        private long elapsedMs = 0;
+        private boolean breakRequested = false;
+
+        @Override
+        public int getChip() {
+            return -1;
+        }
+
+        @Override
+        public int getFrequencyHz() {
+            return 1000;
+        }
+
+        @Override
+        public Object onClockTick() throws Exception {
+            if (runningChips.getCount() == 0) {
+                return this;
+            }
+            if (emulatedTimeLimitMs > 0 && elapsedMs == emulatedTimeLimitMs && !breakRequested) {
+                for (int chip = 0; chip < 2; chip++) {
+                    if (imageFile[chip] != null) {
+                        framework.getEmulator(chip).addBreakCondition(new AlwaysBreakCondition());
+                    }
+                }
+                breakRequested = true;
+            }
+            elapsedMs++;
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Time limit";
+        }
+    }
+}
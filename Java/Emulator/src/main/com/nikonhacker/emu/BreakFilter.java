@@ -0,0 +1,17 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.emu.trigger.condition.BreakCondition;
+
+/**
+ * This interface allows classes to decide whether a break requested by a trigger actually stops an emulator,
+ * e.g. to let breaks pass while replaying emulation (see CheckpointRing).
+ * See {@link Emulator#setBreakFilter(BreakFilter)}.
+ */
+public interface BreakFilter {
+    /**
+     * Called from the clock thread each time a trigger requiring a break matches, after its actions were performed
+     * @param emulator the emulator whose trigger matched. Its total cycle count identifies the point of the break
+     * @return true to stop the emulator, false to go on as if the trigger did not require a break
+     */
+    public boolean mustBreak(Emulator emulator, BreakCondition breakCondition);
+}
@@ -0,0 +1,177 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.disassembly.Instruction;
+import com.nikonhacker.emu.interrupt.InterruptRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The function call stack of an emulated CPU, as maintained by StatementContext on calls, jumps, interrupts and returns.
+ * Frames are kept as primitives in preallocated arrays, so that a call costs a few stores and no allocation.
+ * Text is only produced when a frame is displayed, by decoding its opcode again (see CallStackItem).
+ *
+ * Only the emulator thread modifies the stack. Other threads read consistent copies with getItems() without
+ * locking: each modification is surrounded by two increments of a version number, and a copy is only accepted if
+ * the version was even and did not change while copying.
+ */
+public class CallStack {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Stored instead of a flow type ordinal for interrupt frames */
+    private static final byte INTERRUPT = -1;
+
+    private static final Instruction.FlowType[] FLOW_TYPES = Instruction.FlowType.values();
+
+    private final int chip;
+
+    /** Frames, oldest first. Addresses include the ISA mode bit (see CPUState.getPc()) */
+    private int[]              addresses  = new int[INITIAL_CAPACITY];
+    private int[]              sps        = new int[INITIAL_CAPACITY];
+    private int[]              targets    = new int[INITIAL_CAPACITY];
+    private long[]             opcodes    = new long[INITIAL_CAPACITY];
+    private byte[]             numBytes   = new byte[INITIAL_CAPACITY];
+    private byte[]             flowTypes  = new byte[INITIAL_CAPACITY];
+    private InterruptRequest[] interrupts = new InterruptRequest[INITIAL_CAPACITY];
+    private int                size;
+
+    /** Odd while a modification is in progress */
+    private final AtomicInteger version = new AtomicInteger();
+
+    public CallStack(int chip) {
+        this.chip = chip;
+    }
+
+    public int getChip() {
+        return chip;
+    }
+
+    /**
+     * Pushes a frame for a statement changing the flow. Its target is unknown until setTopTarget() is called
+     * @param address the address of the statement, including the ISA mode bit
+     * @param opcode the statement units, see Statement.getOpcode()
+     */
+    public void push(int address, int sp, long opcode, int numBytes, Instruction.FlowType flowType) {
+        beginWrite();
+        int i = prepareTop();
+        addresses[i] = address;
+        sps[i] = sp;
+        targets[i] = address;
+        opcodes[i] = opcode;
+        this.numBytes[i] = (byte) numBytes;
+        flowTypes[i] = (byte) flowType.ordinal();
+        interrupts[i] = null;
+        endWrite();
+    }
+
+    /**
+     * Pushes a frame for an accepted interrupt
+     * @param address the address where execution will resume, including the ISA mode bit
+     */
+    public void pushInterrupt(int address, int sp, InterruptRequest interruptRequest) {
+        beginWrite();
+        int i = prepareTop();
+        addresses[i] = address;
+        sps[i] = sp;
+        targets[i] = 0;
+        opcodes[i] = 0;
+        numBytes[i] = 0;
+        flowTypes[i] = INTERRUPT;
+        interrupts[i] = interruptRequest;
+        endWrite();
+    }
+
+    /**
+     * Sets the target of the last pushed frame, once the statement has been executed
+     */
+    public void setTopTarget(int target) {
+        if (size > 0) {
+            beginWrite();
+            targets[size - 1] = target;
+            endWrite();
+        }
+    }
+
+    /**
+     * Removes the last frame, and the jumps pushed before it, up to the call that is returning
+     */
+    public void pop() {
+        if (size > 0) {
+            beginWrite();
+            do {
+                size--;
+                interrupts[size] = null;
+            } while (size > 0 && flowTypes[size] == Instruction.FlowType.JMP.ordinal());
+            endWrite();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a copy of the frames, most recent first. Can be called from any thread
+     */
+    public List<CallStackItem> getItems() {
+        while (true) {
+            int startVersion = version.get();
+            if ((startVersion & 1) == 0) {
+                // size and the arrays are only read between the two reads of the version
+                int n = size;
+                int[] addresses = this.addresses, sps = this.sps, targets = this.targets;
+                long[] opcodes = this.opcodes;
+                byte[] numBytes = this.numBytes, flowTypes = this.flowTypes;
+                InterruptRequest[] interrupts = this.interrupts;
+                // Arrays may be from different generations if the stack grew meanwhile
+                if (n <= addresses.length && n <= sps.length && n <= targets.length && n <= opcodes.length
+                        && n <= numBytes.length && n <= flowTypes.length && n <= interrupts.length) {
+                    List<CallStackItem> items = new ArrayList<CallStackItem>(n);
+                    for (int i = n - 1; i >= 0; i--) {
+                        byte flowType = flowTypes[i];
+                        items.add(new CallStackItem(addresses[i], sps[i], targets[i], opcodes[i], numBytes[i],
+                                flowType == INTERRUPT ? null : FLOW_TYPES[flowType], interrupts[i]));
+                    }
+                    // Read-modify-write, so that the reads above cannot be moved after this check
+                    if (version.getAndAdd(0) == startVersion) {
+                        return items;
+                    }
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Makes the version odd. A read-modify-write is a full fence: the frame stores that follow cannot be seen before it
+     */
+    private void beginWrite() {
+        version.getAndIncrement();
+    }
+
+    /**
+     * Makes the version even again. The ordered store cannot be seen before the frame stores that precede it
+     */
+    private void endWrite() {
+        version.lazySet(version.get() + 1);
+    }
+
+    /**
+     * @return the index of a new frame on top of the stack, growing the arrays if needed
+     */
+    private int prepareTop() {
+        if (size == addresses.length) {
+            int capacity = addresses.length * 2;
+            addresses = Arrays.copyOf(addresses, capacity);
+            sps = Arrays.copyOf(sps, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            numBytes = Arrays.copyOf(numBytes, capacity);
+            flowTypes = Arrays.copyOf(flowTypes, capacity);
+            interrupts = Arrays.copyOf(interrupts, capacity);
+        }
+        return size++;
+    }
+}
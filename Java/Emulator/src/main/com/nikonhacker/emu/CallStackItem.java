@@ -1,42 +1,111 @@
 package com.nikonhacker.emu;
 
 import com.nikonhacker.Format;
+import com.nikonhacker.disassembly.CPUState;
 import com.nikonhacker.disassembly.Instruction;
+import com.nikonhacker.disassembly.Statement;
+import com.nikonhacker.emu.interrupt.InterruptRequest;
+import com.nikonhacker.emu.trace.ExecutionTraceRecorder;
+import com.nikonhacker.emu.trace.StatementDecoder;
 
+/**
+ * A copy of a CallStack frame. The statement is only decoded and formatted when toString(StatementDecoder) is called
+ */
 public class CallStackItem {
     private int address;
     private int sp;
+    private int targetAddress;
+    private long opcode;
+    private int numBytes;
+    private Instruction.FlowType flowType;
+    private InterruptRequest interruptRequest;
+
+    /** Formatted statement, computed on first use */
     private String statementString;
-    private String targetAddress;
-    private Instruction instruction;
 
-    public CallStackItem(int address, int sp, Instruction instruction, String statementString, String targetAddress) {
+    public CallStackItem(int address, int sp, int targetAddress, long opcode, int numBytes, Instruction.FlowType flowType, InterruptRequest interruptRequest) {
         this.address = address;
         this.sp = sp;
-        this.instruction = instruction;
-        this.statementString = statementString;
         this.targetAddress = targetAddress;
+        this.opcode = opcode;
+        this.numBytes = numBytes;
+        this.flowType = flowType;
+        this.interruptRequest = interruptRequest;
+    }
+
+    /**
+     * Creates an item with no statement, e.g. to represent the current position
+     */
+    public CallStackItem(int address, int sp) {
+        this.address = address;
+        this.sp = sp;
+        this.statementString = "";
     }
 
+    /**
+     * @return the address, without the ISA mode bit
+     */
     public int getAddress() {
-        return address;
+        return address & 0xFFFFFFFE;
     }
 
     public int getSp() {
         return sp;
     }
 
-    public Instruction getInstruction() {
-        return instruction;
+    /**
+     * @return the flow type of the statement, or null for an interrupt or an item with no statement
+     */
+    public Instruction.FlowType getFlowType() {
+        return flowType;
     }
 
-    public String getTargetAddress() {
+    /**
+     * @return true if getTargetAddress() is meaningful
+     */
+    public boolean hasTargetAddress() {
+        return flowType != null;
+    }
+
+    /**
+     * @return the address the statement led to, including the ISA mode bit
+     */
+    public int getTargetAddress() {
         return targetAddress;
     }
 
-    @Override
-    public String toString() {
-        return "0x" + Format.asHex(address,8) + " " + (statementString ==null?"": statementString);
+    public InterruptRequest getInterruptRequest() {
+        return interruptRequest;
+    }
+
+    /**
+     * @param decoder a decoder for the chip of the stack, see CallStack.getChip()
+     */
+    public String toString(StatementDecoder decoder) {
+        if (statementString == null) {
+            if (interruptRequest != null) {
+                statementString = interruptRequest.toString();
+            }
+            else {
+                statementString = formatStatement(decoder);
+            }
+        }
+        return "0x" + Format.asHex(getAddress(), 8) + " " + statementString;
+    }
+
+    private String formatStatement(StatementDecoder decoder) {
+        try {
+            CPUState cpuState = decoder.getContext().cpuState;
+            cpuState.clear();
+            Statement statement = decoder.decode(getAddress(), (address & 1) != 0 ? ExecutionTraceRecorder.FLAG_ISA16 : 0, opcode, numBytes);
+            if ((flowType == Instruction.FlowType.CALL || flowType == Instruction.FlowType.JMP) && cpuState.registerExists(statement.ri_rs_fs)) {
+                // Indirect calls and jumps take their target from that register: show its value at the time of the call
+                cpuState.setReg(statement.ri_rs_fs, targetAddress);
+                cpuState.setRegisterDefined(statement.ri_rs_fs);
+            }
+            return decoder.format();
+        } catch (Exception e) {
+            return "<cannot decode 0x" + Format.asHex((int) opcode, numBytes * 2) + ": " + e.getMessage() + ">";
+        }
     }
-    
 }
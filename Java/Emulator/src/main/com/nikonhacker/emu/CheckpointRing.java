@@ -0,0 +1,437 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.Prefs;
+import com.nikonhacker.emu.memory.PageSnapshot;
+import com.nikonhacker.emu.peripherials.frontPanel.CameraButton;
+import com.nikonhacker.emu.trigger.condition.BreakCondition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A bounded ring of in-memory checkpoints of the whole emulation, taken every intervalPs of emulated time, plus a
+ * journal of the inputs received from the user since the oldest one.
+ * Going back in time (see rewind()) restores the latest checkpoint before the requested time, then lets emulation
+ * re-execute forward up to that time, replaying journaled inputs at the time they were first applied.
+ * Going back to the previous break (see rewindToPreviousBreak()) replays checkpoints with the triggers armed to find
+ * the last one hit, then replays up to that point.
+ * For the replay to be exact, user inputs are applied from the clock thread, between two clock steps.
+ * Checkpoints are only taken in the sequential clock modes, not in parallel mode.
+ */
+public class CheckpointRing implements ClockTimeListener {
+    public static final long DEFAULT_INTERVAL_PS = 100 * MasterClock.PS_PER_MS;
+    public static final int  DEFAULT_CAPACITY    = 32;
+
+    private final long intervalPs;
+    private final int  capacity;
+
+    private EmulationFramework framework;
+
+    /** Checkpoints, oldest first */
+    private final LinkedList<Checkpoint> checkpoints = new LinkedList<Checkpoint>();
+
+    /** Inputs applied since the oldest checkpoint, followed by the ones to replay after a rewind */
+    private final List<Input> journal = new ArrayList<Input>();
+    /** Number of journal entries applied so far */
+    private int journalPosition;
+
+    /** Inputs received while the clock runs, to be applied from the clock thread */
+    private final List<Input> pendingInputs = new ArrayList<Input>();
+
+    private long nextCheckpointPs;
+    /** Time at which to pause emulation after a rewind, or Long.MAX_VALUE */
+    private long stopTimePs = Long.MAX_VALUE;
+
+    public CheckpointRing(EmulationFramework framework, long intervalPs, int capacity) {
+        this.intervalPs = intervalPs;
+        this.capacity = capacity;
+        attach(framework, framework.getMasterClock().getTotalElapsedTimePs());
+    }
+
+    private synchronized void attach(EmulationFramework framework, long nextCheckpointPs) {
+        this.framework = framework;
+        this.nextCheckpointPs = nextCheckpointPs;
+        framework.setCheckpointRing(this);
+        framework.getMasterClock().setTimeListener(this);
+        scheduleNextCall();
+    }
+
+    /**
+     * Stops taking checkpoints. Existing ones are dropped
+     */
+    public synchronized void detach() {
+        framework.getMasterClock().setTimeListener(null);
+        framework.setCheckpointRing(null);
+        checkpoints.clear();
+        journal.clear();
+        journalPosition = 0;
+    }
+
+    /**
+     * @return the times of the checkpoints currently kept, oldest first
+     */
+    public synchronized long[] getCheckpointTimesPs() {
+        long[] times = new long[checkpoints.size()];
+        int i = 0;
+        for (Checkpoint checkpoint : checkpoints) {
+            times[i++] = checkpoint.timePs;
+        }
+        return times;
+    }
+
+    /**
+     * Applies the given state to the front panel button with the given key, and journals it.
+     * While the clock runs, the change is applied at the next clock step instead of immediately
+     */
+    public synchronized void setButtonState(String key, int state) {
+        Input input = new Input(key, state);
+        if (framework.getMasterClock().isRunning()) {
+            pendingInputs.add(input);
+            framework.getMasterClock().scheduleTimeListener(Long.MIN_VALUE);
+        }
+        else {
+            applyLiveInput(input, framework.getMasterClock().getTotalElapsedTimePs());
+        }
+    }
+
+    @Override
+    public synchronized void onTime(long timePs) {
+        for (Input input : pendingInputs) {
+            applyLiveInput(input, timePs);
+        }
+        pendingInputs.clear();
+
+        // Replay inputs of a previous run
+        while (journalPosition < journal.size() && journal.get(journalPosition).timePs <= timePs) {
+            journal.get(journalPosition).apply(framework);
+            journalPosition++;
+        }
+
+        if (timePs >= stopTimePs) {
+            stopTimePs = Long.MAX_VALUE;
+            for (int chip = 0; chip < 2; chip++) {
+                if (framework.isEmulatorPlaying(chip)) {
+                    framework.pauseEmulator(chip);
+                }
+            }
+        }
+
+        if (timePs >= nextCheckpointPs) {
+            try {
+                takeCheckpoint(timePs);
+            } catch (IOException e) {
+                System.err.println("Could not take checkpoint at " + timePs + "ps: " + e.getMessage());
+            }
+            nextCheckpointPs = timePs + intervalPs;
+        }
+
+        scheduleNextCall();
+    }
+
+    /**
+     * Applies an input coming from the user. It replaces any inputs journaled after that time by a previous run
+     */
+    private void applyLiveInput(Input input, long timePs) {
+        journal.subList(journalPosition, journal.size()).clear();
+        input.timePs = timePs;
+        input.apply(framework);
+        journal.add(input);
+        journalPosition++;
+    }
+
+    private void scheduleNextCall() {
+        long nextCallPs = Math.min(nextCheckpointPs, stopTimePs);
+        if (journalPosition < journal.size()) {
+            nextCallPs = Math.min(nextCallPs, journal.get(journalPosition).timePs);
+        }
+        if (!pendingInputs.isEmpty()) {
+            nextCallPs = Long.MIN_VALUE;
+        }
+        framework.getMasterClock().scheduleTimeListener(nextCallPs);
+    }
+
+    private void takeCheckpoint(long timePs) throws IOException {
+        PageSnapshot[] memorySnapshots = new PageSnapshot[2];
+        for (int chip = 0; chip < 2; chip++) {
+            memorySnapshots[chip] = framework.getPlatform(chip).getMemory().takeSnapshot();
+        }
+        // Later checkpoints are outdated by a rewind, so this one is always the most recent
+        checkpoints.add(new Checkpoint(timePs, EmulationFramework.serializeFramework(framework), memorySnapshots, journalPosition));
+        if (checkpoints.size() > capacity) {
+            checkpoints.removeFirst();
+            // Forget inputs before the oldest checkpoint
+            int forgottenInputs = checkpoints.getFirst().journalPosition;
+            journal.subList(0, forgottenInputs).clear();
+            journalPosition -= forgottenInputs;
+            for (Checkpoint checkpoint : checkpoints) {
+                checkpoint.journalPosition -= forgottenInputs;
+            }
+        }
+    }
+
+    /**
+     * Brings emulation back to the given time: the latest checkpoint at or before that time is restored into a new
+     * framework, which pauses emulation once it reaches the requested time when played.
+     * The clock must not be running. Checkpoints after the restored one are dropped, as they will be taken again.
+     * @return the new framework, which replaces the current one. Callbacks must be set up again, as after loading a state
+     */
+    public synchronized EmulationFramework rewind(long targetTimePs, Prefs prefs) {
+        if (framework.getMasterClock().isRunning()) {
+            throw new IllegalStateException("Emulation must be stopped to go back in time");
+        }
+        Checkpoint checkpoint = null;
+        Iterator<Checkpoint> iterator = checkpoints.descendingIterator();
+        while (iterator.hasNext()) {
+            Checkpoint candidate = iterator.next();
+            if (candidate.timePs <= targetTimePs) {
+                checkpoint = candidate;
+                break;
+            }
+            iterator.remove();
+        }
+        if (checkpoint == null) {
+            throw new IllegalArgumentException("No checkpoint is old enough to go back to " + targetTimePs + "ps");
+        }
+
+        framework.getMasterClock().setTimeListener(null);
+        EmulationFramework restoredFramework = EmulationFramework.restore(checkpoint.frameworkBytes, checkpoint.memorySnapshots, prefs);
+        // Inputs after the checkpoint will be replayed
+        journalPosition = checkpoint.journalPosition;
+        pendingInputs.clear();
+        stopTimePs = (targetTimePs > checkpoint.timePs) ? targetTimePs : Long.MAX_VALUE;
+        attach(restoredFramework, checkpoint.timePs + intervalPs);
+        return restoredFramework;
+    }
+
+    /**
+     * Brings emulation back to the last break requested by a trigger before the current point, with the triggers
+     * currently defined in the prefs. Starting from the most recent checkpoint, each checkpoint is replayed up to the
+     * current time with breaks only recorded, until one is found. That checkpoint is then replayed again, and stops
+     * at the break, as if the trigger had just been hit.
+     * Like for rewind(), the clock must not be running, and checkpoints after the restored one are dropped.
+     * @return the new framework, which replaces the current one, or null if no trigger was hit since the oldest
+     * checkpoint. Callbacks must be set up again, as after loading a state
+     */
+    public synchronized EmulationFramework rewindToPreviousBreak(Prefs prefs) {
+        if (framework.getMasterClock().isRunning()) {
+            throw new IllegalStateException("Emulation must be stopped to go back in time");
+        }
+        long nowPs = framework.getMasterClock().getTotalElapsedTimePs();
+        // A break is identified by the chip and its cycle count, which a replay reproduces exactly
+        long[] nowCycles = new long[2];
+        for (int chip = 0; chip < 2; chip++) {
+            nowCycles[chip] = framework.getEmulator(chip).getTotalCycles();
+        }
+        Iterator<Checkpoint> iterator = checkpoints.descendingIterator();
+        while (iterator.hasNext()) {
+            Checkpoint checkpoint = iterator.next();
+            if (checkpoint.timePs >= nowPs) {
+                continue;
+            }
+            BreakSearch breakSearch = new BreakSearch(nowCycles);
+            if (replay(checkpoint, nowPs, breakSearch, prefs) == null || breakSearch.targetChip < 0) {
+                continue;
+            }
+            breakSearch.recording = false;
+            Replay replay = replay(checkpoint, nowPs, breakSearch, prefs);
+
+            while (checkpoints.getLast() != checkpoint) {
+                checkpoints.removeLast();
+            }
+            framework.getMasterClock().setTimeListener(null);
+            journalPosition = replay.position;
+            pendingInputs.clear();
+            stopTimePs = Long.MAX_VALUE;
+            attach(replay.replayFramework, checkpoint.timePs + intervalPs);
+            return replay.replayFramework;
+        }
+        return null;
+    }
+
+    /**
+     * Restores the given checkpoint into a new framework, arms the triggers of the prefs on the chips that were
+     * playing, and runs it in the current thread until the given time, or until breakSearch stops a chip
+     * @return the replay, or null if no chip was playing at that checkpoint
+     */
+    private Replay replay(Checkpoint checkpoint, long endPs, BreakSearch breakSearch, Prefs prefs) {
+        EmulationFramework replayFramework = EmulationFramework.restore(checkpoint.frameworkBytes, checkpoint.memorySnapshots, prefs);
+        boolean playing = false;
+        for (int chip = 0; chip < 2; chip++) {
+            // Function based triggers rely on the code structure
+            replayFramework.setCodeStructure(chip, framework.getCodeStructure(chip));
+            if (replayFramework.isEmulatorPlaying(chip)) {
+                replayFramework.getEmulator(chip).clearBreakConditions();
+                replayFramework.prepareBreakTriggers(chip, EmulationFramework.ExecutionMode.DEBUG, null);
+                replayFramework.getEmulator(chip).setBreakFilter(breakSearch);
+                playing = true;
+            }
+        }
+        if (!playing) {
+            return null;
+        }
+        replayFramework.setupCallbacks(new StopOtherChip(replayFramework, Constants.CHIP_TX), new StopOtherChip(replayFramework, Constants.CHIP_FR));
+        Replay replay = new Replay(replayFramework, checkpoint.journalPosition, endPs);
+        replayFramework.getMasterClock().setTimeListener(replay);
+        replay.scheduleNextCall();
+        replayFramework.getMasterClock().runInCurrentThread();
+        for (int chip = 0; chip < 2; chip++) {
+            replayFramework.getEmulator(chip).setBreakFilter(null);
+        }
+        return replay;
+    }
+
+    /**
+     * @return the time of the latest checkpoint strictly before the current time, so that "step back" can go there,
+     * or -1 if there is none
+     */
+    public synchronized long getPreviousCheckpointTimePs() {
+        long nowPs = framework.getMasterClock().getTotalElapsedTimePs();
+        Iterator<Checkpoint> iterator = checkpoints.descendingIterator();
+        while (iterator.hasNext()) {
+            long timePs = iterator.next().timePs;
+            if (timePs < nowPs) {
+                return timePs;
+            }
+        }
+        return -1;
+    }
+
+    private static class Checkpoint {
+        private final long           timePs;
+        private final byte[]         frameworkBytes;
+        private final PageSnapshot[] memorySnapshots;
+        /** Number of journal entries applied when this checkpoint was taken */
+        private int journalPosition;
+
+        private Checkpoint(long timePs, byte[] frameworkBytes, PageSnapshot[] memorySnapshots, int journalPosition) {
+            this.timePs = timePs;
+            this.frameworkBytes = frameworkBytes;
+            this.memorySnapshots = memorySnapshots;
+            this.journalPosition = journalPosition;
+        }
+    }
+
+    /**
+     * Re-execution of a checkpoint in a separate framework, replaying journaled inputs and pausing at a given time
+     */
+    private class Replay implements ClockTimeListener {
+        private final EmulationFramework replayFramework;
+        private final long               endPs;
+        /** Number of journal entries applied so far */
+        private int position;
+
+        private Replay(EmulationFramework replayFramework, int position, long endPs) {
+            this.replayFramework = replayFramework;
+            this.position = position;
+            this.endPs = endPs;
+        }
+
+        @Override
+        public void onTime(long timePs) {
+            while (position < journal.size() && journal.get(position).timePs <= timePs) {
+                journal.get(position).apply(replayFramework);
+                position++;
+            }
+            if (timePs >= endPs) {
+                for (int chip = 0; chip < 2; chip++) {
+                    if (replayFramework.isEmulatorPlaying(chip)) {
+                        replayFramework.pauseEmulator(chip);
+                    }
+                }
+            }
+            else {
+                scheduleNextCall();
+            }
+        }
+
+        private void scheduleNextCall() {
+            long nextCallPs = endPs;
+            if (position < journal.size()) {
+                nextCallPs = Math.min(nextCallPs, journal.get(position).timePs);
+            }
+            replayFramework.getMasterClock().scheduleTimeListener(nextCallPs);
+        }
+    }
+
+    /**
+     * While recording, lets all breaks requested by triggers pass, remembering the last one before the given cycle
+     * counts. Otherwise, only stops at that break
+     */
+    private static class BreakSearch implements BreakFilter {
+        private final long[] endCycles;
+        private boolean recording = true;
+        private int     targetChip = -1;
+        private long    targetCycles;
+
+        private BreakSearch(long[] endCycles) {
+            this.endCycles = endCycles;
+        }
+
+        @Override
+        public boolean mustBreak(Emulator emulator, BreakCondition breakCondition) {
+            int chip = emulator.getChip();
+            long cycles = emulator.getTotalCycles();
+            if (recording) {
+                if (cycles < endCycles[chip]) {
+                    targetChip = chip;
+                    targetCycles = cycles;
+                }
+                return false;
+            }
+            return chip == targetChip && cycles == targetCycles;
+        }
+    }
+
+    /**
+     * Pauses the other chip when one stops during a replay, so that the clock stops
+     */
+    private static class StopOtherChip implements ClockableCallbackHandler {
+        private final EmulationFramework replayFramework;
+        private final int                otherChip;
+
+        private StopOtherChip(EmulationFramework replayFramework, int otherChip) {
+            this.replayFramework = replayFramework;
+            this.otherChip = otherChip;
+        }
+
+        @Override
+        public void onNormalExit(Object o) {
+            if (replayFramework.isEmulatorPlaying(otherChip)) {
+                replayFramework.pauseEmulator(otherChip);
+            }
+        }
+
+        @Override
+        public void onException(Exception e) {
+            onNormalExit(e);
+        }
+    }
+
+    /**
+     * A change of state of a front panel button
+     */
+    private static class Input {
+        private final String key;
+        private final int    state;
+        private long timePs;
+
+        private Input(String key, int state) {
+            this.key = key;
+            this.state = state;
+        }
+
+        private void apply(EmulationFramework framework) {
+            CameraButton button = framework.getButton(key);
+            if (button != null) {
+                button.setState(state);
+            }
+            else {
+                System.err.println("Cannot replay input: there is no button " + key);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.nikonhacker.emu;
+
+/**
+ * This interface allows classes to be called by the MasterClock at given emulated times, at a point where all
+ * clockables are between two ticks, so that the whole emulation state is consistent.
+ * See {@link MasterClock#setTimeListener(ClockTimeListener)} and {@link MasterClock#scheduleTimeListener(long)}.
+ */
+public interface ClockTimeListener {
+    /**
+     * Called from the clock thread once the emulated time reaches the time requested by the last call to
+     * MasterClock.scheduleTimeListener(). The listener must call it again to be called later.
+     * @param timePs the current emulated time
+     */
+    public void onTime(long timePs);
+}
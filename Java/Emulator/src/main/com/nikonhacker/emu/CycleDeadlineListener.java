@@ -0,0 +1,16 @@
+package com.nikonhacker.emu;
+
+/**
+ * This interface allows classes to be notified once the cycle counter of an emulator reaches a given value,
+ * without being called after each instruction like a {@link CycleCounterListener}.
+ */
+public interface CycleDeadlineListener {
+    /**
+     * This method is called after the instruction that made the cycle count reach the deadline this listener was
+     * registered with. If several deadlines were crossed at once, it is called once per deadline, in order.
+     * @param deadline the cycle count that was reached
+     * @return the cycle count at which this listener must be called next (greater than deadline),
+     * or a negative value if it does not want to be notified anymore
+     */
+    public long onCycleDeadline(long deadline);
+}
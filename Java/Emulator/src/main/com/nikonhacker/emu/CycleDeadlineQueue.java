@@ -0,0 +1,112 @@
+package com.nikonhacker.emu;
+
+import java.util.Arrays;
+
+/**
+ * A min-heap of {@link CycleDeadlineListener}s, ordered by the cycle count at which they must be called.
+ * Plain arrays are used so that the queue can be saved and restored along with the emulator state.
+ */
+public class CycleDeadlineQueue {
+    private long[]                  deadlines = new long[4];
+    private CycleDeadlineListener[] listeners = new CycleDeadlineListener[4];
+    private int                     size;
+
+    /**
+     * @return the earliest deadline, or Long.MAX_VALUE if the queue is empty
+     */
+    public long getNextDeadline() {
+        return size == 0 ? Long.MAX_VALUE : deadlines[0];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(CycleDeadlineListener listener) {
+        return indexOf(listener) != -1;
+    }
+
+    public void add(CycleDeadlineListener listener, long deadline) {
+        if (size == deadlines.length) {
+            deadlines = Arrays.copyOf(deadlines, size * 2);
+            listeners = Arrays.copyOf(listeners, size * 2);
+        }
+        siftUp(size++, listener, deadline);
+    }
+
+    public void remove(CycleDeadlineListener listener) {
+        int index = indexOf(listener);
+        if (index != -1) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Removes the listener with the earliest deadline
+     * @return that listener
+     */
+    public CycleDeadlineListener poll() {
+        CycleDeadlineListener listener = listeners[0];
+        removeAt(0);
+        return listener;
+    }
+
+    public void clear() {
+        Arrays.fill(listeners, 0, size, null);
+        size = 0;
+    }
+
+    private int indexOf(CycleDeadlineListener listener) {
+        for (int i = 0; i < size; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        size--;
+        CycleDeadlineListener lastListener = listeners[size];
+        long lastDeadline = deadlines[size];
+        listeners[size] = null;
+        if (index < size) {
+            siftDown(index, lastListener, lastDeadline);
+            if (listeners[index] == lastListener) {
+                siftUp(index, lastListener, lastDeadline);
+            }
+        }
+    }
+
+    private void siftUp(int index, CycleDeadlineListener listener, long deadline) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (deadlines[parent] <= deadline) {
+                break;
+            }
+            deadlines[index] = deadlines[parent];
+            listeners[index] = listeners[parent];
+            index = parent;
+        }
+        deadlines[index] = deadline;
+        listeners[index] = listener;
+    }
+
+    private void siftDown(int index, CycleDeadlineListener listener, long deadline) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && deadlines[child + 1] < deadlines[child]) {
+                child++;
+            }
+            if (deadline <= deadlines[child]) {
+                break;
+            }
+            deadlines[index] = deadlines[child];
+            listeners[index] = listeners[child];
+            index = child;
+        }
+        deadlines[index] = deadline;
+        listeners[index] = listener;
+    }
+}
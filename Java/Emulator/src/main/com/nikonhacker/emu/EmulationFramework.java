@@ -9,6 +9,7 @@ import com.nikonhacker.disassembly.fr.FrCPUState;
 import com.nikonhacker.disassembly.tx.NullRegister32;
 import com.nikonhacker.disassembly.tx.TxCPUState;
 import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.memory.PageSnapshot;
 import com.nikonhacker.emu.memory.listener.fr.*;
 import com.nikonhacker.emu.memory.listener.tx.TxIoListener;
 import com.nikonhacker.emu.peripherials.adConverter.AdConverter;
@@ -21,11 +22,13 @@ import com.nikonhacker.emu.peripherials.clock.fr.FrClockGenerator;
 import com.nikonhacker.emu.peripherials.clock.tx.TxClockGenerator;
 import com.nikonhacker.emu.peripherials.dmaController.DmaController;
 import com.nikonhacker.emu.peripherials.dmaController.tx.TxDmaController;
+import com.nikonhacker.emu.peripherials.frontPanel.CameraButton;
 import com.nikonhacker.emu.peripherials.frontPanel.CameraLed;
 import com.nikonhacker.emu.peripherials.frontPanel.FrontPanel;
 import com.nikonhacker.emu.peripherials.frontPanel.tx.D5100FrontPanel;
 import com.nikonhacker.emu.peripherials.imageTransferCircuit.ImageTransferCircuit;
 import com.nikonhacker.emu.peripherials.imageTransferCircuit.fr.FrImageTransferCircuit;
+import com.nikonhacker.emu.peripherials.interruptController.AbstractInterruptController;
 import com.nikonhacker.emu.peripherials.interruptController.InterruptController;
 import com.nikonhacker.emu.peripherials.interruptController.SharedInterruptCircuit;
 import com.nikonhacker.emu.peripherials.interruptController.fr.FrInterruptController;
@@ -35,6 +38,7 @@ import com.nikonhacker.emu.peripherials.ioPort.IoPort;
 import com.nikonhacker.emu.peripherials.ioPort.Pin;
 import com.nikonhacker.emu.peripherials.ioPort.fr.FrIoPort;
 import com.nikonhacker.emu.peripherials.ioPort.tx.TxIoPort;
+import com.nikonhacker.emu.peripherials.ioPort.util.ChipBoundaryIoWire;
 import com.nikonhacker.emu.peripherials.ioPort.util.FixedSourceComponent;
 import com.nikonhacker.emu.peripherials.jpegCodec.JpegCodec;
 import com.nikonhacker.emu.peripherials.jpegCodec.fr.FrJpegCodec;
@@ -66,6 +70,7 @@ import com.nikonhacker.emu.peripherials.serialInterface.lcd.LcdDriver;
 import com.nikonhacker.emu.peripherials.serialInterface.sensorBridge.Ei155;
 import com.nikonhacker.emu.peripherials.serialInterface.tx.TxHSerialInterface;
 import com.nikonhacker.emu.peripherials.serialInterface.tx.TxSerialInterface;
+import com.nikonhacker.emu.peripherials.serialInterface.util.ChipBoundarySerialWire;
 import com.nikonhacker.emu.peripherials.serialInterface.util.SpiBus;
 import com.nikonhacker.emu.trigger.BreakTrigger;
 import com.nikonhacker.emu.trigger.condition.AlwaysBreakCondition;
@@ -73,15 +78,17 @@ import com.nikonhacker.emu.trigger.condition.AndCondition;
 import com.nikonhacker.emu.trigger.condition.BreakPointCondition;
 import com.nikonhacker.emu.trigger.condition.MemoryValueBreakCondition;
 import com.thoughtworks.xstream.XStream;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 public class EmulationFramework {
 
@@ -90,6 +97,11 @@ public class EmulationFramework {
     private static final String FRAMEWORK_ZIPENTRY_NAME = "Framework";
     private static final String MEMORY_ZIPENTRY_NAME    = "Memory";
 
+    /** First bytes of binary state files ("NHST"). Former state files are zip files */
+    private static final int STATE_MAGIC     = 0x4E485354;
+    private static final int STATE_VERSION   = 1;
+    private static final int ZIP_FILE_MAGIC  = 0x504B0304;
+
     /** Type of run */
     public static enum ExecutionMode {
         /** Run without any break */
@@ -124,6 +136,14 @@ public class EmulationFramework {
 
     private CodeStructure[] codeStructure;
 
+    /** The last full state saved or loaded, that later states can be saved as changes of (see saveStateToFile()) */
+    private transient String         baseStateFilename;
+    private transient long           baseStateId;
+    private transient PageSnapshot[] baseStateSnapshots;
+
+    /** In-memory checkpoints for reverse stepping, or null if disabled */
+    private transient CheckpointRing checkpointRing;
+
     public EmulationFramework(Prefs prefs) {
         this.prefs = prefs;
         initCodeStructure();
@@ -312,7 +332,7 @@ public class EmulationFramework {
 
                 ((TxCPUState) cpuState).setInterruptController((TxInterruptController) interruptController);
 
-                dmaController = new TxDmaController(platform[chip], prefs);
+                dmaController = new TxDmaController(platform[chip], emulator[chip], prefs);
                 realtimeClock = new TxRealtimeClock(platform[chip]);
                 keyCircuit = new TxKeyCircuit(interruptController);
 
@@ -490,6 +510,7 @@ public class EmulationFramework {
                     try {
                         isEmulatorPlaying[chip] = false;
                         emulator[chip].clearBreakConditions();
+                        emulator[chip].flushLogs();
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -500,6 +521,7 @@ public class EmulationFramework {
                 public void onException(Exception e) {
                     isEmulatorPlaying[chip] = false;
                     emulator[chip].clearBreakConditions();
+                    emulator[chip].flushLogs();
                     e.printStackTrace();
                     if (callbackHandler != null) callbackHandler.onException(e);
                 }
@@ -672,21 +694,31 @@ public class EmulationFramework {
         // Reconnect Fr Serial channel 5 with Tx serial interface HSC0
         SerialInterface frSerialInterface5 = frSerialInterfaces[5];
         SerialInterface txSerialInterfaceH0 = txSerialInterfaces[TxIoListener.NUM_SERIAL_IF + 0];
-        frSerialInterface5.connectTargetDevice(txSerialInterfaceH0);
-        txSerialInterfaceH0.connectTargetDevice(frSerialInterface5);
+        frSerialInterface5.connectTargetDevice(new ChipBoundarySerialWire(frSerialInterface5.getName() + " to " + txSerialInterfaceH0.getName(), txSerialInterfaceH0, masterClock));
+        txSerialInterfaceH0.connectTargetDevice(new ChipBoundarySerialWire(txSerialInterfaceH0.getName() + " to " + frSerialInterface5.getName(), frSerialInterface5, masterClock));
+    }
+
+    /**
+     * Connects a pin of one chip to a pin of the other chip, through a wire that keeps them in sync when chips run
+     * in parallel
+     */
+    private void interconnectChipPins(Pin frPin, Pin txPin) {
+        ChipBoundaryIoWire wire = new ChipBoundaryIoWire(frPin.getName() + "-" + txPin.getName(), masterClock);
+        Pin.interconnect(frPin, wire.getPin1());
+        Pin.interconnect(wire.getPin2(), txPin);
     }
 
     private void interconnectChipIoPorts(IoPort[] frIoPorts, IoPort[] txIoPorts, final FrInterruptController frInterruptController) {
         // FR 0x50000100.bit5 => TX P53 (INTF), triggered (low) by FR at 001A8CBE and 001A8E24 and set back hi at 001A8E58
-        Pin.interconnect(frIoPorts[IoPort.PORT_0].getPin(5), txIoPorts[IoPort.PORT_5].getPin(3));
+        interconnectChipPins(frIoPorts[IoPort.PORT_0].getPin(5), txIoPorts[IoPort.PORT_5].getPin(3));
 
         // TX PC3 => FR 0x50000107.bit6 (INT16) , tested by FR at 001A885C, 001A8896 (init) and 001A8976 (send header)
-        Pin.interconnect(frIoPorts[IoPort.PORT_7].getPin(6), txIoPorts[IoPort.PORT_C].getPin(3));
+        interconnectChipPins(frIoPorts[IoPort.PORT_7].getPin(6), txIoPorts[IoPort.PORT_C].getPin(3));
 
         // TODO TX ??? => FR 0x5000010B.bit3 (INT23) autofocus reached (for beep)
 
         // TX P45 => FR (INT 0x15)
-        Pin.interconnect(new Pin(Constants.CHIP_LABEL[Constants.CHIP_FR] + " INT0x15") {
+        interconnectChipPins(new Pin(Constants.CHIP_LABEL[Constants.CHIP_FR] + " INT0x15") {
                 @Override
                 public final void setInputValue(int value) {
                     // channel 5 interrupt 0x15
@@ -695,7 +727,7 @@ public class EmulationFramework {
             }, txIoPorts[IoPort.PORT_4].getPin(5));
 
         // TX P50 => FR (INT 0x11)
-        Pin.interconnect(new Pin(Constants.CHIP_LABEL[Constants.CHIP_FR] + " INT0x11") {
+        interconnectChipPins(new Pin(Constants.CHIP_LABEL[Constants.CHIP_FR] + " INT0x11") {
                 @Override
                 public final void setInputValue(int value) {
                     // channel 1 interrupt 0x11
@@ -704,7 +736,7 @@ public class EmulationFramework {
             }, txIoPorts[IoPort.PORT_5].getPin(0));
 
         // FR 50000100.bit4 => TX P52
-        Pin.interconnect(frIoPorts[IoPort.PORT_0].getPin(4), txIoPorts[IoPort.PORT_5].getPin(2));
+        interconnectChipPins(frIoPorts[IoPort.PORT_0].getPin(4), txIoPorts[IoPort.PORT_5].getPin(2));
     }
 
 
@@ -753,6 +785,9 @@ public class EmulationFramework {
         //System.err.println("Preparing emulation of " + Constants.CHIP_LABEL[chip]);
         isEmulatorPlaying[chip] = true;
         emulator[chip].setOutputOptions(prefs.getOutputOptions(chip));
+        if (chip == Constants.CHIP_TX) {
+            ((TxEmulator) emulator[chip]).setBlockExecutionMode(prefs.isTxBlockExecution());
+        }
         masterClock.enableClockable(emulator[chip]);
         // TODO what's the use of this here ?
         platform[chip].getCpuState().setAllRegistersDefined();
@@ -811,6 +846,55 @@ public class EmulationFramework {
     }
 
 
+    /**
+     * Starts or stops keeping in-memory checkpoints of the emulation (see CheckpointRing)
+     */
+    public void setCheckpointsEnabled(boolean enabled) {
+        if (enabled && checkpointRing == null) {
+            checkpointRing = new CheckpointRing(this, CheckpointRing.DEFAULT_INTERVAL_PS, CheckpointRing.DEFAULT_CAPACITY);
+        }
+        else if (!enabled && checkpointRing != null) {
+            checkpointRing.detach();
+            checkpointRing = null;
+        }
+    }
+
+    /**
+     * @return the checkpoints kept for reverse stepping, or null if disabled
+     */
+    public CheckpointRing getCheckpointRing() {
+        return checkpointRing;
+    }
+
+    void setCheckpointRing(CheckpointRing checkpointRing) {
+        this.checkpointRing = checkpointRing;
+    }
+
+    /**
+     * Changes the state of a front panel button on behalf of the user.
+     * If checkpoints are kept, the change is journaled so that it can be replayed after going back in time
+     */
+    public void setButtonState(CameraButton button, int state) {
+        if (checkpointRing != null) {
+            checkpointRing.setButtonState(button.getKey(), state);
+        }
+        else {
+            button.setState(state);
+        }
+    }
+
+    /**
+     * @return the front panel button with the given key, or null if there is none
+     */
+    CameraButton getButton(String key) {
+        for (Platform chipPlatform : platform) {
+            if (chipPlatform != null && chipPlatform.getFrontPanel() != null && chipPlatform.getFrontPanel().getButton(key) != null) {
+                return chipPlatform.getFrontPanel().getButton(key);
+            }
+        }
+        return null;
+    }
+
     public void dispose() {
         if (eeprom != null) {
             prefs.setLastEepromContents(eeprom.getMemory());
@@ -825,6 +909,8 @@ public class EmulationFramework {
         // Don't store memory via XStream
         xStream.omitField(Platform.class, "memory");
         xStream.omitField(StatementContext.class, "memory");
+        // Nor the call stack, which belongs to the call stack window
+        xStream.omitField(StatementContext.class, "callStack");
 
         // Don't store disassembled code via XStream (Java heap overflow)
         xStream.omitField(EmulationFramework.class, "codeStructure");
@@ -836,8 +922,30 @@ public class EmulationFramework {
         xStream.omitField(FrontPanel.class, "prefs");
         xStream.omitField(D5100FrontPanel.class, "prefs");
 
+        // Don't store decoded statement caches, they are rebuilt on the fly
+        xStream.omitField(FrEmulator.class, "statementCache");
+        xStream.omitField(TxEmulator.class, "blockCaches");
+        // Nor ticks left over by the last block, a loaded state starts on an instruction boundary
+        xStream.omitField(TxEmulator.class, "pendingTicks");
+
+        // Don't store compiled break conditions, they are bound to the memory and rebuilt by relinkLoadedState()
+        xStream.omitField(Emulator.class, "compiledBreakConditions");
+        xStream.omitField(Emulator.class, "watchpointListener");
+
+        // Don't store statistics
+        xStream.omitField(AbstractInterruptController.class, "processedInterruptCounts");
+        xStream.omitField(MasterClock.ClockableEntry.class, "ticks");
+        xStream.omitField(MasterClock.ClockableEntry.class, "skippedTicks");
+
         // Don't store callback handler
         xStream.omitField(MasterClock.class, "clockableCallbackHandlers");
+        xStream.omitField(MasterClock.class, "eventQueue");
+        xStream.omitField(MasterClock.class, "domains");
+        xStream.omitField(MasterClock.class, "pendingCrossChipEvents");
+        xStream.omitField(MasterClock.class, "timeListener");
+        xStream.omitField(MasterClock.class, "nextTimeListenerCallPs");
+        // A loaded state is never running, even if it was saved by a running clock (see CheckpointRing)
+        xStream.omitField(MasterClock.class, "running");
         xStream.omitField(CameraLed.class, "listener");
 // instead of omit we close window before save
 //        xStream.omitField(IoPort.class, "IoPortConfigListener");
@@ -848,39 +956,196 @@ public class EmulationFramework {
         xStream.alias("wlr32", WriteListenerRegister32.class);
         xStream.useAttributeFor(Register32.class, "value");
         xStream.aliasField("v", Register32.class, "value");
-        xStream.aliasField("r", CPUState.class, "regValue");
+        // Former Register32[] regValue, now int[], is read from the legacy field
+        xStream.aliasField("r", CPUState.class, "legacyRegValue");
+        // Former Integer delayed jump fields, null meaning none, are read from the legacy fields
+        xStream.aliasField("nextPc", StatementContext.class, "legacyNextPc");
+        xStream.aliasField("nextReturnAddress", StatementContext.class, "legacyNextReturnAddress");
+        xStream.aliasField("nextReturnAddressTargetRegister", StatementContext.class, "legacyNextReturnAddressTargetRegister");
+        xStream.aliasField("delayedPc", StatementContext.class, "nextPc");
+        xStream.aliasField("delayedReturnAddress", StatementContext.class, "nextReturnAddress");
+        xStream.aliasField("delayedReturnAddressTargetRegister", StatementContext.class, "nextReturnAddressTargetRegister");
         return xStream;
     }
 
 
+    /**
+     * @return the absolute path of the last full state saved or loaded, or null if there is none
+     */
+    public String getBaseStateFilename() {
+        return baseStateFilename;
+    }
+
     public static void saveStateToFile(EmulationFramework framework, String destinationFilename) throws IOException {
-        FileOutputStream fileOutputStream = new FileOutputStream(new File(destinationFilename));
-        ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(fileOutputStream));
+        saveStateToFile(framework, destinationFilename, false);
+    }
 
-        StringWriter writer = new StringWriter();
-        getFrameworkXStream().toXML(framework, writer);
+    /**
+     * Saves the state of the framework to a binary file made of a header, the framework serialized by XStream and
+     * compressed, then the pages of both memories (see PageSnapshot)
+     * @param onlyChanges if true and there is a base state (see getBaseStateFilename()), only memory pages changed
+     *                    since that state are saved, and the base state file will be needed to load this one
+     */
+    public static void saveStateToFile(EmulationFramework framework, String destinationFilename, boolean onlyChanges) throws IOException {
+        boolean isDelta = onlyChanges && framework.baseStateFilename != null;
+        PageSnapshot[] snapshots = new PageSnapshot[2];
+        for (int chip = 0; chip < 2; chip++) {
+            snapshots[chip] = framework.getPlatform(chip).getMemory().takeSnapshot();
+        }
+        long id = new Random().nextLong();
+
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destinationFilename)));
+        try {
+            outputStream.writeInt(STATE_MAGIC);
+            outputStream.writeInt(STATE_VERSION);
+            outputStream.writeLong(id);
+            outputStream.writeUTF(isDelta ? framework.baseStateFilename : "");
+            outputStream.writeLong(isDelta ? framework.baseStateId : 0);
+
+            byte[] frameworkBytes = serializeFramework(framework);
+            outputStream.writeInt(frameworkBytes.length);
+            outputStream.write(frameworkBytes);
+
+            for (int chip = 0; chip < 2; chip++) {
+                snapshots[chip].write(outputStream, isDelta ? framework.baseStateSnapshots[chip] : null);
+            }
+        }
+        finally {
+            outputStream.close();
+        }
 
-        byte[] bytes = writer.toString().getBytes("UTF-8");
+        if (!isDelta) {
+            framework.setBaseState(new File(destinationFilename).getAbsolutePath(), id, snapshots);
+        }
+    }
 
-        ZipEntry zipEntry = new ZipEntry(FRAMEWORK_ZIPENTRY_NAME);
-        zipEntry.setSize(bytes.length);
-        zipOutputStream.putNextEntry(zipEntry);
-        IOUtils.write(bytes, zipOutputStream);
+    /**
+     * @return the framework, without memory contents, serialized by XStream and compressed
+     */
+    static byte[] serializeFramework(EmulationFramework framework) throws IOException {
+        ByteArrayOutputStream frameworkBytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        Writer writer = new OutputStreamWriter(new DeflaterOutputStream(frameworkBytes, deflater), "UTF-8");
+        getFrameworkXStream().toXML(framework, writer);
+        writer.close();
+        deflater.end();
+        return frameworkBytes.toByteArray();
+    }
 
+    /**
+     * Rebuilds a framework from the result of serializeFramework() and snapshots of both memories
+     */
+    static EmulationFramework restore(byte[] frameworkBytes, PageSnapshot[] snapshots, Prefs prefs) {
+        EmulationFramework framework = (EmulationFramework) XStreamUtils.load(new InflaterInputStream(new ByteArrayInputStream(frameworkBytes)), getFrameworkXStream());
+        DebuggableMemory[] memories = new DebuggableMemory[2];
         for (int chip = 0; chip < 2; chip++) {
-            DebuggableMemory memory = framework.getPlatform(chip).getMemory();
-            zipEntry = new ZipEntry(MEMORY_ZIPENTRY_NAME + chip);
-            zipEntry.setSize(memory.getNumPages() + memory.getNumUsedPages() * memory.getPageSize());
-            zipOutputStream.putNextEntry(zipEntry);
-            memory.saveAllToStream(zipOutputStream);
+            memories[chip] = new DebuggableMemory(prefs.isLogMemoryMessages(chip));
+            memories[chip].restoreSnapshot(snapshots[chip]);
         }
-
-        zipOutputStream.close();
-        fileOutputStream.close();
+        framework.relinkLoadedState(memories, prefs);
+        return framework;
     }
 
+    private void setBaseState(String filename, long id, PageSnapshot[] snapshots) {
+        baseStateFilename = filename;
+        baseStateId = id;
+        baseStateSnapshots = snapshots;
+    }
 
     public static EmulationFramework load(String sourceFilename, Prefs prefs) throws IOException {
+        File sourceFile = new File(sourceFilename);
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(sourceFile)));
+        try {
+            int magic = inputStream.readInt();
+            if (magic == ZIP_FILE_MAGIC) {
+                inputStream.close();
+                return loadZipState(sourceFilename, prefs);
+            }
+            checkStateHeader(sourceFile, magic, inputStream.readInt());
+            long id = inputStream.readLong();
+            String baseFilename = inputStream.readUTF();
+            long baseId = inputStream.readLong();
+
+            File baseFile = null;
+            PageSnapshot[] baseSnapshots = null;
+            if (baseFilename.length() > 0) {
+                baseFile = findBaseStateFile(sourceFile, baseFilename);
+                baseSnapshots = loadBaseSnapshots(baseFile, baseId);
+            }
+
+            byte[] frameworkBytes = new byte[inputStream.readInt()];
+            inputStream.readFully(frameworkBytes);
+
+            PageSnapshot[] snapshots = new PageSnapshot[2];
+            for (int chip = 0; chip < 2; chip++) {
+                snapshots[chip] = PageSnapshot.read(inputStream, baseSnapshots == null ? null : baseSnapshots[chip]);
+            }
+            EmulationFramework framework = restore(frameworkBytes, snapshots, prefs);
+
+            if (baseFile == null) {
+                framework.setBaseState(sourceFile.getAbsolutePath(), id, snapshots);
+            }
+            else {
+                framework.setBaseState(baseFile.getAbsolutePath(), baseId, baseSnapshots);
+            }
+            return framework;
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+
+    private static void checkStateHeader(File file, int magic, int version) throws IOException {
+        if (magic != STATE_MAGIC) {
+            throw new IOException("Error loading state file\n" + file.getName() + " is not a state file");
+        }
+        if (version > STATE_VERSION) {
+            throw new IOException("Error loading state file\n" + file.getName() + " was saved by a more recent version");
+        }
+    }
+
+    /**
+     * @return the base state file, looked for at its original location, then next to the state that needs it
+     */
+    private static File findBaseStateFile(File stateFile, String baseFilename) throws IOException {
+        File baseFile = new File(baseFilename);
+        if (!baseFile.exists()) {
+            baseFile = new File(stateFile.getAbsoluteFile().getParentFile(), baseFile.getName());
+        }
+        if (!baseFile.exists()) {
+            throw new IOException("Error loading state file\nThe base state it was saved from cannot be found: " + baseFilename);
+        }
+        return baseFile;
+    }
+
+    private static PageSnapshot[] loadBaseSnapshots(File baseFile, long baseId) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(baseFile)));
+        try {
+            checkStateHeader(baseFile, inputStream.readInt(), inputStream.readInt());
+            if (inputStream.readLong() != baseId) {
+                throw new IOException("Error loading state file\nThe base state " + baseFile.getName() + " was overwritten since");
+            }
+            if (inputStream.readUTF().length() > 0) {
+                throw new IOException("Error loading state file\nThe base state " + baseFile.getName() + " is not a full state");
+            }
+            inputStream.readLong();
+            // Skip the framework
+            inputStream.readFully(new byte[inputStream.readInt()]);
+            PageSnapshot[] snapshots = new PageSnapshot[2];
+            for (int chip = 0; chip < 2; chip++) {
+                snapshots[chip] = PageSnapshot.read(inputStream, null);
+            }
+            return snapshots;
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Loads a state saved in the former zip format
+     */
+    private static EmulationFramework loadZipState(String sourceFilename, Prefs prefs) throws IOException {
         EmulationFramework framework = null;
         FileInputStream fileInputStream = null;
         ZipInputStream zipInputStream = null;
@@ -896,11 +1161,7 @@ public class EmulationFramework {
             else {
                 framework = (EmulationFramework) XStreamUtils.load(zipInputStream, getFrameworkXStream());
 
-                // clean code structure
-                framework.initCodeStructure();
-                /* Relink prefs */
-                framework.setPrefs(prefs);
-                /* Restore and relink memory */
+                DebuggableMemory[] memories = new DebuggableMemory[2];
                 for (int chip = 0; chip < 2; chip++) {
                     // Read memory
                     entry = zipInputStream.getNextEntry();
@@ -909,29 +1170,11 @@ public class EmulationFramework {
                         throw new IOException("Error loading state file\nExpected a file called " + expectedEntry + " but got " + entry.getName());
                     }
                     else {
-                        // Restore memory to platform
-                        final DebuggableMemory memory = new DebuggableMemory(prefs.isLogMemoryMessages(chip));
-                        framework.getPlatform(chip).setMemory(memory);
-                        memory.loadAllFromStream(zipInputStream);
-                        // Also update its reference in framework
-                        framework.getEmulator(chip).context.memory = memory;
-                        framework.setupMemoryListeners(chip, memory);
-                    }
-                }
-
-                ((TxDmaController)framework.getPlatform(Constants.CHIP_TX).getDmaController()).setPrefs(prefs);
-                // TODO add FR DMA when implemented
-                if (framework.getPlatform(Constants.CHIP_FR).getDmaController()!=null) {
-                    System.err.println("!!! add code for load FR DMA");
-                }
-                for (AdUnit adUnit : framework.getPlatform(Constants.CHIP_TX).getAdConverter().getUnits()) {
-                    for (int i = 0; i < adUnit.getNumChannels(); i++) {
-                        final AdValueProvider provider = adUnit.getProvider(i);
-                        if (provider instanceof AdPrefsValueProvider)
-                            ((AdPrefsValueProvider)provider).setPrefs(prefs);
+                        memories[chip] = new DebuggableMemory(prefs.isLogMemoryMessages(chip));
+                        memories[chip].loadAllFromStream(zipInputStream);
                     }
                 }
-                // We do not want that loaded front panel writes to Prefs, so do not set
+                framework.relinkLoadedState(memories, prefs);
             }
         } finally {
             if (zipInputStream != null) zipInputStream.close();
@@ -941,4 +1184,38 @@ public class EmulationFramework {
         return framework;
     }
 
+    /**
+     * Relinks a freshly deserialized framework to the given memories and prefs
+     */
+    private void relinkLoadedState(DebuggableMemory[] memories, Prefs prefs) {
+        // clean code structure
+        initCodeStructure();
+        /* Relink prefs */
+        setPrefs(prefs);
+        /* Restore and relink memory */
+        for (int chip = 0; chip < 2; chip++) {
+            // Restore memory to platform
+            getPlatform(chip).setMemory(memories[chip]);
+            // Also update its reference in framework
+            getEmulator(chip).context.memory = memories[chip];
+            setupMemoryListeners(chip, memories[chip]);
+            // Compiled conditions and their watchpoint are bound to the memory
+            getEmulator(chip).recompileBreakConditions();
+        }
+
+        ((TxDmaController)getPlatform(Constants.CHIP_TX).getDmaController()).setPrefs(prefs);
+        // TODO add FR DMA when implemented
+        if (getPlatform(Constants.CHIP_FR).getDmaController()!=null) {
+            System.err.println("!!! add code for load FR DMA");
+        }
+        for (AdUnit adUnit : getPlatform(Constants.CHIP_TX).getAdConverter().getUnits()) {
+            for (int i = 0; i < adUnit.getNumChannels(); i++) {
+                final AdValueProvider provider = adUnit.getProvider(i);
+                if (provider instanceof AdPrefsValueProvider)
+                    ((AdPrefsValueProvider)provider).setPrefs(prefs);
+            }
+        }
+        // We do not want that loaded front panel writes to Prefs, so do not set
+    }
+
 }
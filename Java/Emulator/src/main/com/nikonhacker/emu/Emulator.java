@@ -3,14 +3,18 @@ package com.nikonhacker.emu;
 import com.nikonhacker.Constants;
 import com.nikonhacker.Format;
 import com.nikonhacker.disassembly.*;
+import com.nikonhacker.emu.interrupt.InterruptRequest;
 import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.memory.listener.WatchpointActivityListener;
 import com.nikonhacker.emu.peripherials.interruptController.InterruptController;
+import com.nikonhacker.emu.trace.ExecutionTraceRecorder;
+import com.nikonhacker.emu.trace.StatementDecoder;
 import com.nikonhacker.emu.trigger.BreakTrigger;
-import com.nikonhacker.emu.trigger.condition.AndCondition;
+import com.nikonhacker.emu.trigger.CompiledBreakConditions;
 import com.nikonhacker.emu.trigger.condition.BreakCondition;
-import com.nikonhacker.emu.trigger.condition.BreakPointCondition;
 import com.nikonhacker.gui.component.disassembly.DisassemblyLogger;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 
@@ -18,10 +22,26 @@ public abstract class Emulator implements Clockable {
     protected long                       totalCycles;
     protected DisassemblyLogger          logger;
     protected PrintWriter                breakLogPrintWriter;
+    /** Decoder formatting call stack frames in break trigger logs, created on first use */
+    private transient StatementDecoder   callStackDecoder;
     protected       int                  sleepIntervalMs = 0;
+    /** The break conditions as added. Only used to rebuild compiledBreakConditions, under its own lock */
     protected final List<BreakCondition> breakConditions = new ArrayList<BreakCondition>();
-    protected final HashMap<Integer, BreakCondition> pcBreakConditions = new HashMap<Integer, BreakCondition>();
+    /**
+     * Snapshot of breakConditions, replaced as a whole each time they change, so that it can be read without locking.
+     * Bound to the memory, so not saved: see recompileBreakConditions()
+     */
+    protected volatile CompiledBreakConditions compiledBreakConditions = CompiledBreakConditions.EMPTY;
+    /** Listener warning of writes to the addresses memory conditions depend on, or null if there are none. Not saved */
+    private volatile WatchpointActivityListener watchpointListener;
+    /** Groups of entries merged by processConditions(), and the position reached in each. Reused to avoid allocations */
+    private transient CompiledBreakConditions.Entry[][] entryGroups;
+    private transient int[]                             entryGroupPositions;
+    /** If not null, decides whether breaks requested by triggers actually stop emulation */
+    private transient BreakFilter        breakFilter;
     protected       boolean              breakConditionsPresent;
+    /** Incremented each time the set of break conditions changes, so that derived information can be recomputed */
+    protected volatile int               breakConditionsVersion;
     protected       Set<OutputOption>    outputOptions   = EnumSet.noneOf(OutputOption.class);
     protected       boolean              exitSleepLoop   = false;
 
@@ -31,6 +51,10 @@ public abstract class Emulator implements Clockable {
 
     protected final List<CycleCounterListener> cycleCounterListeners = new ArrayList<CycleCounterListener>();
 
+    protected CycleDeadlineQueue cycleDeadlines = new CycleDeadlineQueue();
+    /** Copy of the earliest deadline in cycleDeadlines, so that the check after each instruction is a field compare */
+    protected long               nextCycleDeadline = Long.MAX_VALUE;
+
     protected Statement statement;
 
     /**
@@ -57,11 +81,32 @@ public abstract class Emulator implements Clockable {
         this.breakLogPrintWriter = breakLogPrintWriter;
     }
 
+    /**
+     * Waits until messages sent to the disassembly and break trigger logs have been written, so that logs are complete
+     * when emulation stops
+     */
+    public void flushLogs() {
+        if (logger != null) {
+            logger.flush();
+        }
+        if (breakLogPrintWriter != null) {
+            breakLogPrintWriter.flush();
+        }
+    }
+
+    /**
+     * Provide a filter deciding whether breaks requested by triggers stop emulation, or null to always stop
+     * @param breakFilter
+     */
+    public void setBreakFilter(BreakFilter breakFilter) {
+        this.breakFilter = breakFilter;
+    }
+
     /**
      * Provide a call stack to write stack entries to it
      * @param callStack
      */
-    public void setCallStack(Deque<CallStackItem> callStack) {
+    public void setCallStack(CallStack callStack) {
         context.callStack = callStack;
     }
 
@@ -80,36 +125,57 @@ public abstract class Emulator implements Clockable {
     public final void clearBreakConditions() {
         synchronized (breakConditions) {
             breakConditions.clear();
-            pcBreakConditions.clear();
+            compiledBreakConditions = CompiledBreakConditions.EMPTY;
+            updateWatchpoints(CompiledBreakConditions.EMPTY);
             breakConditionsPresent = false;
+            breakConditionsVersion++;
         }
     }
 
     public final void addBreakCondition(BreakCondition breakCondition) {
-        boolean isPCCondition = false;
-        int pc = 0;
-
-        if (breakCondition instanceof BreakPointCondition) {
-            isPCCondition = true;
-            pc = ((BreakPointCondition)breakCondition).getPc();
-        } else if (breakCondition instanceof AndCondition) {
-            List<BreakCondition> conditions = ((AndCondition)breakCondition).getConditions();
-            if (conditions.size() == 1) {
-                BreakCondition brk = conditions.get(0);
-                if (brk instanceof BreakPointCondition) {
-                    isPCCondition = true;
-                    pc = ((BreakPointCondition)brk).getPc();
-                }
-            }
-        }
         synchronized (breakConditions) {
-            if (isPCCondition) {
-                pcBreakConditions.put(pc,breakCondition);
-            } else {
-                breakConditions.add(breakCondition);
-            }
+            breakConditions.add(breakCondition);
+            CompiledBreakConditions newCompiledBreakConditions = new CompiledBreakConditions(breakConditions, platform.memory);
+            updateWatchpoints(newCompiledBreakConditions);
+            compiledBreakConditions = newCompiledBreakConditions;
             breakConditionsPresent = true;
+            breakConditionsVersion++;
+        }
+    }
+
+    /**
+     * Compiles the break conditions again against the current memory. Must be called once a loaded emulator has been
+     * given its memory, as compiled conditions and the watchpoint listener are not saved with the state
+     */
+    public final void recompileBreakConditions() {
+        synchronized (breakConditions) {
+            CompiledBreakConditions newCompiledBreakConditions = breakConditions.isEmpty() ? CompiledBreakConditions.EMPTY : new CompiledBreakConditions(breakConditions, platform.memory);
+            updateWatchpoints(newCompiledBreakConditions);
+            compiledBreakConditions = newCompiledBreakConditions;
+            breakConditionsPresent = !breakConditions.isEmpty();
+            breakConditionsVersion++;
+        }
+    }
+
+    /**
+     * Makes sure a watchpoint listener covers the addresses memory conditions depend on, and that these conditions
+     * are tested once, as they may already be true
+     */
+    private void updateWatchpoints(CompiledBreakConditions conditions) {
+        int[] addresses = conditions.getWatchedAddresses();
+        WatchpointActivityListener listener = watchpointListener;
+        if (listener != null && !Arrays.equals(listener.getAddresses(), addresses)) {
+            platform.memory.removeActivityListener(listener);
+            listener = null;
+        }
+        if (listener == null && addresses.length != 0) {
+            listener = new WatchpointActivityListener(addresses);
+            platform.memory.addActivityListener(listener);
         }
+        if (listener != null) {
+            listener.setHit();
+        }
+        watchpointListener = listener;
     }
 
     public void exitSleepLoop() {
@@ -169,6 +235,74 @@ public abstract class Emulator implements Clockable {
         synchronized (cycleCounterListeners) {
             cycleCounterListeners.clear();
         }
+        synchronized (this) {
+            getCycleDeadlines().clear();
+            nextCycleDeadline = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Requests the given listener to be called once the cycle counter reaches the given value.
+     * Contrary to CycleCounterListeners, nothing is done for the other instructions.
+     * If the listener is already registered, its current deadline is kept.
+     * @param cycleDeadlineListener
+     * @param deadline the absolute cycle count at which to call the listener (see {@link #getTotalCycles()})
+     */
+    public synchronized void addCycleDeadlineListener(CycleDeadlineListener cycleDeadlineListener, long deadline) {
+        CycleDeadlineQueue queue = getCycleDeadlines();
+        if (!queue.contains(cycleDeadlineListener)) {
+            queue.add(cycleDeadlineListener, deadline);
+            nextCycleDeadline = queue.getNextDeadline();
+        }
+    }
+
+    public synchronized void removeCycleDeadlineListener(CycleDeadlineListener cycleDeadlineListener) {
+        CycleDeadlineQueue queue = getCycleDeadlines();
+        queue.remove(cycleDeadlineListener);
+        nextCycleDeadline = queue.getNextDeadline();
+    }
+
+    private CycleDeadlineQueue getCycleDeadlines() {
+        if (cycleDeadlines == null) {
+            // XStream restore of a state saved without deadlines
+            cycleDeadlines = new CycleDeadlineQueue();
+        }
+        return cycleDeadlines;
+    }
+
+    /**
+     * Calls all deadline listeners whose deadline has been reached, and reschedules them as they request.
+     * Emulators only call this method when totalCycles &gt;= nextCycleDeadline
+     */
+    protected final synchronized void notifyCycleDeadlineListeners() {
+        CycleDeadlineQueue queue = getCycleDeadlines();
+        long deadline;
+        while ((deadline = queue.getNextDeadline()) <= totalCycles) {
+            CycleDeadlineListener listener = queue.poll();
+            long nextDeadline = listener.onCycleDeadline(deadline);
+            if (nextDeadline >= 0 && !queue.contains(listener)) {
+                // Make sure time moves forward, even if the listener asks to be called again for the same cycle
+                queue.add(listener, Math.max(nextDeadline, deadline + 1));
+            }
+        }
+        nextCycleDeadline = deadline;
+    }
+
+    /**
+     * Notify CPU cycle listeners, removing the ones that do not want to be notified anymore
+     * @param increment the number of cycles just executed
+     */
+    protected final void notifyCycleCounterListeners(int increment) {
+        int cycleListenerNumber = 0;
+        while (cycleListenerNumber < cycleCounterListeners.size()) {
+            CycleCounterListener cycleCounterListener = cycleCounterListeners.get(cycleListenerNumber);
+            if (cycleCounterListener.onCycleCountChange(totalCycles, increment)) {
+                cycleListenerNumber++;
+            }
+            else {
+                cycleCounterListeners.remove(cycleCounterListener);
+            }
+        }
     }
 
     @Override
@@ -178,6 +312,18 @@ public abstract class Emulator implements Clockable {
 
     protected void logIfRequested(DisassemblyLogger logger) throws DisassemblyException {
         if (logger != null && logger.mustLog(platform.cpuState.pc)) {
+            ExecutionTraceRecorder traceRecorder = logger.getTraceRecorder();
+            if (traceRecorder != null) {
+                if (logger.isLogging()) {
+                    try {
+                        traceRecorder.recordInstruction(platform.getMasterClock().getTotalElapsedTimePs(), platform.cpuState.pc, getTraceFlags(), statement.getOpcode(), statement.getNumBytes(), platform.cpuState);
+                    } catch (IOException e) {
+                        System.err.println("Cannot write execution trace, stopping logging: " + e.getMessage());
+                        logger.setLogging(false);
+                    }
+                }
+                return;
+            }
             StringBuilder msg = new StringBuilder();
             if (logger.isIncludeTimestamp()) {
                 msg.append(platform.getMasterClock().getFormatedTotalElapsedTimeMs()).append(" ");
@@ -205,6 +351,39 @@ public abstract class Emulator implements Clockable {
         }
     }
 
+    /**
+     * Logs the acceptance of the given interrupt, and indents what follows
+     */
+    protected void logInterruptIfRequested(InterruptRequest interruptRequest) {
+        DisassemblyLogger printer = logger;
+        if (printer != null) {
+            ExecutionTraceRecorder traceRecorder = printer.getTraceRecorder();
+            if (traceRecorder != null) {
+                // The decoder maintains indentation itself
+                if (printer.isLogging()) {
+                    try {
+                        traceRecorder.recordInterrupt(platform.getMasterClock().getTotalElapsedTimePs(), interruptRequest.getInterruptNumber());
+                    } catch (IOException e) {
+                        System.err.println("Cannot write execution trace, stopping logging: " + e.getMessage());
+                        printer.setLogging(false);
+                    }
+                }
+                return;
+            }
+            if (printer.isIncludeInterruptMarks()) {
+                printer.println(platform.getMasterClock().getFormatedTotalElapsedTimeMs() + " ------------------------- Accepting " + interruptRequest);
+            }
+            printer.indent();
+        }
+    }
+
+    /**
+     * @return the ExecutionTraceRecorder flags describing how the statement being executed was decoded
+     */
+    protected int getTraceFlags() {
+        return 0;
+    }
+
     protected void sleep() {
         exitSleepLoop = false;
         if (sleepIntervalMs < 100) {
@@ -232,7 +411,11 @@ public abstract class Emulator implements Clockable {
         BreakTrigger trigger = breakCondition.getBreakTrigger();
         if (trigger != null) {
             if (trigger.mustBeLogged() && breakLogPrintWriter != null) {
-                trigger.log(breakLogPrintWriter, platform, context.callStack);
+                CallStack callStack = context.callStack;
+                if (callStack != null && (callStackDecoder == null || !callStackDecoder.isFor(callStack.getChip(), outputOptions))) {
+                    callStackDecoder = new StatementDecoder(callStack.getChip(), outputOptions);
+                }
+                trigger.log(breakLogPrintWriter, platform, callStack, callStackDecoder);
             }
             if (trigger.getInterruptToRequest() != null) {
                 platform.interruptController.request(trigger.getInterruptToRequest());
@@ -248,28 +431,113 @@ public abstract class Emulator implements Clockable {
                 logger.setLogging(false);
             }
         }
-        if (trigger == null || trigger.mustBreak()) {
+        if (trigger == null) {
             return true;
         }
+        if (trigger.mustBreak()) {
+            return breakFilter == null || breakFilter.mustBreak(this, breakCondition);
+        }
         return false;
     }
     
+    /**
+     * Determines if a PC-based break condition is set on one of the statements of the given block, except the first
+     * one (a break at the first statement is detected after the previous instruction, like in single-step mode)
+     * @param block
+     * @return true if the block must not be run as a whole
+     */
+    protected final boolean hasPcBreakConditionInside(BasicBlock block) {
+        int version = breakConditionsVersion;
+        if (block.breakConditionsVersion != version) {
+            boolean found = false;
+            final CompiledBreakConditions conditions = compiledBreakConditions;
+            for (int i = 1; i < block.addresses.length; i++) {
+                if (conditions.hasPcCondition(block.addresses[i])) {
+                    found = true;
+                    break;
+                }
+            }
+            block.containsPcBreakCondition = found;
+            block.breakConditionsVersion = version;
+        }
+        return block.containsPcBreakCondition;
+    }
+
+    /**
+     * Tests break conditions against the current state, and executes the triggers of those that match
+     * @return the first matching condition that requires a break, or null
+     */
     protected final BreakCondition processConditions() {
-        synchronized(breakConditions) {
-            // check fast pc-based conditions first
-            final BreakCondition pcBreakCondition = pcBreakConditions.get(platform.cpuState.getPc()&(~1));
-            if (pcBreakCondition!=null) {
-                if (executeBreakCondition(pcBreakCondition))
-                    return pcBreakCondition;
+        final CompiledBreakConditions conditions = compiledBreakConditions;
+        // check fast pc-based conditions first
+        BreakCondition breakCondition = processEntries(conditions.getPcEntries(platform.cpuState.getPc()&(~1)));
+        if (breakCondition != null) {
+            return breakCondition;
+        }
+        // then, in the order they were added, conditions bound to the current value of a register, memory conditions
+        // if one of the addresses they depend on was written to, and all other conditions
+        int maxGroups = conditions.getNumWatchedRegisters() + 2;
+        if (entryGroups == null || entryGroups.length < maxGroups) {
+            entryGroups = new CompiledBreakConditions.Entry[maxGroups][];
+            entryGroupPositions = new int[maxGroups];
+        }
+        int numGroups = 0;
+        for (int i = 0; i < conditions.getNumWatchedRegisters(); i++) {
+            int value = platform.cpuState.getReg(conditions.getWatchedRegister(i));
+            CompiledBreakConditions.Entry[] entries = conditions.getRegisterEntries(i, value);
+            if (entries != null) {
+                entryGroups[numGroups++] = entries;
             }
-            // check all other conditions if any
-            if (!breakConditions.isEmpty())
-                for (BreakCondition breakCondition : breakConditions) {
-                    if (breakCondition.matches(platform.cpuState, platform.memory)) {
-                        if (executeBreakCondition(breakCondition))
-                            return breakCondition;
-                    }
+        }
+        final WatchpointActivityListener listener = watchpointListener;
+        if (listener != null && listener.clearHit() && conditions.getMemoryEntries().length != 0) {
+            entryGroups[numGroups++] = conditions.getMemoryEntries();
+        }
+        if (conditions.getOtherEntries().length != 0) {
+            entryGroups[numGroups++] = conditions.getOtherEntries();
+        }
+        if (numGroups == 1) {
+            return processEntries(entryGroups[0]);
+        }
+        return processEntriesInOrder(numGroups);
+    }
+
+    /**
+     * Tests the entries of the first numGroups entryGroups, merged by index of their condition
+     * @return the first matching condition that requires a break, or null
+     */
+    private BreakCondition processEntriesInOrder(int numGroups) {
+        Arrays.fill(entryGroupPositions, 0, numGroups, 0);
+        while (true) {
+            int nextGroup = -1;
+            int nextIndex = Integer.MAX_VALUE;
+            for (int group = 0; group < numGroups; group++) {
+                CompiledBreakConditions.Entry[] entries = entryGroups[group];
+                int position = entryGroupPositions[group];
+                if (position < entries.length && entries[position].getIndex() < nextIndex) {
+                    nextGroup = group;
+                    nextIndex = entries[position].getIndex();
+                }
+            }
+            if (nextGroup < 0) {
+                return null;
+            }
+            CompiledBreakConditions.Entry entry = entryGroups[nextGroup][entryGroupPositions[nextGroup]++];
+            if (entry.matches(platform.cpuState, platform.memory)) {
+                if (executeBreakCondition(entry.getBreakCondition()))
+                    return entry.getBreakCondition();
+            }
+        }
+    }
+
+    private BreakCondition processEntries(CompiledBreakConditions.Entry[] entries) {
+        if (entries != null) {
+            for (CompiledBreakConditions.Entry entry : entries) {
+                if (entry.matches(platform.cpuState, platform.memory)) {
+                    if (executeBreakCondition(entry.getBreakCondition()))
+                        return entry.getBreakCondition();
                 }
+            }
         }
         return null;
     }
@@ -30,9 +30,15 @@ public class FrEmulator extends Emulator {
     private Set<OutputOption> lastOutputOptions;
     private boolean lastOutputOptionsValid = false;
 
+    /** Statement reused for each instruction when decoded statements cannot be cached */
+    private FrStatement uncachedStatement = new FrStatement();
+
+    /** Cache of decoded statements, (re)created lazily for the current memory */
+    private StatementCache<FrStatement> statementCache;
+
     public FrEmulator(Platform platform) {
         super(platform);
-        statement = new FrStatement();
+        statement = uncachedStatement;
     }
 
     @Override
@@ -74,43 +80,57 @@ public class FrEmulator extends Emulator {
         }
 
         try {
-            statement.reset();
-
-            // FETCH
-            ((FrStatement)statement).getNextStatement(platform.memory, platform.cpuState.pc);
+            if (statementCache == null || statementCache.getMemory() != platform.memory) {
+                // First run, or memory was replaced (e.g. state reload)
+                if (statementCache != null) {
+                    statementCache.dispose();
+                }
+                statementCache = new StatementCache<FrStatement>(platform.memory);
+            }
 
-            // DECODE
-            statement.setInstruction(FrInstructionSet.instructionMap[((FrStatement)statement).data[0]]);
-            ((FrStatement)statement).decodeOperands(platform.cpuState.pc, platform.memory);
+            if (platform.memory.isInstructionFetchObserved()) {
+                // Listeners must see every fetch, so fetch and decode each time
+                if (uncachedStatement == null) {
+                    uncachedStatement = new FrStatement();
+                }
+                statement = uncachedStatement;
+                fetchAndDecode(uncachedStatement, platform.cpuState.pc);
+            }
+            else {
+                FrStatement cachedStatement = statementCache.get(platform.cpuState.pc);
+                if (cachedStatement == null) {
+                    cachedStatement = new FrStatement();
+                    fetchAndDecode(cachedStatement, platform.cpuState.pc);
+                    statementCache.put(platform.cpuState.pc, cachedStatement);
+                }
+                statement = cachedStatement;
+            }
 
             // LOG
             logIfRequested(logger);
 
             // ACTUAL INSTRUCTION EXECUTION
             statement.getInstruction().getSimulationCode().simulate(statement, context);
+            if (context.hasPendingCallTarget) {
+                context.resolveCallTarget();
+            }
 
             // Notify CPU cycle listeners
-            int cycleListenerNumber = 0;
-            while (cycleListenerNumber < cycleCounterListeners.size()) {
-                CycleCounterListener cycleCounterListener = cycleCounterListeners.get(cycleListenerNumber);
-                if (cycleCounterListener.onCycleCountChange(totalCycles, context.cycleIncrement)) {
-                    cycleListenerNumber++;
-                }
-                else {
-                    cycleCounterListeners.remove(cycleCounterListener);
-                }
-            }
+            notifyCycleCounterListeners(context.cycleIncrement);
 
             totalCycles += context.cycleIncrement;
+            if (totalCycles >= nextCycleDeadline) {
+                notifyCycleDeadlineListeners();
+            }
 
             /* Delay slot processing */
-            if (context.nextPc != null) {
+            if (context.hasNextPc) {
                 if (context.delaySlotDone) {
                     platform.cpuState.pc = context.nextPc;
-                    context.nextPc = null;
-                    if (context.nextReturnAddress != null) {
+                    context.hasNextPc = false;
+                    if (context.hasNextReturnAddress) {
                         platform.cpuState.setReg(FrCPUState.RP, context.nextReturnAddress);
-                        context.nextReturnAddress = null;
+                        context.hasNextReturnAddress = false;
                     }
                 }
                 else {
@@ -119,20 +139,13 @@ public class FrEmulator extends Emulator {
             }
             else {
                 // If not in a delay slot, check interrupts
-                if(platform.interruptController.hasPendingRequests()) { // This call is not synchronized, so it skips fast
+                // Lock-free check that a pending request is of a priority the CPU currently accepts
+                if((platform.interruptController.getPendingPriorityClasses() & platform.cpuState.getAcceptedPriorityClasses()) != 0) {
                     FrInterruptRequest interruptRequest = (FrInterruptRequest) platform.interruptController.getNextRequest();
                     //Double test because lack of synchronization means the status could have changed in between
                     if (interruptRequest != null) {
                         if (platform.cpuState.accepts(interruptRequest)){
-                            if (logger != null) {
-                                DisassemblyLogger printer2 = logger;
-                                if (printer2 != null) {
-                                    if(printer2.isIncludeInterruptMarks()) {
-                                        printer2.println(platform.getMasterClock().getFormatedTotalElapsedTimeMs() + " ------------------------- Accepting " + interruptRequest);
-                                    }
-                                    printer2.indent();
-                                }
-                            }
+                            logInterruptIfRequested(interruptRequest);
                             platform.interruptController.removeEdgeTriggeredRequest(interruptRequest);
                             ((FrInterruptController)platform.interruptController).processInterrupt(interruptRequest.getInterruptNumber(), platform.cpuState.pc, context);
 
@@ -171,6 +184,17 @@ public class FrEmulator extends Emulator {
         return null;
     }
 
+    private void fetchAndDecode(FrStatement frStatement, int pc) {
+        frStatement.reset();
+
+        // FETCH
+        frStatement.getNextStatement(platform.memory, pc);
+
+        // DECODE
+        frStatement.setInstruction(FrInstructionSet.instructionMap[frStatement.data[0]]);
+        frStatement.decodeOperands(pc, platform.memory);
+    }
+
 
     public static void main(String[] args) throws IOException, EmulationException, ParsingException {
         if (args.length < 2) {
@@ -4,14 +4,25 @@ import com.nikonhacker.Constants;
 
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
 
 public class MasterClock implements Runnable {
 
     public static final long PS_PER_MS = 1_000_000_000;
     public static final long PS_PER_SEC = 1_000_000_000_000L;
+    public static final long PS_PER_US = 1_000_000;
 
-    private DecimalFormat milliSecondFormatter = new DecimalFormat("0000.000000000");
+    public static final long DEFAULT_SYNC_QUANTUM_PS = 100 * PS_PER_US;
+
+    /** Domain of the clockables that are not bound to a chip, in parallel mode */
+    private static final int SHARED_DOMAIN = -1;
+
+    /** Format of times in logs, in milliseconds */
+    public static final String MILLISECOND_FORMAT = "0000.000000000";
+
+    private DecimalFormat milliSecondFormatter = new DecimalFormat(MILLISECOND_FORMAT);
 
     private ClockableCallbackHandler[] clockableCallbackHandlers;
     /**
@@ -21,8 +32,68 @@ public class MasterClock implements Runnable {
 
     private boolean syncPlay = false;
 
+    /**
+     * If true, entries are scheduled by a priority queue of their next deadline instead of a table of steps based on
+     * the least common multiple of all frequencies. Its cost does not depend on how far apart frequencies are.
+     */
+    private boolean eventDriven = false;
+
+    /**
+     * If true and in event driven mode, SkippableClockables are only woken up when something happens,
+     * instead of at each tick
+     */
+    private boolean skipAhead = false;
+
+    /**
+     * Enabled entries ordered by next deadline, used in event driven mode
+     */
+    private PriorityQueue<ClockableEntry> eventQueue;
+
+    /**
+     * If true, each chip runs with its own clockables on a separate thread, using deadline-based scheduling.
+     * Chips are synchronized every syncQuantumPs of emulated time, or as soon as an event crosses chips.
+     */
+    private boolean parallel = false;
+
+    /**
+     * Maximum emulated time each chip may run before synchronizing with the other one, in parallel mode
+     */
+    private long syncQuantumPs = DEFAULT_SYNC_QUANTUM_PS;
+
+    /**
+     * Scheduling domains used in parallel mode: one per chip, plus a shared one for clockables not bound to a chip
+     */
+    private SchedulingDomain[] domains;
+
+    /**
+     * End of the current quantum, in parallel mode
+     */
+    private long quantumLimitPs;
+
+    /**
+     * Set by a chip thread to end the current quantum early, in parallel mode
+     */
+    private volatile boolean syncRequested;
+
+    /**
+     * Events posted by one chip to the other, to be delivered at the next synchronization point.
+     * Null unless the clock is running in parallel mode
+     */
+    private volatile List<Runnable> pendingCrossChipEvents;
+
     private boolean running = false;
 
+    /**
+     * Listener called at requested emulated times, in the sequential modes only
+     */
+    private ClockTimeListener timeListener;
+
+    /**
+     * Emulated time at which timeListener must be called next. Only written by the listener itself, and by other
+     * threads through the listener, to avoid lost updates
+     */
+    private volatile long nextTimeListenerCallPs = Long.MAX_VALUE;
+
     /**
      * The total elapsed time since the start of the MasterClock, in picoseconds (e-12)
      * MAX_LONG being (2e63 - 1) = 9.22e18, it will overflow after 9223372 seconds,
@@ -50,7 +121,71 @@ public class MasterClock implements Runnable {
     }
 
     public void requestResheduling() {
-        rescheduleRequested = true;
+        Thread currentThread = Thread.currentThread();
+        if (currentThread instanceof DomainThread) {
+            // Only the clockables of that chip are concerned
+            ((DomainThread) currentThread).domain.rescheduleRequested = true;
+        }
+        else {
+            rescheduleRequested = true;
+        }
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Selects the scheduler to use. Takes effect the next time the clock is started.
+     * @param eventDriven if true, use the deadline-based scheduler. Otherwise, use the LCM-based step table
+     */
+    public void setEventDriven(boolean eventDriven) {
+        if (this.eventDriven != eventDriven) {
+            this.eventDriven = eventDriven;
+            requestResheduling();
+        }
+    }
+
+    public boolean isSkipAhead() {
+        return skipAhead;
+    }
+
+    /**
+     * Lets SkippableClockables skip their ticks that have no visible effect. Only has an effect in event driven mode.
+     * @param skipAhead
+     */
+    public void setSkipAhead(boolean skipAhead) {
+        if (this.skipAhead != skipAhead) {
+            this.skipAhead = skipAhead;
+            requestResheduling();
+        }
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Runs each chip on its own thread. Takes effect the next time the clock is started.
+     * @param parallel if true, chips run in parallel, with deadline-based scheduling within each chip
+     */
+    public void setParallel(boolean parallel) {
+        if (this.parallel != parallel) {
+            this.parallel = parallel;
+            requestResheduling();
+        }
+    }
+
+    public long getSyncQuantumPs() {
+        return syncQuantumPs;
+    }
+
+    /**
+     * Sets the maximum emulated time a chip may run ahead of the other in parallel mode
+     * @param syncQuantumPs
+     */
+    public void setSyncQuantumPs(long syncQuantumPs) {
+        this.syncQuantumPs = Math.max(1, syncQuantumPs);
     }
 
     /**
@@ -73,6 +208,8 @@ public class MasterClock implements Runnable {
         if (!found) {
             entries.add(new ClockableEntry(clockable, clockableCallbackHandlerChip, enabled, precise));
         }
+        // The entry may belong to another chip than the calling thread's
+        rescheduleRequested = true;
         requestResheduling();
     }
 
@@ -97,6 +234,7 @@ public class MasterClock implements Runnable {
                 break;
             }
         }
+        rescheduleRequested = true;
         requestResheduling();
     }
 
@@ -104,6 +242,13 @@ public class MasterClock implements Runnable {
         // Reset indicator, if set
         rescheduleRequested = false;
 
+        // Ticks skipped in event driven mode will not happen
+        for (ClockableEntry entry : entries) {
+            if (entry.clockable instanceof SkippableClockable) {
+                ((SkippableClockable) entry.clockable).dropSkippedTicks();
+            }
+        }
+
         // Determine least common multiple of all frequencies
         long leastCommonMultipleFrequency = 1;
         int maxUnpreciseFrequency = 1;
@@ -214,6 +359,36 @@ public class MasterClock implements Runnable {
 //        }
     }
 
+    /**
+     * Sets the listener to call at the times it requests through scheduleTimeListener(), or null.
+     * The listener is only called in the sequential modes, not in parallel mode.
+     * In step table mode, it is called after a full round of the table, so that the clock can resume exactly at the
+     * same point from a state saved by the listener. Calls may thus come a little after the requested time.
+     */
+    public void setTimeListener(ClockTimeListener timeListener) {
+        this.timeListener = timeListener;
+        this.nextTimeListenerCallPs = Long.MAX_VALUE;
+    }
+
+    /**
+     * Requests the time listener to be called once the emulated time reaches the given time.
+     * Replaces any previous request. Use Long.MIN_VALUE to have it called as soon as possible
+     */
+    public void scheduleTimeListener(long timePs) {
+        nextTimeListenerCallPs = timePs;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void notifyTimeListener() {
+        if (totalElapsedTimePs >= nextTimeListenerCallPs && timeListener != null) {
+            nextTimeListenerCallPs = Long.MAX_VALUE;
+            timeListener.onTime(totalElapsedTimePs);
+        }
+    }
+
     public void setSyncPlay(boolean syncPlay) {
         this.syncPlay = syncPlay;
     }
@@ -229,12 +404,38 @@ public class MasterClock implements Runnable {
         }
     }
 
+    /**
+     * Runs the clock in the calling thread, until all entries are disabled.
+     * Does nothing if the clock is already running
+     */
+    public void runInCurrentThread() {
+        synchronized (this) {
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        run();
+    }
+
     /**
      * This is the way to run the clock synchronously. Normally only called internally.
      * Use start() instead to start the clock.
      * Note: this is the optimized version that only executes useful entries of useful steps
      */
     public void run() {
+        if (parallel) {
+            runParallel();
+            return;
+        }
+        if (eventDriven) {
+            runEventDriven();
+            return;
+        }
+        // Make sure steps are recomputed if we just switched from the event driven mode
+        if (steps == null) {
+            rescheduleRequested = true;
+        }
         List<ClockableEntry> entriesToDisable = new ArrayList<>();
         int stepNumber = 0;
         ClockExecutionStep step;
@@ -252,6 +453,7 @@ public class MasterClock implements Runnable {
                     if (currentEntry.enabled && !currentEntry.isFrequencyZero) {
                         // If it's enabled. Call its onClockTick() method
                         try {
+                            currentEntry.ticks++;
                             Object result = currentEntry.clockable.onClockTick();
                             if (result != null) {
                                 // A non-null result means this entry shouldn't run anymore
@@ -296,12 +498,368 @@ public class MasterClock implements Runnable {
                     break;
                 }
             }
+            if (running && stepNumber == steps.size()) {
+                // A full round of the table was done
+                notifyTimeListener();
+            }
         }
 
         // If we got here, one entry at least was just disabled and caused the clock to stop.
         // Before we exit, let's rotate the list so that when the clock restarts, it resumes exactly where it left off
         // To do so, the next entry to run will be rotated to the start
-        Collections.rotate(steps, -1 - stepNumber);
+        if (steps != null) {
+            Collections.rotate(steps, -1 - stepNumber);
+        }
+    }
+
+    private void prepareEventSchedule() {
+        // Reset indicator, if set
+        rescheduleRequested = false;
+        // Force recomputing the steps if we switch back to the step table mode
+        steps = null;
+
+        eventQueue = createEventQueue(null, totalElapsedTimePs);
+    }
+
+    /**
+     * Computes the period of each entry and builds the queue of enabled entries ordered by next deadline.
+     * Deadlines of entries that were already scheduled are kept, but brought back to the [now, now+period] interval
+     * (e.g. after a reset of the elapsed time or after the entry was disabled for a while).
+     * @param domain the domain whose entries must be scheduled, or null for all entries
+     * @param nowPs the current time of that domain
+     */
+    private PriorityQueue<ClockableEntry> createEventQueue(SchedulingDomain domain, long nowPs) {
+        PriorityQueue<ClockableEntry> queue = new PriorityQueue<>(Math.max(1, entries.size()), new Comparator<ClockableEntry>() {
+            @Override
+            public int compare(ClockableEntry o1, ClockableEntry o2) {
+                if (o1.nextDeadlinePs != o2.nextDeadlinePs) {
+                    return o1.nextDeadlinePs < o2.nextDeadlinePs ? -1 : 1;
+                }
+                // Same deadline: keep the order in which entries were added, like the step table does
+                return o1.order - o2.order;
+            }
+        });
+
+        int order = 0;
+        for (ClockableEntry entry : entries) {
+            if (domain != null && !domain.contains(entry)) {
+                order++;
+                continue;
+            }
+            entry.order = order++;
+            if (entry.clockable instanceof SkippableClockable) {
+                // Deadlines are recomputed below, so ticks that were skipped based on the old schedule are cancelled.
+                // The first one that has not elapsed is due again
+                int droppedTicks = ((SkippableClockable) entry.clockable).dropSkippedTicks();
+                if (droppedTicks > 0) {
+                    unskipTicks(entry, droppedTicks);
+                }
+                entry.hasSkippedTicks = false;
+            }
+            final int frequencyHz = entry.clockable.getFrequencyHz();
+            entry.isFrequencyZero = (frequencyHz <= 0);
+            if (!entry.isFrequencyZero) {
+                entry.periodPs = PS_PER_SEC / frequencyHz;
+                entry.periodRemainderPs = PS_PER_SEC % frequencyHz;
+                entry.frequencyHz = frequencyHz;
+                if (entry.enabled) {
+                    if (entry.nextDeadlinePs < nowPs) {
+                        entry.nextDeadlinePs = nowPs;
+                        entry.accumulatedRemainderPs = 0;
+                    }
+                    else if (entry.nextDeadlinePs > nowPs + entry.periodPs + (entry.periodRemainderPs == 0 ? 0 : 1)) {
+                        // A period is one picosecond longer when accumulated remainders add up
+                        entry.nextDeadlinePs = nowPs + entry.periodPs;
+                        entry.accumulatedRemainderPs = 0;
+                    }
+                    queue.add(entry);
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Moves the deadline of the given entry back by the given number of periods, reversing scheduleNextTick()
+     */
+    private void unskipTicks(ClockableEntry entry, int ticks) {
+        long remainderPs = entry.accumulatedRemainderPs - ticks * entry.periodRemainderPs;
+        long borrowPs = (remainderPs < 0) ? (entry.frequencyHz - 1 - remainderPs) / entry.frequencyHz : 0;
+        entry.nextDeadlinePs -= ticks * entry.periodPs + borrowPs;
+        entry.accumulatedRemainderPs = remainderPs + borrowPs * entry.frequencyHz;
+        entry.skippedTicks -= ticks;
+    }
+
+    /**
+     * Runs the clock using the deadline-based scheduler: the entry with the earliest deadline is run, then
+     * rescheduled one period later. Periods are kept exact by accumulating the remainder of PS_PER_SEC / frequency.
+     */
+    private void runEventDriven() {
+        List<ClockableEntry> entriesToDisable = new ArrayList<>();
+        rescheduleRequested = true;
+        while (running) {
+            if (rescheduleRequested) {
+                prepareEventSchedule();
+            }
+            notifyTimeListener();
+            ClockableEntry currentEntry = eventQueue.poll();
+            if (currentEntry == null) {
+                // Nothing enabled
+                running = false;
+                break;
+            }
+            if (!currentEntry.enabled) {
+                // Disabled in the meantime. It will be put back in the queue upon reschedule
+                continue;
+            }
+
+            totalElapsedTimePs = currentEntry.nextDeadlinePs;
+
+            try {
+                Object result = runTick(currentEntry);
+                if (result != null) {
+                    // A non-null result means this entry shouldn't run anymore
+                    entriesToDisable.add(currentEntry);
+                    // Warn the callback method
+                    if (currentEntry.clockableCallbackHandlerChip >=0) {
+                        clockableCallbackHandlers[currentEntry.clockableCallbackHandlerChip].onNormalExit(result);
+                    }
+                }
+            }
+            catch (Exception e) {
+                // In case of exception this entry shouldn't run anymore
+                entriesToDisable.add(currentEntry);
+                // Warn the callback method
+                if (currentEntry.clockableCallbackHandlerChip >=0) {
+                    clockableCallbackHandlers[currentEntry.clockableCallbackHandlerChip].onException(e);
+                }
+            }
+
+            scheduleNextTick(currentEntry, totalElapsedTimePs, currentEntry.enabled && !rescheduleRequested);
+
+            if (!entriesToDisable.isEmpty()) {
+                for (ClockableEntry entryToDisable : entriesToDisable) {
+                    disableEntry(entryToDisable);
+                }
+                entriesToDisable.clear();
+
+                // Check if all entries are disabled
+                if (allEntriesDisabled()) {
+                    // All entries are now disabled. Stop clock
+                    running = false;
+                }
+            }
+
+            if (currentEntry.enabled) {
+                eventQueue.add(currentEntry);
+            }
+        }
+    }
+
+    /**
+     * Runs one tick of the given entry. Ticks it skipped are applied first, as they all happened before this one
+     */
+    private Object runTick(ClockableEntry entry) throws Exception {
+        entry.ticks++;
+        if (entry.hasSkippedTicks) {
+            entry.hasSkippedTicks = false;
+            ((SkippableClockable) entry.clockable).dropSkippedTicks();
+        }
+        return entry.clockable.onClockTick();
+    }
+
+    /**
+     * Moves the deadline of the given entry one period later, or more if it can skip ticks
+     * @param nowPs the time of the tick that just ran
+     * @param canSkip false if the entry or its schedule is about to change
+     */
+    private void scheduleNextTick(ClockableEntry entry, long nowPs, boolean canSkip) {
+        // Compute next deadline
+        entry.nextDeadlinePs += entry.periodPs;
+        entry.accumulatedRemainderPs += entry.periodRemainderPs;
+        if (entry.accumulatedRemainderPs >= entry.frequencyHz) {
+            entry.accumulatedRemainderPs -= entry.frequencyHz;
+            entry.nextDeadlinePs++;
+        }
+
+        // Skip useless ticks, if possible
+        if (skipAhead && canSkip && entry.clockable instanceof SkippableClockable) {
+            SkippableClockable skippableClockable = (SkippableClockable) entry.clockable;
+            int ticks = skippableClockable.getSkippableTicks();
+            if (ticks > 0) {
+                skippableClockable.skipTicks(ticks, nowPs, entry.periodPs);
+                entry.skippedTicks += ticks;
+                entry.hasSkippedTicks = true;
+                long remainderPs = entry.accumulatedRemainderPs + ticks * entry.periodRemainderPs;
+                entry.nextDeadlinePs += ticks * entry.periodPs + remainderPs / entry.frequencyHz;
+                entry.accumulatedRemainderPs = remainderPs % entry.frequencyHz;
+            }
+        }
+    }
+
+    /**
+     * Runs the clock with one thread per chip. Each chip thread runs the clockables of its chip until the end of the
+     * quantum, or until a cross-chip event or the stop of an entry requests an early synchronization.
+     * At each synchronization point, with chip threads waiting, this thread delivers cross-chip events, processes
+     * stopped entries (callbacks, linked entries and syncPlay) and runs the clockables that are not bound to a chip.
+     */
+    private void runParallel() {
+        int numChips = Constants.CHIP_LABEL.length;
+        domains = new SchedulingDomain[numChips + 1];
+        for (int chip = 0; chip < numChips; chip++) {
+            domains[chip] = new SchedulingDomain(chip);
+        }
+        SchedulingDomain sharedDomain = new SchedulingDomain(SHARED_DOMAIN);
+        domains[numChips] = sharedDomain;
+        for (SchedulingDomain domain : domains) {
+            domain.timePs = totalElapsedTimePs;
+        }
+        // Force recomputing the steps if we switch back to the step table mode
+        steps = null;
+        rescheduleRequested = false;
+        if (syncQuantumPs <= 0) {
+            // e.g. state saved before this setting existed
+            syncQuantumPs = DEFAULT_SYNC_QUANTUM_PS;
+        }
+
+        CyclicBarrier barrier = new CyclicBarrier(numChips + 1);
+        syncRequested = false;
+        pendingCrossChipEvents = new ArrayList<>();
+        for (int chip = 0; chip < numChips; chip++) {
+            DomainThread domainThread = new DomainThread(domains[chip], barrier);
+            domainThread.start();
+        }
+
+        try {
+            while (running) {
+                // Let chips run until the end of the quantum, and wait for all of them to get there
+                quantumLimitPs = totalElapsedTimePs + syncQuantumPs;
+                barrier.await();
+                barrier.await();
+
+                // All chip threads are waiting. This is the synchronization point.
+                // Its time is the one reached by all chips, so that the next quantum ends at most one quantum ahead
+                // of the chip that is late
+                syncRequested = false;
+                boolean idle = true;
+                long syncTimePs = Long.MAX_VALUE;
+                for (int chip = 0; chip < numChips; chip++) {
+                    SchedulingDomain domain = domains[chip];
+                    if (domain.failure != null) {
+                        // Not an Exception thrown by a clockable. Clock is broken
+                        domain.failure.printStackTrace();
+                        running = false;
+                    }
+                    syncTimePs = Math.min(syncTimePs, domain.timePs);
+                    idle &= domain.isIdle();
+                }
+                totalElapsedTimePs = Math.max(totalElapsedTimePs, syncTimePs);
+
+                deliverCrossChipEvents();
+
+                for (int chip = 0; chip < numChips; chip++) {
+                    domains[chip].processStoppedEntries();
+                }
+
+                // Then catch up with clockables not bound to a chip. Stopped entries are processed immediately
+                sharedDomain.runUntil(totalElapsedTimePs + 1);
+                idle &= sharedDomain.isIdle();
+
+                if (rescheduleRequested) {
+                    rescheduleRequested = false;
+                    for (SchedulingDomain domain : domains) {
+                        domain.rescheduleRequested = true;
+                    }
+                    idle = false;
+                }
+
+                if (allEntriesDisabled() || idle) {
+                    // Nothing left to run. Stop clock
+                    running = false;
+                }
+                else if (!pendingCrossChipEvents.isEmpty()) {
+                    // Events posted during delivery. Next quantum will end immediately to deliver them
+                    syncRequested = true;
+                }
+            }
+            // Release chip threads, which will exit
+            barrier.await();
+        }
+        catch (InterruptedException | BrokenBarrierException e) {
+            e.printStackTrace();
+            running = false;
+            barrier.reset();
+        }
+        finally {
+            // From now on, cross-chip events are delivered directly
+            List<Runnable> events = pendingCrossChipEvents;
+            pendingCrossChipEvents = null;
+            synchronized (events) {
+                for (Runnable event : events) {
+                    event.run();
+                }
+            }
+            domains = null;
+        }
+    }
+
+    /**
+     * Delivers the events posted by chips since the last synchronization point, in order.
+     */
+    private void deliverCrossChipEvents() {
+        List<Runnable> events = pendingCrossChipEvents;
+        List<Runnable> eventsToDeliver;
+        synchronized (events) {
+            if (events.isEmpty()) {
+                return;
+            }
+            eventsToDeliver = new ArrayList<>(events);
+            events.clear();
+        }
+        for (Runnable event : eventsToDeliver) {
+            try {
+                event.run();
+            }
+            catch (RuntimeException e) {
+                // The chip that posted the event has already moved on, so there is nobody to warn
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Delivers an event from one chip to the other (e.g. a serial value or a pin change).
+     * When chips run in parallel, the event is queued and an early synchronization is requested, so that the event is
+     * delivered as soon as both chips are stopped. Otherwise, it is delivered immediately.
+     */
+    public void postCrossChipEvent(Runnable event) {
+        List<Runnable> events = pendingCrossChipEvents;
+        if (events != null) {
+            synchronized (events) {
+                // Check again, in case the clock stopped in the meantime
+                if (pendingCrossChipEvents == events) {
+                    events.add(event);
+                    syncRequested = true;
+                    return;
+                }
+            }
+        }
+        event.run();
+    }
+
+    /**
+     * Calls the callback handler of an entry that stopped, then disables it
+     */
+    private void stopEntry(ClockableEntry entry, Object result, Exception exception) {
+        if (entry.clockableCallbackHandlerChip >= 0) {
+            if (exception != null) {
+                clockableCallbackHandlers[entry.clockableCallbackHandlerChip].onException(exception);
+            }
+            else {
+                clockableCallbackHandlers[entry.clockableCallbackHandlerChip].onNormalExit(result);
+            }
+        }
+        disableEntry(entry);
     }
 
     public void enableClockable(Clockable clockable) {
@@ -311,6 +869,10 @@ public class MasterClock implements Runnable {
                 if (candidateEntry.clockable instanceof Emulator) {
                     setLinkedEntriesEnabled(candidateEntry.clockable.getChip(), true);
                 }
+                if (eventDriven) {
+                    // Newly enabled entries must be put back in the event queue
+                    requestResheduling();
+                }
                 break;
             }
         }
@@ -372,10 +934,23 @@ public class MasterClock implements Runnable {
 
     public void resetTotalElapsedTimePs() {
         totalElapsedTimePs = 0;
+        if (eventDriven) {
+            // Deadlines must be brought back close to the new time
+            requestResheduling();
+        }
     }
 
 
+    /**
+     * Returns the current emulated time.
+     * In parallel mode, this is the time of the chip whose thread calls this method, or the time of the last
+     * synchronization point when called from any other thread.
+     */
     public long getTotalElapsedTimePs() {
+        Thread currentThread = Thread.currentThread();
+        if (currentThread instanceof DomainThread) {
+            return ((DomainThread) currentThread).domain.timePs;
+        }
         return totalElapsedTimePs;
     }
 
@@ -387,6 +962,28 @@ public class MasterClock implements Runnable {
         this.totalElapsedTimePs = totalElapsedTimePs;
     }
 
+    /**
+     * Returns the number of times each clockable was run since it was added, for statistics
+     */
+    public Map<Clockable, Long> getTickCounts() {
+        Map<Clockable, Long> tickCounts = new LinkedHashMap<>();
+        for (ClockableEntry entry : entries) {
+            tickCounts.put(entry.clockable, entry.ticks);
+        }
+        return tickCounts;
+    }
+
+    /**
+     * Returns the number of ticks of each clockable that were skipped instead of run (see SkippableClockable)
+     */
+    public Map<Clockable, Long> getSkippedTickCounts() {
+        Map<Clockable, Long> skippedTickCounts = new LinkedHashMap<>();
+        for (ClockableEntry entry : entries) {
+            skippedTickCounts.put(entry.clockable, entry.skippedTicks);
+        }
+        return skippedTickCounts;
+    }
+
     public String getFormatedTotalElapsedTimeMs() {
         return milliSecondFormatter.format(totalElapsedTimePs/(double)PS_PER_MS) + "ms";
     }
@@ -459,6 +1056,26 @@ public class MasterClock implements Runnable {
         boolean isFrequencyZero;
         boolean isPrecise;
 
+        // Event driven mode
+        /** Position of this entry in the list, used to order entries with the same deadline */
+        int order;
+        int frequencyHz;
+        /** Time at which this entry must run next, in picoseconds */
+        long nextDeadlinePs;
+        /** Integer part of PS_PER_SEC / frequencyHz */
+        long periodPs;
+        /** Remainder of PS_PER_SEC / frequencyHz, accumulated to avoid drift */
+        long periodRemainderPs;
+        long accumulatedRemainderPs;
+        /** True if the ticks before nextDeadlinePs were skipped, see scheduleNextTick() */
+        boolean hasSkippedTicks;
+
+        // Statistics
+        /** Number of times onClockTick() was called */
+        long ticks;
+        /** Number of ticks skipped in skip-ahead mode */
+        long skippedTicks;
+
         public ClockableEntry(Clockable clockable, int clockableCallbackHandlerChip, boolean enabled, boolean isPrecise) {
             this.clockable = clockable;
             this.clockableCallbackHandlerChip = clockableCallbackHandlerChip;
@@ -472,6 +1089,142 @@ public class MasterClock implements Runnable {
         }
     }
 
+    /**
+     * A set of entries scheduled by deadline on the same thread, in parallel mode
+     */
+    private class SchedulingDomain {
+        /** The chip of the entries of this domain, or SHARED_DOMAIN */
+        final int chip;
+        PriorityQueue<ClockableEntry> eventQueue;
+        /** Time up to which this domain has run, in picoseconds */
+        long timePs;
+        boolean rescheduleRequested = true;
+        /** Entries that stopped or threw an Exception during the current quantum, with their result */
+        final List<ClockableEntry> stoppedEntries = new ArrayList<>();
+        final List<Object> stoppedEntryResults = new ArrayList<>();
+        /** Anything else thrown on the thread of this domain */
+        Throwable failure;
+
+        SchedulingDomain(int chip) {
+            this.chip = chip;
+        }
+
+        boolean contains(ClockableEntry entry) {
+            int entryChip = entry.clockable.getChip();
+            if (chip == SHARED_DOMAIN) {
+                return entryChip < 0 || entryChip >= domains.length - 1;
+            }
+            return entryChip == chip;
+        }
+
+        boolean isIdle() {
+            return !rescheduleRequested && eventQueue.isEmpty();
+        }
+
+        /**
+         * Runs all entries of this domain whose deadline is before limitPs.
+         * On a chip thread, stops early if a synchronization is requested, and leaves stopped entries to be processed
+         * at the synchronization point.
+         */
+        void runUntil(long limitPs) {
+            boolean onChipThread = (chip != SHARED_DOMAIN);
+            while (!(onChipThread && syncRequested)) {
+                if (rescheduleRequested) {
+                    rescheduleRequested = false;
+                    eventQueue = createEventQueue(this, timePs);
+                }
+                ClockableEntry currentEntry = eventQueue.peek();
+                if (currentEntry == null || currentEntry.nextDeadlinePs >= limitPs) {
+                    // Nothing else to run in this quantum
+                    timePs = Math.max(timePs, limitPs - 1);
+                    break;
+                }
+                eventQueue.poll();
+                if (!currentEntry.enabled) {
+                    // Disabled in the meantime. It will be put back in the queue upon reschedule
+                    continue;
+                }
+
+                timePs = currentEntry.nextDeadlinePs;
+
+                Object result;
+                Exception exception = null;
+                try {
+                    result = runTick(currentEntry);
+                }
+                catch (Exception e) {
+                    result = e;
+                    exception = e;
+                }
+
+                scheduleNextTick(currentEntry, timePs, result == null && !rescheduleRequested);
+
+                if (result == null) {
+                    eventQueue.add(currentEntry);
+                }
+                else if (onChipThread) {
+                    // This entry shouldn't run anymore. Other entries of this chip must stop too, so end quantum here
+                    stoppedEntries.add(currentEntry);
+                    stoppedEntryResults.add(result);
+                    syncRequested = true;
+                }
+                else {
+                    stopEntry(currentEntry, result, exception);
+                }
+            }
+        }
+
+        /**
+         * Calls the callback handlers of entries that stopped during the quantum, and disables them
+         */
+        void processStoppedEntries() {
+            for (int i = 0; i < stoppedEntries.size(); i++) {
+                Object result = stoppedEntryResults.get(i);
+                stopEntry(stoppedEntries.get(i), result, (result instanceof Exception) ? (Exception) result : null);
+            }
+            stoppedEntries.clear();
+            stoppedEntryResults.clear();
+        }
+    }
+
+    /**
+     * The thread running the entries of a chip, in parallel mode
+     */
+    private class DomainThread extends Thread {
+        private final SchedulingDomain domain;
+        private final CyclicBarrier    barrier;
+
+        DomainThread(SchedulingDomain domain, CyclicBarrier barrier) {
+            super(Constants.CHIP_LABEL[domain.chip] + " clock");
+            this.domain = domain;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    // Wait for the start of the quantum
+                    barrier.await();
+                    if (!running) {
+                        break;
+                    }
+                    try {
+                        domain.runUntil(quantumLimitPs);
+                    }
+                    catch (Throwable t) {
+                        domain.failure = t;
+                    }
+                    // Wait for the end of the quantum
+                    barrier.await();
+                }
+            }
+            catch (InterruptedException | BrokenBarrierException e) {
+                // Clock stopped abnormally
+            }
+        }
+    }
+
     static class ClockExecutionStep {
         long stepDurationPs;
         List<ClockableEntry> entriesToRunAtThisStep = new ArrayList<>();
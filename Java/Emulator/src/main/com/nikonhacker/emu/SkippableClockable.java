@@ -0,0 +1,32 @@
+package com.nikonhacker.emu;
+
+/**
+ * A Clockable which can tell in advance how many of its next ticks will have no effect other than changing its own
+ * internal state (e.g. a timer counting towards its next underflow or compare match).
+ * A deadline-based clock can then skip those ticks and only wake it up when something happens.
+ * Skipped ticks are not run, so the Clockable must compute its state lazily from the elapsed time when it is queried.
+ */
+public interface SkippableClockable extends Clockable {
+
+    /**
+     * @return the number of upcoming ticks that can be skipped, or 0 if the next tick must be run normally
+     */
+    public int getSkippableTicks();
+
+    /**
+     * Method called instead of running the given number of ticks
+     * @param ticks the number of ticks that will not be run, as returned by getSkippableTicks()
+     * @param startPs the time of the last tick that was run, in picoseconds
+     * @param periodPs the duration of a tick, in picoseconds
+     */
+    public void skipTicks(int ticks, long startPs, long periodPs);
+
+    /**
+     * Method called by the clock before the tick following skipped ones, or when ticks that were skipped will not
+     * happen after all (e.g. frequency change).
+     * Skipped ticks that have elapsed until now must be accounted for, and the remaining ones forgotten.
+     * @return the number of skipped ticks that were forgotten, here or because the Clockable requested a reschedule
+     * in the meantime. The clock will run them again
+     */
+    public int dropSkippedTicks();
+}
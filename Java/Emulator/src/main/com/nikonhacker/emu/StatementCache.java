@@ -0,0 +1,90 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.disassembly.Statement;
+import com.nikonhacker.emu.memory.CodeModificationListener;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+
+/**
+ * A cache of fully decoded statements, indexed by address with the same page/offset split as the memory page table.
+ * Statements are stored at halfword granularity, which is the smallest instruction alignment of both FR and TX.
+ * The cache registers itself to the memory so that entries are dropped as soon as the code they were decoded from is
+ * modified.
+ */
+public class StatementCache<T extends Statement> implements CodeModificationListener {
+
+    /** Maximum length of an instruction, in bytes (FR instructions can have 2 extension words) */
+    private static final int MAX_INSTRUCTION_LENGTH = 6;
+
+    private final DebuggableMemory memory;
+    private final int              offsetBits;
+    private final int              offsetMask;
+    private final int              entriesPerPage;
+
+    private Statement[][] pages;
+
+    public StatementCache(DebuggableMemory memory) {
+        this.memory = memory;
+        int pageSize = memory.getPageSize();
+        offsetBits = Integer.numberOfTrailingZeros(pageSize);
+        offsetMask = pageSize - 1;
+        entriesPerPage = pageSize >>> 1;
+        pages = new Statement[memory.getNumPages()][];
+        memory.addCodeModificationListener(this);
+    }
+
+    public DebuggableMemory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the statement decoded at the given address, or null if none
+     * @param address the address of the instruction
+     */
+    @SuppressWarnings("unchecked")
+    public final T get(int address) {
+        Statement[] page = pages[address >>> offsetBits];
+        if (page == null) {
+            return null;
+        }
+        return (T) page[(address & offsetMask) >>> 1];
+    }
+
+    /**
+     * Stores a fully decoded statement for the given address
+     * @param address the address of the instruction
+     * @param statement the decoded statement
+     */
+    public final void put(int address, T statement) {
+        int pte = address >>> offsetBits;
+        Statement[] page = pages[pte];
+        if (page == null) {
+            page = new Statement[entriesPerPage];
+            pages[pte] = page;
+        }
+        page[(address & offsetMask) >>> 1] = statement;
+    }
+
+    /**
+     * Stop being notified of code modifications. Must be called when the cache is discarded.
+     */
+    public void dispose() {
+        memory.removeCodeModificationListener(this);
+    }
+
+    @Override
+    public void onCodeModified(int address) {
+        // Drop all statements that could include the modified byte
+        int firstAddress = (address - MAX_INSTRUCTION_LENGTH + 1) & ~1;
+        for (int instructionAddress = firstAddress; instructionAddress != ((address + 2) & ~1); instructionAddress += 2) {
+            Statement[] page = pages[instructionAddress >>> offsetBits];
+            if (page != null) {
+                page[(instructionAddress & offsetMask) >>> 1] = null;
+            }
+        }
+    }
+
+    @Override
+    public void onAllCodeModified() {
+        pages = new Statement[pages.length][];
+    }
+}
@@ -2,7 +2,10 @@ package com.nikonhacker.emu;
 
 import com.nikonhacker.Constants;
 import com.nikonhacker.Format;
+import com.nikonhacker.disassembly.DisassemblyException;
+import com.nikonhacker.disassembly.Instruction;
 import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.Statement;
 import com.nikonhacker.disassembly.tx.TxCPUState;
 import com.nikonhacker.disassembly.tx.TxInstructionSet;
 import com.nikonhacker.disassembly.tx.TxStatement;
@@ -10,20 +13,52 @@ import com.nikonhacker.emu.interrupt.InterruptRequest;
 import com.nikonhacker.emu.interrupt.tx.TxInterruptRequest;
 import com.nikonhacker.emu.peripherials.clock.tx.TxClockGenerator;
 import com.nikonhacker.emu.peripherials.interruptController.tx.TxInterruptController;
+import com.nikonhacker.emu.trace.ExecutionTraceRecorder;
 import com.nikonhacker.emu.trigger.condition.BreakCondition;
-import com.nikonhacker.gui.component.disassembly.DisassemblyLogger;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 
 public class TxEmulator extends Emulator {
 
+    /** Maximum number of statements in a basic block. Keeps blocks within BasicBlockCache.MAX_BLOCK_LENGTH bytes */
+    private static final int MAX_BLOCK_STATEMENTS = 48;
+
     private Set<OutputOption> lastOutputOptions;
     private boolean lastOutputOptionsValid = false;
 
+    /** Statement reused for each instruction in single-step mode */
+    private TxStatement uncachedStatement = new TxStatement();
+
+    /**
+     * If true, straight-line code is decoded once into basic blocks, and a whole block is run per clock slot.
+     * Interrupts and break conditions are then only checked at block edges.
+     */
+    private boolean blockExecutionMode = false;
+
+    /** Basic block caches, one for the 32-bit ISA (index 0) and one for the 16-bit ISA (index 1) */
+    private BasicBlockCache[] blockCaches;
+
+    /** Number of clock ticks still to skip, because they were consumed by the last block. Reset when emulation stops */
+    private int pendingTicks;
+
     public TxEmulator(Platform platform) {
         super(platform);
-        statement = new TxStatement();
+        statement = uncachedStatement;
+    }
+
+    public boolean isBlockExecutionMode() {
+        return blockExecutionMode;
+    }
+
+    /**
+     * Called each time emulation starts. Ticks left over by a block run before the last stop are dropped
+     */
+    public void setBlockExecutionMode(boolean blockExecutionMode) {
+        this.blockExecutionMode = blockExecutionMode;
+        pendingTicks = 0;
     }
 
     @Override
@@ -60,117 +95,331 @@ public class TxEmulator extends Emulator {
     public BreakCondition onClockTick() throws EmulationException {
         // TODO skip clock ticks if previous instruction required several cycles
 
-        try {
-            statement.reset();
-
-            if (((TxCPUState) platform.cpuState).is16bitIsaMode) {
-                // FETCH
-                ((TxStatement)statement).fill16bInstruction(platform.memory.loadInstruction16(platform.cpuState.pc), platform.cpuState.pc, platform.memory);
-                // DECODE
-                ((TxStatement)statement).decode16BitOperands(platform.cpuState.pc);
+        if (blockExecutionMode) {
+            // Skip clock ticks if previous block executed several instructions
+            if (pendingTicks > 0) {
+                pendingTicks--;
+                return null;
             }
-            else {
-                // FETCH
-                ((TxStatement)statement).fill32bInstruction(platform.memory.loadInstruction32(platform.cpuState.pc));
-                // DECODE
-                ((TxStatement)statement).decode32BitOperands();
+            if (canExecuteBlock()) {
+                return executeBlock();
             }
+        }
+
+        try {
+            if (uncachedStatement == null) {
+                // XStream restore
+                uncachedStatement = new TxStatement();
+            }
+            statement = uncachedStatement;
+            fetchAndDecode(uncachedStatement, platform.cpuState.pc, ((TxCPUState) platform.cpuState).is16bitIsaMode);
 
             // LOG
             logIfRequested(logger);
 
             // ACTUAL INSTRUCTION EXECUTION
             statement.getInstruction().getSimulationCode().simulate(statement, context);
+            if (context.hasPendingCallTarget) {
+                context.resolveCallTarget();
+            }
 
             // Notify CPU cycle listeners
-            int cycleListenerNumber = 0;
-            while (cycleListenerNumber < cycleCounterListeners.size()) {
-                CycleCounterListener cycleCounterListener = cycleCounterListeners.get(cycleListenerNumber);
-                if (cycleCounterListener.onCycleCountChange(totalCycles, 1)) {
-                    cycleListenerNumber++;
-                }
-                else {
-                    cycleCounterListeners.remove(cycleCounterListener);
+            notifyCycleCounterListeners(1);
+
+            totalCycles ++; // approximation
+            if (totalCycles >= nextCycleDeadline) {
+                notifyCycleDeadlineListeners();
+            }
+
+            if (!processDelaySlot()) {
+                // If not in a delay slot, check interrupts
+                checkInterrupts();
+            }
+
+            // Process breakConditions
+            if (breakConditionsPresent) {
+                BreakCondition breakCondition = processConditions();
+                if (breakCondition != null) {
+                    return breakCondition;
                 }
             }
 
-            totalCycles ++; // approximation
+            /* Pause if requested */
+            if (sleepIntervalMs != 0) {
+                sleep();
+            }
+        }
+        catch (Exception e) {
+            throw reportException(e);
+        }
+        return null;
+    }
+
+    @Override
+    protected int getTraceFlags() {
+        return ((TxCPUState) platform.cpuState).is16bitIsaMode ? ExecutionTraceRecorder.FLAG_ISA16 : 0;
+    }
 
-            /* Delay slot processing */
-            if (context.nextPc != null) {
-                if (context.delaySlotDone) {
-                    platform.cpuState.setPc(context.nextPc);
-                    context.nextPc = null;
-                    if (context.nextReturnAddress != null) {
-                        int targetRegister = TxCPUState.RA;
-                        if (context.nextReturnAddressTargetRegister != null) {
-                            targetRegister = context.nextReturnAddressTargetRegister;
-                            context.nextReturnAddressTargetRegister = null;
-                        }
-                        platform.cpuState.setReg(targetRegister, context.nextReturnAddress);
-                        context.nextReturnAddress = null;
+    private void fetchAndDecode(TxStatement txStatement, int pc, boolean is16bitIsaMode) throws DisassemblyException {
+        txStatement.reset();
+
+        if (is16bitIsaMode) {
+            // FETCH
+            txStatement.fill16bInstruction(platform.memory.loadInstruction16(pc), pc, platform.memory);
+            // DECODE
+            txStatement.decode16BitOperands(pc);
+        }
+        else {
+            // FETCH
+            txStatement.fill32bInstruction(platform.memory.loadInstruction32(pc));
+            // DECODE
+            txStatement.decode32BitOperands();
+        }
+    }
+
+    /**
+     * Performs delay slot processing after an instruction has been executed
+     * @return true if the instruction was a branch or was in a delay slot, false otherwise
+     */
+    private boolean processDelaySlot() {
+        if (context.hasNextPc) {
+            if (context.delaySlotDone) {
+                platform.cpuState.setPc(context.nextPc);
+                context.hasNextPc = false;
+                if (context.hasNextReturnAddress) {
+                    int targetRegister = TxCPUState.RA;
+                    if (context.hasNextReturnAddressTargetRegister) {
+                        targetRegister = context.nextReturnAddressTargetRegister;
+                        context.hasNextReturnAddressTargetRegister = false;
                     }
-                }
-                else {
-                    context.delaySlotDone = true;
+                    platform.cpuState.setReg(targetRegister, context.nextReturnAddress);
+                    context.hasNextReturnAddress = false;
                 }
             }
             else {
-                // If not in a delay slot, check interrupts
-                if(platform.interruptController.hasPendingRequests()) { // This call is not synchronized, so it skips fast
-                    final InterruptRequest interruptRequest = platform.interruptController.getNextRequest();
-                    //Double test because lack of synchronization means the status could have changed in between
-                    if (interruptRequest != null) {
-                        if (platform.cpuState.accepts(interruptRequest)){
-                            if (logger != null) {
-                                DisassemblyLogger printer2 = logger;
-                                if (printer2 != null) {
-                                    if(printer2.isIncludeInterruptMarks()) {
-                                        printer2.println(platform.getMasterClock().getFormatedTotalElapsedTimeMs() + " ------------------------- Accepting " + interruptRequest);
-                                    }
-                                    printer2.indent();
-                                }
-                            }
-                            // TODO : We probably should not remove the request from queue automatically.
-                            // TODO   This has to be done explicitely by writing to INTCLR register
-                            platform.interruptController.removeEdgeTriggeredRequest(interruptRequest);
-                            // TODO : Currently, interrupts are not checked in delay slots (see above).
-                            // TODO   Permit that and use address of branch instruction instead of PC if in delay slot !
-                            // Note : must use getPc() so that current ISA mode is stored and restored when returning from interrupt
-                            context.pushInterrupt(interruptRequest);
-                            ((TxInterruptController)platform.interruptController).processInterrupt((TxInterruptRequest) interruptRequest, platform.cpuState.getPc(), context);
-                        }
+                context.delaySlotDone = true;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void checkInterrupts() {
+        // Lock-free check that a pending request is of a priority the CPU currently accepts
+        if((platform.interruptController.getPendingPriorityClasses() & platform.cpuState.getAcceptedPriorityClasses()) != 0) {
+            final InterruptRequest interruptRequest = platform.interruptController.getNextRequest();
+            //Double test because lack of synchronization means the status could have changed in between
+            if (interruptRequest != null) {
+                if (platform.cpuState.accepts(interruptRequest)){
+                    logInterruptIfRequested(interruptRequest);
+                    // TODO : We probably should not remove the request from queue automatically.
+                    // TODO   This has to be done explicitely by writing to INTCLR register
+                    platform.interruptController.removeEdgeTriggeredRequest(interruptRequest);
+                    // TODO : Currently, interrupts are not checked in delay slots (see above).
+                    // TODO   Permit that and use address of branch instruction instead of PC if in delay slot !
+                    // Note : must use getPc() so that current ISA mode is stored and restored when returning from interrupt
+                    context.pushInterrupt(interruptRequest);
+                    ((TxInterruptController)platform.interruptController).processInterrupt((TxInterruptRequest) interruptRequest, platform.cpuState.getPc(), context);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if the next instructions can be run as a block. Blocks are only used when nothing needs to observe
+     * each instruction: no disassembly logging, no pause between instructions, no memory listener watching
+     * instruction fetches, and no break condition other than PC-based ones.
+     */
+    private boolean canExecuteBlock() {
+        if (sleepIntervalMs != 0 || context.hasNextPc) {
+            return false;
+        }
+        if (logger != null && logger.isLogging()) {
+            return false;
+        }
+        if (platform.memory.isInstructionFetchObserved()) {
+            return false;
+        }
+        //noinspection SimplifiableIfStatement
+        if (breakConditionsPresent && compiledBreakConditions.hasNonPcConditions()) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs a whole basic block, then checks interrupts and break conditions once. The block is left early if the flow
+     * leaves it, or if one of its statements modifies its code.
+     * Following clock ticks are skipped so that the average number of instructions per tick remains one.
+     */
+    private BreakCondition executeBlock() throws EmulationException {
+        TxCPUState cpuState = (TxCPUState) platform.cpuState;
+        boolean is16bitIsaMode = cpuState.is16bitIsaMode;
+        int numExecuted = 0;
+        try {
+            BasicBlockCache blockCache = getBlockCache(is16bitIsaMode);
+            BasicBlock block = blockCache.get(cpuState.pc);
+            if (block == null) {
+                block = buildBlock(cpuState.pc, is16bitIsaMode);
+                blockCache.put(block);
+            }
+
+            boolean singleStep = breakConditionsPresent && hasPcBreakConditionInside(block);
+            int numStatements = singleStep ? 1 : block.statements.length;
+            boolean inDelaySlot = false;
+
+            for (int i = 0; i < numStatements; i++) {
+                statement = block.statements[i];
+
+                // Maintain call indentation even when not logging, like in single-step mode
+                if (logger != null && logger.isIncludeIndent()) {
+                    switch (statement.getInstruction().getFlowType()) {
+                        case CALL:
+                        case INT:
+                            logger.indent();
+                            break;
+                        case RET:
+                            logger.outdent();
+                            break;
                     }
                 }
+
+                // ACTUAL INSTRUCTION EXECUTION
+                statement.getInstruction().getSimulationCode().simulate(statement, context);
+                if (context.hasPendingCallTarget) {
+                    context.resolveCallTarget();
+                }
+                numExecuted++;
+                totalCycles++; // approximation
+
+                inDelaySlot = processDelaySlot();
+
+                // Leave the block if the flow did not follow the straight line (taken branch, skipped delay slot,
+                // exception, ISA mode change...), or if a store modified the code of the block: the following
+                // statements must then be fetched again
+                if (i + 1 < numStatements
+                        && (cpuState.pc != block.addresses[i + 1] || cpuState.is16bitIsaMode != is16bitIsaMode
+                            || block.invalidated)) {
+                    break;
+                }
             }
 
+            // Notify CPU cycle listeners
+            notifyCycleCounterListeners(numExecuted);
+            if (totalCycles >= nextCycleDeadline) {
+                notifyCycleDeadlineListeners();
+            }
+
+            // Like in single-step mode, interrupts are not checked after a branch or its delay slot
+            if (!inDelaySlot) {
+                checkInterrupts();
+            }
+
+            pendingTicks = numExecuted - 1;
+
             // Process breakConditions
             if (breakConditionsPresent) {
                 BreakCondition breakCondition = processConditions();
                 if (breakCondition != null) {
+                    // Emulation stops here: don't make it skip ticks when it resumes
+                    pendingTicks = 0;
                     return breakCondition;
                 }
             }
+        }
+        catch (Exception e) {
+            throw reportException(e);
+        }
+        return null;
+    }
+
+    private BasicBlockCache getBlockCache(boolean is16bitIsaMode) {
+        if (blockCaches == null || blockCaches[0].getMemory() != platform.memory) {
+            // First run, or memory was replaced (e.g. state reload)
+            if (blockCaches != null) {
+                blockCaches[0].dispose();
+                blockCaches[1].dispose();
+            }
+            blockCaches = new BasicBlockCache[]{new BasicBlockCache(platform.memory), new BasicBlockCache(platform.memory)};
+        }
+        return blockCaches[is16bitIsaMode ? 1 : 0];
+    }
 
-            /* Pause if requested */
-            if (sleepIntervalMs != 0) {
-                sleep();
+    /**
+     * Decodes statements from the given address until a flow change instruction and its delay slot, or until
+     * the maximum block size is reached. If a statement after the first one cannot be decoded (e.g. data following
+     * a trapping instruction), the block stops before it so that the error only occurs if it is actually executed.
+     */
+    private BasicBlock buildBlock(int startAddress, boolean is16bitIsaMode) throws DisassemblyException {
+        List<Statement> statements = new ArrayList<Statement>();
+        List<Integer> addresses = new ArrayList<Integer>();
+        int address = startAddress;
+        boolean endOfBlock = false;
+        while (!endOfBlock) {
+            TxStatement txStatement = decodeForBlock(address, is16bitIsaMode, statements.isEmpty());
+            if (txStatement == null) {
+                break;
+            }
+            statements.add(txStatement);
+            addresses.add(address);
+            address += txStatement.getNumBytes();
+
+            Instruction instruction = txStatement.getInstruction();
+            if (instruction.getFlowType() != Instruction.FlowType.NONE) {
+                if (instruction.hasDelaySlot()) {
+                    // Include the delay slot in the block
+                    TxStatement delaySlotStatement = decodeForBlock(address, is16bitIsaMode, false);
+                    if (delaySlotStatement != null) {
+                        statements.add(delaySlotStatement);
+                        addresses.add(address);
+                        address += delaySlotStatement.getNumBytes();
+                    }
+                }
+                endOfBlock = true;
             }
+            else if (statements.size() >= MAX_BLOCK_STATEMENTS) {
+                endOfBlock = true;
+            }
+        }
+
+        int[] addressArray = new int[addresses.size()];
+        for (int i = 0; i < addressArray.length; i++) {
+            addressArray[i] = addresses.get(i);
+        }
+        return new BasicBlock(startAddress, address, statements.toArray(new Statement[statements.size()]), addressArray);
+    }
+
+    /**
+     * Decodes one statement for a block
+     * @param mustSucceed if true, decoding errors are thrown. Otherwise, null is returned
+     */
+    private TxStatement decodeForBlock(int address, boolean is16bitIsaMode, boolean mustSucceed) throws DisassemblyException {
+        TxStatement txStatement = new TxStatement();
+        if (mustSucceed) {
+            fetchAndDecode(txStatement, address, is16bitIsaMode);
+            return txStatement;
+        }
+        try {
+            fetchAndDecode(txStatement, address, is16bitIsaMode);
         }
         catch (Exception e) {
-            e.printStackTrace();
-            System.err.println(e.getMessage());
-            System.err.println(platform.cpuState);
-            try {
-                statement.formatOperandsAndComment(context, false, outputOptions);
-                System.err.println("Offending instruction : " + statement);
-            } catch (Exception e1) {
-                System.err.println("Cannot disassemble offending instruction :" + statement.getFormattedBinaryStatement());
-            }
-            System.err.println("(on or before PC=0x" + Format.asHex(platform.cpuState.pc, 8) + ")");
-            throw new EmulationException(e);
+            return null;
         }
-        return null;
+        return (txStatement.getInstruction() == null) ? null : txStatement;
+    }
+
+    private EmulationException reportException(Exception e) {
+        e.printStackTrace();
+        System.err.println(e.getMessage());
+        System.err.println(platform.cpuState);
+        try {
+            statement.formatOperandsAndComment(context, false, outputOptions);
+            System.err.println("Offending instruction : " + statement);
+        } catch (Exception e1) {
+            System.err.println("Cannot disassemble offending instruction :" + statement.getFormattedBinaryStatement());
+        }
+        System.err.println("(on or before PC=0x" + Format.asHex(platform.cpuState.pc, 8) + ")");
+        return new EmulationException(e);
     }
 
 }
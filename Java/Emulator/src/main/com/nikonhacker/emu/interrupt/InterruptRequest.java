@@ -19,6 +19,13 @@ public abstract class InterruptRequest implements Comparable {
      */
     public abstract int getPriority();
 
+    /**
+     * Returns the class of this request regarding CPU acceptance, between 0 and 63.
+     * Requests of the same class are either all accepted or all refused by the CPU,
+     * and the CPU's accepted classes are given by {@link com.nikonhacker.disassembly.CPUState#getAcceptedPriorityClasses()}
+     */
+    public abstract int getPriorityClass();
+
     /**
      * Comparing request priority. Most important comes first
      * @param o
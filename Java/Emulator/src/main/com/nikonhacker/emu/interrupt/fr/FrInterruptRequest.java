@@ -49,4 +49,11 @@ public class FrInterruptRequest extends InterruptRequest {
     public int getPriority() {
         return (isNMI?-0x10000:0) + (icr << 8) + interruptNumber;
     }
+
+    /**
+     * Class is 31-icr, so that a lower ICR gives a higher class, plus 32 for NMI
+     */
+    public int getPriorityClass() {
+        return (isNMI ? 32 : 0) + 31 - (icr & 0x1F);
+    }
 }
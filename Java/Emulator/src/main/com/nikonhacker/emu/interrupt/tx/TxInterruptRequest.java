@@ -91,6 +91,13 @@ public class TxInterruptRequest extends InterruptRequest {
         return -(getType().getPriority() << 12) - (getLevel() << 8) + interruptNumber;
     }
 
+    /**
+     * The class is the level, as that is the only criterion for acceptance
+     */
+    public int getPriorityClass() {
+        return level & 0x7;
+    }
+
     @Override
     public String toString() {
         if (type==Type.HARDWARE_INTERRUPT) {
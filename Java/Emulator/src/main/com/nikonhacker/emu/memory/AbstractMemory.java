@@ -6,7 +6,10 @@ import com.nikonhacker.disassembly.Range;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /*
  * Part of this file is taken from PearColator project
@@ -35,8 +38,20 @@ public abstract class AbstractMemory implements Memory {
     byte writableMemory[][];
     byte executableMemory[][];
 
-    /** Do we have more optimal nio mmap operation? */
-    boolean HAVE_java_nio_FileChannelImpl_nio_mmap_file = false;
+    /**
+     * For each page, true if it is shared with other memories (see SharedFilePages). Such a page is mapped readable
+     * and executable, and writableMemory is null until the first write, which replaces it by a private copy
+     */
+    boolean isSharedPage[];
+
+    /** Files some pages were shared with, kept so that they are not read again while this memory may use them */
+    private Set<SharedFilePages> sharedFiles;
+
+    /**
+     * A page of zeros, shared by all memories, that serves reads of pages that were never written to, so that only
+     * pages actually written to take memory. It is mapped as a shared page, and thus never written to
+     */
+    static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
 
     protected boolean logMemoryMessages = true;
 
@@ -53,6 +68,8 @@ public abstract class AbstractMemory implements Memory {
         readableMemory = new byte[NUM_PAGES][];
         writableMemory = new byte[NUM_PAGES][];
         executableMemory = new byte[NUM_PAGES][];
+        isSharedPage = new boolean[NUM_PAGES];
+        sharedFiles = new HashSet<SharedFilePages>();
     }
 
     /** Return the offset part of the address */
@@ -65,6 +82,79 @@ public abstract class AbstractMemory implements Memory {
         return address >>> OFFSET_BITS;
     }
 
+    /** Return true if a halfword at this offset lies entirely within its page */
+    static boolean isInPage16(int offset) {
+        return offset <= PAGE_SIZE - 2;
+    }
+
+    /** Return true if a word at this offset lies entirely within its page */
+    static boolean isInPage32(int offset) {
+        return offset <= PAGE_SIZE - 4;
+    }
+
+    // The methods below access a halfword or word inside a single page, so that a multi-byte access only requires
+    // one page table lookup. Accesses that straddle two pages must still be performed byte by byte.
+
+    /** Read a sign extended big endian halfword */
+    static int readSigned16BE(byte[] pageData, int offset) {
+        return (pageData[offset] << 8) | (pageData[offset + 1] & 0xFF);
+    }
+
+    /** Read a zero extended big endian halfword */
+    static int readUnsigned16BE(byte[] pageData, int offset) {
+        return ((pageData[offset] & 0xFF) << 8) | (pageData[offset + 1] & 0xFF);
+    }
+
+    /** Read a big endian word */
+    static int read32BE(byte[] pageData, int offset) {
+        return (pageData[offset] << 24) | ((pageData[offset + 1] & 0xFF) << 16)
+                | ((pageData[offset + 2] & 0xFF) << 8) | (pageData[offset + 3] & 0xFF);
+    }
+
+    /** Write a big endian halfword */
+    static void write16BE(byte[] pageData, int offset, int value) {
+        pageData[offset] = (byte) (value >> 8);
+        pageData[offset + 1] = (byte) value;
+    }
+
+    /** Write a big endian word */
+    static void write32BE(byte[] pageData, int offset, int value) {
+        pageData[offset] = (byte) (value >> 24);
+        pageData[offset + 1] = (byte) (value >> 16);
+        pageData[offset + 2] = (byte) (value >> 8);
+        pageData[offset + 3] = (byte) value;
+    }
+
+    /** Read a sign extended little endian halfword */
+    static int readSigned16LE(byte[] pageData, int offset) {
+        return (pageData[offset + 1] << 8) | (pageData[offset] & 0xFF);
+    }
+
+    /** Read a zero extended little endian halfword */
+    static int readUnsigned16LE(byte[] pageData, int offset) {
+        return ((pageData[offset + 1] & 0xFF) << 8) | (pageData[offset] & 0xFF);
+    }
+
+    /** Read a little endian word */
+    static int read32LE(byte[] pageData, int offset) {
+        return (pageData[offset + 3] << 24) | ((pageData[offset + 2] & 0xFF) << 16)
+                | ((pageData[offset + 1] & 0xFF) << 8) | (pageData[offset] & 0xFF);
+    }
+
+    /** Write a little endian halfword */
+    static void write16LE(byte[] pageData, int offset, int value) {
+        pageData[offset + 1] = (byte) (value >> 8);
+        pageData[offset] = (byte) value;
+    }
+
+    /** Write a little endian word */
+    static void write32LE(byte[] pageData, int offset, int value) {
+        pageData[offset + 3] = (byte) (value >> 24);
+        pageData[offset + 2] = (byte) (value >> 16);
+        pageData[offset + 1] = (byte) (value >> 8);
+        pageData[offset] = (byte) value;
+    }
+
     /**
      * Find free consecutive pages
      *
@@ -130,8 +220,8 @@ public abstract class AbstractMemory implements Memory {
         int pte = getPTE(addr);
         for (int i = 0; i < numPages; i++) {
 
-            // Check pages aren't already allocated
-            if (getPage(pte + i) != null) {
+            // Check pages aren't already allocated. Pages only read so far were never really allocated
+            if (getPage(pte + i) != null && !isZeroPage(pte + i)) {
                 if (!strictNewAlloc)
                     continue;
                 throw new Error("Memory map of already mapped location addr=0x"
@@ -142,11 +232,162 @@ public abstract class AbstractMemory implements Memory {
             readableMemory[pte + i] = read ? pages[i] : new byte[0];
             writableMemory[pte + i] = write ? pages[i] : new byte[0];
             executableMemory[pte + i] = exec ? pages[i] : new byte[0];
+            isSharedPage[pte + i] = false;
         }
 
         return addr;
     }
 
+    /**
+     * Returns the page to write to at the given address. An unmapped page is mapped, and a page shared with other
+     * memories is replaced by a private copy
+     *
+     * @param addr the address to write to
+     * @return the page data
+     */
+    final byte[] getWritablePage(int addr) {
+        int pte = getPTE(addr);
+        if (writableMemory[pte] == null) {
+            if (isSharedPage[pte]) {
+                makePagePrivate(pte);
+            }
+            else {
+                map(truncateToPage(addr), PAGE_SIZE, true, true, true);
+            }
+        }
+        return writableMemory[pte];
+    }
+
+    /**
+     * Returns the page to read from at the given address. An unmapped page is mapped to the zero page, so that memory
+     * is only allocated on first write
+     *
+     * @param addr the address to read from
+     * @return the page data
+     */
+    final byte[] getReadablePage(int addr) {
+        int pte = getPTE(addr);
+        if (readableMemory[pte] == null) {
+            if (getPage(pte) == null) {
+                mapSharedPage(pte, ZERO_PAGE, false);
+            }
+            else {
+                // Mapped, but not readable
+                map(truncateToPage(addr), PAGE_SIZE, true, true, true);
+            }
+        }
+        return readableMemory[pte];
+    }
+
+    /**
+     * @return true if the given page was only read so far, and is thus still mapped to the zero page
+     */
+    final boolean isZeroPage(int pte) {
+        return readableMemory[pte] == ZERO_PAGE;
+    }
+
+    /**
+     * Maps a page shared with other memories, which will be copied on first write unless write protected
+     */
+    private void mapSharedPage(int pte, byte[] page, boolean isWriteProtected) {
+        readableMemory[pte] = page;
+        writableMemory[pte] = isWriteProtected ? new byte[0] : null;
+        executableMemory[pte] = page;
+        isSharedPage[pte] = true;
+    }
+
+    /**
+     * Replaces a page shared with other memories by a copy of it, keeping the same protections
+     */
+    private void makePagePrivate(int pte) {
+        byte[] sharedPage = readableMemory[pte];
+        byte[] page = Arrays.copyOf(sharedPage, PAGE_SIZE);
+        readableMemory[pte] = page;
+        if (writableMemory[pte] == null) {
+            writableMemory[pte] = page;
+        }
+        if (executableMemory[pte] == sharedPage) {
+            executableMemory[pte] = page;
+        }
+        isSharedPage[pte] = false;
+    }
+
+    /**
+     * @return the page data at the given page table entry, ignoring arrays standing for missing rights, or null if
+     * the page is not mapped or has no rights at all
+     */
+    private byte[] getPageData(int pte) {
+        if (readableMemory[pte] != null && readableMemory[pte].length == PAGE_SIZE) return readableMemory[pte];
+        if (writableMemory[pte] != null && writableMemory[pte].length == PAGE_SIZE) return writableMemory[pte];
+        if (executableMemory[pte] != null && executableMemory[pte].length == PAGE_SIZE) return executableMemory[pte];
+        return null;
+    }
+
+    /**
+     * Captures the contents and rights of all pages.
+     * Readable and executable pages are not copied but shared with the snapshot, and copied on their next write, so
+     * the cost of a snapshot is mostly paid by the pages written to afterwards.
+     */
+    public PageSnapshot takeSnapshot() {
+        byte[][] pages = new byte[NUM_PAGES][];
+        byte[] flags = new byte[NUM_PAGES];
+        for (int pte = 0; pte < NUM_PAGES; pte++) {
+            if (getPage(pte) == null) {
+                continue;
+            }
+            byte[] page = getPageData(pte);
+            if (page == null) {
+                // Mapped without any rights
+                flags[pte] = (byte) PageSnapshot.MAPPED;
+                pages[pte] = ZERO_PAGE;
+                continue;
+            }
+            boolean isWritable = writableMemory[pte] == page || (writableMemory[pte] == null && isSharedPage[pte]);
+            flags[pte] = (byte) (PageSnapshot.MAPPED
+                    | (readableMemory[pte] == page ? PageSnapshot.READ : 0)
+                    | (isWritable ? PageSnapshot.WRITE : 0)
+                    | (executableMemory[pte] == page ? PageSnapshot.EXEC : 0));
+            if (readableMemory[pte] == page && executableMemory[pte] == page) {
+                if (!isSharedPage[pte]) {
+                    mapSharedPage(pte, page, !isWritable);
+                }
+                pages[pte] = page;
+            }
+            else {
+                // Shared pages are always readable and executable
+                pages[pte] = Arrays.copyOf(page, PAGE_SIZE);
+            }
+        }
+        return new PageSnapshot(pages, flags);
+    }
+
+    /**
+     * Restores the contents and rights of all pages as captured by takeSnapshot(). Pages are shared with the snapshot
+     * and only copied on write, so that the snapshot can be restored again later.
+     */
+    public void restoreSnapshot(PageSnapshot snapshot) {
+        for (int pte = 0; pte < NUM_PAGES; pte++) {
+            byte[] page = snapshot.pages[pte];
+            int flags = snapshot.flags[pte];
+            if (page == null) {
+                readableMemory[pte] = null;
+                writableMemory[pte] = null;
+                executableMemory[pte] = null;
+                isSharedPage[pte] = false;
+            }
+            else if ((flags & (PageSnapshot.READ | PageSnapshot.EXEC)) == (PageSnapshot.READ | PageSnapshot.EXEC)) {
+                mapSharedPage(pte, page, (flags & PageSnapshot.WRITE) == 0);
+            }
+            else {
+                page = Arrays.copyOf(page, PAGE_SIZE);
+                readableMemory[pte] = (flags & PageSnapshot.READ) != 0 ? page : new byte[0];
+                writableMemory[pte] = (flags & PageSnapshot.WRITE) != 0 ? page : new byte[0];
+                executableMemory[pte] = (flags & PageSnapshot.EXEC) != 0 ? page : new byte[0];
+                isSharedPage[pte] = false;
+            }
+        }
+    }
+
     /**
      * Map a page of memory from file
      *
@@ -183,68 +424,29 @@ public abstract class AbstractMemory implements Memory {
         try {
             // Get page table entry
             int pte = getPTE(addr);
-            // Can we optimise the reads to use mmap?
-            if (!HAVE_java_nio_FileChannelImpl_nio_mmap_file) {
-                // Sub-optimal
-                file.seek(offset);
-                for (int i = 0; i < num_pages; i++) {
-                    // Check pages aren't already allocated
-                    if (getPage(pte + i) != null) {
-                        throw new Error("Memory map of already mapped location addr=0x" + Integer.toHexString(addr) + " len=" + len);
-                    }
-                    // Allocate page
-                    byte page[] = new byte[PAGE_SIZE];
-                    if (i == 0) { // first read, start from offset upto a page length
-                        file.read(page, getOffset(addr), PAGE_SIZE - getOffset(addr));
-                    }
-                    else if (i == (num_pages - 1)) { // last read
-                        file.read(page, 0, ((len - getOffset(addr)) % PAGE_SIZE));
-                    }
-                    else {
-                        file.read(page);
-                    }
-
-                    readableMemory[pte + i] = read ? page : new byte[0];
-                    writableMemory[pte + i] = write ? page : new byte[0];
-                    executableMemory[pte + i] = exec ? page : new byte[0];
+            // Pages are copied. Use loadFile() to share pages of a file with other memories
+            file.seek(offset);
+            for (int i = 0; i < num_pages; i++) {
+                // Check pages aren't already allocated
+                if (getPage(pte + i) != null && !isZeroPage(pte + i)) {
+                    throw new Error("Memory map of already mapped location addr=0x" + Integer.toHexString(addr) + " len=" + len);
                 }
-            }
-            else {
-                for (int i = 0; i < num_pages; i++) {
-                    // Check pages aren't already allocated
-                    if (getPage(pte + i) != null) {
-                        throw new Error("Memory map of already mapped location addr=0x" + Integer.toHexString(addr) + " len=" + len);
-                    }
-
-                    // Allocate page
-                    if (read && write) {
-                        readableMemory[pte + i] = file.getChannel().map(
-                                FileChannel.MapMode.READ_WRITE, offset + (i * PAGE_SIZE),
-                                PAGE_SIZE).array();
-                        writableMemory[pte + i] = readableMemory[pte + i];
-                        if (exec) {
-                            executableMemory[pte + i] = readableMemory[pte + i];
-                        }
-                    }
-                    else if (read) {
-                        readableMemory[pte + i] = file.getChannel().map(
-                                FileChannel.MapMode.READ_ONLY, offset + (i * PAGE_SIZE),
-                                PAGE_SIZE).array();
-                        if (exec) {
-                            executableMemory[pte + i] = readableMemory[pte + i];
-                        }
-                    }
-                    else if (exec) {
-                        executableMemory[pte + i] = file.getChannel().map(
-                                FileChannel.MapMode.READ_ONLY, offset + (i * PAGE_SIZE),
-                                PAGE_SIZE).array();
-                    }
-                    else {
-                        throw new Error("Unable to map address 0x"
-                                + Integer.toHexString(addr) + " with permissions "
-                                + (read ? "r" : "-") + (write ? "w" : "-") + (exec ? "x" : "-"));
-                    }
+                // Allocate page
+                byte page[] = new byte[PAGE_SIZE];
+                if (i == 0) { // first read, start from offset upto a page length
+                    file.read(page, getOffset(addr), PAGE_SIZE - getOffset(addr));
+                }
+                else if (i == (num_pages - 1)) { // last read
+                    file.read(page, 0, ((len - getOffset(addr)) % PAGE_SIZE));
                 }
+                else {
+                    file.read(page);
+                }
+
+                readableMemory[pte + i] = read ? page : new byte[0];
+                writableMemory[pte + i] = write ? page : new byte[0];
+                executableMemory[pte + i] = exec ? page : new byte[0];
+                isSharedPage[pte + i] = false;
             }
             return addr;
         } catch (IOException e) {
@@ -299,6 +501,7 @@ public abstract class AbstractMemory implements Memory {
                 readableMemory[pte] = null;
                 writableMemory[pte] = null;
                 executableMemory[pte] = null;
+                isSharedPage[pte] = false;
             }
             else {
                 throw new Error("Unmapping memory that's not mapped addr=0x" + Integer.toHexString(addr) + " len=" + len);
@@ -366,6 +569,10 @@ public abstract class AbstractMemory implements Memory {
 
         while (len > 0) {
             int pte = getPTE(address);
+            if (isSharedPage[pte]) {
+                // Protections apply to the page itself, which must not become writable for other memories
+                makePagePrivate(pte);
+            }
             byte[] page = getPage(pte);
 
             if (page == null)
@@ -380,29 +587,48 @@ public abstract class AbstractMemory implements Memory {
         }
     }
 
+    /**
+     * Loads a file at the given address.
+     * Unmapped pages entirely covered by the file are shared with other memories loading the same file, and only
+     * copied on first write. Other pages are copied from the file.
+     */
     public void loadFile(File file, int startAddress, boolean isWriteProtected) throws IOException {
-        FileInputStream fis = new FileInputStream(file);
+        SharedFilePages sharedFilePages = SharedFilePages.get(file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
         int pte = getPTE(startAddress);
         int offset = getOffset(startAddress);
+        long filePosition = 0;
         long bytesRemainingToRead = file.length();
         while (bytesRemainingToRead > 0) {
             int bytesRemainingInPage = getPageSize() - offset;
             int bytesToRead = (int) Math.min(bytesRemainingInPage, bytesRemainingToRead);
             byte[] page = getPage(pte);
-            if (page == null) {
-                // Unallocated page, allocate it
-                map(pte << OFFSET_BITS, getPageSize(), true, !isWriteProtected, true);
-                page = getPage(pte);
+            if ((page == null || isZeroPage(pte)) && bytesToRead == PAGE_SIZE && sharedFilePages != null) {
+                mapSharedPage(pte, sharedFilePages.getPage(filePosition), isWriteProtected);
+                sharedFiles.add(sharedFilePages);
             }
-            int bytesRead = fis.read(page, offset, bytesToRead);
-            if (bytesRead != bytesToRead) {
-                throw new IOException("Error : expected " + bytesToRead + " bytes but could only read " + bytesRead);
+            else {
+                if (page == null) {
+                    // Unallocated page, allocate it
+                    map(pte << OFFSET_BITS, getPageSize(), true, !isWriteProtected, true);
+                    page = getPage(pte);
+                }
+                else if (isSharedPage[pte]) {
+                    makePagePrivate(pte);
+                    page = getPage(pte);
+                }
+                randomAccessFile.seek(filePosition);
+                int bytesRead = randomAccessFile.read(page, offset, bytesToRead);
+                if (bytesRead != bytesToRead) {
+                    throw new IOException("Error : expected " + bytesToRead + " bytes but could only read " + bytesRead);
+                }
             }
             bytesRemainingToRead -= bytesToRead;
+            filePosition += bytesToRead;
             pte++;
             offset = 0;
         }
-        fis.close();
+        randomAccessFile.close();
     }
 
     public void loadFile(File sourceFile, Collection<Range> ranges, boolean isWriteProtected) throws IOException {
@@ -433,6 +659,9 @@ public abstract class AbstractMemory implements Memory {
             while (bytesPushed < rangeSize) {
                 int page = getPTE(address);
                 int offset = getOffset(address);
+                if (isSharedPage[page]) {
+                    makePagePrivate(page);
+                }
                 byte[] pageBuffer = getPage(page);
                 int byteCount = Math.min(rangeSize - bytesPushed, PAGE_SIZE - offset);
                 buffer.get(pageBuffer, offset, byteCount);
@@ -464,6 +693,9 @@ public abstract class AbstractMemory implements Memory {
         fos.close();
     }
 
+    /**
+     * @return the number of mapped pages, including those that were only read so far (see getNumCommittedPages())
+     */
     public int getNumUsedPages() {
         int numPages = 0;
         for (int i = 0; i < NUM_PAGES; i++) {
@@ -474,13 +706,30 @@ public abstract class AbstractMemory implements Memory {
         return numPages;
     }
 
+    /**
+     * @return the number of mapped pages holding data, that is excluding pages only read so far, which all share the
+     * zero page. Pages shared with other memories are included. This is also the number of pages saveAllToStream()
+     * writes the contents of
+     */
+    public int getNumCommittedPages() {
+        int numPages = 0;
+        for (int i = 0; i < NUM_PAGES; i++) {
+            if (getPage(i) != null && !isZeroPage(i)) {
+                numPages++;
+            }
+        }
+        return numPages;
+    }
+
     public void saveAllToStream(OutputStream outputStream) throws IOException {
-        // Header contains one byte per page, each with the 3 LSB representing R/W/X
+        // Header contains one byte per page, each with the 3 LSB representing R/W/X,
+        // and bit 3 set for a zero page, whose contents are not written
         for (int i = 0; i < NUM_PAGES; i++) {
-            outputStream.write((byte) ((readableMemory[i] == null ? 0 : 0x4) | (writableMemory[i] == null ? 0 : 0x2) | (executableMemory[i] == null ? 0 : 0x1)));
+            outputStream.write((byte) ((readableMemory[i] == null ? 0 : 0x4) | (writableMemory[i] == null && !isSharedPage[i] ? 0 : 0x2) | (executableMemory[i] == null ? 0 : 0x1) | (isZeroPage(i) ? 0x8 : 0)));
         }
         // Then write the contents of used pages
         for (int i = 0; i < NUM_PAGES; i++) {
+            if (isZeroPage(i)) continue;
             byte[] values = readableMemory[i];
             if (values == null) values = writableMemory[i];
             if (values == null) values = executableMemory[i];
@@ -492,10 +741,14 @@ public abstract class AbstractMemory implements Memory {
 
     public void loadAllFromStream(InputStream inputStream) throws IOException {
         clear();
-        // Header contains one byte per page, each with the 3 LSB representing R/W/X
+        // Header contains one byte per page, each with the 3 LSB representing R/W/X,
+        // and bit 3 set for a zero page, whose contents are not written
         for (int i = 0; i < NUM_PAGES; i++) {
             byte b = (byte) inputStream.read();
-            if (b != 0) {
+            if ((b & 0x8) != 0) {
+                mapSharedPage(i, ZERO_PAGE, false);
+            }
+            else if (b != 0) {
                 byte page[] = new byte[PAGE_SIZE];
                 readableMemory[i] = ((b & 0x4) != 0) ? page : null;
                 writableMemory[i] = ((b & 0x2) != 0) ? page : null;
@@ -504,6 +757,7 @@ public abstract class AbstractMemory implements Memory {
         }
         // Then write the contents of used pages
         for (int i = 0; i < NUM_PAGES; i++) {
+            if (isZeroPage(i)) continue;
             byte[] values = readableMemory[i];
             if (values == null) values = writableMemory[i];
             if (values == null) values = executableMemory[i];
@@ -38,8 +38,7 @@ public class AutoAllocatingMemory extends AbstractMemory implements Memory {
 
             byte[] pageData = readableMemory[getPTE(addr)];
             if (pageData == null) {
-                map(truncateToPage(addr), PAGE_SIZE, true, true, true);
-                pageData = readableMemory[getPTE(addr)];
+                pageData = getReadablePage(addr);
             }
 
             return pageData[getOffset(addr)];
@@ -63,8 +62,7 @@ public class AutoAllocatingMemory extends AbstractMemory implements Memory {
 
             byte[] pageData = readableMemory[getPTE(addr)];
             if (pageData == null) {
-                map(truncateToPage(addr), PAGE_SIZE, true, true, true);
-                pageData = readableMemory[getPTE(addr)];
+                pageData = getReadablePage(addr);
             }
 
             return pageData[getOffset(addr)] & 0xFF;
@@ -148,8 +146,7 @@ public class AutoAllocatingMemory extends AbstractMemory implements Memory {
 
         byte[] pageData = writableMemory[getPTE(addr)];
         if (pageData == null) {
-            map(truncateToPage(addr), PAGE_SIZE, true, true, true);
-            pageData = writableMemory[getPTE(addr)];
+            pageData = getWritablePage(addr);
         }
         pageData[getOffset(addr)] = (byte) value;
     }
@@ -0,0 +1,19 @@
+package com.nikonhacker.emu.memory;
+
+/**
+ * This interface allows classes that keep information derived from executable memory (e.g. pre-decoded statements)
+ * to be notified when that memory is modified.
+ */
+public interface CodeModificationListener {
+    /**
+     * Method called each time a byte is written to an executable page
+     * @param address the address that was written to
+     */
+    void onCodeModified(int address);
+
+    /**
+     * Method called when the memory was changed as a whole (cleared, loaded from file, or remapped),
+     * so that all derived information must be discarded
+     */
+    void onAllCodeModified();
+}
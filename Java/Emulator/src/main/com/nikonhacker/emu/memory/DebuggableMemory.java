@@ -9,9 +9,17 @@
  */
 package com.nikonhacker.emu.memory;
 
+import com.nikonhacker.disassembly.Range;
+import com.nikonhacker.emu.memory.listener.BulkMemoryActivityListener;
+import com.nikonhacker.emu.memory.listener.IoActivityListener;
 import com.nikonhacker.emu.memory.listener.MemoryActivityListener;
+import com.nikonhacker.emu.memory.listener.WatchpointActivityListener;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -26,8 +34,27 @@ import java.util.List;
  */
 public class DebuggableMemory extends AbstractMemory implements Memory {
 
+    private static final MemoryActivityListener[] NO_LISTENERS = new MemoryActivityListener[0];
+
     private List<MemoryActivityListener> activityListeners = new ArrayList<MemoryActivityListener>();
 
+    /**
+     * For each page, the listeners (in call order) whose matchesPage() returned true for that page.
+     * Pages without listeners all share NO_LISTENERS, so that plain memory accesses don't call any listener
+     */
+    private MemoryActivityListener[][] pageListeners;
+
+    /**
+     * For each page, true if all its listeners (if any) can be warned of bulk operations as a whole
+     */
+    private boolean[] pageBulkCapable;
+
+    /** Objects keeping information derived from code (e.g. decoded statement caches), to warn when code changes */
+    private CodeModificationListener[] codeModificationListeners = new CodeModificationListener[0];
+
+    /** true if at least one listener is interested in instruction fetches (IO listeners and watchpoints are not) */
+    private boolean instructionFetchObserved = false;
+
     public enum AccessSource{
         /** Access due to code reading/writing to memory */
         CODE,
@@ -42,11 +69,24 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
 
     public DebuggableMemory(boolean logMemoryMessages) {
         clear();
+        pageListeners = new MemoryActivityListener[NUM_PAGES][];
+        Arrays.fill(pageListeners, NO_LISTENERS);
+        pageBulkCapable = new boolean[NUM_PAGES];
+        Arrays.fill(pageBulkCapable, true);
         setLogMemoryMessages(logMemoryMessages);
     }
 
     public void clear() {
         super.clear();
+        notifyAllCodeModified();
+        notifyAllWatchpoints();
+    }
+
+    @Override
+    public void restoreSnapshot(PageSnapshot snapshot) {
+        super.restoreSnapshot(snapshot);
+        notifyAllCodeModified();
+        notifyAllWatchpoints();
     }
 
     public void addActivityListener(MemoryActivityListener activityListener) {
@@ -58,10 +98,169 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
             // add at the start so that modifications occur before logging
             activityListeners.add(0, activityListener);
         }
+        addPageListener(activityListener);
+        updateInstructionFetchObserved();
     }
 
     public boolean removeActivityListener(MemoryActivityListener activityListener) {
-        return activityListeners.remove(activityListener);
+        boolean removed = activityListeners.remove(activityListener);
+        if (removed) {
+            removePageListener(activityListener);
+        }
+        updateInstructionFetchObserved();
+        return removed;
+    }
+
+    /**
+     * Adds the given listener to the pages it matches, at the same end as in activityListeners so that each page
+     * keeps their call order. Other pages are left untouched
+     */
+    private void addPageListener(MemoryActivityListener activityListener) {
+        boolean isBulkCapable = activityListener instanceof BulkMemoryActivityListener;
+        for (int page = 0; page < NUM_PAGES; page++) {
+            if (activityListener.matchesPage(page)) {
+                MemoryActivityListener[] listeners = pageListeners[page];
+                MemoryActivityListener[] newListeners = new MemoryActivityListener[listeners.length + 1];
+                if (activityListener.isReadOnly()) {
+                    System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+                    newListeners[listeners.length] = activityListener;
+                }
+                else {
+                    newListeners[0] = activityListener;
+                    System.arraycopy(listeners, 0, newListeners, 1, listeners.length);
+                }
+                pageListeners[page] = newListeners;
+                pageBulkCapable[page] &= isBulkCapable;
+            }
+        }
+    }
+
+    /**
+     * Removes the given listener from the pages it was added to. Other pages are left untouched
+     */
+    private void removePageListener(MemoryActivityListener activityListener) {
+        List<MemoryActivityListener> listeners = new ArrayList<MemoryActivityListener>();
+        for (int page = 0; page < NUM_PAGES; page++) {
+            boolean bulkCapable = true;
+            boolean removed = false;
+            for (MemoryActivityListener listener : pageListeners[page]) {
+                // Only the first occurrence, like activityListeners.remove()
+                if (!removed && listener.equals(activityListener)) {
+                    removed = true;
+                }
+                else {
+                    listeners.add(listener);
+                    bulkCapable &= (listener instanceof BulkMemoryActivityListener);
+                }
+            }
+            if (removed) {
+                pageListeners[page] = listeners.isEmpty() ? NO_LISTENERS : listeners.toArray(new MemoryActivityListener[listeners.size()]);
+                pageBulkCapable[page] = bulkCapable;
+            }
+            listeners.clear();
+        }
+    }
+
+    private void updateInstructionFetchObserved() {
+        boolean observed = false;
+        for (MemoryActivityListener activityListener : activityListeners) {
+            if (!(activityListener instanceof IoActivityListener) && !(activityListener instanceof WatchpointActivityListener)) {
+                observed = true;
+                break;
+            }
+        }
+        instructionFetchObserved = observed;
+    }
+
+    /**
+     * Indicates if instruction fetches must really go through this memory, or if they can be skipped
+     * (e.g. by serving a pre-decoded statement) without any listener missing them
+     * @return true if at least one listener wants to be warned of instruction fetches
+     */
+    public boolean isInstructionFetchObserved() {
+        return instructionFetchObserved;
+    }
+
+    public synchronized void addCodeModificationListener(CodeModificationListener codeModificationListener) {
+        CodeModificationListener[] newListeners = new CodeModificationListener[codeModificationListeners.length + 1];
+        System.arraycopy(codeModificationListeners, 0, newListeners, 0, codeModificationListeners.length);
+        newListeners[codeModificationListeners.length] = codeModificationListener;
+        codeModificationListeners = newListeners;
+    }
+
+    public synchronized void removeCodeModificationListener(CodeModificationListener codeModificationListener) {
+        List<CodeModificationListener> newListeners = new ArrayList<CodeModificationListener>();
+        for (CodeModificationListener listener : codeModificationListeners) {
+            if (listener != codeModificationListener) {
+                newListeners.add(listener);
+            }
+        }
+        codeModificationListeners = newListeners.toArray(new CodeModificationListener[newListeners.size()]);
+    }
+
+    private void notifyAllCodeModified() {
+        // Note: null during construction, as clear() is called by the parent constructor
+        if (codeModificationListeners != null) {
+            for (CodeModificationListener codeModificationListener : codeModificationListeners) {
+                codeModificationListener.onAllCodeModified();
+            }
+        }
+    }
+
+    /**
+     * Warns all watchpoints that memory contents changed without going through the store methods (e.g. a file or
+     * snapshot was loaded), so that the conditions depending on them are tested again
+     */
+    private void notifyAllWatchpoints() {
+        // Note: null during construction, as clear() is called by the parent constructor
+        if (activityListeners != null) {
+            for (MemoryActivityListener activityListener : activityListeners) {
+                if (activityListener instanceof WatchpointActivityListener) {
+                    ((WatchpointActivityListener) activityListener).setHit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Warns the watchpoints of the given page of a write with no access source, that other listeners don't see
+     * @param pageData the page that was written to
+     * @param addr the first address written
+     * @param length the number of bytes written
+     */
+    private void notifyWatchpoints(byte[] pageData, int addr, int length) {
+        for (MemoryActivityListener activityListener : pageListeners[getPTE(addr)]) {
+            if (activityListener instanceof WatchpointActivityListener) {
+                ((WatchpointActivityListener) activityListener).onBulkStore(pageData, addr, length, null);
+            }
+        }
+    }
+
+    @Override
+    public void loadFile(File file, int startAddress, boolean isWriteProtected) throws IOException {
+        super.loadFile(file, startAddress, isWriteProtected);
+        notifyAllCodeModified();
+        notifyAllWatchpoints();
+    }
+
+    @Override
+    public void loadFile(File sourceFile, Collection<Range> ranges, boolean isWriteProtected) throws IOException {
+        super.loadFile(sourceFile, ranges, isWriteProtected);
+        notifyAllCodeModified();
+        notifyAllWatchpoints();
+    }
+
+    @Override
+    public void changeProtection(int address, int len, boolean newRead, boolean newWrite, boolean newExec) {
+        super.changeProtection(address, len, newRead, newWrite, newExec);
+        notifyAllCodeModified();
+    }
+
+    @Override
+    public void unmap(int addr, int len) {
+        super.unmap(addr, len);
+        notifyAllCodeModified();
+        notifyAllWatchpoints();
     }
 
     /**
@@ -80,18 +279,14 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
         try {
             byte[] pageData = readableMemory[page];
             if (pageData == null) {
-                map(truncateToPage(addr), PAGE_SIZE, true, true, true);
-                pageData = readableMemory[page];
+                pageData = getReadablePage(addr);
             }
 
             byte value = pageData[offset];
             if (accessSource != null) {
-                for (MemoryActivityListener activityListener : activityListeners) {
+                for (MemoryActivityListener activityListener : pageListeners[page]) {
                     if (activityListener.matches(addr)) {
-                        Byte b = activityListener.onLoadData8(pageData, addr, value, accessSource);
-                        if (b != null) {
-                            value = b;
-                        }
+                        value = activityListener.onLoadData8(pageData, addr, value, accessSource);
                     }
                 }
             }
@@ -121,18 +316,14 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
         try {
             byte[] pageData = readableMemory[page];
             if (pageData == null) {
-                map(truncateToPage(addr), PAGE_SIZE, true, true, true);
-                pageData = readableMemory[page];
+                pageData = getReadablePage(addr);
             }
 
             byte value = pageData[offset];
             if (accessSource != null) {
-                for (MemoryActivityListener activityListener : activityListeners) {
+                for (MemoryActivityListener activityListener : pageListeners[page]) {
                     if (activityListener.matches(addr)) {
-                        Byte b = activityListener.onLoadData8(pageData, addr, value, accessSource);
-                        if (b != null) {
-                            value = b;
-                        }
+                        value = activityListener.onLoadData8(pageData, addr, value, accessSource);
                     }
                 }
             }
@@ -156,14 +347,20 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
     
     public int loadSigned16(int addr, AccessSource accessSource) {
-        int value = (loadSigned8(addr, null) << 8) | loadUnsigned8(addr + 1, null);
+        int value;
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            value = readSigned16BE(pageData, offset);
+        }
+        else {
+            value = (loadSigned8(addr, null) << 8) | loadUnsigned8(addr + 1, null);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            int page = getPTE(addr);
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    Integer i = activityListener.onLoadData16(readableMemory[getPTE(addr)], addr, value, accessSource);
-                    if (i != null) {
-                        value = i;
-                    }
+                    value = activityListener.onLoadData16(readableMemory[page], addr, value, accessSource);
                 }
             }
         }
@@ -184,14 +381,20 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
     
     public int loadUnsigned16(int addr, AccessSource accessSource) {
-        int value = (loadUnsigned8(addr, null) << 8) | loadUnsigned8(addr + 1, null);
+        int value;
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            value = readUnsigned16BE(pageData, offset);
+        }
+        else {
+            value = (loadUnsigned8(addr, null) << 8) | loadUnsigned8(addr + 1, null);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            int page = getPTE(addr);
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    Integer i = activityListener.onLoadData16(readableMemory[getPTE(addr)], addr, value, accessSource);
-                    if (i != null) {
-                        value = i;
-                    }
+                    value = activityListener.onLoadData16(readableMemory[page], addr, value, accessSource);
                 }
             }
         }
@@ -211,15 +414,21 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
 
     public int load32(int addr, AccessSource accessSource) {
-        int value = (loadSigned8(addr, null) << 24) | (loadUnsigned8(addr + 1, null) << 16)
-                | (loadUnsigned8(addr + 2, null) << 8) | loadUnsigned8(addr + 3, null);
+        int value;
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage32(offset)) {
+            value = read32BE(pageData, offset);
+        }
+        else {
+            value = (loadSigned8(addr, null) << 24) | (loadUnsigned8(addr + 1, null) << 16)
+                    | (loadUnsigned8(addr + 2, null) << 8) | loadUnsigned8(addr + 3, null);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            int page = getPTE(addr);
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    Integer i = activityListener.onLoadData32(readableMemory[getPTE(addr)], addr, value, accessSource);
-                    if (i != null) {
-                        value = i;
-                    }
+                    value = activityListener.onLoadData32(readableMemory[page], addr, value, accessSource);
                 }
             }
         }
@@ -241,7 +450,7 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
         int page = getPTE(addr);
         int offset = getOffset(addr);
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
                     activityListener.onLoadInstruction8(executableMemory[page], addr, executableMemory[page][offset], accessSource);
                 }
@@ -255,11 +464,19 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
 
     public int loadInstruction16(int addr, AccessSource accessSource) {
-        int value = (loadInstruction8(addr, null) << 8) | loadInstruction8(addr + 1, null);
+        int value;
+        int offset = getOffset(addr);
+        if (isInPage16(offset)) {
+            value = readUnsigned16BE(executableMemory[getPTE(addr)], offset);
+        }
+        else {
+            value = (loadInstruction8(addr, null) << 8) | loadInstruction8(addr + 1, null);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            int page = getPTE(addr);
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    activityListener.onLoadInstruction16(executableMemory[getPTE(addr)], addr, value, accessSource);
+                    activityListener.onLoadInstruction16(executableMemory[page], addr, value, accessSource);
                 }
             }
         }
@@ -277,13 +494,21 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
 
     public int loadInstruction32(int addr, AccessSource accessSource) {
-        int value = (loadInstruction8(addr, null) << 24)
-                | (loadInstruction8(addr + 1, null) << 16)
-                | (loadInstruction8(addr + 2, null) << 8) | loadInstruction8(addr + 3, null);
+        int value;
+        int offset = getOffset(addr);
+        if (isInPage32(offset)) {
+            value = read32BE(executableMemory[getPTE(addr)], offset);
+        }
+        else {
+            value = (loadInstruction8(addr, null) << 24)
+                    | (loadInstruction8(addr + 1, null) << 16)
+                    | (loadInstruction8(addr + 2, null) << 8) | loadInstruction8(addr + 3, null);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            int page = getPTE(addr);
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    activityListener.onLoadInstruction32(executableMemory[getPTE(addr)], addr, value, accessSource);
+                    activityListener.onLoadInstruction32(executableMemory[page], addr, value, accessSource);
                 }
             }
         }
@@ -306,17 +531,36 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
 
         byte[] pageData = writableMemory[page];
         if (pageData == null) {
-            map(truncateToPage(addr), PAGE_SIZE, true, true, true);
-            pageData = writableMemory[page];
+            pageData = getWritablePage(addr);
         }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
                     activityListener.onStore8(pageData, addr, (byte) value, accessSource);
                 }
             }
         }
+        else {
+            notifyWatchpoints(pageData, addr, 1);
+        }
         pageData[offset] = (byte) value;
+        notifyCodeModified(pageData, addr, 1);
+    }
+
+    /**
+     * Warns code modification listeners if the given page is executable
+     * @param pageData the page that was written to
+     * @param addr the first address written
+     * @param length the number of bytes written
+     */
+    private void notifyCodeModified(byte[] pageData, int addr, int length) {
+        if (codeModificationListeners.length != 0 && executableMemory[getPTE(addr)] == pageData) {
+            for (CodeModificationListener codeModificationListener : codeModificationListeners) {
+                for (int i = 0; i < length; i++) {
+                    codeModificationListener.onCodeModified(addr + i);
+                }
+            }
+        }
     }
 
     /**
@@ -330,15 +574,31 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
 
     public void store16(int addr, int value, AccessSource accessSource) {
+        int page = getPTE(addr);
+        int offset = getOffset(addr);
+
+        byte[] pageData = writableMemory[page];
+        if (pageData == null) {
+            pageData = getWritablePage(addr);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    activityListener.onStore16(writableMemory[getPTE(addr)], addr, value, accessSource);
+                    activityListener.onStore16(pageData, addr, value, accessSource);
                 }
             }
         }
-        store8(addr, value >> 8, null);
-        store8(addr + 1, value, null);
+        if (isInPage16(offset)) {
+            if (accessSource == null) {
+                notifyWatchpoints(pageData, addr, 2);
+            }
+            write16BE(pageData, offset, value);
+            notifyCodeModified(pageData, addr, 2);
+        }
+        else {
+            store8(addr, value >> 8, null);
+            store8(addr + 1, value, null);
+        }
     }
 
     /**
@@ -352,17 +612,193 @@ public class DebuggableMemory extends AbstractMemory implements Memory {
     }
 
     public void store32(int addr, int value, AccessSource accessSource) {
+        int page = getPTE(addr);
+        int offset = getOffset(addr);
+
+        byte[] pageData = writableMemory[page];
+        if (pageData == null) {
+            pageData = getWritablePage(addr);
+        }
         if (accessSource != null) {
-            for (MemoryActivityListener activityListener : activityListeners) {
+            for (MemoryActivityListener activityListener : pageListeners[page]) {
                 if (activityListener.matches(addr)) {
-                    activityListener.onStore32(writableMemory[getPTE(addr)], addr, value, accessSource);
+                    activityListener.onStore32(pageData, addr, value, accessSource);
+                }
+            }
+        }
+        if (isInPage32(offset)) {
+            if (accessSource == null) {
+                notifyWatchpoints(pageData, addr, 4);
+            }
+            write32BE(pageData, offset, value);
+            notifyCodeModified(pageData, addr, 4);
+        }
+        else {
+            store8(addr, value >> 24, null);
+            store8(addr + 1, value >> 16, null);
+            store8(addr + 2, value >> 8, null);
+            store8(addr + 3, value, null);
+        }
+    }
+
+    /**
+     * @return true if a listener may return another value than the one stored at the given address (e.g. an IO
+     * register), meaning its value can change without any store
+     */
+    public boolean isValueIntercepted(int address) {
+        for (MemoryActivityListener activityListener : pageListeners[getPTE(address)]) {
+            if (!activityListener.isReadOnly() && activityListener.matches(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if all listeners of the pages covering the given area are BulkMemoryActivityListeners, meaning a
+     * bulk copy() or fill() of that area is equivalent to individual loads and stores, whatever their size
+     */
+    public boolean isBulkCapable(int address, int length) {
+        if (length <= 0) {
+            return true;
+        }
+        int lastPage = getPTE(address + length - 1);
+        for (int page = getPTE(address); page != lastPage; page = (page + 1) % NUM_PAGES) {
+            if (!pageBulkCapable[page]) {
+                return false;
+            }
+        }
+        return pageBulkCapable[lastPage];
+    }
+
+    /**
+     * Copies a rectangular area of bytes, e.g. part of an image, from one buffer to another.
+     * Rows are copied page chunk by page chunk. Chunks on pages whose listeners are all BulkMemoryActivityListeners
+     * are copied at once, and each listener is warned once per chunk. Other chunks are copied byte by byte, with the
+     * same listener calls as loadUnsigned8() and store8(). With a null accessSource, only watchpoints are warned.
+     *
+     * @param sourceAddress the address of the first byte of the source area
+     * @param sourceBufferWidth the distance between the start of two rows in the source buffer
+     * @param destinationAddress the address of the first byte of the destination area
+     * @param destinationBufferWidth the distance between the start of two rows in the destination buffer
+     * @param width the number of bytes of each row
+     * @param height the number of rows
+     * @param accessSource
+     */
+    public void copy2D(int sourceAddress, int sourceBufferWidth, int destinationAddress, int destinationBufferWidth, int width, int height, AccessSource accessSource) {
+        for (int y = 0; y < height; y++) {
+            copy(sourceAddress, destinationAddress, width, accessSource);
+            sourceAddress += sourceBufferWidth;
+            destinationAddress += destinationBufferWidth;
+        }
+    }
+
+    /**
+     * Fills a rectangular area of bytes, e.g. part of an image, with the given value.
+     * See copy2D() regarding listeners.
+     *
+     * @param destinationAddress the address of the first byte of the area
+     * @param destinationBufferWidth the distance between the start of two rows in the buffer
+     * @param width the number of bytes of each row
+     * @param height the number of rows
+     * @param value the byte value to store
+     * @param accessSource
+     */
+    public void fill2D(int destinationAddress, int destinationBufferWidth, int width, int height, int value, AccessSource accessSource) {
+        for (int y = 0; y < height; y++) {
+            fill(destinationAddress, width, value, accessSource);
+            destinationAddress += destinationBufferWidth;
+        }
+    }
+
+    /**
+     * Copies length bytes from sourceAddress to destinationAddress. See copy2D() regarding listeners.
+     * Like a byte by byte copy, a destination starting inside the source area repeats the first bytes of the source.
+     */
+    public void copy(int sourceAddress, int destinationAddress, int length, AccessSource accessSource) {
+        if (destinationAddress - sourceAddress > 0 && destinationAddress - sourceAddress < length) {
+            // Overlapping areas, where the copy reads bytes it has just written. Keep it simple
+            copyBytes(sourceAddress, destinationAddress, length, accessSource);
+            return;
+        }
+        while (length > 0) {
+            int sourcePage = getPTE(sourceAddress);
+            int sourceOffset = getOffset(sourceAddress);
+            int destinationPage = getPTE(destinationAddress);
+            int destinationOffset = getOffset(destinationAddress);
+            int chunkLength = Math.min(length, PAGE_SIZE - Math.max(sourceOffset, destinationOffset));
+
+            if (accessSource == null || (pageBulkCapable[sourcePage] && pageBulkCapable[destinationPage])) {
+                byte[] sourcePageData = readableMemory[sourcePage];
+                if (sourcePageData == null) {
+                    sourcePageData = getReadablePage(sourceAddress);
+                }
+                byte[] destinationPageData = writableMemory[destinationPage];
+                if (destinationPageData == null) {
+                    destinationPageData = getWritablePage(destinationAddress);
+                }
+                System.arraycopy(sourcePageData, sourceOffset, destinationPageData, destinationOffset, chunkLength);
+                if (accessSource != null) {
+                    for (MemoryActivityListener activityListener : pageListeners[sourcePage]) {
+                        ((BulkMemoryActivityListener) activityListener).onBulkLoad(sourcePageData, sourceAddress, chunkLength, accessSource);
+                    }
+                    for (MemoryActivityListener activityListener : pageListeners[destinationPage]) {
+                        ((BulkMemoryActivityListener) activityListener).onBulkStore(destinationPageData, destinationAddress, chunkLength, accessSource);
+                    }
                 }
+                else {
+                    notifyWatchpoints(destinationPageData, destinationAddress, chunkLength);
+                }
+                notifyCodeModified(destinationPageData, destinationAddress, chunkLength);
+            }
+            else {
+                copyBytes(sourceAddress, destinationAddress, chunkLength, accessSource);
             }
+            sourceAddress += chunkLength;
+            destinationAddress += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
+    /**
+     * Fills length bytes starting at destinationAddress with the given value. See copy2D() regarding listeners.
+     */
+    public void fill(int destinationAddress, int length, int value, AccessSource accessSource) {
+        while (length > 0) {
+            int destinationPage = getPTE(destinationAddress);
+            int destinationOffset = getOffset(destinationAddress);
+            int chunkLength = Math.min(length, PAGE_SIZE - destinationOffset);
+
+            if (accessSource == null || pageBulkCapable[destinationPage]) {
+                byte[] destinationPageData = writableMemory[destinationPage];
+                if (destinationPageData == null) {
+                    destinationPageData = getWritablePage(destinationAddress);
+                }
+                Arrays.fill(destinationPageData, destinationOffset, destinationOffset + chunkLength, (byte) value);
+                if (accessSource != null) {
+                    for (MemoryActivityListener activityListener : pageListeners[destinationPage]) {
+                        ((BulkMemoryActivityListener) activityListener).onBulkStore(destinationPageData, destinationAddress, chunkLength, accessSource);
+                    }
+                }
+                else {
+                    notifyWatchpoints(destinationPageData, destinationAddress, chunkLength);
+                }
+                notifyCodeModified(destinationPageData, destinationAddress, chunkLength);
+            }
+            else {
+                for (int i = 0; i < chunkLength; i++) {
+                    store8(destinationAddress + i, value, accessSource);
+                }
+            }
+            destinationAddress += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
+    private void copyBytes(int sourceAddress, int destinationAddress, int length, AccessSource accessSource) {
+        for (int i = 0; i < length; i++) {
+            store8(destinationAddress + i, loadUnsigned8(sourceAddress + i, accessSource), accessSource);
         }
-        store8(addr, value >> 24, null);
-        store8(addr + 1, value >> 16, null);
-        store8(addr + 2, value >> 8, null);
-        store8(addr + 3, value, null);
     }
 
 }
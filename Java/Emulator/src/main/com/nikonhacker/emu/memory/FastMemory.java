@@ -63,6 +63,11 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @return the sign extended result
      */
     public int loadSigned16(int addr) {
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            return readSigned16BE(pageData, offset);
+        }
         return (loadSigned8(addr) << 8) | loadUnsigned8(addr + 1);
     }
 
@@ -73,6 +78,11 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @return the zero extended result
      */
     public int loadUnsigned16(int addr) {
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            return readUnsigned16BE(pageData, offset);
+        }
         return (loadUnsigned8(addr) << 8) | loadUnsigned8(addr + 1);
     }
 
@@ -83,6 +93,11 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @return the result
      */
     public int load32(int addr) {
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage32(offset)) {
+            return read32BE(pageData, offset);
+        }
         return (loadSigned8(addr) << 24) | (loadUnsigned8(addr + 1) << 16)
                 | (loadUnsigned8(addr + 2) << 8) | loadUnsigned8(addr + 3);
     }
@@ -99,6 +114,10 @@ public class FastMemory extends AbstractMemory implements Memory  {
     }
 
     public int loadInstruction16(int addr) {
+        int offset = getOffset(addr);
+        if (isInPage16(offset)) {
+            return readUnsigned16BE(executableMemory[getPTE(addr)], offset);
+        }
         return (loadInstruction8(addr) << 8) | loadInstruction8(addr + 1);
     }
 
@@ -109,6 +128,10 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @return the result
      */
     public int loadInstruction32(int addr) {
+        int offset = getOffset(addr);
+        if (isInPage32(offset)) {
+            return read32BE(executableMemory[getPTE(addr)], offset);
+        }
         return (loadInstruction8(addr) << 24)
                 | (loadInstruction8(addr + 1) << 16)
                 | (loadInstruction8(addr + 2) << 8) | loadInstruction8(addr + 3);
@@ -121,7 +144,11 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @param addr  the address of where to store
      */
     public final void store8(int addr, int value) {
-        writableMemory[AbstractMemory.getPTE(addr)][AbstractMemory.getOffset(addr)] = (byte) value;
+        byte[] pageData = writableMemory[AbstractMemory.getPTE(addr)];
+        if (pageData == null) {
+            pageData = getWritablePage(addr);
+        }
+        pageData[AbstractMemory.getOffset(addr)] = (byte) value;
     }
 
     /**
@@ -131,8 +158,15 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @param addr  the address of where to store
      */
     public void store16(int addr, int value) {
-        store8(addr, value >> 8);
-        store8(addr + 1, value);
+        int offset = getOffset(addr);
+        byte[] pageData = writableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            write16BE(pageData, offset, value);
+        }
+        else {
+            store8(addr, value >> 8);
+            store8(addr + 1, value);
+        }
     }
 
     /**
@@ -142,9 +176,16 @@ public class FastMemory extends AbstractMemory implements Memory  {
      * @param addr  the address of where to store
      */
     public void store32(int addr, int value) {
-        store8(addr, value >> 24);
-        store8(addr + 1, value >> 16);
-        store8(addr + 2, value >> 8);
-        store8(addr + 3, value);
+        int offset = getOffset(addr);
+        byte[] pageData = writableMemory[getPTE(addr)];
+        if (pageData != null && isInPage32(offset)) {
+            write32BE(pageData, offset, value);
+        }
+        else {
+            store8(addr, value >> 24);
+            store8(addr + 1, value >> 16);
+            store8(addr + 2, value >> 8);
+            store8(addr + 3, value);
+        }
     }
 }
@@ -55,6 +55,11 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @return the sign extended result
      */
     public int loadSigned16(int addr) {
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            return readSigned16LE(pageData, offset);
+        }
         return (loadSigned8(addr+1) << 8) | loadUnsigned8(addr);
     }
 
@@ -65,6 +70,11 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @return the zero extended result
      */
     public int loadUnsigned16(int addr) {
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            return readUnsigned16LE(pageData, offset);
+        }
         return (loadUnsigned8(addr+1) << 8) | loadUnsigned8(addr);
     }
 
@@ -75,6 +85,11 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @return the result
      */
     public int load32(int addr) {
+        int offset = getOffset(addr);
+        byte[] pageData = readableMemory[getPTE(addr)];
+        if (pageData != null && isInPage32(offset)) {
+            return read32LE(pageData, offset);
+        }
         return (loadSigned8(addr+3) << 24) | (loadUnsigned8(addr + 2) << 16)
                 | (loadUnsigned8(addr + 1) << 8) | loadUnsigned8(addr);
     }
@@ -91,6 +106,10 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
     }
 
     public int loadInstruction16(int addr) {
+        int offset = getOffset(addr);
+        if (isInPage16(offset)) {
+            return readUnsigned16LE(executableMemory[getPTE(addr)], offset);
+        }
         return (loadInstruction8(addr+1) << 8) | loadInstruction8(addr);
     }
 
@@ -101,6 +120,10 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @return the result
      */
     public int loadInstruction32(int addr) {
+        int offset = getOffset(addr);
+        if (isInPage32(offset)) {
+            return read32LE(executableMemory[getPTE(addr)], offset);
+        }
         return (loadInstruction8(addr+3) << 24)
                 | (loadInstruction8(addr + 2) << 16)
                 | (loadInstruction8(addr + 1) << 8) | loadInstruction8(addr);
@@ -113,7 +136,11 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @param addr  the address of where to store
      */
     public final void store8(int addr, int value) {
-        writableMemory[AbstractMemory.getPTE(addr)][AbstractMemory.getOffset(addr)] = (byte) value;
+        byte[] pageData = writableMemory[AbstractMemory.getPTE(addr)];
+        if (pageData == null) {
+            pageData = getWritablePage(addr);
+        }
+        pageData[AbstractMemory.getOffset(addr)] = (byte) value;
     }
 
     /**
@@ -123,8 +150,15 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @param addr  the address of where to store
      */
     public void store16(int addr, int value) {
-        store8(addr + 1, value >> 8);
-        store8(addr, value);
+        int offset = getOffset(addr);
+        byte[] pageData = writableMemory[getPTE(addr)];
+        if (pageData != null && isInPage16(offset)) {
+            write16LE(pageData, offset, value);
+        }
+        else {
+            store8(addr + 1, value >> 8);
+            store8(addr, value);
+        }
     }
 
     /**
@@ -134,9 +168,16 @@ public class FastMemoryLE extends AbstractMemory implements Memory  {
      * @param addr  the address of where to store
      */
     public void store32(int addr, int value) {
-        store8(addr + 3, value >> 24);
-        store8(addr + 2, value >> 16);
-        store8(addr + 1, value >> 8);
-        store8(addr + 0, value);
+        int offset = getOffset(addr);
+        byte[] pageData = writableMemory[getPTE(addr)];
+        if (pageData != null && isInPage32(offset)) {
+            write32LE(pageData, offset, value);
+        }
+        else {
+            store8(addr + 3, value >> 24);
+            store8(addr + 2, value >> 16);
+            store8(addr + 1, value >> 8);
+            store8(addr + 0, value);
+        }
     }
 }
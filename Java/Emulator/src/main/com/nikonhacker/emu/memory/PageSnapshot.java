@@ -0,0 +1,169 @@
+package com.nikonhacker.emu.memory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The contents and protections of all pages of a memory at a given time (see AbstractMemory.takeSnapshot()).
+ * Page arrays are never modified: the memory copies a page on its next write instead. Taking a snapshot thus costs
+ * no copy, and a page that was not written to between two snapshots is the same array in both, which is how
+ * write() only writes the pages changed since a base snapshot.
+ */
+public class PageSnapshot {
+    static final int READ   = 0x4;
+    static final int WRITE  = 0x2;
+    static final int EXEC   = 0x1;
+    static final int MAPPED = 0x80;
+
+    /** Record types of the binary format */
+    private static final int END      = -1;
+    private static final int UNMAPPED = 0;
+    private static final int ZERO     = 1;
+    private static final int RAW      = 2;
+    private static final int DEFLATED = 3;
+
+    /** For each page, its contents, or null if unmapped */
+    final byte[][] pages;
+    /** For each page, its R/W/X rights and MAPPED, or 0 if unmapped */
+    final byte[]   flags;
+
+    PageSnapshot(byte[][] pages, byte[] flags) {
+        this.pages = pages;
+        this.flags = flags;
+    }
+
+    /**
+     * @return true if the given page differs from the one of the base snapshot, either in contents or in rights.
+     * Contents are compared by identity, so a page written with identical values is considered changed
+     */
+    public boolean isPageChanged(int pte, PageSnapshot base) {
+        return pages[pte] != base.pages[pte] || flags[pte] != base.flags[pte];
+    }
+
+    /**
+     * @return the number of pages that write() would write
+     */
+    public int getNumChangedPages(PageSnapshot base) {
+        int numPages = 0;
+        for (int pte = 0; pte < pages.length; pte++) {
+            if (base == null ? pages[pte] != null : isPageChanged(pte, base)) {
+                numPages++;
+            }
+        }
+        return numPages;
+    }
+
+    /**
+     * Writes the pages of this snapshot
+     * @param base if not null, only pages changed since this snapshot are written, and the same base must be passed
+     *             to read()
+     */
+    public void write(DataOutputStream outputStream, PageSnapshot base) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] buffer = new byte[AbstractMemory.PAGE_SIZE];
+        try {
+            for (int pte = 0; pte < pages.length; pte++) {
+                if (base == null ? pages[pte] == null : !isPageChanged(pte, base)) {
+                    continue;
+                }
+                outputStream.writeInt(pte);
+                outputStream.writeByte(flags[pte]);
+                byte[] page = pages[pte];
+                if (page == null) {
+                    outputStream.writeByte(UNMAPPED);
+                }
+                else if (page == AbstractMemory.ZERO_PAGE) {
+                    outputStream.writeByte(ZERO);
+                }
+                else {
+                    deflater.reset();
+                    deflater.setInput(page);
+                    deflater.finish();
+                    int length = deflater.deflate(buffer);
+                    if (deflater.finished() && length < buffer.length) {
+                        outputStream.writeByte(DEFLATED);
+                        outputStream.writeInt(length);
+                        outputStream.write(buffer, 0, length);
+                    }
+                    else {
+                        // Doesn't compress
+                        outputStream.writeByte(RAW);
+                        outputStream.write(page);
+                    }
+                }
+            }
+            outputStream.writeInt(END);
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads pages written by write()
+     * @param base the base snapshot passed to write(), or null
+     */
+    public static PageSnapshot read(DataInputStream inputStream, PageSnapshot base) throws IOException {
+        byte[][] pages;
+        byte[] flags;
+        if (base == null) {
+            pages = new byte[AbstractMemory.NUM_PAGES][];
+            flags = new byte[AbstractMemory.NUM_PAGES];
+        }
+        else {
+            pages = base.pages.clone();
+            flags = base.flags.clone();
+        }
+        Inflater inflater = new Inflater();
+        byte[] buffer = new byte[AbstractMemory.PAGE_SIZE];
+        try {
+            int pte;
+            while ((pte = inputStream.readInt()) != END) {
+                if (pte < 0 || pte >= AbstractMemory.NUM_PAGES) {
+                    throw new IOException("Invalid page number 0x" + Integer.toHexString(pte));
+                }
+                flags[pte] = inputStream.readByte();
+                int type = inputStream.readByte();
+                switch (type) {
+                    case UNMAPPED:
+                        pages[pte] = null;
+                        break;
+                    case ZERO:
+                        pages[pte] = AbstractMemory.ZERO_PAGE;
+                        break;
+                    case RAW:
+                        pages[pte] = new byte[AbstractMemory.PAGE_SIZE];
+                        inputStream.readFully(pages[pte]);
+                        break;
+                    case DEFLATED:
+                        int length = inputStream.readInt();
+                        if (length < 0 || length > buffer.length) {
+                            throw new IOException("Invalid compressed length " + length + " for page 0x" + Integer.toHexString(pte));
+                        }
+                        inputStream.readFully(buffer, 0, length);
+                        pages[pte] = new byte[AbstractMemory.PAGE_SIZE];
+                        inflater.reset();
+                        inflater.setInput(buffer, 0, length);
+                        try {
+                            if (inflater.inflate(pages[pte]) != AbstractMemory.PAGE_SIZE) {
+                                throw new IOException("Truncated page 0x" + Integer.toHexString(pte));
+                            }
+                        } catch (DataFormatException e) {
+                            throw new IOException("Corrupted page 0x" + Integer.toHexString(pte), e);
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type + " for page 0x" + Integer.toHexString(pte));
+                }
+            }
+        }
+        finally {
+            inflater.end();
+        }
+        return new PageSnapshot(pages, flags);
+    }
+}
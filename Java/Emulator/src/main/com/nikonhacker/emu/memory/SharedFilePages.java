@@ -0,0 +1,114 @@
+package com.nikonhacker.emu.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pages of a file (typically a firmware image), read once and shared by all memories loading the same file, so that
+ * starting several emulators over the same image only keeps one copy of its pages.
+ * Memories must never write to a shared page: they make a private copy on first write (see AbstractMemory).
+ * Pages read are kept as long as the instance lives. Memories using its pages keep a reference to the instance, and
+ * once none does, the instance is forgotten and its pages can be garbage collected.
+ */
+public class SharedFilePages {
+    /** Live instances, by file path, size and date, so that a modified file is read again */
+    private static final Map<String, InstanceReference> instances = new HashMap<String, InstanceReference>();
+
+    /** Receives the references of instances no memory uses anymore */
+    private static final ReferenceQueue<SharedFilePages> releasedInstances = new ReferenceQueue<SharedFilePages>();
+
+    private final File file;
+
+    /** Pages read so far, by page number in the file */
+    private final byte[][] pages;
+
+    private SharedFilePages(File file) {
+        this.file = file;
+        this.pages = new byte[(int) ((file.length() + AbstractMemory.PAGE_SIZE - 1) / AbstractMemory.PAGE_SIZE)][];
+    }
+
+    /**
+     * @return the shared pages of the given file, or null if it cannot be read
+     */
+    public static SharedFilePages get(File file) {
+        try {
+            String key = file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+            synchronized (instances) {
+                purgeReleasedInstances();
+                InstanceReference reference = instances.get(key);
+                SharedFilePages sharedFilePages = (reference == null) ? null : reference.get();
+                if (sharedFilePages == null) {
+                    sharedFilePages = new SharedFilePages(file);
+                    instances.put(key, new InstanceReference(key, sharedFilePages));
+                }
+                return sharedFilePages;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + file + ", its pages won't be shared: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param fileOffset the offset in the file of the first byte of the page, a multiple of the page size.
+     *                   The whole page must be in the file
+     * @return the page, which must not be modified
+     */
+    public byte[] getPage(long fileOffset) throws IOException {
+        int pageNumber = (int) (fileOffset / AbstractMemory.PAGE_SIZE);
+        synchronized (pages) {
+            if (pages[pageNumber] == null) {
+                byte[] page = new byte[AbstractMemory.PAGE_SIZE];
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                try {
+                    randomAccessFile.seek(fileOffset);
+                    randomAccessFile.readFully(page);
+                }
+                finally {
+                    randomAccessFile.close();
+                }
+                pages[pageNumber] = page;
+            }
+            return pages[pageNumber];
+        }
+    }
+
+    /**
+     * @return the number of files with live instances, for tests
+     */
+    static int getNumInstances() {
+        synchronized (instances) {
+            purgeReleasedInstances();
+            return instances.size();
+        }
+    }
+
+    /**
+     * Forgets instances that were garbage collected. Must be called with the lock on instances
+     */
+    private static void purgeReleasedInstances() {
+        Reference<? extends SharedFilePages> released;
+        while ((released = releasedInstances.poll()) != null) {
+            InstanceReference reference = (InstanceReference) released;
+            // The file may have been read again since this reference was cleared
+            if (instances.get(reference.key) == reference) {
+                instances.remove(reference.key);
+            }
+        }
+    }
+
+    private static class InstanceReference extends WeakReference<SharedFilePages> {
+        private final String key;
+
+        private InstanceReference(String key, SharedFilePages sharedFilePages) {
+            super(sharedFilePages, releasedInstances);
+            this.key = key;
+        }
+    }
+}
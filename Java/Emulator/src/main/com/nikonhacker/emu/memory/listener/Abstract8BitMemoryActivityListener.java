@@ -4,7 +4,7 @@ import com.nikonhacker.emu.memory.DebuggableMemory;
 
 public abstract class Abstract8BitMemoryActivityListener implements MemoryActivityListener {
 
-    public abstract Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource);
+    public abstract byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource);
 
     /**
      * Default implementation calls onLoadData8
@@ -13,10 +13,10 @@ public abstract class Abstract8BitMemoryActivityListener implements MemoryActivi
      * @param value
      * @param accessSource
      */
-    public Integer onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         onLoadData8(pageData, address, (byte) (value >>> 8), accessSource);
         onLoadData8(pageData, address + 1, (byte) (value & 0xFF), accessSource);
-        return null;
+        return value;
     }
 
     /**
@@ -26,12 +26,12 @@ public abstract class Abstract8BitMemoryActivityListener implements MemoryActivi
      * @param value
      * @param accessSource
      */
-    public Integer onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         onLoadData8(pageData, address, (byte) (value >>> 24), accessSource);
         onLoadData8(pageData, address + 1, (byte) ((value >>> 16) & 0xFF), accessSource);
         onLoadData8(pageData, address + 2, (byte) ((value >>> 8) & 0xFF), accessSource);
         onLoadData8(pageData, address + 3, (byte) (value & 0xFF), accessSource);
-        return null;
+        return value;
     }
 
 
@@ -22,7 +22,7 @@ public abstract class AbstractAccessLoggerActivityListener implements MemoryActi
     }
 
 
-    public Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
         if (selectedAccessSources.contains(accessSource)) {
             String msg = "            read from 0x" + Format.asHex(address, 8) + " : 0x" + Format.asHex(value & 0xFF, 2) + "        ";
             switch (accessSource) {
@@ -41,10 +41,10 @@ public abstract class AbstractAccessLoggerActivityListener implements MemoryActi
             }
             printWriter.println(msg);
         }
-        return null;
+        return value;
     }
 
-    public Integer onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         if (selectedAccessSources.contains(accessSource)) {
             String msg = "            read from 0x" + Format.asHex(address, 8) + " : 0x" + Format.asHex(value & 0xFFFF, 4) + "      ";
             switch (accessSource) {
@@ -63,10 +63,10 @@ public abstract class AbstractAccessLoggerActivityListener implements MemoryActi
             }
             printWriter.println(msg);
         }
-        return null;
+        return value;
     }
 
-    public Integer onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         if (selectedAccessSources.contains(accessSource)) {
             String msg = "            read from 0x" + Format.asHex(address, 8) + " : 0x" + Format.asHex(value, 8) + "  ";
             switch (accessSource) {
@@ -85,7 +85,7 @@ public abstract class AbstractAccessLoggerActivityListener implements MemoryActi
             }
             printWriter.println(msg);
         }
-        return null;
+        return value;
     }
 
 
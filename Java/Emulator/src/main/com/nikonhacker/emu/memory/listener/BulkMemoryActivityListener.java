@@ -0,0 +1,33 @@
+package com.nikonhacker.emu.memory.listener;
+
+import com.nikonhacker.emu.memory.DebuggableMemory;
+
+/**
+ * A MemoryActivityListener that can be warned once per contiguous chunk of a bulk operation (see
+ * DebuggableMemory.copy2D() and fill2D()), instead of once per byte.
+ * Bulk operations only take the fast path on pages where all listeners implement this interface. As bulk loads
+ * give no opportunity to change the values read, this interface is meant for read-only listeners.
+ * Note that matches() is not called for bulk operations: implementations must filter addresses themselves.
+ */
+public interface BulkMemoryActivityListener extends MemoryActivityListener {
+
+    /**
+     * Method to be called after a chunk of bytes was read by a bulk operation
+     *
+     * @param pageData the page that the chunk belongs to
+     * @param address the address of the first byte read
+     * @param length the number of bytes read. All of them belong to the same page
+     * @param accessSource
+     */
+    void onBulkLoad(byte[] pageData, int address, int length, DebuggableMemory.AccessSource accessSource);
+
+    /**
+     * Method to be called after a chunk of bytes was written by a bulk operation
+     *
+     * @param pageData the page that the chunk belongs to
+     * @param address the address of the first byte written
+     * @param length the number of bytes written. All of them belong to the same page
+     * @param accessSource
+     */
+    void onBulkStore(byte[] pageData, int address, int length, DebuggableMemory.AccessSource accessSource);
+}
@@ -29,6 +29,14 @@ public abstract class IoActivityListener implements MemoryActivityListener {
         this.logRegisterMessages = logRegisterMessages;
     }
 
+    /**
+     * Helper to implement matchesPage() for listeners matching addresses with a base address and a mask
+     * @return true if at least one address of the given page satisfies (address & addressMask) == baseAddress
+     */
+    protected static boolean pageMatches(int page, int baseAddress, int addressMask) {
+        return ((page << 16) & addressMask & 0xFFFF_0000) == (baseAddress & 0xFFFF_0000);
+    }
+
     @Override
     public void onLoadInstruction8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
         // Do nothing. Loading instruction from register has no sense
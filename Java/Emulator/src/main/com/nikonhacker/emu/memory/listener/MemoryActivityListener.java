@@ -12,6 +12,16 @@ public interface MemoryActivityListener {
      */
     boolean matches(int address);
 
+    /**
+     * Method used to determine if this activity listener may have to be warned of changes to a given 64kB page
+     * (page number is address >>> 16). It is called when the listener is registered, so that accesses to other pages
+     * don't have to call matches() at all. Returning true for a page where no address matches is allowed.
+     *
+     * @param page the page number to test
+     * @return true if at least one address of this page may belong to an area to watch
+     */
+    boolean matchesPage(int page);
+
     /**
      * Method used to declare if this activity listener is a logger or can also modify data in onLoadXX methods
      * This is to make sure that logging happens AFTER modifiers have processed data, so that the logs reflects the
@@ -25,47 +35,47 @@ public interface MemoryActivityListener {
     /**
      * Method to be called each time a byte of instruction is read from the monitored area.
      * It gives the opportunity to return a value different than the one stored at that address if it was plain
-     * memory. It is the responsibility of the programmer that only one listener attached to an address returns a
-     * non-null value
+     * memory. Listeners are called in turn, each one receiving the value returned by the previous one, so a
+     * listener which doesn't want to change the value must return the value it received
      *
      *
      * @param pageData the page that address belongs to
      * @param address the address from which data is read
      * @param value the value stored at this place if it was a standard memory address
      * @param accessSource
-     * @return the value to return instead of the backing memory. If null, the original value can be returned
+     * @return the value to return instead of the backing memory, or value itself to leave it unchanged
      */
-    Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource);
+    byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource);
 
     /**
      * Method to be called each time a halfword of instruction is read from the monitored area
      * It gives the opportunity to return a value different than the one stored at that address if it was plain
-     * memory. It is the responsibility of the programmer that only one listener attached to an address returns a
-     * non-null value
+     * memory. Listeners are called in turn, each one receiving the value returned by the previous one, so a
+     * listener which doesn't want to change the value must return the value it received
      *
      *
      * @param pageData the page that address belongs to
      * @param address the address from which data is read
      * @param value the value stored at this place if it was a standard memory address
      * @param accessSource
-     * @return the value to return instead of the backing memory. If null, the original value can be returned
+     * @return the value to return instead of the backing memory, or value itself to leave it unchanged
      */
-    Integer onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource);
+    int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource);
 
     /**
      * Method to be called each time a word of instruction is read from the monitored area
      * It gives the opportunity to return a value different than the one stored at that address if it was plain
-     * memory. It is the responsibility of the programmer that only one listener attached to an address returns a
-     * non-null value
+     * memory. Listeners are called in turn, each one receiving the value returned by the previous one, so a
+     * listener which doesn't want to change the value must return the value it received
      *
      *
      * @param pageData the page that address belongs to
      * @param address the address from which data is read
      * @param value the value stored at this place if it was a standard memory address
      * @param accessSource
-     * @return the value to return instead of the backing memory. If null, the original value can be returned
+     * @return the value to return instead of the backing memory, or value itself to leave it unchanged
      */
-    Integer onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource);
+    int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource);
 
 
     /**
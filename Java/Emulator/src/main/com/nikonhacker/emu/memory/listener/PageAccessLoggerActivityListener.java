@@ -20,6 +20,11 @@ public class PageAccessLoggerActivityListener extends AbstractAccessLoggerActivi
         return address >>> 16 == targetPage;
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return page == targetPage;
+    }
+
     @Override
     public boolean isReadOnly() {
         return true;
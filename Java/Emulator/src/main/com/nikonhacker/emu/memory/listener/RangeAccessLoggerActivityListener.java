@@ -25,6 +25,11 @@ public class RangeAccessLoggerActivityListener extends AbstractAccessLoggerActiv
             && !BinaryArithmetics.isGreaterThanUnsigned(address, maxAddress);
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return page >= (minAddress >>> 16) && page <= (maxAddress >>> 16);
+    }
+
     @Override
     public boolean isReadOnly() {
         return true;
@@ -9,15 +9,20 @@ public class RangeCheckerMemoryActivityListener extends Abstract8BitMemoryActivi
         return true;
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return true;
+    }
+
     @Override
     public boolean isReadOnly() {
         return true;
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
         //TODO
-        return null;
+        return value;
     }
 
     @Override
@@ -2,7 +2,7 @@ package com.nikonhacker.emu.memory.listener;
 
 import com.nikonhacker.emu.memory.DebuggableMemory;
 
-public class TrackingMemoryActivityListener extends Abstract8BitMemoryActivityListener implements MemoryActivityListener {
+public class TrackingMemoryActivityListener extends Abstract8BitMemoryActivityListener implements BulkMemoryActivityListener {
 
     /** Arrays to track activity */
     private int[] pageActivityMap;
@@ -54,12 +54,17 @@ public class TrackingMemoryActivityListener extends Abstract8BitMemoryActivityLi
         return true;
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return true;
+    }
+
     @Override
     public boolean isReadOnly() {
         return true;
     }
 
-    public Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
         int pageNumber = address >>> 16;
         int offset = address & 0xFFFF;
 
@@ -78,7 +83,7 @@ public class TrackingMemoryActivityListener extends Abstract8BitMemoryActivityLi
         }
         if (mustRotateValues || ((cellActivityMaps[pageNumber][offset] & 0xFF00)!=0xFF00)) cellActivityMaps[pageNumber][offset]+= 0x0100;
 
-        return null;
+        return value;
     }
 
     public void onLoadInstruction8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
@@ -121,4 +126,34 @@ public class TrackingMemoryActivityListener extends Abstract8BitMemoryActivityLi
         if (mustRotateValues || ((cellActivityMaps[pageNumber][offset] & 0xFF0000)!=0xFF0000)) cellActivityMaps[pageNumber][offset]+= 0x010000;
     }
 
+    /**
+     * A bulk load counts as one access for the page, and one access for each byte
+     */
+    @Override
+    public void onBulkLoad(byte[] pageData, int address, int length, DebuggableMemory.AccessSource accessSource) {
+        trackBulkAccess(address, length, 0x0100, 0xFF00);
+    }
+
+    /**
+     * A bulk store counts as one access for the page, and one access for each byte
+     */
+    @Override
+    public void onBulkStore(byte[] pageData, int address, int length, DebuggableMemory.AccessSource accessSource) {
+        trackBulkAccess(address, length, 0x010000, 0xFF0000);
+    }
+
+    private void trackBulkAccess(int address, int length, int increment, int mask) {
+        int pageNumber = address >>> 16;
+        int offset = address & 0xFFFF;
+
+        if (mustRotateValues || ((pageActivityMap[pageNumber] & mask)!=mask)) pageActivityMap[pageNumber]+= increment;
+        if (cellActivityMaps[pageNumber] == null) {
+            cellActivityMaps[pageNumber] = new int[pageSize];
+        }
+        int[] cellActivityMap = cellActivityMaps[pageNumber];
+        for (int i = offset; i < offset + length; i++) {
+            if (mustRotateValues || ((cellActivityMap[i] & mask)!=mask)) cellActivityMap[i]+= increment;
+        }
+    }
+
 }
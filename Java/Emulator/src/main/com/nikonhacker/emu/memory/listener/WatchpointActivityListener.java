@@ -0,0 +1,141 @@
+package com.nikonhacker.emu.memory.listener;
+
+import com.nikonhacker.emu.memory.DebuggableMemory;
+
+import java.util.Arrays;
+
+/**
+ * A listener raising a flag each time one of a set of watched bytes is written to, so that conditions on the value
+ * of these bytes only have to be tested after such a write.
+ * Reads and stores to other pages don't reach this listener at all.
+ */
+public class WatchpointActivityListener implements BulkMemoryActivityListener {
+    /** Watched addresses, sorted and without duplicates */
+    private final int[] addresses;
+
+    private volatile boolean hit;
+
+    /**
+     * @param addresses the addresses of the watched bytes, sorted (as by Arrays.sort()), without duplicates
+     */
+    public WatchpointActivityListener(int[] addresses) {
+        this.addresses = addresses;
+    }
+
+    public int[] getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Raises the flag, e.g. so that conditions are tested once when they are armed
+     */
+    public void setHit() {
+        hit = true;
+    }
+
+    /**
+     * Clears the flag
+     * @return true if one of the watched bytes was written to since the last call, or since setHit() was called
+     */
+    public boolean clearHit() {
+        if (hit) {
+            hit = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if at least one watched byte is in [address, address + length[
+     */
+    private boolean overlaps(int address, int length) {
+        int index = Arrays.binarySearch(addresses, address);
+        if (index >= 0) {
+            return true;
+        }
+        index = -index - 1;
+        return index < addresses.length && addresses[index] - address < length;
+    }
+
+    /**
+     * @return true if a store of up to 4 bytes at the given address may hit a watched byte
+     */
+    @Override
+    public boolean matches(int address) {
+        return overlaps(address, 4);
+    }
+
+    @Override
+    public boolean matchesPage(int page) {
+        for (int address : addresses) {
+            if (address >>> 16 == page) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+        return value;
+    }
+
+    @Override
+    public int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        return value;
+    }
+
+    @Override
+    public int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        return value;
+    }
+
+    @Override
+    public void onLoadInstruction8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+    }
+
+    @Override
+    public void onLoadInstruction16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    }
+
+    @Override
+    public void onLoadInstruction32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    }
+
+    @Override
+    public void onStore8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+        if (overlaps(address, 1)) {
+            hit = true;
+        }
+    }
+
+    @Override
+    public void onStore16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        if (overlaps(address, 2)) {
+            hit = true;
+        }
+    }
+
+    @Override
+    public void onStore32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        if (overlaps(address, 4)) {
+            hit = true;
+        }
+    }
+
+    @Override
+    public void onBulkLoad(byte[] pageData, int address, int length, DebuggableMemory.AccessSource accessSource) {
+    }
+
+    @Override
+    public void onBulkStore(byte[] pageData, int address, int length, DebuggableMemory.AccessSource accessSource) {
+        if (overlaps(address, length)) {
+            hit = true;
+        }
+    }
+}
@@ -27,7 +27,12 @@ public class Expeed4002IoListener extends IoActivityListener {
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public boolean matchesPage(int page) {
+        return pageMatches(page, BASE_ADDRESS1, ADDRESS_MASK1) || pageMatches(page, BASE_ADDRESS2, ADDRESS_MASK2);
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         final int unit = ( (addr&0x100000)!=0 ? 2 : ((addr>>16)&1) );
 
         FrResolutionConverter resolutionConverter = (FrResolutionConverter)(platform.getResolutionConverter()[unit]);
@@ -35,11 +40,11 @@ public class Expeed4002IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("ResolutionConverter(" + unit + "): Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load8 is not supported yet");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         final int unit = ( (addr&0x100000)!=0 ? 2 : ((addr>>16)&1) );
 
         FrResolutionConverter resolutionConverter = (FrResolutionConverter)(platform.getResolutionConverter()[unit]);
@@ -65,11 +70,11 @@ public class Expeed4002IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("ResolutionConverter(" + unit + "): Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load16 is not supported yet");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         final int unit = ( (addr&0x100000)!=0 ? 2 : ((addr>>16)&1) );
 
         FrResolutionConverter resolutionConverter = (FrResolutionConverter)(platform.getResolutionConverter()[unit]);
@@ -79,7 +84,7 @@ public class Expeed4002IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("ResolutionConverter(" + unit + "): Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load32 is not supported yet");
         }
-        return null;
+        return value;
     }
 
 
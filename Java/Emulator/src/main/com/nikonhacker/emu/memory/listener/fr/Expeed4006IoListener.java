@@ -19,24 +19,29 @@ public class Expeed4006IoListener extends IoActivityListener {
         return (address & ADDRESS_MASK) == BASE_ADDRESS;
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return pageMatches(page, BASE_ADDRESS, ADDRESS_MASK);
+    }
+
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
-        return null;
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         // this bit tells that access to image processor registers is possible
         // return fake acknowledge at register 0x40060010
         if (address == 0x40060010) return 0x1000;
         // otherwise, ignore
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
-        return null;
+    public int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+        return value;
     }
 
 
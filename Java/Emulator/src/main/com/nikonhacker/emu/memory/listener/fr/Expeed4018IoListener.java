@@ -25,13 +25,18 @@ public class Expeed4018IoListener extends IoActivityListener {
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public boolean matchesPage(int page) {
+        return pageMatches(page, BASE_ADDRESS, ADDRESS_MASK);
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         if (logRegisterMessages) warn("FrImageTransferCircuit: registers can't be addressed as byte");
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         FrImageTransferCircuit imageTransferCircuit = (FrImageTransferCircuit)(platform.getImageTransferCircuit());
 
         switch (addr&0xFFFF) {
@@ -52,11 +57,11 @@ public class Expeed4018IoListener extends IoActivityListener {
                         if (logRegisterMessages) warn("FrImageTransferCircuit: Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load16 is not supported yet");
                 }
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         int unit = ((addr&0x40)!=0 ? 1 : 0);
 
         FrImageTransferCircuit imageTransferCircuit = (FrImageTransferCircuit)(platform.getImageTransferCircuit());
@@ -68,7 +73,7 @@ public class Expeed4018IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("FrImageTransferCircuit: Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load32 is not supported yet");
         }
-        return null;
+        return value;
     }
 
 
@@ -24,7 +24,12 @@ public class Expeed40X3IoListener extends IoActivityListener {
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public boolean matchesPage(int page) {
+        return pageMatches(page, BASE_ADDRESS, ADDRESS_MASK);
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         int unit = ((addr&0x100000)!=0 ? 1 : 0);
 
         FrJpegCodec jpegCodec = (FrJpegCodec)(platform.getJpegCodec()[unit]);
@@ -39,11 +44,11 @@ public class Expeed40X3IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("JpegCodec (" + unit + "): Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load8 is not supported yet");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         int unit = ((addr&0x100000)!=0 ? 1 : 0);
 
         FrJpegCodec jpegCodec = (FrJpegCodec)(platform.getJpegCodec()[unit]);
@@ -67,11 +72,11 @@ public class Expeed40X3IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("JpegCodec (" + unit + "): Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load16 is not supported yet");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         int unit = ((addr&0x100000)!=0 ? 1 : 0);
 
         FrJpegCodec jpegCodec = (FrJpegCodec)(platform.getJpegCodec()[unit]);
@@ -84,7 +89,7 @@ public class Expeed40X3IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("JpegCodec (" + unit + "): Register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load32 is not supported yet");
         }
-        return null;
+        return value;
     }
 
 
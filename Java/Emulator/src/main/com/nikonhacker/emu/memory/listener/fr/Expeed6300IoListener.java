@@ -27,13 +27,18 @@ public class Expeed6300IoListener extends IoActivityListener {
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public boolean matchesPage(int page) {
+        return pageMatches(page, BASE_ADDRESS1, ADDRESS_MASK1) || pageMatches(page, BASE_ADDRESS2, ADDRESS_MASK2);
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         if (logRegisterMessages) warn("SD controller ("+(addr&0x4000000)+"):register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load8 is not supported yet");
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         final int unit = ( (addr&4000000)!=0 ? 1 : 0 );
 
         FrSdController sdController = (FrSdController)(platform.getSdController()[unit]);
@@ -41,11 +46,11 @@ public class Expeed6300IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("SD controller ("+(addr&0x4000000)+"):register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load16 is not supported yet");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         final int unit = ( (addr&4000000)!=0 ? 1 : 0 );
 
         FrSdController sdController = (FrSdController)(platform.getSdController()[unit]);
@@ -53,7 +58,7 @@ public class Expeed6300IoListener extends IoActivityListener {
             default:
                 if (logRegisterMessages) warn("SD controller ("+(addr&0x4000000)+"):register 0x" + Format.asHex(addr&0xFFF, 3) + ": Load32 is not supported yet");
         }
-        return null;
+        return value;
     }
 
 
@@ -27,7 +27,12 @@ public class Expeed6B00IoListener extends IoActivityListener {
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public boolean matchesPage(int page) {
+        return pageMatches(page, BASE_ADDRESS, ADDRESS_MASK);
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_SHARED_INT_CONFIG_BEGIN && addr <= REGISTER_SHARED_INT_CONFIG_END) {
             // shared interrupt circuit
             stop("Shared interrupt config registers cannot be accessed by 8-bit for now");
@@ -35,11 +40,11 @@ public class Expeed6B00IoListener extends IoActivityListener {
             // shared interrupt circuit
             stop("Shared interrupt circuit registers cannot be accessed by 8-bit for now");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_SHARED_INT_CONFIG_BEGIN && addr <= REGISTER_SHARED_INT_CONFIG_END) {
             // shared interrupt circuit
             stop("Shared interrupt config registers cannot be accessed by 16-bit for now");
@@ -47,11 +52,11 @@ public class Expeed6B00IoListener extends IoActivityListener {
             // shared interrupt circuit
             stop("Shared interrupt circuit registers cannot be accessed by 16-bit for now");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_SHARED_INT_CONFIG_BEGIN && addr <= REGISTER_SHARED_INT_CONFIG_END) {
             // shared interrupt circuit
             FrSharedInterruptCircuit sharedInterruptCircuit = (FrSharedInterruptCircuit)platform.getSharedInterruptCircuit();
@@ -63,7 +68,7 @@ public class Expeed6B00IoListener extends IoActivityListener {
 
             return sharedInterruptCircuit.getStatusReg((addr-REGISTER_SHARED_INT_STATUS_BEGIN)>>2);
         }
-        return null;
+        return value;
     }
 
 
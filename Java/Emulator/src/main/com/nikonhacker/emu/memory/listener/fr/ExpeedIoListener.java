@@ -83,6 +83,11 @@ public class ExpeedIoListener extends IoActivityListener {
         return address >>> 16 == 0x0000;
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return page == 0x0000;
+    }
+
     /**
      * Called when reading 8-bit value from register address range
      *
@@ -92,11 +97,11 @@ public class ExpeedIoListener extends IoActivityListener {
      * @param accessSource
      * @return value to be returned, or null to return previously written value like normal memory
      */
-    public Byte onLoadData8(byte[] ioPage, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public byte onLoadData8(byte[] ioPage, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_ICR00 && addr < REGISTER_ICR00 + 48) {
             // Interrupt request level registers
             // Standard memory is used
-            return null;
+            return value;
         }
         // Serial Interface configuration registers
         if (addr >= REGISTER_SCR_IBRC0 && addr < REGISTER_SCR_IBRC0 + NUM_SERIAL_IF * SERIAL_IF_OFFSET) {
@@ -177,7 +182,7 @@ public class ExpeedIoListener extends IoActivityListener {
 
         if (logRegisterMessages) warn("Register 0x" + Format.asHex(addr, 8) + ": Load8 is not supported yet");
 
-        return null;
+        return value;
     }
 
     /**
@@ -190,7 +195,7 @@ public class ExpeedIoListener extends IoActivityListener {
      * @param accessSource
      * @return value to be returned, or null to return previously written value like normal memory
      */
-    public Integer onLoadData16(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         // Serial Interface configuration registers
         if (addr >= REGISTER_SCR_IBRC0 && addr < REGISTER_SCR_IBRC0 + NUM_SERIAL_IF * SERIAL_IF_OFFSET) {
             int serialInterfaceNr = (addr - REGISTER_SCR_IBRC0) >> SERIAL_IF_OFFSET_BITS;
@@ -285,7 +290,7 @@ public class ExpeedIoListener extends IoActivityListener {
 
         if (logRegisterMessages) warn("Register 0x" + Format.asHex(addr, 8) + ": Load16 is not supported yet");
 
-        return null;
+        return value;
     }
 
     /**
@@ -298,7 +303,7 @@ public class ExpeedIoListener extends IoActivityListener {
      * @param accessSource
      * @return value to be returned, or null to return previously written value like normal memory
      */
-    public Integer onLoadData32(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_TMRLRA0_32 && addr < (REGISTER_TMRLRA0_32 + NUM_TIMER32 * TIMER32_OFFSET)) {
             // 32-bit timer
             int channel;
@@ -333,7 +338,7 @@ public class ExpeedIoListener extends IoActivityListener {
 
         if (logRegisterMessages) warn("Register 0x" + Format.asHex(addr, 8) + ": Load32 is not supported yet");
 
-        return null;
+        return value;
     }
 
     public void onStore8(byte[] ioPage, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
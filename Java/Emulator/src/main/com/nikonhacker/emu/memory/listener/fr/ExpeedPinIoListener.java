@@ -27,7 +27,12 @@ public class ExpeedPinIoListener extends IoActivityListener {
     }
 
     @Override
-    public Byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+    public final boolean matchesPage(int page) {
+        return pageMatches(page, PORT_BASE_ADDRESS, PORT_ADDRESS_MASK);
+    }
+
+    @Override
+    public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
         final int portNumber = address & 0xFF;
         if (portNumber<NUM_PORT) {
             final FrIoPort port = (FrIoPort)(platform.getIoPorts()[portNumber]);
@@ -38,27 +43,27 @@ public class ExpeedPinIoListener extends IoActivityListener {
                     return port.getFunctionRegister();
             }
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         switch (address& 0xFFFFFF00) {
             case PORT_VALUE_ADDRESS:
             case PORT_CONFIG_ADDRESS:
                 warn("Loading 16b data from Pin Port register 0x" + Format.asHex(address, 8) + " is not implemented");
         }
-        return null;
+        return value;
     }
 
     @Override
-    public Integer onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] pageData, int address, int value, DebuggableMemory.AccessSource accessSource) {
         switch (address& 0xFFFFFF00) {
             case PORT_VALUE_ADDRESS:
             case PORT_CONFIG_ADDRESS:
                 warn("Loading 32b data from Pin Port register 0x" + Format.asHex(address, 8) + " is not implemented");
         }
-        return null;
+        return value;
     }
 
 
@@ -225,6 +225,11 @@ public class TxIoListener extends IoActivityListener {
         return address >>> 16 == 0xFF00;
     }
 
+    @Override
+    public boolean matchesPage(int page) {
+        return page == 0xFF00;
+    }
+
     /**
      * Called when reading 8-bit value from register address range
      *
@@ -234,7 +239,7 @@ public class TxIoListener extends IoActivityListener {
      * @param accessSource
      * @return value to be returned, or null to return previously written value like normal memory
      */
-    public Byte onLoadData8(byte[] ioPage, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
+    public byte onLoadData8(byte[] ioPage, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_IMC00 && addr < (REGISTER_IMC19+4)) {
             // IMC registers.
             return (byte)(((TxInterruptController)platform.getInterruptController()).getImc(addr-REGISTER_IMC00));
@@ -562,7 +567,7 @@ public class TxIoListener extends IoActivityListener {
 
         if (logRegisterMessages) warn("Register 0x" + Format.asHex(addr, 8) + ": Load8 is not supported yet");
 
-        return null;
+        return value;
     }
 
     /**
@@ -575,7 +580,7 @@ public class TxIoListener extends IoActivityListener {
      * @param accessSource
      * @return value to be returned, or null to return previously written value like normal memory
      */
-    public Integer onLoadData16(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData16(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_IMC00 && addr < (REGISTER_IMC19+4)) {
             // IMC registers.
             TxInterruptController intc = (TxInterruptController)platform.getInterruptController();
@@ -768,7 +773,7 @@ public class TxIoListener extends IoActivityListener {
 
         if (logRegisterMessages) warn("Register 0x" + Format.asHex(addr, 8) + ": Load16 is not supported yet");
 
-        return null;
+        return value;
     }
 
     /**
@@ -781,7 +786,7 @@ public class TxIoListener extends IoActivityListener {
      * @param accessSource
      * @return value to be returned, or null to return previously written value like normal memory
      */
-    public Integer onLoadData32(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
+    public int onLoadData32(byte[] ioPage, int addr, int value, DebuggableMemory.AccessSource accessSource) {
         if (addr >= REGISTER_IMC00 && addr < (REGISTER_IMC19+4)) {
             // IMC registers.
             TxInterruptController intc = (TxInterruptController)platform.getInterruptController();
@@ -1055,7 +1060,7 @@ public class TxIoListener extends IoActivityListener {
 
         if (logRegisterMessages) warn("Register 0x" + Format.asHex(addr, 8) + ": Load32 is not supported yet");
 
-        return null;
+        return value;
     }
 
     public void onStore8(byte[] ioPage, int addr, byte value, DebuggableMemory.AccessSource accessSource) {
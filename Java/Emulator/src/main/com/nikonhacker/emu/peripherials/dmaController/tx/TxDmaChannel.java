@@ -2,12 +2,13 @@ package com.nikonhacker.emu.peripherials.dmaController.tx;
 
 import com.nikonhacker.Constants;
 import com.nikonhacker.Format;
+import com.nikonhacker.emu.CycleDeadlineListener;
 import com.nikonhacker.emu.memory.DebuggableMemory;
 import com.nikonhacker.emu.peripherials.interruptController.tx.TxInterruptController;
 import com.nikonhacker.emu.peripherials.ioPort.IoPort;
 import com.nikonhacker.emu.peripherials.ioPort.tx.TxIoPort;
 
-public class TxDmaChannel {
+public class TxDmaChannel implements CycleDeadlineListener {
     private static final int CCR_SIO_MASK  = 0b00000000_00000000_00000010_00000000;
     private static final int CCR_RELEN_MASK= 0b00000000_00000000_00000100_00000000;
     private static final int CCR_SREQ_MASK = 0b00000000_00000000_00001000_00000000;
@@ -28,9 +29,14 @@ public class TxDmaChannel {
     // Writing 1 to NC and AbC has no effect
     private static final int CSR_NOT_SETTABLE_TO_ONE = CSR_NC_MASK | CSR_ABC_MASK;
 
+    // Approximation: one read and one write bus cycle per unit transferred
+    private static final int CYCLES_PER_TRANSFER = 2;
+
     private int channelNumber;
     private TxDmaController txDmaController;
     private boolean isInStandBy = false;
+    /** true when data has been transferred in async mode, but the end of transfer has not been signalled yet */
+    private boolean isCompletionPending = false;
 
     // registers
     private int ccr = 0b00000000_11100010_00000000_00000000;
@@ -132,7 +138,9 @@ public class TxDmaChannel {
 
 
     public void reset() {
-        // TODO if transfer implementation switches to async mode, stop current transfer, if any
+        // Cancel end of transfer notification, if any
+        txDmaController.getEmulator().removeCycleDeadlineListener(this);
+        isCompletionPending = false;
         ccr = 0b00000000_11100010_00000000_00000000;
         csr = 0;
         sar = 0;
@@ -375,19 +383,11 @@ public class TxDmaChannel {
     }
 
     public void start() {
-        if (txDmaController.getPrefs().isDmaSynchronous(Constants.CHIP_TX)) {
-            // SYNC
-            performTransfer();
-        }
-        else {
-            // ASYNC
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    performTransfer();
-                }
-            }).start();
+        if (isCompletionPending) {
+            // Previous transfer is not over yet
+            return;
         }
+        performTransfer();
     }
 
     private void performTransfer() {
@@ -420,6 +420,25 @@ public class TxDmaChannel {
             int value;
             // transfer is continuous for internal requests, or if it is specified as continuous
             boolean isContinuous = !isCcrExternalRequest() || !isCcrSioSingle();
+            int numTransfers = bcr / dpsBytes;
+            if (isContinuous && bcr != 0
+                    && srcIncrement == dpsBytes && dstIncrement == dpsBytes
+                    && (dpsBytes == 1 || isCcrBig())
+                    && memory.isBulkCapable(sar, bcr) && memory.isBulkCapable(dar, bcr)) {
+                // Plain memory to memory copy, without byte swapping: move it by page chunks
+                memory.copy(sar, dar, bcr, DebuggableMemory.AccessSource.DMA);
+                sar += bcr;
+                dar += bcr;
+                bcr = 0;
+                switch (dpsBytes) {
+                    case 1: txDmaController.setDhr(memory.loadUnsigned8(dar - 1, null)); break;
+                    case 2: txDmaController.setDhr(memory.loadUnsigned16(dar - 2, null)); break;
+                    case 4: txDmaController.setDhr(memory.load32(dar - 4, null)); break;
+                }
+                if (isCcrExternalRequest()) {
+                    ((TxInterruptController)txDmaController.getPlatform().getInterruptController()).clearRequest(channelNumber);
+                }
+            }
             boolean doLoop = true;
             while (bcr != 0 && doLoop) {
                 switch (dpsBytes) {
@@ -464,14 +483,32 @@ public class TxDmaChannel {
                     // "On the other hand, during a continuous transfer, the DACKn signal is asserted only when the number of bytes transferred (value set in the BCRn register) becomes 0" (p 10-19)
                     // TODO DACK ?
                 }
-                // "transfer operation is always put in a standby mode for the next transfer request if the number of bytes transferred (value set in the BCRn register) does not become 0" (p 10-19)
-                isInStandBy = false;
-
-                signalNormalCompletion();
+                if (txDmaController.getPrefs().isDmaSynchronous(Constants.CHIP_TX)) {
+                    signalEndOfTransfer();
+                }
+                else {
+                    // Data is already there, but let the CPU run for the time the transfer would take
+                    isCompletionPending = true;
+                    txDmaController.getEmulator().addCycleDeadlineListener(this, txDmaController.getEmulator().getTotalCycles() + numTransfers * CYCLES_PER_TRANSFER);
+                }
             }
         }
     }
 
+    @Override
+    public long onCycleDeadline(long deadline) {
+        isCompletionPending = false;
+        signalEndOfTransfer();
+        return -1;
+    }
+
+    private void signalEndOfTransfer() {
+        // "transfer operation is always put in a standby mode for the next transfer request if the number of bytes transferred (value set in the BCRn register) does not become 0" (p 10-19)
+        isInStandBy = false;
+
+        signalNormalCompletion();
+    }
+
     private void signalNormalCompletion() {
         setCsrNormalCompletion();
         // Interrupt if required
@@ -2,6 +2,7 @@ package com.nikonhacker.emu.peripherials.dmaController.tx;
 
 import com.nikonhacker.Format;
 import com.nikonhacker.Prefs;
+import com.nikonhacker.emu.Emulator;
 import com.nikonhacker.emu.Platform;
 import com.nikonhacker.emu.peripherials.dmaController.DmaController;
 
@@ -14,10 +15,12 @@ public class TxDmaController implements DmaController {
 
     private TxDmaChannel channels[] = new TxDmaChannel[8];
     private Platform platform;
+    private Emulator emulator;
     private Prefs prefs;
 
-    public TxDmaController(Platform platform, Prefs prefs) {
+    public TxDmaController(Platform platform, Emulator emulator, Prefs prefs) {
         this.platform = platform;
+        this.emulator = emulator;
         this.prefs = prefs;
         for (int i = 0; i < 8; i++) {
             channels[i] = new TxDmaChannel(i, this);
@@ -28,6 +31,10 @@ public class TxDmaController implements DmaController {
         return platform;
     }
 
+    public Emulator getEmulator() {
+        return emulator;
+    }
+
     public Prefs getPrefs() {
         return prefs;
     }
@@ -159,7 +159,6 @@ public class FrImageTransferChannel implements ImageTransferChannel {
     }
     
     private void copy () {
-        int from = sourceAddress, to=destinationAddress;
         final int addFrom = sourceBufferWidth-destinationImageWidth;
         final int addTo = destinationBufferWidth-destinationImageWidth;
         DebuggableMemory memory = platform.getMemory();
@@ -169,19 +168,11 @@ public class FrImageTransferChannel implements ImageTransferChannel {
             throw new RuntimeException("ImageTransferChannel(" + channelNumber +"): ImageWidth > BufferWidth");
         }
         
-        for (int y=0; y<destinationImageHeight; y++) {
-            for (int x=0; x<destinationImageWidth; x++,to++,from++) {
-                memory.store8(to, 
-                              memory.loadUnsigned8(from, DebuggableMemory.AccessSource.IMGA), 
-                              DebuggableMemory.AccessSource.IMGA);
-            }
-            from += addFrom;
-            to += addTo;
-        }
+        memory.copy2D(sourceAddress, sourceBufferWidth, destinationAddress, destinationBufferWidth,
+                      destinationImageWidth, destinationImageHeight, DebuggableMemory.AccessSource.IMGA);
     }
 
     private void fill(int value){
-        int to=destinationAddress;
         final int addTo = destinationBufferWidth-destinationImageWidth;
         DebuggableMemory memory = platform.getMemory();
         
@@ -191,10 +182,7 @@ public class FrImageTransferChannel implements ImageTransferChannel {
         }
         
         // fill image
-        for (int y=0; y<destinationImageHeight; y++, to += addTo) {
-            for (int x=0; x<destinationImageWidth; x++, to++) {
-                memory.store8(to, value, DebuggableMemory.AccessSource.IMGA);
-            }
-        }
+        memory.fill2D(destinationAddress, destinationBufferWidth, destinationImageWidth, destinationImageHeight,
+                      value, DebuggableMemory.AccessSource.IMGA);
     }
 }
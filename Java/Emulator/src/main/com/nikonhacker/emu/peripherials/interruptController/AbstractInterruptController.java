@@ -7,14 +7,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 public abstract class AbstractInterruptController implements InterruptController {
+    /**
+     * Pending requests, sorted by priority. Changes must be done while holding its lock, followed by a call to
+     * {@link #updatePendingState()}
+     */
     protected final List<InterruptRequest> interruptRequestQueue = new ArrayList<InterruptRequest>();
 
+    /**
+     * The following fields summarize interruptRequestQueue, so that the CPU can check it after each instruction
+     * without locking
+     */
+    /** Bit n is set if at least one request of priority class n is in queue */
+    private volatile long             pendingPriorityClasses;
+    /** The first request in queue */
+    private volatile InterruptRequest nextRequest;
+
     /**
      * TODO this is weird: interruptController requires a platform
      * but platform also points to interruptController
      */
     protected Platform platform;
 
+    /**
+     * Number of times each interrupt was processed, indexed by interrupt number. Allocated lazily.
+     */
+    private long[] processedInterruptCounts;
+
     public AbstractInterruptController(Platform platform) {
         this.platform = platform;
     }
@@ -44,6 +62,7 @@ public abstract class AbstractInterruptController implements InterruptController
             }
             if (requestToRemove != null) {
                 interruptRequestQueue.remove(requestToRemove);
+                updatePendingState();
             }
         }
     }
@@ -54,7 +73,9 @@ public abstract class AbstractInterruptController implements InterruptController
      */
     public void removeRequest(InterruptRequest interruptRequest) {
         synchronized (interruptRequestQueue) {
-            interruptRequestQueue.remove(interruptRequest);
+            if (interruptRequestQueue.remove(interruptRequest)) {
+                updatePendingState();
+            }
         }
     }
 
@@ -63,7 +84,11 @@ public abstract class AbstractInterruptController implements InterruptController
      * @return
      */
     public boolean hasPendingRequests() {
-        return !interruptRequestQueue.isEmpty();
+        return pendingPriorityClasses != 0;
+    }
+
+    public long getPendingPriorityClasses() {
+        return pendingPriorityClasses;
     }
 
     /**
@@ -71,18 +96,57 @@ public abstract class AbstractInterruptController implements InterruptController
      * @return
      */
     public InterruptRequest getNextRequest() {
+        return nextRequest;
+    }
+
+    /**
+     * Recomputes the lock-free summary of the queue. Must be called, while holding the queue lock, after each change
+     * to the queue or to the priority of a queued request
+     */
+    protected final void updatePendingState() {
+        long classes = 0;
+        for (InterruptRequest interruptRequest : interruptRequestQueue) {
+            classes |= 1L << interruptRequest.getPriorityClass();
+        }
+        // Publish the request first: a reader seeing the new classes with the former request will just retry later
+        nextRequest = interruptRequestQueue.isEmpty() ? null : interruptRequestQueue.get(0);
+        pendingPriorityClasses = classes;
+    }
+
+    /**
+     * States saved before the summary fields existed only contain the queue: compute them, otherwise pending requests
+     * would not be seen until another one arrives
+     */
+    protected Object readResolve() {
         synchronized (interruptRequestQueue) {
-            if (interruptRequestQueue.isEmpty()) {
-                return null;
-            }
-            else {
-                return interruptRequestQueue.get(0);
-            }
+            updatePendingState();
         }
+        return this;
     }
 
     public List<InterruptRequest> getInterruptRequestQueue() {
         return interruptRequestQueue;
     }
 
+    /**
+     * Must be called each time an interrupt is actually processed by the CPU
+     * @param interruptNumber the number of the interrupt (0-255)
+     */
+    protected final void countProcessedInterrupt(int interruptNumber) {
+        if (processedInterruptCounts == null) {
+            processedInterruptCounts = new long[256];
+        }
+        processedInterruptCounts[interruptNumber & 0xFF]++;
+    }
+
+    /**
+     * Returns the number of times each interrupt was processed, indexed by interrupt number
+     */
+    public long[] getProcessedInterruptCounts() {
+        if (processedInterruptCounts == null) {
+            processedInterruptCounts = new long[256];
+        }
+        return processedInterruptCounts;
+    }
+
 }
@@ -36,6 +36,10 @@ public class DummyInterruptController implements InterruptController {
         return false;
     }
 
+    public long getPendingPriorityClasses() {
+        return 0;
+    }
+
     public FrInterruptRequest getNextRequest() {
         return null;
     }
@@ -18,6 +18,12 @@ public interface InterruptController {
 
     public boolean hasPendingRequests();
 
+    /**
+     * Returns a bitmap with bit n set if at least one request with {@link InterruptRequest#getPriorityClass()} n is pending.
+     * This call does not lock, so that it can be performed after each instruction
+     */
+    public long getPendingPriorityClasses();
+
     public InterruptRequest getNextRequest();
 
     List<InterruptRequest> getInterruptRequestQueue();
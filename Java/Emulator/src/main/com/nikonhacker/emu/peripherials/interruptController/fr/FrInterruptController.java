@@ -173,6 +173,7 @@ public class FrInterruptController extends AbstractInterruptController {
             }
             interruptRequestQueue.add(newInterruptRequest);
             Collections.sort(interruptRequestQueue);
+            updatePendingState();
             return true;
         }
     }
@@ -345,6 +346,7 @@ public class FrInterruptController extends AbstractInterruptController {
                     }
                     frInterruptRequest.setICR(icr & 0x1F | 0x10);
                     Collections.sort(interruptRequestQueue);
+                    updatePendingState();
                     break;
                 }
             }
@@ -352,6 +354,7 @@ public class FrInterruptController extends AbstractInterruptController {
     }
 
     public void processInterrupt(int interruptNumber, int pcToStore, StatementContext context) {
+        countProcessedInterrupt(interruptNumber);
         FrCPUState frCpuState = (FrCPUState) context.cpuState;
         frCpuState.setReg(FrCPUState.SSP, frCpuState.getReg(FrCPUState.SSP) - 4);
         context.memory.store32(frCpuState.getReg(FrCPUState.SSP), frCpuState.getPS());
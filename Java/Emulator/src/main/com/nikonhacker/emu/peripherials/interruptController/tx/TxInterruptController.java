@@ -393,6 +393,7 @@ public class TxInterruptController extends AbstractInterruptController {
             }
             interruptRequestQueue.add(newInterruptRequest);
             Collections.sort(interruptRequestQueue);
+            updatePendingState();
             return true;
         }
     }
@@ -906,6 +907,7 @@ public class TxInterruptController extends AbstractInterruptController {
     }
 
     public void processInterrupt(TxInterruptRequest interruptRequest, int pcToStore, StatementContext context) {
+        countProcessedInterrupt(interruptRequest.getInterruptNumber());
         TxCPUState txCPUState = (TxCPUState) platform.getCpuState();
 
         txCPUState.setSscrPSS(txCPUState.getSscrCSS());
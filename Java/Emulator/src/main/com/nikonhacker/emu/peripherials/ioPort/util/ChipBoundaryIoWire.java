@@ -0,0 +1,38 @@
+package com.nikonhacker.emu.peripherials.ioPort.util;
+
+import com.nikonhacker.emu.MasterClock;
+
+/**
+ * This class implements a wire between a pin of one chip and a pin of the other chip.
+ * Values are forwarded as cross-chip events (see MasterClock.postCrossChipEvent()), so that when chips run in
+ * parallel, the receiving chip only sees the change at the next synchronization point.
+ */
+public class ChipBoundaryIoWire extends Abstract2PinComponent {
+    public ChipBoundaryIoWire(final String name, MasterClock masterClock) {
+        super(name);
+        // Replace Pins 1 & 2 to forward values to each other
+        pin1 = new ChipBoundaryForwardingPin(name + ".pin1", masterClock);
+        pin2 = new ChipBoundaryForwardingPin(name + ".pin2", masterClock);
+        ((ChipBoundaryForwardingPin) pin1).setTargetPin(pin2);
+        ((ChipBoundaryForwardingPin) pin2).setTargetPin(pin1);
+    }
+
+    static class ChipBoundaryForwardingPin extends ForwardingPin {
+        private MasterClock masterClock;
+
+        public ChipBoundaryForwardingPin(String name, MasterClock masterClock) {
+            super(name);
+            this.masterClock = masterClock;
+        }
+
+        @Override
+        public void setInputValue(final int value) {
+            masterClock.postCrossChipEvent(new Runnable() {
+                @Override
+                public void run() {
+                    ChipBoundaryForwardingPin.super.setInputValue(value);
+                }
+            });
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package com.nikonhacker.emu.peripherials.programmableTimer;
 
-import com.nikonhacker.emu.Clockable;
 import com.nikonhacker.emu.Platform;
+import com.nikonhacker.emu.SkippableClockable;
 
-public abstract class ProgrammableTimer implements Clockable {
+public abstract class ProgrammableTimer implements SkippableClockable {
 
     /** Lower boundary of sustainable interval between emulator scheduler ticks */
     @Deprecated
@@ -40,6 +40,18 @@ public abstract class ProgrammableTimer implements Clockable {
     @Deprecated
     protected long intervalNanoseconds = 1000000000L; // in ns/Timertick. For example, intervalNanoseconds=1000000000 ns/Timertick means f = 1Hz
 
+    /** Number of ticks that were skipped by the clock and not yet applied to currentValue */
+    protected int skippedTicks;
+
+    /** Time of the last tick that was actually run before skipping, in picoseconds */
+    protected long skipStartPs;
+
+    /** Duration of a tick at the time ticks were skipped, in picoseconds */
+    protected long skipPeriodPs;
+
+    /** Number of skipped ticks that were forgotten because the configuration changed, to be run again by the clock */
+    protected int cancelledTicks;
+
     public ProgrammableTimer(int timerNumber, Platform platform) {
         this.timerNumber = timerNumber;
         this.platform = platform;
@@ -50,14 +62,17 @@ public abstract class ProgrammableTimer implements Clockable {
     }
 
     public int getCurrentValue() {
+        catchUpSkippedTicks();
         return currentValue;
     }
 
     public void setCurrentValue(int currentValue) {
+        cancelSkippedTicks();
         this.currentValue = currentValue;
     }
 
     public void setActive(boolean active) {
+        cancelSkippedTicks();
         this.active = active;
     }
 
@@ -74,9 +89,62 @@ public abstract class ProgrammableTimer implements Clockable {
     }
 
     protected void unRegister() {
+        cancelledTicks = 0;
         platform.getMasterClock().remove(this);
     }
 
+    @Override
+    public void skipTicks(int ticks, long startPs, long periodPs) {
+        skippedTicks = ticks;
+        skipStartPs = startPs;
+        skipPeriodPs = periodPs;
+    }
+
+    @Override
+    public int dropSkippedTicks() {
+        catchUpSkippedTicks();
+        int ticks = skippedTicks + cancelledTicks;
+        skippedTicks = 0;
+        cancelledTicks = 0;
+        return ticks;
+    }
+
+    /**
+     * Applies the skipped ticks that have elapsed until now, according to the master clock.
+     * A tick due now is not applied: clockables running at the same time as this timer (e.g. the CPU) run before it
+     */
+    protected void catchUpSkippedTicks() {
+        if (skippedTicks > 0) {
+            long elapsedTicks = (platform.getMasterClock().getTotalElapsedTimePs() - skipStartPs - 1) / skipPeriodPs;
+            if (elapsedTicks > 0) {
+                int ticks = (int) Math.min(elapsedTicks, skippedTicks);
+                advance(ticks);
+                skippedTicks -= ticks;
+                skipStartPs += ticks * skipPeriodPs;
+            }
+        }
+    }
+
+    /**
+     * Applies the skipped ticks that have elapsed until now, and forgets the others because the timer configuration
+     * is about to change. The clock will then tick this timer normally until it can skip again.
+     */
+    protected void cancelSkippedTicks() {
+        if (skippedTicks > 0) {
+            catchUpSkippedTicks();
+            cancelledTicks += skippedTicks;
+            skippedTicks = 0;
+            platform.getMasterClock().requestResheduling();
+        }
+    }
+
+    /**
+     * Applies the given number of ticks at once. Called for ticks skipped by the clock, which are guaranteed by
+     * getSkippableTicks() to have no effect except changing currentValue
+     * @param ticks
+     */
+    protected abstract void advance(int ticks);
+
     @Override
     public String toString() {
         return "ProgrammableTimer #" + timerNumber + (active?" (active)":" (inactive) @" + getFrequencyHz() + "Hz");
@@ -50,6 +50,7 @@ public class FrReloadTimer extends ProgrammableTimer {
 
 
     public int getTmr() {
+        catchUpSkippedTicks();
         return currentValue;
     }
 
@@ -73,6 +74,9 @@ public class FrReloadTimer extends ProgrammableTimer {
         // GATE: ignored
         // OUTL: ignored
 
+        // Apply elapsed ticks before reconfiguring
+        cancelSkippedTicks();
+
         // read old values
         int oldDivider = getDivider();
         boolean wasEnabled = isTmcsrCnteSet();
@@ -196,8 +200,23 @@ public class FrReloadTimer extends ProgrammableTimer {
         return null;
     }
 
+    @Override
+    public int getSkippableTicks() {
+        // All ticks before the one reaching 0 only decrement the counter
+        if (active && currentValue > 1) {
+            return currentValue - 1;
+        }
+        return 0;
+    }
+
+    @Override
+    protected void advance(int ticks) {
+        currentValue -= ticks;
+    }
+
     @Override
     public String toString() {
+        catchUpSkippedTicks();
         return getName() + " @" + getFrequencyString() + ": TMR" + Format.asHex(timerNumber, 1)
                 + ", TMCSR=0b" + Format.asBinary(tmcsr, 16) + ", TMRLRA=" + tmrlra + "d"
                 + (isTmcsrInteSet() ? ", interrupt enabled" : ", interrupt disabled")
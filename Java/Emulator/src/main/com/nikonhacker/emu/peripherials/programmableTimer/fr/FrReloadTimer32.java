@@ -70,4 +70,13 @@ public class FrReloadTimer32 extends FrReloadTimer {
         return null;
     }
 
+    @Override
+    public int getSkippableTicks() {
+        // All ticks before the one starting at 0 only decrement the counter, which is considered unsigned
+        if (active) {
+            return (int) Math.min(currentValue & 0xFFFFFFFFL, Integer.MAX_VALUE);
+        }
+        return 0;
+    }
+
 }
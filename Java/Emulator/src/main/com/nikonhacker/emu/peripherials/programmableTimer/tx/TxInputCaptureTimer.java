@@ -85,6 +85,7 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
      * @param tcen
      */
     public void setTcen(int tcen) {
+        cancelSkippedTicks();
         boolean wasEnabled = isTcenTcenSet();
 
         this.tcen = tcen;
@@ -114,6 +115,7 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
      * @param tbtrun
      */
     public void setTbtrun(int tbtrun) {
+        cancelSkippedTicks();
         this.tbtrun = tbtrun;
 
         if (isTbtrunTbtcapSet()) {
@@ -151,6 +153,7 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
     }
 
     public void setTbtcr(int tbtcr) {
+        cancelSkippedTicks();
         int oldDivider = getDivider();
         this.tbtcr = tbtcr;
         int newDivider = getDivider();
@@ -216,6 +219,8 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
     }
 
     public void setCmpctl(int compareChannel, int cmpctl) {
+        // Comparators may be enabled or disabled: next match must be recomputed
+        cancelSkippedTicks();
         this.cmpctl[compareChannel] = cmpctl;
 
         // The role of the timer flip-flop is not well described in the Input Capture spec (chap 12).
@@ -258,6 +263,8 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
     }
 
     public void setTccmp(int compareChannel, int tccmp) {
+        // Compare value changes: next match must be recomputed
+        cancelSkippedTicks();
         if (isCmpctlCmprdeSet(compareChannel)) {
             // Double buffering
             this.tccmpBuf[compareChannel] = tccmp;
@@ -281,6 +288,7 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
 
     // TODO use this
     public void performCapture(int captureChannel) {
+        catchUpSkippedTicks();
         tccap[captureChannel] = currentValue;
         platform.getInterruptController().request(TxInterruptController.INTCAP0 + captureChannel);
     }
@@ -298,6 +306,7 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
     }
 
     private void updateOperate() {
+        cancelSkippedTicks();
         // Operate if all of the conditions below are true:
         // 1. active is true (timers not disabled by UI)
         // 2. either the processor is in RUN state, or the timer is configured to run in idle mode.
@@ -355,8 +364,38 @@ public class TxInputCaptureTimer extends ProgrammableTimer implements CpuPowerMo
         return null;
     }
 
+    @Override
+    public int getSkippableTicks() {
+        if (!operate) {
+            return 0;
+        }
+        // Count ticks until the next overflow or compare match, which all have an effect.
+        // Ticks before that one only increment the counter. Values are considered unsigned
+        long ticks = getTicksUntil(0);
+        for (int compareChannel = 0; compareChannel < TxIoListener.NUM_COMPARE_CHANNEL; compareChannel++) {
+            if (isCmpctlCmpenSet(compareChannel)) {
+                ticks = Math.min(ticks, getTicksUntil(tccmp[compareChannel]));
+            }
+        }
+        return (int) Math.min(ticks - 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of ticks until the counter reaches the given value (between 1 and 2^32)
+     */
+    private long getTicksUntil(int value) {
+        long ticks = (value - currentValue) & 0xFFFFFFFFL;
+        return (ticks == 0) ? 0x100000000L : ticks;
+    }
+
+    @Override
+    protected void advance(int ticks) {
+        currentValue += ticks;
+    }
+
     @Override
     public String toString() {
+        catchUpSkippedTicks();
         int requestLevel = ((TxInterruptController) platform.getInterruptController()).getRequestLevel(TxInterruptController.INTTBT);
         return getName() + " @" + getFrequencyString() + ": TCEN=0x" + Format.asHex(getTcen(), 2)
                 + ", TBTRUN=0x" + Format.asHex(getTbtrun(), 2)
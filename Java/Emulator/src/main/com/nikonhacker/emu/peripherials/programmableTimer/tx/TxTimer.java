@@ -95,6 +95,7 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
      * @param tben
      */
     public void setTben(int tben) {
+        cancelSkippedTicks();
         boolean wasEnabled = isTbenTbenSet();
 
         this.tben = tben;
@@ -127,6 +128,7 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
      * @param tbrun
      */
     public void setTbrun(int tbrun) {
+        cancelSkippedTicks();
         this.tbrun = tbrun;
 
         // if counter is enabled and prescaler is enabled
@@ -180,6 +182,7 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     public void setTbmod(int tbmod) {
+        cancelSkippedTicks();
         int oldTbclk = getTbmodTbclk();
         this.tbmod = tbmod;
         int newTbclk = getTbmodTbclk();
@@ -312,10 +315,12 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     public int getTbuc() {
+        catchUpSkippedTicks();
         return currentValue;
     }
 
     public void setTbuc(int tbuc) {
+        cancelSkippedTicks();
         // only 16-bit are writable
         this.currentValue = tbuc & 0xFFFF;
     }
@@ -341,6 +346,8 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     public void setTbrg0(int tbrg0) {
+        // Compare value changes: next match must be recomputed
+        cancelSkippedTicks();
         // only 16-bit are writable
         tbrg0 = tbrg0 & 0xFFFF;
         // "If double buffering is enabled, data is transferred from register buffer 0 to the TB0RG0/1
@@ -360,6 +367,8 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     public void setTbrg1(int tbrg1) {
+        // Compare value changes: next match must be recomputed
+        cancelSkippedTicks();
         // only 16-bit are writable
         this.tbrg1 = tbrg1 & 0xFFFF;
     }
@@ -373,6 +382,7 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     public void performCapture0() {
+        catchUpSkippedTicks();
         setTbcp0(currentValue);
         if (isTbffcrTbc0t1Set()) {
             toggleFf0();
@@ -388,6 +398,7 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     public void performCapture1() {
+        catchUpSkippedTicks();
         setTbcp1(currentValue);
         if (isTbffcrTbc1t1Set()) {
             toggleFf0();
@@ -406,6 +417,7 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
     }
 
     private void updateOperate() {
+        cancelSkippedTicks();
         // Operate if all of the conditions below are true:
         // 1. active is true (timers not disabled by UI)
         // 2. either the processor is in RUN state, or the timer is configured to run in idle mode.
@@ -496,8 +508,31 @@ public class TxTimer extends ProgrammableTimer implements CpuPowerModeChangeList
         return null;
     }
 
+    @Override
+    public int getSkippableTicks() {
+        if (!operate) {
+            return 0;
+        }
+        // Count ticks until the next overflow or compare match, which all have an effect.
+        // Ticks before that one only increment the counter
+        int ticks = MAX_COUNTER_VALUE + 1 - currentValue;
+        if (tbrg0 > currentValue) {
+            ticks = Math.min(ticks, tbrg0 - currentValue);
+        }
+        if (tbrg1 > currentValue) {
+            ticks = Math.min(ticks, tbrg1 - currentValue);
+        }
+        return Math.max(ticks - 1, 0);
+    }
+
+    @Override
+    protected void advance(int ticks) {
+        currentValue += ticks;
+    }
+
     @Override
     public String toString() {
+        catchUpSkippedTicks();
         int requestLevel = ((TxInterruptController) platform.getInterruptController()).getRequestLevel(getInterruptNumber());
         return getName() + " @" + getFrequencyString() + ": TB" + Format.asHex(timerNumber, 1) + "EN=0x" + Format.asHex(getTben(), 2)
                 + ", RUN=0x" + Format.asHex(getTbrun(), 2)
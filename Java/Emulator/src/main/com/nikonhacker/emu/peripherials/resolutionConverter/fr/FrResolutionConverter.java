@@ -300,7 +300,6 @@ public class FrResolutionConverter implements ResolutionConverter {
         if (scaleFactor0!=0 || scaleFactor1!=0 || scaleFactor2!=0x100 || scaleFactor3!=0x100)
             System.out.println("ResolutionConverter(" + channelNumber + "): may be scaling "+scaleFactor0+","+scaleFactor1+","+scaleFactor2+","+scaleFactor3);
 
-        int from = sourceAddress, to=destinationAddress;
         final int addFrom = sourceBufferWidth-destinationImageWidth;
         final int addTo = destinationBufferWidth-destinationImageWidth;
         
@@ -309,15 +308,8 @@ public class FrResolutionConverter implements ResolutionConverter {
             throw new RuntimeException("ResolutionConverter(" + channelNumber +"): ImageWidth > BufferWidth");
         }
         
-        for (int y=0; y<destinationImageHeight; y++) {
-            for (int x=0; x<destinationImageWidth; x++,to++,from++) {
-                memory.store8(to, 
-                              memory.loadUnsigned8(from, DebuggableMemory.AccessSource.IMGA), 
-                              DebuggableMemory.AccessSource.IMGA);
-            }
-            from += addFrom;
-            to += addTo;
-        }
+        memory.copy2D(sourceAddress, sourceBufferWidth, destinationAddress, destinationBufferWidth,
+                      destinationImageWidth, destinationImageHeight, DebuggableMemory.AccessSource.IMGA);
         return true;
     }
 }
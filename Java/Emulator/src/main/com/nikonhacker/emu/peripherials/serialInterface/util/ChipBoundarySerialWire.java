@@ -0,0 +1,38 @@
+package com.nikonhacker.emu.peripherials.serialInterface.util;
+
+import com.nikonhacker.emu.MasterClock;
+import com.nikonhacker.emu.peripherials.serialInterface.SerialDevice;
+
+/**
+ * This class implements a serial wire from a device of one chip to a device of the other chip.
+ * Values are forwarded as cross-chip events (see MasterClock.postCrossChipEvent()), so that when chips run in
+ * parallel, the target device only receives them at the next synchronization point.
+ */
+public class ChipBoundarySerialWire extends SerialWire {
+    private MasterClock masterClock;
+
+    public ChipBoundarySerialWire(String wireName, SerialDevice realTargetDevice, MasterClock masterClock) {
+        super(wireName, realTargetDevice);
+        this.masterClock = masterClock;
+    }
+
+    @Override
+    public void write(final Integer value) {
+        masterClock.postCrossChipEvent(new Runnable() {
+            @Override
+            public void run() {
+                ChipBoundarySerialWire.super.write(value);
+            }
+        });
+    }
+
+    @Override
+    public void readHalfDuplex() {
+        masterClock.postCrossChipEvent(new Runnable() {
+            @Override
+            public void run() {
+                ChipBoundarySerialWire.super.readHalfDuplex();
+            }
+        });
+    }
+}
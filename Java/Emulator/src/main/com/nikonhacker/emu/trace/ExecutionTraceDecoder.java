@@ -0,0 +1,358 @@
+package com.nikonhacker.emu.trace;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.Format;
+import com.nikonhacker.Prefs;
+import com.nikonhacker.disassembly.*;
+import com.nikonhacker.disassembly.fr.Dfr;
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import com.nikonhacker.disassembly.fr.FrInstructionSet;
+import com.nikonhacker.disassembly.fr.FrStatement;
+import com.nikonhacker.disassembly.tx.Dtx;
+import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.disassembly.tx.TxInstructionSet;
+import com.nikonhacker.disassembly.tx.TxStatement;
+import com.nikonhacker.emu.MasterClock;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a trace written by ExecutionTraceRecorder back into the text format of the real-time disassembly log.
+ * Statements are decoded again from their binary form and formatted by the same Statement code as the emulator.
+ * Addresses matching a symbol, taken from a code structure or a disassembler options file, are preceded by a label line.
+ */
+public class ExecutionTraceDecoder {
+    private static final String OUTDENT_ERROR = "<< requested outdent cannot be honored";
+
+    private final Set<OutputOption> outputOptions;
+
+    private boolean includeTimestamp      = true;
+    private boolean includeIndent         = true;
+    private boolean includeInstruction    = true;
+    private boolean includeInterruptMarks = true;
+    private boolean includeRegisters      = true;
+
+    private CodeStructure        codeStructure;
+    private Map<Integer, Symbol> symbols;
+
+    private final DecimalFormat milliSecondFormatter = new DecimalFormat(MasterClock.MILLISECOND_FORMAT);
+
+    private StatementDecoder statementDecoder;
+    private String[]         registerLabels;
+    private String           indent;
+
+    public ExecutionTraceDecoder(Set<OutputOption> outputOptions) {
+        this.outputOptions = outputOptions;
+    }
+
+    public void setIncludeTimestamp(boolean includeTimestamp) {
+        this.includeTimestamp = includeTimestamp;
+    }
+
+    public void setIncludeIndent(boolean includeIndent) {
+        this.includeIndent = includeIndent;
+    }
+
+    public void setIncludeInstruction(boolean includeInstruction) {
+        this.includeInstruction = includeInstruction;
+    }
+
+    public void setIncludeInterruptMarks(boolean includeInterruptMarks) {
+        this.includeInterruptMarks = includeInterruptMarks;
+    }
+
+    public void setIncludeRegisters(boolean includeRegisters) {
+        this.includeRegisters = includeRegisters;
+    }
+
+    /**
+     * Use labels and function names of the given code structure, e.g. the one of the emulator UI
+     */
+    public void setCodeStructure(CodeStructure codeStructure) {
+        this.codeStructure = codeStructure;
+    }
+
+    /**
+     * Use the given symbols, e.g. the ones of a disassembler (see Disassembler.getSymbols())
+     */
+    public void setSymbols(Map<Integer, Symbol> symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return the chip a trace file was recorded for
+     */
+    public static int readChip(File traceFile) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(traceFile));
+        try {
+            checkHeader(inputStream.readInt(), inputStream.readInt(), traceFile);
+            return inputStream.readInt();
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+
+    private static void checkHeader(int magic, int version, File traceFile) throws IOException {
+        if (magic != ExecutionTraceRecorder.MAGIC) {
+            throw new IOException(traceFile + " is not an execution trace");
+        }
+        if (version != ExecutionTraceRecorder.VERSION) {
+            throw new IOException(traceFile + " has unsupported version " + version);
+        }
+    }
+
+    /**
+     * Writes the text form of the given trace
+     * @return the number of instructions decoded
+     */
+    public long decode(File traceFile, Writer writer) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(traceFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, ExecutionTraceRecorder.HEADER_SIZE);
+            checkHeader(header.getInt(0), header.getInt(4), traceFile);
+            if (header.getInt(ExecutionTraceRecorder.HEADER_CHIP + 4) != ExecutionTraceRecorder.RECORD_SIZE) {
+                throw new IOException(traceFile + " has unsupported record size " + header.getInt(ExecutionTraceRecorder.HEADER_CHIP + 4));
+            }
+            long capacity = header.getLong(ExecutionTraceRecorder.HEADER_CAPACITY);
+            long numRecords = header.getLong(ExecutionTraceRecorder.HEADER_NUM_RECORDS);
+            long numSlots = (capacity == 0) ? numRecords : Math.min(capacity, numRecords);
+            numSlots = Math.min(numSlots, (channel.size() - ExecutionTraceRecorder.HEADER_SIZE) / ExecutionTraceRecorder.RECORD_SIZE);
+
+            init(header.getInt(ExecutionTraceRecorder.HEADER_CHIP));
+
+            long numInstructions = 0;
+            MappedByteBuffer window = null;
+            long windowNumber = -1;
+            // With a ring, the oldest record follows the last one written
+            long last = (capacity == 0) ? numSlots : numRecords;
+            for (long recordNumber = last - numSlots; recordNumber < last; recordNumber++) {
+                long index = (capacity == 0) ? recordNumber : (recordNumber % capacity);
+                if (index / ExecutionTraceRecorder.RECORDS_PER_WINDOW != windowNumber) {
+                    windowNumber = index / ExecutionTraceRecorder.RECORDS_PER_WINDOW;
+                    long windowStart = windowNumber * ExecutionTraceRecorder.RECORDS_PER_WINDOW;
+                    long windowRecords = Math.min(ExecutionTraceRecorder.RECORDS_PER_WINDOW, numSlots - windowStart);
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, ExecutionTraceRecorder.HEADER_SIZE + windowStart * ExecutionTraceRecorder.RECORD_SIZE, windowRecords * ExecutionTraceRecorder.RECORD_SIZE);
+                }
+                int offset = (int) (index % ExecutionTraceRecorder.RECORDS_PER_WINDOW) * ExecutionTraceRecorder.RECORD_SIZE;
+                long timePs = window.getLong(offset);
+                int value = window.getInt(offset + 8);
+                switch (window.get(offset + 12)) {
+                    case ExecutionTraceRecorder.TYPE_INSTRUCTION:
+                        writeInstruction(writer, timePs, value, window.get(offset + 13), window.getLong(offset + 16), window.get(offset + 14));
+                        numInstructions++;
+                        break;
+                    case ExecutionTraceRecorder.TYPE_REGISTER:
+                        writeRegister(writer, value, (int) window.getLong(offset + 16));
+                        break;
+                    case ExecutionTraceRecorder.TYPE_INTERRUPT:
+                        writeInterrupt(writer, timePs, value);
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + window.get(offset + 12) + " in record #" + recordNumber);
+                }
+            }
+            writer.flush();
+            return numInstructions;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private void init(int chip) {
+        // Same initializations as the emulators' setOutputOptions()
+        if (chip == Constants.CHIP_FR) {
+            FrInstructionSet.init(outputOptions);
+            FrStatement.initFormatChars(outputOptions);
+            FrCPUState.initRegisterLabels(outputOptions);
+            registerLabels = FrCPUState.registerLabels;
+        }
+        else {
+            TxInstructionSet.init(outputOptions);
+            TxStatement.initFormatChars(outputOptions);
+            TxCPUState.initRegisterLabels(outputOptions);
+            registerLabels = TxCPUState.registerLabels;
+        }
+        statementDecoder = new StatementDecoder(chip, outputOptions);
+        indent = "";
+    }
+
+    private void writeInstruction(Writer writer, long timePs, int pc, int flags, long opcode, int numBytes) throws IOException {
+        String name = getSymbolName(pc);
+        if (name != null) {
+            writer.write(name + ":" + System.lineSeparator());
+        }
+
+        StringBuilder msg = new StringBuilder();
+        if (includeTimestamp) {
+            msg.append(formatTime(timePs)).append(" ");
+        }
+        msg.append("0x").append(Format.asHex(pc, 8));
+
+        String text;
+        Instruction.FlowType flowType;
+        try {
+            flowType = statementDecoder.decode(pc, flags, opcode, numBytes).getInstruction().getFlowType();
+            text = statementDecoder.format();
+        } catch (Exception e) {
+            flowType = Instruction.FlowType.NONE;
+            text = "<cannot decode 0x" + Format.asHex((int) opcode, numBytes * 2) + ": " + e.getMessage() + ">";
+        }
+
+        if (includeIndent) {
+            msg.append(indent);
+            switch (flowType) {
+                case CALL:
+                case INT:
+                    indent();
+                    break;
+                case RET:
+                    outdent(writer);
+                    break;
+            }
+        }
+
+        if (includeInstruction) {
+            msg.append(" ").append(text);
+        }
+        writer.write(msg.toString() + System.lineSeparator());
+    }
+
+    private void writeRegister(Writer writer, int registerNumber, int value) throws IOException {
+        statementDecoder.getContext().cpuState.setReg(registerNumber, value);
+        statementDecoder.getContext().cpuState.setRegisterDefined(registerNumber);
+        if (includeRegisters) {
+            writer.write((includeIndent ? indent : "") + "    ; " + registerLabels[registerNumber] + "=0x" + Format.asHex(value, 8) + System.lineSeparator());
+        }
+    }
+
+    private void writeInterrupt(Writer writer, long timePs, int interruptNumber) throws IOException {
+        if (includeInterruptMarks) {
+            writer.write(formatTime(timePs) + " ------------------------- Accepting InterruptRequest 0x" + Format.asHex(interruptNumber, 2) + System.lineSeparator());
+        }
+        indent();
+    }
+
+    private void indent() {
+        if (includeIndent) {
+            indent += "  ";
+        }
+    }
+
+    private void outdent(Writer writer) throws IOException {
+        if (includeIndent) {
+            if (indent.length() > 1) {
+                indent = indent.substring(0, indent.length() - 2);
+            }
+            else {
+                writer.write(OUTDENT_ERROR + System.lineSeparator());
+            }
+        }
+    }
+
+    private String formatTime(long timePs) {
+        return milliSecondFormatter.format(timePs / (double) MasterClock.PS_PER_MS) + "ms";
+    }
+
+    private String getSymbolName(int pc) {
+        if (codeStructure != null) {
+            String name = codeStructure.getFunctionName(pc);
+            return (name != null) ? name : codeStructure.getLabelName(pc & CodeStructure.IGNORE_ISA_BIT);
+        }
+        if (symbols != null) {
+            Symbol symbol = symbols.get(pc);
+            return (symbol == null) ? null : symbol.getName();
+        }
+        return null;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: " + ExecutionTraceDecoder.class.getSimpleName() + " [options] <trace file> [<output file>]");
+        System.err.println("Options:");
+        System.err.println(" -x <file>        read symbols from that disassembler options file (as for Dfr/Dtx)");
+        System.err.println(" -notimestamp     do not include timestamps");
+        System.err.println(" -noindent        do not indent calls");
+        System.err.println(" -noinstruction   only include addresses");
+        System.err.println(" -nointerrupts    do not include interrupt marks");
+        System.err.println(" -noregisters     do not include register changes");
+        System.err.println("Output options are the ones of the emulator preferences. Default output is the console.");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String optionsFilename = null;
+        File traceFile = null;
+        File outputFile = null;
+        boolean includeTimestamp = true, includeIndent = true, includeInstruction = true, includeInterruptMarks = true, includeRegisters = true;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-x".equals(arg)) {
+                if (i == args.length - 1) {
+                    System.err.println("Option -x requires an argument");
+                    usage();
+                }
+                optionsFilename = args[++i];
+            }
+            else if ("-notimestamp".equals(arg)) {
+                includeTimestamp = false;
+            }
+            else if ("-noindent".equals(arg)) {
+                includeIndent = false;
+            }
+            else if ("-noinstruction".equals(arg)) {
+                includeInstruction = false;
+            }
+            else if ("-nointerrupts".equals(arg)) {
+                includeInterruptMarks = false;
+            }
+            else if ("-noregisters".equals(arg)) {
+                includeRegisters = false;
+            }
+            else if (arg.startsWith("-")) {
+                System.err.println("Unknown option: " + arg);
+                usage();
+            }
+            else if (traceFile == null) {
+                traceFile = new File(arg);
+            }
+            else if (outputFile == null) {
+                outputFile = new File(arg);
+            }
+            else {
+                usage();
+            }
+        }
+        if (traceFile == null) {
+            usage();
+        }
+
+        int chip = readChip(traceFile);
+        ExecutionTraceDecoder decoder = new ExecutionTraceDecoder(Prefs.load().getOutputOptions(chip));
+        decoder.setIncludeTimestamp(includeTimestamp);
+        decoder.setIncludeIndent(includeIndent);
+        decoder.setIncludeInstruction(includeInstruction);
+        decoder.setIncludeInterruptMarks(includeInterruptMarks);
+        decoder.setIncludeRegisters(includeRegisters);
+        if (optionsFilename != null) {
+            Disassembler disassembler = (chip == Constants.CHIP_FR) ? new Dfr() : new Dtx();
+            disassembler.readOptions(optionsFilename);
+            decoder.setSymbols(disassembler.getSymbols());
+        }
+
+        Writer writer = new BufferedWriter((outputFile == null) ? new OutputStreamWriter(System.out) : new FileWriter(outputFile));
+        try {
+            long numInstructions = decoder.decode(traceFile, writer);
+            System.err.println(numInstructions + " " + Constants.CHIP_LABEL[chip] + " instructions decoded");
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
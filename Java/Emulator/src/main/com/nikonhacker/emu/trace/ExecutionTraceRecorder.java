@@ -0,0 +1,185 @@
+package com.nikonhacker.emu.trace;
+
+import com.nikonhacker.disassembly.CPUState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records executed instructions to a file as fixed-size binary records, written through a memory mapping.
+ * Contrary to the text log, nothing is formatted while emulating: each instruction costs a few stores, so whole boot
+ * sequences can be traced. ExecutionTraceDecoder turns a trace back into the text format of the disassembly log.
+ *
+ * The file starts with a HEADER_SIZE header, followed by RECORD_SIZE records:
+ * <pre>
+ *  0 long timePs
+ *  8 int  pc (INSTRUCTION), register number (REGISTER) or interrupt number (INTERRUPT)
+ * 12 byte type
+ * 13 byte flags (FLAG_ISA16)
+ * 14 byte number of bytes of the statement (INSTRUCTION)
+ * 15 byte unused
+ * 16 long statement units in fetch order, the last one in the lowest bits (INSTRUCTION), or register value (REGISTER)
+ * </pre>
+ * With a capacity, the file is a ring keeping only the last records. Otherwise, it grows as needed.
+ * Register changes, if requested, are recorded before each instruction, and are thus the result of the previous ones.
+ * A recorder must only be used from the emulator thread.
+ */
+public class ExecutionTraceRecorder {
+    static final int MAGIC       = 0x4E485854; // "NHXT"
+    static final int VERSION     = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 24;
+
+    static final int TYPE_INSTRUCTION = 0;
+    static final int TYPE_REGISTER    = 1;
+    static final int TYPE_INTERRUPT   = 2;
+
+    /** The statement was executed in the 16-bit ISA (TX only) */
+    public static final int FLAG_ISA16 = 0x1;
+
+    /** Header offsets */
+    static final int HEADER_CHIP        = 8;
+    static final int HEADER_CAPACITY    = 16;
+    static final int HEADER_NUM_RECORDS = 24;
+
+    /** The file is mapped by windows of that many records */
+    static final int RECORDS_PER_WINDOW = 1 << 19;
+
+    private final RandomAccessFile file;
+    private final FileChannel      channel;
+    private final long             capacity;
+
+    private final MappedByteBuffer header;
+    private       MappedByteBuffer window;
+    private       long             windowNumber = -1;
+
+    private long numRecords;
+
+    private boolean recordRegisters;
+    /** Register values as last recorded, or null if none were */
+    private int[] lastRegisters;
+
+    /**
+     * @param traceFile the file to write to. It is overwritten
+     * @param chip the chip being traced, for the decoder
+     * @param capacity the maximum number of records to keep, or 0 to keep them all
+     */
+    public ExecutionTraceRecorder(File traceFile, int chip, long capacity) throws IOException {
+        this.capacity = capacity;
+        file = new RandomAccessFile(traceFile, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(HEADER_CHIP, chip);
+        header.putInt(HEADER_CHIP + 4, RECORD_SIZE);
+        header.putLong(HEADER_CAPACITY, capacity);
+        header.putLong(HEADER_NUM_RECORDS, 0);
+    }
+
+    /**
+     * If set, each instruction is preceded by records of the standard registers changed since the previous one.
+     * The first instruction recorded afterwards is preceded by all of them
+     */
+    public void setRecordRegisters(boolean recordRegisters) {
+        this.recordRegisters = recordRegisters;
+        lastRegisters = null;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Records the execution of a statement
+     * @param opcode the statement units in fetch order, the last one in the lowest bits
+     * @param numBytes the length of the statement
+     * @param cpuState the state before execution, only used to record register changes
+     */
+    public void recordInstruction(long timePs, int pc, int flags, long opcode, int numBytes, CPUState cpuState) throws IOException {
+        if (recordRegisters) {
+            recordRegisterChanges(timePs, cpuState);
+        }
+        putRecord(timePs, pc, TYPE_INSTRUCTION, flags, numBytes, opcode);
+    }
+
+    public void recordInterrupt(long timePs, int interruptNumber) throws IOException {
+        putRecord(timePs, interruptNumber, TYPE_INTERRUPT, 0, 0, 0);
+    }
+
+    private void recordRegisterChanges(long timePs, CPUState cpuState) throws IOException {
+        int numRegisters = cpuState.getNumStdRegisters();
+        if (lastRegisters == null) {
+            lastRegisters = new int[numRegisters];
+            for (int i = 0; i < numRegisters; i++) {
+                lastRegisters[i] = cpuState.getReg(i);
+                putRecord(timePs, i, TYPE_REGISTER, 0, 0, lastRegisters[i]);
+            }
+        }
+        else {
+            for (int i = 0; i < numRegisters; i++) {
+                int value = cpuState.getReg(i);
+                if (value != lastRegisters[i]) {
+                    lastRegisters[i] = value;
+                    putRecord(timePs, i, TYPE_REGISTER, 0, 0, value);
+                }
+            }
+        }
+    }
+
+    private void putRecord(long timePs, int value, int type, int flags, int numBytes, long data) throws IOException {
+        long index = (capacity == 0) ? numRecords : (numRecords % capacity);
+        if (index / RECORDS_PER_WINDOW != windowNumber) {
+            mapWindow(index / RECORDS_PER_WINDOW);
+        }
+        int offset = (int) (index % RECORDS_PER_WINDOW) * RECORD_SIZE;
+        window.putLong(offset, timePs);
+        window.putInt(offset + 8, value);
+        window.put(offset + 12, (byte) type);
+        window.put(offset + 13, (byte) flags);
+        window.put(offset + 14, (byte) numBytes);
+        window.putLong(offset + 16, data);
+        numRecords++;
+    }
+
+    private void mapWindow(long windowNumber) throws IOException {
+        long windowRecords = RECORDS_PER_WINDOW;
+        if (capacity != 0) {
+            windowRecords = Math.min(windowRecords, capacity - windowNumber * RECORDS_PER_WINDOW);
+        }
+        // Mapping beyond the end of the file extends it
+        window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + windowNumber * RECORDS_PER_WINDOW * RECORD_SIZE, windowRecords * RECORD_SIZE);
+        this.windowNumber = windowNumber;
+        // Keep the header reasonably up to date, in case the emulator dies
+        header.putLong(HEADER_NUM_RECORDS, numRecords);
+    }
+
+    /**
+     * Updates the header and writes all records to disk, so that the trace can be decoded while recording goes on
+     */
+    public void flush() {
+        header.putLong(HEADER_NUM_RECORDS, numRecords);
+        header.force();
+        if (window != null) {
+            window.force();
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+        if (capacity == 0) {
+            try {
+                channel.truncate(HEADER_SIZE + numRecords * RECORD_SIZE);
+            } catch (IOException e) {
+                // Some platforms refuse to truncate a mapped file. The header tells the actual number of records anyway
+            }
+        }
+        window = null;
+        channel.close();
+        file.close();
+    }
+}
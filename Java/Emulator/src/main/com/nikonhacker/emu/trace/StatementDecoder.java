@@ -0,0 +1,102 @@
+package com.nikonhacker.emu.trace;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.disassembly.DisassemblyException;
+import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.Statement;
+import com.nikonhacker.disassembly.StatementContext;
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import com.nikonhacker.disassembly.fr.FrInstructionSet;
+import com.nikonhacker.disassembly.fr.FrStatement;
+import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.disassembly.tx.TxStatement;
+import com.nikonhacker.emu.memory.FastMemory;
+import com.nikonhacker.emu.memory.FastMemoryLE;
+
+import java.util.Set;
+
+/**
+ * Decodes statements again from their binary form (see Statement.getOpcode()), the same way as the emulator does,
+ * so that execution traces and call stacks can store a few primitives and be formatted only when displayed.
+ * Instruction sets must have been initialized with the output options, as done by the emulators.
+ * A decoder reuses the same statement and scratch memory each time, so it must only be used from one thread.
+ */
+public class StatementDecoder {
+    private final int              chip;
+    private final Set<OutputOption> outputOptions;
+    private final StatementContext context;
+    private final Statement        statement;
+
+    public StatementDecoder(int chip, Set<OutputOption> outputOptions) {
+        this.chip = chip;
+        this.outputOptions = outputOptions;
+        context = new StatementContext();
+        context.outputOptions = outputOptions;
+        if (chip == Constants.CHIP_FR) {
+            context.memory = new FastMemory();
+            context.cpuState = new FrCPUState();
+            statement = new FrStatement();
+        }
+        else {
+            context.memory = new FastMemoryLE();
+            context.cpuState = new TxCPUState();
+            statement = new TxStatement();
+        }
+    }
+
+    /**
+     * @return true if this decoder decodes statements of the given chip and formats them with the given options
+     */
+    public boolean isFor(int chip, Set<OutputOption> outputOptions) {
+        return this.chip == chip && this.outputOptions == outputOptions;
+    }
+
+    /**
+     * @return the context used to format statements. Its cpuState can be filled with known register values
+     */
+    public StatementContext getContext() {
+        return context;
+    }
+
+    /**
+     * Decodes a statement
+     * @param flags ExecutionTraceRecorder flags telling how the statement was decoded by the emulator
+     * @param opcode the statement units in fetch order, the last one in the lowest bits
+     * @return the decoded statement, only valid until the next call
+     */
+    public Statement decode(int pc, int flags, long opcode, int numBytes) throws DisassemblyException {
+        for (int i = 0; i < numBytes / 2; i++) {
+            context.memory.store16(pc + 2 * i, (int) (opcode >> (8 * (numBytes - 2 - 2 * i))));
+        }
+        // PC-relative operands are formatted based on the context
+        context.cpuState.pc = pc;
+        if (chip == Constants.CHIP_FR) {
+            FrStatement frStatement = (FrStatement) statement;
+            frStatement.reset();
+            frStatement.getNextStatement(context.memory, pc);
+            frStatement.setInstruction(FrInstructionSet.instructionMap[frStatement.data[0]]);
+            frStatement.decodeOperands(pc, context.memory);
+        }
+        else {
+            TxStatement txStatement = (TxStatement) statement;
+            txStatement.reset();
+            if ((flags & ExecutionTraceRecorder.FLAG_ISA16) != 0) {
+                txStatement.fill16bInstruction(context.memory.loadInstruction16(pc), pc, context.memory);
+                txStatement.decode16BitOperands(pc);
+            }
+            else {
+                txStatement.fill32bInstruction((int) opcode);
+                txStatement.decode32BitOperands();
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * Formats the statement returned by the last call to decode(), based on the registers of the context
+     */
+    public String format() throws DisassemblyException {
+        statement.formatOperandsAndComment(context, false, outputOptions);
+        return statement.toString(outputOptions);
+    }
+}
@@ -6,9 +6,11 @@ import com.nikonhacker.disassembly.*;
 import com.nikonhacker.disassembly.fr.FrCPUState;
 import com.nikonhacker.disassembly.fr.Syscall;
 import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.emu.CallStack;
 import com.nikonhacker.emu.CallStackItem;
 import com.nikonhacker.emu.Platform;
 import com.nikonhacker.emu.memory.Memory;
+import com.nikonhacker.emu.trace.StatementDecoder;
 import com.nikonhacker.emu.trigger.condition.BreakCondition;
 import com.nikonhacker.emu.trigger.condition.BreakPointCondition;
 import com.nikonhacker.emu.trigger.condition.MemoryValueBreakCondition;
@@ -20,7 +22,6 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -265,8 +266,9 @@ public class BreakTrigger {
      * @param printWriter printWriter to which the log must be output
      * @param platform the platform we're running
      * @param callStack optional call stack at the time the condition matches
+     * @param statementDecoder decoder to format call stack frames. Only used if callStack is not null
      */
-    public void log(PrintWriter printWriter, Platform platform, Deque<CallStackItem> callStack) {
+    public void log(PrintWriter printWriter, Platform platform, CallStack callStack, StatementDecoder statementDecoder) {
         String msg = platform.getMasterClock().getFormatedTotalElapsedTimeMs() + " ";
         if (function != null) {
             // This is a function call. Parse its arguments and log them
@@ -310,8 +312,8 @@ public class BreakTrigger {
         }
 
         if (callStack != null) {
-            for (CallStackItem callStackItem : callStack) {
-                msg += " << " + StringUtils.strip(callStackItem.toString()).replaceAll("\\s+", " ");
+            for (CallStackItem callStackItem : callStack.getItems()) {
+                msg += " << " + StringUtils.strip(callStackItem.toString(statementDecoder)).replaceAll("\\s+", " ");
             }
         }
         printWriter.print(msg + "\n");
@@ -0,0 +1,335 @@
+package com.nikonhacker.emu.trigger;
+
+import com.nikonhacker.disassembly.CPUState;
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.memory.Memory;
+import com.nikonhacker.emu.trigger.condition.*;
+import com.nikonhacker.emu.trigger.condition.fr.PsBreakCondition;
+
+import java.util.*;
+
+/**
+ * An immutable view of a list of break conditions, organized so that only the conditions that can match
+ * the current CPU state are evaluated:
+ * <ul>
+ *     <li>conditions including a BreakPointCondition are indexed by PC</li>
+ *     <li>other conditions including a RegisterEqualityBreakCondition are indexed by register number, then value</li>
+ *     <li>FR CCR, SCR and ILM conditions of a same condition are merged into a single masked test of PS</li>
+ *     <li>conditions only made of MemoryValueBreakConditions are grouped, to be tested only after a write to one of
+ *     the watched addresses (see getWatchedAddresses())</li>
+ *     <li>all remaining conditions are tested in sequence</li>
+ * </ul>
+ * Each entry keeps the position of its condition in the original list, and entries of each group are in that order,
+ * so that groups can be merged to test conditions in the order they were added.
+ * Instances are never modified once built, so they can be read by the emulator without locking while the UI
+ * builds a new one.
+ */
+public class CompiledBreakConditions {
+    public static final CompiledBreakConditions EMPTY = new CompiledBreakConditions(new ArrayList<BreakCondition>());
+
+    private final IntEntryMap pcEntries;
+
+    /** Numbers of the registers that conditions are indexed on */
+    private final int[]         watchedRegisters;
+    /** For each watched register, the conditions indexed by expected value */
+    private final IntEntryMap[] registerValueEntries;
+
+    /** Conditions that only depend on memory values */
+    private final Entry[] memoryEntries;
+    /** Addresses of the bytes the memoryEntries depend on, sorted */
+    private final int[]   watchedAddresses;
+
+    /** Conditions that must be tested after each instruction */
+    private final Entry[] otherEntries;
+
+    /**
+     * Compiles the given conditions, without memory watchpoints
+     */
+    public CompiledBreakConditions(List<BreakCondition> breakConditions) {
+        this(breakConditions, null);
+    }
+
+    /**
+     * Compiles the given conditions
+     * @param breakConditions
+     * @param memory the memory the conditions will be tested against, used to determine which addresses can be
+     *               watched. If null, memory conditions are tested after each instruction
+     */
+    public CompiledBreakConditions(List<BreakCondition> breakConditions, DebuggableMemory memory) {
+        List<Entry> pcEntryList = new ArrayList<Entry>();
+        TreeMap<Integer, List<Entry>> registerEntryLists = new TreeMap<Integer, List<Entry>>();
+        List<Entry> memoryEntryList = new ArrayList<Entry>();
+        TreeSet<Integer> watchedAddressSet = new TreeSet<Integer>();
+        List<Entry> otherEntryList = new ArrayList<Entry>();
+
+        for (int index = 0; index < breakConditions.size(); index++) {
+            BreakCondition breakCondition = breakConditions.get(index);
+            List<BreakCondition> parts = new ArrayList<BreakCondition>();
+            if (breakCondition instanceof AndCondition) {
+                parts.addAll(((AndCondition) breakCondition).getConditions());
+            }
+            else {
+                parts.add(breakCondition);
+            }
+
+            BreakCondition anchor = null;
+            for (BreakCondition part : parts) {
+                if (part instanceof BreakPointCondition) {
+                    anchor = part;
+                    break;
+                }
+            }
+            if (anchor == null) {
+                for (BreakCondition part : parts) {
+                    if (part instanceof RegisterEqualityBreakCondition) {
+                        anchor = part;
+                        break;
+                    }
+                }
+            }
+            parts.remove(anchor);
+
+            // Merge PS-based conditions, as long as they test distinct bits
+            int psMask = 0;
+            int psValue = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                if (parts.get(i) instanceof PsBreakCondition) {
+                    PsBreakCondition psBreakCondition = (PsBreakCondition) parts.get(i);
+                    int mask = psBreakCondition.getPsMask();
+                    int value = psBreakCondition.getPsValue();
+                    if ((psMask & mask) == 0 && (value & ~mask) == 0) {
+                        psMask |= mask;
+                        psValue |= value;
+                        parts.remove(i--);
+                    }
+                }
+            }
+
+            Entry entry = new Entry(index, breakCondition, psMask, psValue, parts.toArray(new BreakCondition[parts.size()]));
+            if (anchor instanceof BreakPointCondition) {
+                entry.key = ((BreakPointCondition) anchor).getPc();
+                pcEntryList.add(entry);
+            }
+            else if (anchor instanceof RegisterEqualityBreakCondition) {
+                entry.key = ((RegisterEqualityBreakCondition) anchor).getValue();
+                int regNumber = ((RegisterEqualityBreakCondition) anchor).getRegNumber();
+                List<Entry> entries = registerEntryLists.get(regNumber);
+                if (entries == null) {
+                    entries = new ArrayList<Entry>();
+                    registerEntryLists.put(regNumber, entries);
+                }
+                entries.add(entry);
+            }
+            else if (psMask == 0 && isWatchable(parts, memory)) {
+                for (BreakCondition part : parts) {
+                    MemoryValueBreakCondition memoryValueBreakCondition = (MemoryValueBreakCondition) part;
+                    for (int i = 0; i < 4; i++) {
+                        if ((memoryValueBreakCondition.getMask() & (0xFF000000 >>> (8 * i))) != 0) {
+                            watchedAddressSet.add(memoryValueBreakCondition.getAddress() + i);
+                        }
+                    }
+                }
+                memoryEntryList.add(entry);
+            }
+            else {
+                otherEntryList.add(entry);
+            }
+        }
+
+        pcEntries = new IntEntryMap(pcEntryList);
+        watchedRegisters = new int[registerEntryLists.size()];
+        registerValueEntries = new IntEntryMap[registerEntryLists.size()];
+        int i = 0;
+        for (Integer regNumber : registerEntryLists.keySet()) {
+            watchedRegisters[i] = regNumber;
+            registerValueEntries[i] = new IntEntryMap(registerEntryLists.get(regNumber));
+            i++;
+        }
+        memoryEntries = memoryEntryList.toArray(new Entry[memoryEntryList.size()]);
+        watchedAddresses = new int[watchedAddressSet.size()];
+        i = 0;
+        for (Integer address : watchedAddressSet) {
+            watchedAddresses[i++] = address;
+        }
+        otherEntries = otherEntryList.toArray(new Entry[otherEntryList.size()]);
+    }
+
+    /**
+     * @return true if the given conditions only depend on memory bytes that can only change by being written to
+     */
+    private static boolean isWatchable(List<BreakCondition> conditions, DebuggableMemory memory) {
+        if (memory == null || conditions.isEmpty()) {
+            return false;
+        }
+        for (BreakCondition condition : conditions) {
+            if (!(condition instanceof MemoryValueBreakCondition)) {
+                return false;
+            }
+            int address = ((MemoryValueBreakCondition) condition).getAddress();
+            for (int i = 0; i < 4; i++) {
+                if (memory.isValueIntercepted(address + i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return pcEntries.isEmpty() && watchedRegisters.length == 0 && memoryEntries.length == 0 && otherEntries.length == 0;
+    }
+
+    /**
+     * @return true if some conditions are not bound to a PC, and thus may have to be tested after each instruction
+     */
+    public boolean hasNonPcConditions() {
+        return watchedRegisters.length != 0 || memoryEntries.length != 0 || otherEntries.length != 0;
+    }
+
+    public boolean hasPcCondition(int pc) {
+        return pcEntries.get(pc) != null;
+    }
+
+    /**
+     * @return the conditions bound to the given PC, or null if there are none
+     */
+    public Entry[] getPcEntries(int pc) {
+        return pcEntries.get(pc);
+    }
+
+    public int getNumWatchedRegisters() {
+        return watchedRegisters.length;
+    }
+
+    public int getWatchedRegister(int index) {
+        return watchedRegisters[index];
+    }
+
+    /**
+     * @return the conditions bound to the given value of the watched register at the given index, or null if there are none
+     */
+    public Entry[] getRegisterEntries(int index, int value) {
+        return registerValueEntries[index].get(value);
+    }
+
+    /**
+     * @return the conditions that only have to be tested after one of the watched addresses was written to
+     */
+    public Entry[] getMemoryEntries() {
+        return memoryEntries;
+    }
+
+    /**
+     * @return the addresses of all bytes memory entries depend on, sorted (as by Arrays.sort())
+     */
+    public int[] getWatchedAddresses() {
+        return watchedAddresses;
+    }
+
+    public Entry[] getOtherEntries() {
+        return otherEntries;
+    }
+
+    /**
+     * One of the original conditions, with the part that was used to index it removed
+     */
+    public static class Entry {
+        private final int              index;
+        private final BreakCondition   breakCondition;
+        private final int              psMask;
+        private final int              psValue;
+        private final BreakCondition[] remainingConditions;
+        /** The PC or register value this entry is indexed by */
+        private int key;
+
+        private Entry(int index, BreakCondition breakCondition, int psMask, int psValue, BreakCondition[] remainingConditions) {
+            this.index = index;
+            this.breakCondition = breakCondition;
+            this.psMask = psMask;
+            this.psValue = psValue;
+            this.remainingConditions = remainingConditions;
+        }
+
+        /**
+         * @return the position of the original condition in the list given to the constructor of CompiledBreakConditions
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the original condition, as given to the constructor of CompiledBreakConditions
+         */
+        public BreakCondition getBreakCondition() {
+            return breakCondition;
+        }
+
+        /**
+         * Tests the parts of the condition that were not used to index it
+         */
+        public boolean matches(CPUState cpuState, Memory memory) {
+            if (psMask != 0 && (((FrCPUState) cpuState).getPS() & psMask) != psValue) {
+                return false;
+            }
+            for (BreakCondition condition : remainingConditions) {
+                if (!condition.matches(cpuState, memory)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An open-addressing hash map from int keys to groups of entries sharing that key
+     */
+    private static class IntEntryMap {
+        private final int[]     keys;
+        private final Entry[][] values;
+        private final int       mask;
+        private final boolean   empty;
+
+        IntEntryMap(List<Entry> entries) {
+            int capacity = 2;
+            while (capacity < entries.size() * 2) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            values = new Entry[capacity][];
+            mask = capacity - 1;
+            empty = entries.isEmpty();
+            for (Entry entry : entries) {
+                int slot = slot(entry.key);
+                if (values[slot] == null) {
+                    keys[slot] = entry.key;
+                    values[slot] = new Entry[]{entry};
+                }
+                else {
+                    values[slot] = Arrays.copyOf(values[slot], values[slot].length + 1);
+                    values[slot][values[slot].length - 1] = entry;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        /**
+         * @return the slot holding the given key, or the free slot where it should be put
+         */
+        private int slot(int key) {
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (values[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        Entry[] get(int key) {
+            return values[slot(key)];
+        }
+    }
+}
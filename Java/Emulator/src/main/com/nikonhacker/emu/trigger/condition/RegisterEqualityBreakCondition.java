@@ -14,6 +14,14 @@ public class RegisterEqualityBreakCondition extends AbstractLoggingBreakConditio
         this.value = value;
     }
 
+    public int getRegNumber() {
+        return regNumber;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
     public boolean matches(CPUState cpuState, Memory memory) {
         return cpuState.getReg(regNumber) == value;
     }
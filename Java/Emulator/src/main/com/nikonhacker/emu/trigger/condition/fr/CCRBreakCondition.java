@@ -5,9 +5,8 @@ import com.nikonhacker.disassembly.fr.FrCPUState;
 import com.nikonhacker.emu.memory.Memory;
 import com.nikonhacker.emu.trigger.BreakTrigger;
 import com.nikonhacker.emu.trigger.condition.AbstractLoggingBreakCondition;
-import com.nikonhacker.emu.trigger.condition.BreakCondition;
 
-public class CCRBreakCondition extends AbstractLoggingBreakCondition implements BreakCondition {
+public class CCRBreakCondition extends AbstractLoggingBreakCondition implements PsBreakCondition {
     private int ccr;
     private int ccrMask;
 
@@ -17,6 +16,14 @@ public class CCRBreakCondition extends AbstractLoggingBreakCondition implements
         this.ccrMask = ccrMask;
     }
 
+    public int getPsMask() {
+        return ccrMask;
+    }
+
+    public int getPsValue() {
+        return ccr;
+    }
+
     public boolean matches(CPUState cpuState, Memory memory) {
         return (((FrCPUState)cpuState).getCCR() & ccrMask) == ccr;
     }
@@ -5,9 +5,8 @@ import com.nikonhacker.disassembly.fr.FrCPUState;
 import com.nikonhacker.emu.memory.Memory;
 import com.nikonhacker.emu.trigger.BreakTrigger;
 import com.nikonhacker.emu.trigger.condition.AbstractLoggingBreakCondition;
-import com.nikonhacker.emu.trigger.condition.BreakCondition;
 
-public class ILMBreakCondition extends AbstractLoggingBreakCondition implements BreakCondition {
+public class ILMBreakCondition extends AbstractLoggingBreakCondition implements PsBreakCondition {
     private int ilm;
     private int ilmMask;
 
@@ -17,6 +16,14 @@ public class ILMBreakCondition extends AbstractLoggingBreakCondition implements
         this.ilmMask = ilmMask;
     }
 
+    public int getPsMask() {
+        return ilmMask << 16;
+    }
+
+    public int getPsValue() {
+        return ilm << 16;
+    }
+
     public boolean matches(CPUState cpuState, Memory memory) {
         return (((FrCPUState)cpuState).getILM() & ilmMask) == ilm;
     }
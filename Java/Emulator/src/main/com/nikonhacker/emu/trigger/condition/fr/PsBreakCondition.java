@@ -0,0 +1,19 @@
+package com.nikonhacker.emu.trigger.condition.fr;
+
+import com.nikonhacker.emu.trigger.condition.BreakCondition;
+
+/**
+ * A condition on some bits of the FR PS register (CCR, SCR or ILM part).
+ * Such conditions can be merged into a single masked comparison of PS.
+ */
+public interface PsBreakCondition extends BreakCondition {
+    /**
+     * @return the bits of PS this condition tests
+     */
+    int getPsMask();
+
+    /**
+     * @return the value PS must have once masked by getPsMask()
+     */
+    int getPsValue();
+}
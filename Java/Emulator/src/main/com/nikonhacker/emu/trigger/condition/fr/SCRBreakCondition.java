@@ -5,9 +5,8 @@ import com.nikonhacker.disassembly.fr.FrCPUState;
 import com.nikonhacker.emu.memory.Memory;
 import com.nikonhacker.emu.trigger.BreakTrigger;
 import com.nikonhacker.emu.trigger.condition.AbstractLoggingBreakCondition;
-import com.nikonhacker.emu.trigger.condition.BreakCondition;
 
-public class SCRBreakCondition extends AbstractLoggingBreakCondition implements BreakCondition {
+public class SCRBreakCondition extends AbstractLoggingBreakCondition implements PsBreakCondition {
     private int scr;
     private int scrMask;
 
@@ -17,6 +16,14 @@ public class SCRBreakCondition extends AbstractLoggingBreakCondition implements
         this.scrMask = scrMask;
     }
 
+    public int getPsMask() {
+        return scrMask << 8;
+    }
+
+    public int getPsValue() {
+        return scr << 8;
+    }
+
     public boolean matches(CPUState cpuState, Memory memory) {
         return (((FrCPUState)cpuState).getSCR() & scrMask) == scr;
     }
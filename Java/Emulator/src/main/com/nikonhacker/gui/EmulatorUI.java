@@ -19,9 +19,11 @@ import com.nikonhacker.disassembly.fr.Dfr;
 import com.nikonhacker.disassembly.fr.FrCPUState;
 import com.nikonhacker.disassembly.tx.Dtx;
 import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.emu.CheckpointRing;
 import com.nikonhacker.emu.ClockableCallbackHandler;
 import com.nikonhacker.emu.EmulationException;
 import com.nikonhacker.emu.EmulationFramework;
+import com.nikonhacker.emu.MasterClock;
 import com.nikonhacker.emu.memory.DebuggableMemory;
 import com.nikonhacker.emu.memory.Memory;
 import com.nikonhacker.emu.memory.listener.TrackingMemoryActivityListener;
@@ -124,6 +126,8 @@ public class EmulatorUI extends JFrame implements ActionListener {
     private static final String COMMAND_DECODE_NKLD                  = "DECODE_NKLD";
     private static final String COMMAND_LOAD_STATE                   = "LOAD_STATE";
     private static final String COMMAND_SAVE_STATE                   = "SAVE_STATE";
+    private static final String COMMAND_STEP_BACK                    = "STEP_BACK";
+    private static final String COMMAND_RUN_BACK_TO_BREAK            = "RUN_BACK_TO_BREAK";
     private static final String COMMAND_QUIT                         = "QUIT";
     private static final String COMMAND_ABOUT                        = "ABOUT";
     private static final String COMMAND_TEST                         = "TEST";
@@ -203,6 +207,8 @@ public class EmulatorUI extends JFrame implements ActionListener {
     private JMenuItem[] stepMenuItem       = new JMenuItem[2];
     private JMenuItem[] stopMenuItem       = new JMenuItem[2];
     private JMenuItem[] breakpointMenuItem = new JMenuItem[2];
+    private JMenuItem   stepBackMenuItem;
+    private JMenuItem   runBackToBreakMenuItem;
 
     private JMenuItem generateSysSymbolsMenuItem;
 
@@ -921,11 +927,21 @@ public class EmulatorUI extends JFrame implements ActionListener {
             breakpointMenuItem[chip].addActionListener(this);
             runMenu.add(breakpointMenuItem[chip]);
 
-            if (chip == Constants.CHIP_FR) {
-                runMenu.add(new JSeparator());
-            }
+            runMenu.add(new JSeparator());
         }
 
+        //step back
+        stepBackMenuItem = new JMenuItem("Go back to previous checkpoint");
+        stepBackMenuItem.setActionCommand(COMMAND_STEP_BACK);
+        stepBackMenuItem.addActionListener(this);
+        runMenu.add(stepBackMenuItem);
+
+        //run back to break
+        runBackToBreakMenuItem = new JMenuItem("Go back to previous break");
+        runBackToBreakMenuItem.setActionCommand(COMMAND_RUN_BACK_TO_BREAK);
+        runBackToBreakMenuItem.addActionListener(this);
+        runMenu.add(runBackToBreakMenuItem);
+
         //Set up the components menu.
         JMenu componentsMenu = new JMenu("Components");
         componentsMenu.setMnemonic(KeyEvent.VK_O);
@@ -1148,6 +1164,11 @@ public class EmulatorUI extends JFrame implements ActionListener {
         final JCheckBox syncEmulators = new JCheckBox("Keep emulators in sync");
         syncEmulators.setSelected(prefs.isSyncPlay());
         framework.getMasterClock().setSyncPlay(prefs.isSyncPlay());
+        framework.getMasterClock().setEventDriven(prefs.isEventDrivenClock());
+        framework.getMasterClock().setSkipAhead(prefs.isTimerSkipAhead());
+        framework.getMasterClock().setParallel(prefs.isParallelChips());
+        framework.getMasterClock().setSyncQuantumPs(prefs.getChipSyncQuantumUs() * MasterClock.PS_PER_US);
+        framework.setCheckpointsEnabled(prefs.isKeepCheckpoints());
         syncEmulators.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -1271,6 +1292,12 @@ public class EmulatorUI extends JFrame implements ActionListener {
         else if (COMMAND_LOAD_STATE.equals(e.getActionCommand())) {
             loadState();
         }
+        else if (COMMAND_STEP_BACK.equals(e.getActionCommand())) {
+            stepBack();
+        }
+        else if (COMMAND_RUN_BACK_TO_BREAK.equals(e.getActionCommand())) {
+            runBackToBreak();
+        }
         else if (COMMAND_SAVE_STATE.equals(e.getActionCommand())) {
             saveState();
         }
@@ -1434,8 +1461,7 @@ public class EmulatorUI extends JFrame implements ActionListener {
                     setTitle(ApplicationInfo.getNameVersion() + " - Loading...");
 
                     framework = EmulationFramework.load(source, prefs);
-                    framework.setupCallbacks(getCallbackHandler(0), getCallbackHandler(1));
-                    framework.getMasterClock().setSyncPlay(prefs.isSyncPlay());
+                    setupLoadedFramework();
                     setTitle(ApplicationInfo.getNameVersion() + " - Loaded " + source);
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -1447,6 +1473,75 @@ public class EmulatorUI extends JFrame implements ActionListener {
         }
     }
 
+    private void setupLoadedFramework() {
+        framework.setupCallbacks(getCallbackHandler(0), getCallbackHandler(1));
+        framework.getMasterClock().setSyncPlay(prefs.isSyncPlay());
+        framework.getMasterClock().setEventDriven(prefs.isEventDrivenClock());
+        framework.getMasterClock().setSkipAhead(prefs.isTimerSkipAhead());
+        framework.getMasterClock().setParallel(prefs.isParallelChips());
+        framework.getMasterClock().setSyncQuantumPs(prefs.getChipSyncQuantumUs() * MasterClock.PS_PER_US);
+        framework.setCheckpointsEnabled(prefs.isKeepCheckpoints());
+    }
+
+    private void stepBack() {
+        if (framework.isEmulatorPlaying(Constants.CHIP_TX) || framework.isEmulatorPlaying(Constants.CHIP_FR)){
+            JOptionPane.showMessageDialog(this, "Could not go back while playing", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        CheckpointRing checkpointRing = framework.getCheckpointRing();
+        long previousCheckpointTimePs = (checkpointRing == null) ? -1 : checkpointRing.getPreviousCheckpointTimePs();
+        if (previousCheckpointTimePs < 0) {
+            JOptionPane.showMessageDialog(this, "No previous checkpoint. Checkpoints are kept when enabled in the preferences", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // Problem: some UI components install listeners and links will be lost
+        closeAllFrames();
+        try {
+            framework = checkpointRing.rewind(previousCheckpointTimePs, prefs);
+            setupLoadedFramework();
+            setTitle(ApplicationInfo.getNameVersion() + " - Back at " + (previousCheckpointTimePs / MasterClock.PS_PER_MS) + "ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, e.getMessage() + "\nSee console for more info", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        // some menu items may get disabled
+        updateStates();
+    }
+
+    private void runBackToBreak() {
+        if (framework.isEmulatorPlaying(Constants.CHIP_TX) || framework.isEmulatorPlaying(Constants.CHIP_FR)){
+            JOptionPane.showMessageDialog(this, "Could not go back while playing", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        CheckpointRing checkpointRing = framework.getCheckpointRing();
+        if (checkpointRing == null) {
+            JOptionPane.showMessageDialog(this, "No previous checkpoint. Checkpoints are kept when enabled in the preferences", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        try {
+            // Replays the kept checkpoints, which may take a while
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            EmulationFramework rewoundFramework = checkpointRing.rewindToPreviousBreak(prefs);
+            setCursor(Cursor.getDefaultCursor());
+            if (rewoundFramework == null) {
+                JOptionPane.showMessageDialog(this, "No trigger was hit since the oldest checkpoint", "Information", JOptionPane.INFORMATION_MESSAGE);
+            }
+            else {
+                // Problem: some UI components install listeners and links will be lost
+                closeAllFrames();
+                framework = rewoundFramework;
+                setupLoadedFramework();
+                setTitle(ApplicationInfo.getNameVersion() + " - Back at break, " + (framework.getMasterClock().getTotalElapsedTimePs() / MasterClock.PS_PER_MS) + "ms");
+            }
+        } catch (Exception e) {
+            setCursor(Cursor.getDefaultCursor());
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, e.getMessage() + "\nSee console for more info", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        // some menu items may get disabled
+        updateStates();
+    }
+
     private void saveState() {
         if (framework.isEmulatorPlaying(Constants.CHIP_TX) || framework.isEmulatorPlaying(Constants.CHIP_FR)){
             JOptionPane.showMessageDialog(this, "Could not save while playing", "Error", JOptionPane.ERROR_MESSAGE);
@@ -1468,10 +1563,18 @@ public class EmulatorUI extends JFrame implements ActionListener {
             }
             if (!destinationFile.exists() || JOptionPane.showConfirmDialog(this, "Are you sure you want to overwrite " + destinationFile.getName(), "Confirm overwrite", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
 
+                boolean onlyChanges = false;
+                if (framework.getBaseStateFilename() != null && !destinationFile.getAbsolutePath().equals(framework.getBaseStateFilename())) {
+                    int answer = JOptionPane.showConfirmDialog(this, "Only save memory pages changed since " + new File(framework.getBaseStateFilename()).getName() + " ?\nThat state will then be needed to load this one.", "Save changes only", JOptionPane.YES_NO_CANCEL_OPTION);
+                    if (answer == JOptionPane.CANCEL_OPTION || answer == JOptionPane.CLOSED_OPTION) {
+                        return;
+                    }
+                    onlyChanges = (answer == JOptionPane.YES_OPTION);
+                }
                 // spying frames insert IO forwarding pins that should not be saved
                 closeAllSpyFrames();
                 try {
-                    EmulationFramework.saveStateToFile(framework, destinationFile.getAbsolutePath());
+                    EmulationFramework.saveStateToFile(framework, destinationFile.getAbsolutePath(), onlyChanges);
                     JOptionPane.showMessageDialog(this, "State saving complete", "Done", JOptionPane.INFORMATION_MESSAGE);
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -1755,6 +1858,21 @@ public class EmulatorUI extends JFrame implements ActionListener {
         refreshIntervalField.setText("" + prefs.getRefreshIntervalMs());
         refreshIntervalPanel.add(refreshIntervalField);
 
+        // Clock scheduler
+        final JCheckBox eventDrivenClockCheckBox = new JCheckBox("Use event-driven clock scheduler");
+        eventDrivenClockCheckBox.setSelected(prefs.isEventDrivenClock());
+        final JCheckBox timerSkipAheadCheckBox = new JCheckBox("Let timers skip ticks between interrupts (requires event-driven scheduler)");
+        timerSkipAheadCheckBox.setSelected(prefs.isTimerSkipAhead());
+        final JCheckBox parallelChipsCheckBox = new JCheckBox("Run each chip on its own thread");
+        parallelChipsCheckBox.setSelected(prefs.isParallelChips());
+        JPanel chipSyncQuantumPanel = new JPanel();
+        final JTextField chipSyncQuantumField = new JTextField(5);
+        chipSyncQuantumPanel.add(new JLabel("Max time skew between chips (\u00B5s):"));
+        chipSyncQuantumField.setText("" + prefs.getChipSyncQuantumUs());
+        chipSyncQuantumPanel.add(chipSyncQuantumField);
+        final JCheckBox keepCheckpointsCheckBox = new JCheckBox("Keep checkpoints to go back in time (not in parallel mode)");
+        keepCheckpointsCheckBox.setSelected(prefs.isKeepCheckpoints());
+
         // Setup panel
         options.add(new JLabel("Button size :"));
         options.add(small);
@@ -1763,6 +1881,13 @@ public class EmulatorUI extends JFrame implements ActionListener {
         options.add(closeAllWindowsOnStopCheckBox);
         options.add(refreshIntervalPanel);
         options.add(new JLabel("Larger value greatly increases emulation speed"));
+        options.add(eventDrivenClockCheckBox);
+        options.add(new JLabel("Schedules timers by deadline instead of a common period table. Faster when frequencies differ a lot"));
+        options.add(timerSkipAheadCheckBox);
+        options.add(parallelChipsCheckBox);
+        options.add(chipSyncQuantumPanel);
+        options.add(new JLabel("Chips are synchronized at least that often, and at each exchange between them"));
+        options.add(keepCheckpointsCheckBox);
 
         if (JOptionPane.OK_OPTION == JOptionPane.showOptionDialog(this,
                 options,
@@ -1784,6 +1909,20 @@ public class EmulatorUI extends JFrame implements ActionListener {
             }
             refreshIntervalMs = Math.max(Math.min(refreshIntervalMs, 10000), 10);
             prefs.setRefreshIntervalMs(refreshIntervalMs);
+            prefs.setEventDrivenClock(eventDrivenClockCheckBox.isSelected());
+            framework.getMasterClock().setEventDriven(prefs.isEventDrivenClock());
+            prefs.setTimerSkipAhead(timerSkipAheadCheckBox.isSelected());
+            framework.getMasterClock().setSkipAhead(prefs.isTimerSkipAhead());
+            prefs.setParallelChips(parallelChipsCheckBox.isSelected());
+            framework.getMasterClock().setParallel(prefs.isParallelChips());
+            prefs.setKeepCheckpoints(keepCheckpointsCheckBox.isSelected());
+            framework.setCheckpointsEnabled(prefs.isKeepCheckpoints());
+            try {
+                prefs.setChipSyncQuantumUs(Integer.parseInt(chipSyncQuantumField.getText()));
+            } catch (NumberFormatException e) {
+                // noop
+            }
+            framework.getMasterClock().setSyncQuantumPs(prefs.getChipSyncQuantumUs() * MasterClock.PS_PER_US);
             applyPrefsToUI();
         }
     }
@@ -1937,7 +2076,7 @@ public class EmulatorUI extends JFrame implements ActionListener {
         final JCheckBox dmaSynchronousCheckBox = new JCheckBox("Make DMA synchronous");
         dmaSynchronousCheckBox.setSelected(prefs.isDmaSynchronous(chip));
         emulationOptionsPanel.add(dmaSynchronousCheckBox);
-        emulationOptionsPanel.add(new JLabel("If checked, DMA operations will be performed immediately, pausing the CPU. Otherwise they are performed in a separate thread."));
+        emulationOptionsPanel.add(new JLabel("If checked, DMA operations will be performed immediately, pausing the CPU. Otherwise the CPU keeps running until the time the transfer would take has elapsed."));
 
         final JCheckBox autoEnableTimersCheckBox = new JCheckBox("Auto enable timers");
         autoEnableTimersCheckBox.setSelected(prefs.isAutoEnableTimers(chip));
@@ -2052,6 +2191,17 @@ public class EmulatorUI extends JFrame implements ActionListener {
             });
             chipSpecificOptionsPanel.add(frontPanelNameCombo);
 
+            final JCheckBox blockExecutionCheckBox = new JCheckBox("Execute code by basic blocks");
+            blockExecutionCheckBox.setSelected(prefs.isTxBlockExecution());
+            blockExecutionCheckBox.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    prefs.setTxBlockExecution(blockExecutionCheckBox.isSelected());
+                }
+            });
+            chipSpecificOptionsPanel.add(blockExecutionCheckBox);
+            chipSpecificOptionsPanel.add(new JLabel("If checked, straight-line code is decoded once and run a whole block at a time. Interrupts are then only checked at block ends."));
+
             emulationOptionsPanel.add(new JSeparator(JSeparator.HORIZONTAL));
 
             tabbedPane.addTab(Constants.CHIP_LABEL[chip] + " specific options", null, chipSpecificOptionsPanel);
@@ -2825,6 +2975,8 @@ public class EmulatorUI extends JFrame implements ActionListener {
 
         stopMenuItem[chip].setEnabled(framework.isImageLoaded(chip));
         stopButton[chip].setEnabled(framework.isImageLoaded(chip));
+        stepBackMenuItem.setEnabled(framework.getCheckpointRing() != null && !framework.isEmulatorPlaying(Constants.CHIP_FR) && !framework.isEmulatorPlaying(Constants.CHIP_TX));
+        runBackToBreakMenuItem.setEnabled(stepBackMenuItem.isEnabled());
 
         if (framework.isImageLoaded(chip)) {
             // Depends whether emulator is playing or not
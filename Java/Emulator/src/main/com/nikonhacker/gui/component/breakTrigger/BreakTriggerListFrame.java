@@ -7,6 +7,7 @@ import ca.odell.glazedlists.GlazedLists;
 import ca.odell.glazedlists.gui.AdvancedTableFormat;
 import ca.odell.glazedlists.gui.WritableTableFormat;
 import ca.odell.glazedlists.swing.EventTableModel;
+import com.nikonhacker.AsyncWriter;
 import com.nikonhacker.Constants;
 import com.nikonhacker.Format;
 import com.nikonhacker.Prefs;
@@ -30,6 +31,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -51,6 +53,7 @@ public class BreakTriggerListFrame extends DocumentFrame {
     private final JButton                 editButton;
     private final JButton                 deleteButton;
     private final JButton                 addSyscallButton;
+    private final PrintWriter             breakLogPrintWriter;
 
     public BreakTriggerListFrame(String title, String imageName, boolean resizable, boolean closable, boolean maximizable, boolean iconifiable, final int chip, final EmulatorUI ui, Emulator emulator, final List<BreakTrigger> breakTriggers, Memory memory) {
         super(title, imageName, resizable, closable, maximizable, iconifiable, chip, ui);
@@ -263,7 +266,9 @@ public class BreakTriggerListFrame extends DocumentFrame {
 
         tabbedPane.addTab("Trigger log", null, new JScrollPane(triggerLog));
 
-        emulator.setBreakLogPrintWriter(triggerLog.getPrintWriter());
+        // Messages are formatted by the emulator, but written to the area by another thread
+        breakLogPrintWriter = new PrintWriter(new AsyncWriter(triggerLog.getPrintWriter(), AsyncWriter.DEFAULT_CAPACITY, AsyncWriter.OverflowPolicy.BLOCK, "Trigger log writer"));
+        emulator.setBreakLogPrintWriter(breakLogPrintWriter);
 
 
         mainPanel.add(tabbedPane, BorderLayout.CENTER);
@@ -283,6 +288,7 @@ public class BreakTriggerListFrame extends DocumentFrame {
     @Override
     public void dispose() {
         emulator.setBreakLogPrintWriter(null);
+        breakLogPrintWriter.close();
         super.dispose();
     }
 
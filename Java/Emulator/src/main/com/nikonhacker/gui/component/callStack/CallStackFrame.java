@@ -5,9 +5,10 @@ import com.nikonhacker.Format;
 import com.nikonhacker.disassembly.CPUState;
 import com.nikonhacker.disassembly.CodeStructure;
 import com.nikonhacker.disassembly.Instruction;
-import com.nikonhacker.disassembly.ParsingException;
+import com.nikonhacker.emu.CallStack;
 import com.nikonhacker.emu.CallStackItem;
 import com.nikonhacker.emu.Emulator;
+import com.nikonhacker.emu.trace.StatementDecoder;
 import com.nikonhacker.gui.EmulatorUI;
 import com.nikonhacker.gui.swing.DocumentFrame;
 import com.nikonhacker.gui.swing.VerticalLayout;
@@ -22,7 +23,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.Serializable;
-import java.util.LinkedList;
 
 
 public class CallStackFrame extends DocumentFrame {
@@ -32,7 +32,9 @@ public class CallStackFrame extends DocumentFrame {
 
     private Emulator emulator;
     private CPUState cpuState;
-    private final LinkedList<CallStackItem> callStack;
+    private final CallStack callStack;
+    /** Formats frames when they are displayed. Only used from the Swing thread */
+    private final StatementDecoder statementDecoder;
 
     private static final int UPDATE_INTERVAL_MS = 100; // 10fps
 
@@ -49,7 +51,8 @@ public class CallStackFrame extends DocumentFrame {
 
         setLayout(new BorderLayout());
 
-        callStack = new LinkedList<CallStackItem>();
+        callStack = new CallStack(chip);
+        statementDecoder = new StatementDecoder(chip, ui.getPrefs().getOutputOptions(chip));
 
         emulator.setCallStack(callStack);
 
@@ -141,8 +144,8 @@ public class CallStackFrame extends DocumentFrame {
     private void copyToClipboard() {
         String s = "0x" + Format.asHex(cpuState.pc, 8) + System.lineSeparator();
         boolean hideJumps = ui.getPrefs().isCallStackHideJumps(chip);
-        for (CallStackItem callStackItem : callStack) {
-            if (!(callStackItem.getInstruction().getFlowType() == Instruction.FlowType.JMP) || !hideJumps) {
+        for (CallStackItem callStackItem : callStack.getItems()) {
+            if (!(callStackItem.getFlowType() == Instruction.FlowType.JMP) || !hideJumps) {
                 s += getFormattedElement(callStackItem) + System.lineSeparator();
             }
         }
@@ -152,20 +155,25 @@ public class CallStackFrame extends DocumentFrame {
     }
 
     private void updateList() {
-        synchronized (callStack) {
-            DefaultListModel model = new DefaultListModel();
-            // Pseudo stack element
-            CallStackItem currentPositionItem = new CallStackItem(cpuState.pc, cpuState.pc, null, null, null);
-            model.addElement(currentPositionItem);
-            // Real stack
-            boolean hideJumps = ui.getPrefs().isCallStackHideJumps(chip);
-            for (CallStackItem callStackItem : callStack) {
-                if (callStackItem.getInstruction() == null || !(callStackItem.getInstruction().getFlowType() == Instruction.FlowType.JMP) || !hideJumps) {
-                    model.addElement(callStackItem);
-                }
+        DefaultListModel model = new DefaultListModel();
+        // Pseudo stack element
+        CallStackItem currentPositionItem = new CallStackItem(cpuState.pc, cpuState.getSp());
+        model.addElement(currentPositionItem);
+        // Real stack
+        boolean hideJumps = ui.getPrefs().isCallStackHideJumps(chip);
+        for (CallStackItem callStackItem : callStack.getItems()) {
+            if (!(callStackItem.getFlowType() == Instruction.FlowType.JMP) || !hideJumps) {
+                model.addElement(callStackItem);
             }
-            callStackList.setModel(model);
         }
+        callStackList.setModel(model);
+    }
+
+    /**
+     * @return the displayed item at the given index, which may differ from the current stack contents
+     */
+    private CallStackItem getListItem(int index) {
+        return (CallStackItem) callStackList.getModel().getElementAt(index);
     }
 
     private void showSource(int index) {
@@ -176,7 +184,7 @@ public class CallStackFrame extends DocumentFrame {
             }
             else {
                 // Real stack
-                ui.jumpToSource(chip, callStack.get(index - 1).getAddress());
+                ui.jumpToSource(chip, getListItem(index).getAddress());
             }
         }
     }
@@ -189,7 +197,7 @@ public class CallStackFrame extends DocumentFrame {
             }
             else {
                 // Real stack
-                ui.jumpToMemory(chip, callStack.get(index - 1).getSp());
+                ui.jumpToMemory(chip, getListItem(index).getSp());
             }
         }
     }
@@ -216,17 +224,12 @@ public class CallStackFrame extends DocumentFrame {
     }
 
     private String getFormattedElement(CallStackItem item) {
-        String s = item.toString().trim();
-        if (codeStructure != null && item.getTargetAddress() != null) {
-            try {
-                int targetAddress = Format.parseUnsigned(item.getTargetAddress());
-                // Find back function name, ignoring last bit (16-bit ISA indicator in Tx)
-                String label = codeStructure.getFunctionName(targetAddress &0xFFFFFFFE);
-                if (label != null) {
-                    s += " (" + label + ")";
-                }
-            } catch (ParsingException e) {
-                // ignore
+        String s = item.toString(statementDecoder).trim();
+        if (codeStructure != null && item.hasTargetAddress()) {
+            // Find back function name, ignoring last bit (16-bit ISA indicator in Tx)
+            String label = codeStructure.getFunctionName(item.getTargetAddress() & 0xFFFFFFFE);
+            if (label != null) {
+                s += " (" + label + ")";
             }
         }
         return s;
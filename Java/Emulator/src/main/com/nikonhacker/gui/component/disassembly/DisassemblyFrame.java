@@ -1,8 +1,10 @@
 package com.nikonhacker.gui.component.disassembly;
 
+import com.nikonhacker.AsyncWriter;
 import com.nikonhacker.Constants;
 import com.nikonhacker.emu.AddressRange;
 import com.nikonhacker.emu.Emulator;
+import com.nikonhacker.emu.trace.ExecutionTraceRecorder;
 import com.nikonhacker.gui.EmulatorUI;
 import com.nikonhacker.gui.swing.DocumentFrame;
 import com.nikonhacker.gui.swing.PrintWriterArea;
@@ -36,7 +38,9 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
     private final JCheckBox         indentCheckbox;
     private final JCheckBox         instructionCheckbox;
     private final JCheckBox         interruptMarksCheckbox;
+    private final JCheckBox         registersCheckbox;
     private final JComboBox<Object> destinationComboBox;
+    private final PrintWriterArea   disassemblyLog;
 
 
     public DisassemblyFrame(String title, String imageName, boolean resizable, boolean closable, boolean maximizable, boolean iconifiable, final int chip, EmulatorUI ui, Emulator emulator, final List<AddressRange> addressRanges) {
@@ -47,7 +51,7 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
 
         JPanel selectionPanelContainer = new JPanel();
 
-        final PrintWriterArea disassemblyLog = new PrintWriterArea(ROWS, COLUMNS);
+        disassemblyLog = new PrintWriterArea(ROWS, COLUMNS);
         disassemblyLog.setAutoScroll(true);
         disassemblyLog.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
 
@@ -93,13 +97,26 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
         });
         selectionPanelContainer.add(interruptMarksCheckbox);
 
+        registersCheckbox = new JCheckBox("registers (trace only)");
+        registersCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (logger.getTraceRecorder() != null) {
+                    logger.getTraceRecorder().setRecordRegisters(registersCheckbox.isSelected());
+                }
+            }
+        });
+        selectionPanelContainer.add(registersCheckbox);
+
         destinationComboBox = new JComboBox<>();
         destinationComboBox.addItem("to here");
         destinationComboBox.addItem("to file");
         destinationComboBox.addItem("to both");
+        destinationComboBox.addItem("to binary trace");
         destinationComboBox.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                logger.flush();
                 for (Writer writer : logger.getWriters()) {
                     try {
                         if (writer instanceof FileWriter) {
@@ -113,6 +130,7 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
                     }
                 }
                 logger.getWriters().clear();
+                closeTraceRecorder();
                 switch (destinationComboBox.getSelectedIndex()) {
                     case 0:
                         // To here
@@ -134,7 +152,23 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
                             JOptionPane.showMessageDialog(DisassemblyFrame.this, "Cannot write to " + file.getAbsolutePath(), "Error", JOptionPane.ERROR_MESSAGE);
                         }
                         break;
+                    case 3:
+                        // Instructions to a binary trace, to be decoded by ExecutionTraceDecoder. Messages here
+                        logger.getWriters().add(disassemblyLog.getPrintWriter());
+                        File traceFile = new File(Constants.CHIP_LABEL[chip] + "_" + (new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss")).format(new Date()) + ".trace");
+                        disassemblyLog.getPrintWriter().println("Opening binary trace " + traceFile.getAbsolutePath());
+                        try {
+                            ExecutionTraceRecorder traceRecorder = new ExecutionTraceRecorder(traceFile, chip, 0);
+                            traceRecorder.setRecordRegisters(registersCheckbox.isSelected());
+                            logger.setTraceRecorder(traceRecorder);
+                        } catch (IOException e1) {
+                            JOptionPane.showMessageDialog(DisassemblyFrame.this, "Cannot write to " + traceFile.getAbsolutePath(), "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                        break;
                 }
+                // The text area cannot keep up with a running emulator: better lose lines there than slow it down.
+                // Files must be complete
+                logger.setAsynchronous(destinationComboBox.getSelectedIndex() == 1 || destinationComboBox.getSelectedIndex() == 2 ? AsyncWriter.OverflowPolicy.BLOCK : AsyncWriter.OverflowPolicy.DROP);
             }
         });
         selectionPanelContainer.add(destinationComboBox);
@@ -163,6 +197,7 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
         contentPanel.add(new JScrollPane(disassemblyLog), BorderLayout.CENTER);
 
         logger.getWriters().add(disassemblyLog.getPrintWriter());
+        logger.setAsynchronous(AsyncWriter.OverflowPolicy.DROP);
         emulator.setDisassemblyLogger(logger);
 
         setContentPane(contentPanel);
@@ -183,6 +218,7 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
         indentCheckbox.setEnabled(editable && !isLogging);
         instructionCheckbox.setEnabled(editable && !isLogging);
         interruptMarksCheckbox.setEnabled(editable && !isLogging);
+        registersCheckbox.setEnabled(editable && !isLogging);
         destinationComboBox.setEnabled(editable && !isLogging);
         rangeButton.setEnabled(editable && !isLogging);
         startStopButton.setEnabled(editable);
@@ -195,6 +231,8 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
 
     @Override
     public void dispose() {
+        emulator.setDisassemblyLogger(null);
+        logger.setAsynchronous(null);
         if (logger.isLogging()) {
             logger.setLogging(false);
             for (Writer writer : logger.getWriters()) {
@@ -205,10 +243,23 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
                 }
             }
         }
-        emulator.setDisassemblyLogger(null);
+        closeTraceRecorder();
         super.dispose();
     }
 
+    private void closeTraceRecorder() {
+        ExecutionTraceRecorder traceRecorder = logger.getTraceRecorder();
+        if (traceRecorder != null) {
+            logger.setTraceRecorder(null);
+            try {
+                traceRecorder.close();
+                disassemblyLog.getPrintWriter().println("Closed binary trace: " + traceRecorder.getNumRecords() + " records");
+            } catch (IOException e) {
+                System.err.println("Error closing binary trace: " + e.getMessage());
+            }
+        }
+    }
+
     @Override
     public void onBeforeLoggingStateChange(boolean logging) {
         if (logging) {
@@ -219,6 +270,10 @@ public class DisassemblyFrame extends DocumentFrame implements LoggingStateChang
             startStopButton.setText("Stop");
         }
         else {
+            if (logger.getTraceRecorder() != null) {
+                // Make the trace readable by the decoder
+                logger.getTraceRecorder().flush();
+            }
             logger.println("---- Realtime logging stopped.");
             startStopButton.setText("Start");
         }
@@ -1,6 +1,8 @@
 package com.nikonhacker.gui.component.disassembly;
 
+import com.nikonhacker.AsyncWriter;
 import com.nikonhacker.emu.AddressRange;
+import com.nikonhacker.emu.trace.ExecutionTraceRecorder;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -8,6 +10,7 @@ import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DisassemblyLogger {
     private boolean logging;
@@ -16,9 +19,12 @@ public class DisassemblyLogger {
     boolean includeInstruction    = true;
     boolean includeInterruptMarks = true;
     String  prefix                = "";
-    private List<Writer> writers = new ArrayList<>();
+    // Writers may change while the asynchronous writer thread goes through them
+    private List<Writer> writers = new CopyOnWriteArrayList<>();
     private List<AddressRange> ranges;
     private List<LoggingStateChangeListener> listeners = new ArrayList<>();
+    private ExecutionTraceRecorder traceRecorder;
+    private volatile AsyncWriter asyncWriter;
 
     /**
      * Basic empty constructor
@@ -124,13 +130,90 @@ public class DisassemblyLogger {
 
     public void rawPrint(String s) {
         if (logging) {
-            for (Writer writer : writers) {
+            AsyncWriter asyncWriter = this.asyncWriter;
+            if (asyncWriter != null) {
                 try {
-                    writer.append(s);
+                    asyncWriter.write(s);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
+            else {
+                writeToAll(s);
+            }
+        }
+    }
+
+    private void writeToAll(String s) {
+        for (Writer writer : writers) {
+            try {
+                writer.append(s);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Waits until all messages printed so far have reached the writers, and flushes them
+     */
+    public void flush() {
+        AsyncWriter asyncWriter = this.asyncWriter;
+        try {
+            if (asyncWriter != null) {
+                asyncWriter.flush();
+            }
+            else {
+                for (Writer writer : writers) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param policy if not null, messages are written to the writers by a background thread, and policy tells what to
+     *               do when it cannot keep up. If null, messages are written by the emulator thread
+     */
+    public void setAsynchronous(AsyncWriter.OverflowPolicy policy) {
+        if (asyncWriter != null) {
+            if (asyncWriter.getPolicy() == policy) {
+                return;
+            }
+            AsyncWriter previousWriter = asyncWriter;
+            asyncWriter = null;
+            try {
+                // Writes pending messages and stops the thread. Writers are not ours to close
+                previousWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (policy != null) {
+            asyncWriter = new AsyncWriter(new Writer() {
+                @Override
+                public void write(char[] cbuf, int off, int len) throws IOException {
+                    writeToAll(new String(cbuf, off, len));
+                }
+
+                @Override
+                public void write(String str) throws IOException {
+                    writeToAll(str);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    for (Writer writer : writers) {
+                        writer.flush();
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+            }, AsyncWriter.DEFAULT_CAPACITY, policy, "Disassembly log writer");
         }
     }
 
@@ -138,6 +221,18 @@ public class DisassemblyLogger {
         return writers;
     }
 
+    public ExecutionTraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * @param traceRecorder if not null, executed instructions and interrupt marks are recorded there in binary form
+     *                      instead of being formatted to the writers. Other messages still go to the writers
+     */
+    public void setTraceRecorder(ExecutionTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
     public boolean mustLog(int pc) {
         // by convention, null means no filtering
         if (ranges == null) return true;
@@ -61,7 +61,7 @@ public class FrontPanelFrame extends DocumentFrame {
         button.addStateChangeListener(new StateChangeAdapter () {
             @Override
             public void onStateChange(int state) {
-                cameraButton.setState(state);
+                ui.getFramework().setButtonState(cameraButton, state);
             }
         });
         panel.add(button);
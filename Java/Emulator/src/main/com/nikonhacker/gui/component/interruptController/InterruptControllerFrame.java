@@ -67,7 +67,15 @@ public abstract class InterruptControllerFrame extends DocumentFrame {
             public void actionPerformed(ActionEvent e) {
                 int selectedIndex = interruptQueueJList.getSelectedIndex();
                 if (selectedIndex != -1) {
-                    interruptController.getInterruptRequestQueue().remove(selectedIndex);
+                    InterruptRequest interruptRequest = null;
+                    synchronized (interruptController.getInterruptRequestQueue()) {
+                        if (selectedIndex < interruptController.getInterruptRequestQueue().size()) {
+                            interruptRequest = interruptController.getInterruptRequestQueue().get(selectedIndex);
+                        }
+                    }
+                    if (interruptRequest != null) {
+                        interruptController.removeRequest(interruptRequest);
+                    }
                     updateList();
                 }
             }
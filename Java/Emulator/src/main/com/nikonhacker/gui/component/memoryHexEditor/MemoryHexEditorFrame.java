@@ -221,6 +221,10 @@ public class MemoryHexEditorFrame extends DocumentFrame implements ActionListene
     }
 
     private void refreshMemoryPage() {
+        if (currentPage != null) {
+            // The page may have been replaced, e.g. by a private copy of a shared page
+            currentPage = memory.getPageForAddress(baseAddress);
+        }
         if (currentPage != null) {
             try {
                 hexEditor.open(new ByteArrayInputStream(currentPage));
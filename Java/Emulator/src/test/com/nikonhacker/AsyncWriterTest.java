@@ -0,0 +1,103 @@
+package com.nikonhacker;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncWriterTest extends TestCase {
+    public void testBlockKeepsEverything() throws Exception {
+        StringWriter target = new StringWriter();
+        AsyncWriter writer = new AsyncWriter(target, 4, AsyncWriter.OverflowPolicy.BLOCK, "test");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            writer.write("line " + i + "\n");
+            expected.append("line ").append(i).append("\n");
+        }
+        writer.flush();
+        assertEquals(expected.toString(), target.toString());
+        assertEquals(0, writer.getNumDropped());
+        writer.close();
+    }
+
+    public void testDropMarksLostMessages() throws Exception {
+        StringWriter target = new StringWriter() {
+            @Override
+            public void write(String str) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                super.write(str);
+            }
+        };
+        AsyncWriter writer = new AsyncWriter(target, 4, AsyncWriter.OverflowPolicy.DROP, "test");
+        for (int i = 0; i < 100; i++) {
+            writer.write("line " + i + "\n");
+        }
+        writer.close();
+        assertTrue(writer.getNumDropped() > 0);
+        assertTrue(target.toString(), target.toString().contains(" log messages dropped]"));
+    }
+
+    public void testConcurrentWritersRespectCapacity() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger numWritten = new AtomicInteger();
+        StringWriter target = new StringWriter() {
+            @Override
+            public void write(String str) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                if (str.startsWith("line")) {
+                    numWritten.incrementAndGet();
+                }
+            }
+        };
+        final AsyncWriter writer = new AsyncWriter(target, 4, AsyncWriter.OverflowPolicy.DROP, "test");
+        // The writer thread is stuck on the first line, so the others can only pile up in the queue
+        writer.write("line first\n");
+        writing.await();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            writer.write("line " + i + "\n");
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        release.countDown();
+        writer.close();
+        assertEquals(1 + 4, numWritten.get());
+        assertEquals(8 * 1000 - 4, writer.getNumDropped());
+    }
+
+    public void testWriteAfterClose() throws Exception {
+        AsyncWriter writer = new AsyncWriter(new StringWriter(), 4, AsyncWriter.OverflowPolicy.BLOCK, "test");
+        writer.close();
+        try {
+            writer.write("late");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.nikonhacker.disassembly.tx;
+
+import junit.framework.TestCase;
+
+public class TxCPUStateTest extends TestCase {
+    public void testShadowRegisterSets() throws Exception {
+        TxCPUState cpuState = new TxCPUState();
+        cpuState.clearSscrSSD();
+        for (int registerSet = 0; registerSet < 8; registerSet++) {
+            cpuState.setSscrCSS(registerSet);
+            for (int i = 0; i < TxCPUState.HI; i++) {
+                cpuState.setReg(i, (registerSet << 8) + i);
+            }
+        }
+        cpuState.setSscrCSS(2);
+
+        for (int registerSet = 0; registerSet < 8; registerSet++) {
+            // r0 is always 0
+            assertEquals(0, cpuState.getShadowReg(registerSet, 0));
+            // r1 is separate in all sets
+            assertEquals((registerSet << 8) + 1, cpuState.getShadowReg(registerSet, 1));
+            // r26 is common to all sets, so last written value (from set 7) is seen everywhere
+            assertEquals((7 << 8) + 26, cpuState.getShadowReg(registerSet, 26));
+            // r29 is separate in set 0, and common to sets 1-7
+            assertEquals(registerSet == 0 ? 29 : (7 << 8) + 29, cpuState.getShadowReg(registerSet, 29));
+        }
+        assertEquals((2 << 8) + 31, cpuState.getReg(31));
+
+        // Disabling shadow sets switches back to set 0
+        cpuState.setSscrSSD();
+        assertEquals(31, cpuState.getReg(31));
+    }
+}
@@ -0,0 +1,113 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.disassembly.Instruction;
+import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import com.nikonhacker.disassembly.fr.FrInstructionSet;
+import com.nikonhacker.disassembly.fr.FrStatement;
+import com.nikonhacker.emu.interrupt.fr.FrInterruptRequest;
+import com.nikonhacker.emu.trace.StatementDecoder;
+import junit.framework.TestCase;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+public class CallStackTest extends TestCase {
+    public void testPopSkipsJumps() {
+        CallStack callStack = new CallStack(Constants.CHIP_TX);
+        callStack.push(0x100, 0, 0, 4, Instruction.FlowType.CALL);
+        callStack.push(0x200, 0, 0, 4, Instruction.FlowType.CALL);
+        callStack.push(0x300, 0, 0, 4, Instruction.FlowType.JMP);
+        callStack.push(0x400, 0, 0, 4, Instruction.FlowType.JMP);
+        callStack.pop();
+        List<CallStackItem> items = callStack.getItems();
+        assertEquals(1, items.size());
+        assertEquals(0x100, items.get(0).getAddress());
+        callStack.pop();
+        assertTrue(callStack.isEmpty());
+        // Popping an empty stack is harmless
+        callStack.pop();
+        assertTrue(callStack.isEmpty());
+    }
+
+    public void testGrowth() {
+        CallStack callStack = new CallStack(Constants.CHIP_FR);
+        for (int i = 0; i < 1000; i++) {
+            callStack.push(i * 4, i, 0, 2, Instruction.FlowType.CALL);
+            callStack.setTopTarget(i * 8);
+        }
+        callStack.pushInterrupt(0x1234, 0, new FrInterruptRequest(0x19, false, 0x10));
+        List<CallStackItem> items = callStack.getItems();
+        assertEquals(1001, items.size());
+        assertNull(items.get(0).getFlowType());
+        assertFalse(items.get(0).hasTargetAddress());
+        // Most recent first
+        for (int i = 0; i < 1000; i++) {
+            CallStackItem item = items.get(1000 - i);
+            assertEquals(i * 4, item.getAddress());
+            assertEquals(i, item.getSp());
+            assertEquals(i * 8, item.getTargetAddress());
+        }
+    }
+
+    public void testFormat() {
+        Set<OutputOption> outputOptions = EnumSet.noneOf(OutputOption.class);
+        FrInstructionSet.init(outputOptions);
+        FrStatement.initFormatChars(outputOptions);
+        FrCPUState.initRegisterLabels(outputOptions);
+        StatementDecoder decoder = new StatementDecoder(Constants.CHIP_FR, outputOptions);
+
+        CallStack callStack = new CallStack(Constants.CHIP_FR);
+        // CALL @R4
+        callStack.push(0x40000, 0, 0x9714, 2, Instruction.FlowType.CALL);
+        callStack.setTopTarget(0x12340);
+        callStack.pushInterrupt(0x40010, 0, new FrInterruptRequest(0x19, false, 0x10));
+        List<CallStackItem> items = callStack.getItems();
+        assertTrue(items.get(0).toString(decoder), items.get(0).toString(decoder).startsWith("0x00040010 InterruptRequest 0x19"));
+        String text = items.get(1).toString(decoder);
+        assertTrue(text, text.matches("0x00040000 +CALL +@R4.*"));
+        // The register value is known from the target
+        assertTrue(text, text.contains("0x00012340"));
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final CallStack callStack = new CallStack(Constants.CHIP_FR);
+        final int numOperations = 1_000_000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int depth = 0;
+                for (int i = 0; i < numOperations; i++) {
+                    // Random walk between 0 and 600 frames, so that arrays grow while reading
+                    if (depth == 0 || (depth < 600 && (i * 0x9E3779B9) >>> 31 == 0)) {
+                        callStack.push(depth * 4, ~(depth * 4), 0, 2, Instruction.FlowType.CALL);
+                        callStack.setTopTarget(depth);
+                        depth++;
+                    }
+                    else {
+                        callStack.pop();
+                        depth--;
+                    }
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            List<CallStackItem> items = callStack.getItems();
+            // A copy must be a stack as it was at some point
+            for (int i = 0; i < items.size(); i++) {
+                CallStackItem item = items.get(i);
+                int depth = items.size() - 1 - i;
+                assertEquals(depth * 4, item.getAddress());
+                assertEquals(~(depth * 4), item.getSp());
+                if (i > 0 || item.getTargetAddress() != item.getAddress()) {
+                    // Unless the top frame target is not set yet
+                    assertEquals(depth, item.getTargetAddress());
+                }
+            }
+        }
+        writer.join();
+    }
+}
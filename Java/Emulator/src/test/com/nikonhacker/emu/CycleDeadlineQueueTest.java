@@ -0,0 +1,47 @@
+package com.nikonhacker.emu;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class CycleDeadlineQueueTest extends TestCase {
+    public void testOrder() throws Exception {
+        CycleDeadlineQueue queue = new CycleDeadlineQueue();
+        Random random = new Random(0);
+        TestListener[] listeners = new TestListener[100];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = new TestListener(random.nextInt(1000));
+            queue.add(listeners[i], listeners[i].deadline);
+        }
+        // Remove every third one
+        for (int i = 0; i < listeners.length; i += 3) {
+            queue.remove(listeners[i]);
+            assertFalse(queue.contains(listeners[i]));
+        }
+        long previousDeadline = -1;
+        int count = 0;
+        while (!queue.isEmpty()) {
+            long deadline = queue.getNextDeadline();
+            TestListener listener = (TestListener) queue.poll();
+            assertEquals(listener.deadline, deadline);
+            assertTrue(deadline >= previousDeadline);
+            previousDeadline = deadline;
+            count++;
+        }
+        assertEquals(66, count);
+        assertEquals(Long.MAX_VALUE, queue.getNextDeadline());
+    }
+
+    private static class TestListener implements CycleDeadlineListener {
+        private final long deadline;
+
+        public TestListener(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long onCycleDeadline(long deadline) {
+            return -1;
+        }
+    }
+}
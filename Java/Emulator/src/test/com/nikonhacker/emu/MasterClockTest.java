@@ -28,6 +28,168 @@ public class MasterClockTest  extends TestCase {
         Thread.sleep(5000);
     }
 
+    public void testEventDrivenRatio() throws Exception {
+        MasterClock masterClock = new MasterClock();
+        masterClock.setEventDriven(true);
+        final CountingClockable slow = new CountingClockable(1000000, 1000);
+        final CountingClockable fast = new CountingClockable(3000000, 3000);
+        slow.other = fast;
+
+        masterClock.add(slow, -1, true, false);
+        masterClock.add(fast, -1, true, false);
+        masterClock.start();
+        for (int i = 0; i < 500 && fast.runs < fast.maxRuns; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(3000, fast.runs);
+        // Both started at time 0, so the slow one stopped at 999us, after 2997 ticks of the fast one.
+        // The fast one also has a tick at 999us, but runs after the slow one which was added first
+        assertEquals(2997, slow.otherRunsAtStop);
+        // Last tick of the fast one is at 2999 periods of 333333.33ps
+        assertEquals(999666666L, masterClock.getTotalElapsedTimePs());
+    }
+
+    public void testTimeListener() throws Exception {
+        for (boolean eventDriven : new boolean[]{false, true}) {
+            final MasterClock masterClock = new MasterClock();
+            masterClock.setEventDriven(eventDriven);
+            final CountingClockable clockable = new CountingClockable(1000000, 1000);
+            final StringBuilder callTimes = new StringBuilder();
+            masterClock.setTimeListener(new ClockTimeListener() {
+                @Override
+                public void onTime(long timePs) {
+                    callTimes.append(timePs / MasterClock.PS_PER_US).append(',');
+                    masterClock.scheduleTimeListener(timePs + 300 * MasterClock.PS_PER_US);
+                }
+            });
+            masterClock.scheduleTimeListener(100 * MasterClock.PS_PER_US);
+
+            masterClock.add(clockable, -1, true, false);
+            masterClock.start();
+            for (int i = 0; i < 500 && clockable.runs < clockable.maxRuns; i++) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1000, clockable.runs);
+            assertEquals("100,400,700,", callTimes.toString());
+        }
+    }
+
+    public void testParallelSkew() throws Exception {
+        MasterClock masterClock = new MasterClock();
+        masterClock.setParallel(true);
+        masterClock.setSyncQuantumPs(10 * MasterClock.PS_PER_US);
+        final ChipClockable fr = new ChipClockable(masterClock, 0, 1000000, 10000);
+        final ChipClockable tx = new ChipClockable(masterClock, 1, 1000000, 10000);
+        fr.other = tx;
+        tx.other = fr;
+
+        masterClock.add(fr, -1, true, false);
+        masterClock.add(tx, -1, true, false);
+        masterClock.start();
+        for (int i = 0; i < 500 && (fr.runs < fr.maxRuns || tx.runs < tx.maxRuns || tx.eventsReceived < fr.eventsSent); i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(10000, fr.runs);
+        assertEquals(10000, tx.runs);
+        // Each chip sees its own time
+        assertFalse(fr.wrongTime);
+        assertFalse(tx.wrongTime);
+        // A chip never gets more than one 10us quantum (10 ticks) ahead of the other
+        assertTrue("FR max skew " + fr.maxSkew, fr.maxSkew <= 10);
+        assertTrue("TX max skew " + tx.maxSkew, tx.maxSkew <= 10);
+        // All events sent by FR were received by TX, on the clock thread, at most one quantum later
+        assertEquals(fr.eventsSent, tx.eventsReceived);
+        assertTrue("Max delivery delay " + tx.maxDeliveryDelay, tx.maxDeliveryDelay <= 10);
+    }
+
+    private static class ChipClockable implements Clockable {
+        private final MasterClock masterClock;
+        private final int chip;
+        private final int frequencyHz;
+        private final int maxRuns;
+        private volatile int runs = 0;
+        private ChipClockable other;
+        private int maxSkew;
+        private boolean wrongTime;
+        private int eventsSent;
+        private volatile int eventsReceived;
+        private int maxDeliveryDelay;
+
+        public ChipClockable(MasterClock masterClock, int chip, int frequencyHz, int maxRuns) {
+            this.masterClock = masterClock;
+            this.chip = chip;
+            this.frequencyHz = frequencyHz;
+            this.maxRuns = maxRuns;
+        }
+
+        @Override
+        public int getChip() {
+            return chip;
+        }
+
+        public int getFrequencyHz() {
+            return frequencyHz;
+        }
+
+        public Object onClockTick() {
+            if (masterClock.getTotalElapsedTimePs() != runs * (MasterClock.PS_PER_SEC / frequencyHz)) {
+                wrongTime = true;
+            }
+            runs++;
+            if (other.runs < other.maxRuns) {
+                maxSkew = Math.max(maxSkew, runs - other.runs);
+            }
+            if (runs % 1000 == 0) {
+                eventsSent++;
+                final int sentAt = runs;
+                masterClock.postCrossChipEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        other.maxDeliveryDelay = Math.max(other.maxDeliveryDelay, other.runs - sentAt);
+                        other.eventsReceived++;
+                    }
+                });
+            }
+            return (runs < maxRuns)?null:new Object();
+        }
+    }
+
+    private static class CountingClockable implements Clockable {
+        private final int frequencyHz;
+        private final int maxRuns;
+        private volatile int runs = 0;
+        private CountingClockable other;
+        private int otherRunsAtStop;
+
+        public CountingClockable(int frequencyHz, int maxRuns) {
+            this.frequencyHz = frequencyHz;
+            this.maxRuns = maxRuns;
+        }
+
+        @Override
+        public int getChip() {
+            return -1;
+        }
+
+        public int getFrequencyHz() {
+            return frequencyHz;
+        }
+
+        public Object onClockTick() {
+            runs++;
+            if (runs < maxRuns) {
+                return null;
+            }
+            if (other != null) {
+                otherRunsAtStop = other.runs;
+            }
+            return new Object();
+        }
+    }
+
     private static class TestClockable implements Clockable, ClockableCallbackHandler {
         private String name;
         private int frequencyHz;
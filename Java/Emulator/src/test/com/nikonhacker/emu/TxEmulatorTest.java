@@ -0,0 +1,152 @@
+package com.nikonhacker.emu;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.peripherials.interruptController.tx.TxInterruptController;
+import com.nikonhacker.emu.trigger.BreakTrigger;
+import com.nikonhacker.emu.trigger.condition.AlwaysBreakCondition;
+import com.nikonhacker.emu.trigger.condition.BreakCondition;
+import com.nikonhacker.emu.trigger.condition.BreakPointCondition;
+import com.nikonhacker.emu.trigger.condition.RegisterEqualityBreakCondition;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+public class TxEmulatorTest extends TestCase {
+    private static final int CODE_ADDRESS = 0x10000;
+    private static final int DATA_ADDRESS = 0x20000;
+    private static final int END_ADDRESS  = 0x1003C;
+
+    /** 32-bit ISA program: a loop storing to data, then code modifying a later statement of its own block */
+    private static final int[] PROGRAM = {
+            0x3C080002, // 10000 lui   t0, 0x0002
+            0x2409000A, // 10004 addiu t1, zero, 10
+            0xAD090000, // 10008 sw    t1, 0(t0)
+            0x25080004, // 1000C addiu t0, t0, 4
+            0x2529FFFF, // 10010 addiu t1, t1, -1
+            0x1520FFFC, // 10014 bne   t1, zero, 10008
+            0x01495021, // 10018 addu  t2, t2, t1 (delay slot)
+            0x3C0B240C, // 1001C lui   t3, 0x240C
+            0x356B0077, // 10020 ori   t3, t3, 0x0077 (t3 = "addiu t4, zero, 0x77")
+            0x3C0D0001, // 10024 lui   t5, 0x0001
+            0xADAB0030, // 10028 sw    t3, 0x30(t5) (replaces the statement at 10030)
+            0x240C0001, // 1002C addiu t4, zero, 1
+            0x240C0011, // 10030 addiu t4, zero, 0x11
+            0x014C5021, // 10034 addu  t2, t2, t4
+            0xAD0A0000, // 10038 sw    t2, 0(t0)
+            0x1000FFFF, // 1003C beq   zero, zero, 1003C
+            0x00000000  // 10040 nop
+    };
+
+    private TxEmulator      emulator;
+    private TxCPUState      cpuState;
+    private DebuggableMemory memory;
+
+    private void createEmulator() {
+        Platform platform = new Platform(new MasterClock());
+        cpuState = new TxCPUState();
+        platform.setCpuState(cpuState);
+        memory = new DebuggableMemory(false);
+        platform.setMemory(memory);
+        TxInterruptController interruptController = new TxInterruptController(platform);
+        platform.setInterruptController(interruptController);
+
+        emulator = new TxEmulator(platform);
+        emulator.setOutputOptions(EnumSet.noneOf(OutputOption.class));
+        emulator.setContext(memory, cpuState, interruptController);
+
+        for (int i = 0; i < PROGRAM.length; i++) {
+            memory.store32(CODE_ADDRESS + 4 * i, PROGRAM[i]);
+        }
+        cpuState.setPc(CODE_ADDRESS);
+    }
+
+    private void runToEnd() throws Exception {
+        for (int i = 0; i < 10000 && cpuState.pc != END_ADDRESS; i++) {
+            assertNull(emulator.onClockTick());
+        }
+        assertEquals(END_ADDRESS, cpuState.pc);
+    }
+
+    /**
+     * Running basic blocks must give the same results as running one statement at a time
+     */
+    public void testBlockModeMatchesStepMode() throws Exception {
+        createEmulator();
+        emulator.setBlockExecutionMode(false);
+        runToEnd();
+        int[] stepRegisters = new int[32];
+        for (int i = 0; i < stepRegisters.length; i++) {
+            stepRegisters[i] = cpuState.getReg(i);
+        }
+        int[] stepData = new int[11];
+        for (int i = 0; i < stepData.length; i++) {
+            stepData[i] = memory.load32(DATA_ADDRESS + 4 * i);
+        }
+        // The modified statement was run, not the original one
+        assertEquals(0x77, cpuState.getReg(12));
+
+        createEmulator();
+        emulator.setBlockExecutionMode(true);
+        runToEnd();
+        for (int i = 0; i < stepRegisters.length; i++) {
+            assertEquals("r" + i, stepRegisters[i], cpuState.getReg(i));
+        }
+        for (int i = 0; i < stepData.length; i++) {
+            assertEquals("data " + i, stepData[i], memory.load32(DATA_ADDRESS + 4 * i));
+        }
+    }
+
+    /**
+     * When several conditions match, the first one added wins, whatever the way it is indexed
+     */
+    public void testBreakConditionOrder() throws Exception {
+        BreakCondition always = new AlwaysBreakCondition();
+        // r0 is always 0
+        BreakCondition register = new RegisterEqualityBreakCondition(0, 0, null);
+
+        createEmulator();
+        emulator.addBreakCondition(always);
+        emulator.addBreakCondition(register);
+        assertSame(always, emulator.onClockTick());
+
+        createEmulator();
+        emulator.addBreakCondition(register);
+        emulator.addBreakCondition(always);
+        assertSame(register, emulator.onClockTick());
+    }
+
+    /**
+     * A break filter sees each break requested by a trigger, and can let it pass
+     */
+    public void testBreakFilter() throws Exception {
+        createEmulator();
+        final List<Long> breakCycles = new ArrayList<Long>();
+        emulator.setBreakFilter(new BreakFilter() {
+            @Override
+            public boolean mustBreak(Emulator emulator, BreakCondition breakCondition) {
+                breakCycles.add(emulator.getTotalCycles());
+                return breakCycles.size() == 3;
+            }
+        });
+        // Start of the loop
+        BreakCondition loop = new BreakPointCondition(0x10008, new BreakTrigger(Constants.CHIP_TX, "loop"));
+        emulator.addBreakCondition(loop);
+
+        BreakCondition breakCondition = null;
+        for (int i = 0; i < 100 && breakCondition == null; i++) {
+            breakCondition = emulator.onClockTick();
+        }
+        assertSame(loop, breakCondition);
+        assertEquals(3, breakCycles.size());
+        // Stopped at the third iteration, after 2 instructions, then 5 per iteration
+        assertEquals(2L, (long) breakCycles.get(0));
+        assertEquals(12L, (long) breakCycles.get(2));
+        assertEquals(0x10008, cpuState.pc);
+        assertEquals(8, cpuState.getReg(9));
+    }
+}
@@ -0,0 +1,263 @@
+package com.nikonhacker.emu.memory;
+
+import com.nikonhacker.emu.memory.listener.Abstract8BitMemoryActivityListener;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DebuggableMemoryTest extends TestCase {
+    private File createFile(int length) throws Exception {
+        File file = File.createTempFile("firmware", ".bin");
+        file.deleteOnExit();
+        byte[] contents = new byte[length];
+        for (int i = 0; i < length; i++) {
+            contents[i] = (byte) (i * 7 + (i >> 16));
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(contents);
+        fos.close();
+        return file;
+    }
+
+    public void testSharedFirmwarePages() throws Exception {
+        // 2 full pages, then a partial one
+        File file = createFile(0x28000);
+        DebuggableMemory memory1 = new DebuggableMemory(false);
+        DebuggableMemory memory2 = new DebuggableMemory(false);
+        memory1.loadFile(file, 0x40000, false);
+        memory2.loadFile(file, 0x40000, false);
+
+        for (int i = 0; i < 0x28000; i += 0x1001) {
+            assertEquals((byte) (i * 7 + (i >> 16)), (byte) memory1.loadUnsigned8(0x40000 + i));
+        }
+        // Full pages are shared, the partial one is not
+        assertSame(memory1.getPageForAddress(0x40000), memory2.getPageForAddress(0x40000));
+        assertSame(memory1.getPageForAddress(0x50000), memory2.getPageForAddress(0x50000));
+        assertNotSame(memory1.getPageForAddress(0x60000), memory2.getPageForAddress(0x60000));
+
+        // First write makes a private copy
+        int before = memory2.load32(0x50010);
+        memory1.store32(0x50010, 0xCAFEBABE);
+        assertEquals(0xCAFEBABE, memory1.load32(0x50010));
+        assertEquals(0xCAFEBABE, memory1.loadInstruction32(0x50010));
+        assertEquals(before, memory2.load32(0x50010));
+        assertNotSame(memory1.getPageForAddress(0x50000), memory2.getPageForAddress(0x50000));
+        assertEquals(memory2.load32(0x50020), memory1.load32(0x50020));
+
+        // Bulk writes too
+        memory2.fill(0x4FFF0, 0x20, 0x55, DebuggableMemory.AccessSource.DMA);
+        assertEquals(0x55555555, memory2.load32(0x4FFFC));
+        assertEquals((byte) (0xFFFC * 7), (byte) memory1.loadUnsigned8(0x4FFFC));
+
+        // Saved state sees shared pages as writable
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        memory1.saveAllToStream(stream);
+        assertEquals(0x7, stream.toByteArray()[4]);
+    }
+
+    public void testWriteProtectedSharedPages() throws Exception {
+        File file = createFile(0x10000);
+        DebuggableMemory memory1 = new DebuggableMemory(false);
+        DebuggableMemory memory2 = new DebuggableMemory(false);
+        memory1.loadFile(file, 0x40000, true);
+        memory2.loadFile(file, 0x40000, false);
+        try {
+            memory1.store8(0x40000, 1);
+            fail("Write protected page was written to");
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+        // Changing protection does not make the shared page writable
+        memory1.changeProtection(0x40000, 0x10000, true, true, true);
+        memory1.store8(0x40000, 1);
+        assertEquals(1, memory1.loadUnsigned8(0x40000));
+        assertEquals(0, memory2.loadUnsigned8(0x40000));
+    }
+
+    public void testStoreListenersGetPrivatePage() throws Exception {
+        File file = createFile(0x10000);
+        final DebuggableMemory memory = new DebuggableMemory(false);
+        memory.loadFile(file, 0x40000, false);
+        final List<byte[]> notifiedPages = new ArrayList<byte[]>();
+        memory.addActivityListener(new Abstract8BitMemoryActivityListener() {
+            public boolean matches(int address) { return true; }
+            public boolean matchesPage(int page) { return true; }
+            public boolean isReadOnly() { return true; }
+            public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) { return value; }
+            public void onLoadInstruction8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) { }
+            public void onStore8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+                notifiedPages.add(pageData);
+            }
+        });
+
+        // Shared and zero pages are made private before listeners see them
+        memory.store16(0x40010, 0x1234);
+        memory.store32(0x70010, 0x12345678);
+        assertEquals(6, notifiedPages.size());
+        assertSame(memory.getPageForAddress(0x40000), notifiedPages.get(0));
+        assertSame(memory.getPageForAddress(0x70000), notifiedPages.get(5));
+        assertNotSame(AbstractMemory.ZERO_PAGE, notifiedPages.get(5));
+    }
+
+    public void testListenerOrderPerPage() throws Exception {
+        DebuggableMemory memory = new DebuggableMemory(false);
+        StringBuilder calls = new StringBuilder();
+        RecordingListener logger = new RecordingListener("logger", 1, true, calls);
+        RecordingListener modifier = new RecordingListener("modifier", 1, false, calls);
+        RecordingListener other = new RecordingListener("other", 2, false, calls);
+        memory.addActivityListener(logger);
+        memory.addActivityListener(other);
+        memory.addActivityListener(modifier);
+
+        // Modifiers are called before loggers, whatever the order they were added in
+        memory.store8(0x10000, 1);
+        memory.store8(0x20000, 1);
+        assertEquals("modifier logger other ", calls.toString());
+
+        calls.setLength(0);
+        memory.removeActivityListener(modifier);
+        memory.store8(0x10000, 1);
+        memory.store8(0x20000, 1);
+        assertEquals("logger other ", calls.toString());
+
+        calls.setLength(0);
+        memory.removeActivityListener(logger);
+        memory.removeActivityListener(other);
+        memory.store8(0x10000, 1);
+        memory.store8(0x20000, 1);
+        assertEquals("", calls.toString());
+    }
+
+    private static class RecordingListener extends Abstract8BitMemoryActivityListener {
+        private final String        name;
+        private final int           page;
+        private final boolean       readOnly;
+        private final StringBuilder calls;
+
+        RecordingListener(String name, int page, boolean readOnly, StringBuilder calls) {
+            this.name = name;
+            this.page = page;
+            this.readOnly = readOnly;
+            this.calls = calls;
+        }
+
+        public boolean matches(int address) { return (address >>> 16) == page; }
+        public boolean matchesPage(int page) { return page == this.page; }
+        public boolean isReadOnly() { return readOnly; }
+        public byte onLoadData8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) { return value; }
+        public void onLoadInstruction8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) { }
+        public void onStore8(byte[] pageData, int address, byte value, DebuggableMemory.AccessSource accessSource) {
+            calls.append(name).append(' ');
+        }
+    }
+
+    public void testSharedPagesReleased() throws Exception {
+        File file = createFile(0x20000);
+        DebuggableMemory memory = new DebuggableMemory(false);
+        memory.loadFile(file, 0x40000, false);
+        assertTrue(SharedFilePages.getNumInstances() > 0);
+        // Once no memory uses the pages, the file is forgotten, as are those of previous tests
+        memory = null;
+        for (int i = 0; i < 100 && SharedFilePages.getNumInstances() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, SharedFilePages.getNumInstances());
+    }
+
+    public void testZeroPage() throws Exception {
+        DebuggableMemory memory = new DebuggableMemory(false);
+        DebuggableMemory otherMemory = new DebuggableMemory(false);
+
+        // Reads map the zero page without allocating
+        assertEquals(0, memory.load32(0x30000));
+        assertEquals(0, memory.loadUnsigned8(0x4FFFF));
+        assertEquals(0, otherMemory.loadUnsigned16(0x30000));
+        assertEquals(2, memory.getNumUsedPages());
+        assertEquals(0, memory.getNumCommittedPages());
+        assertSame(memory.getPageForAddress(0x30000), otherMemory.getPageForAddress(0x30000));
+
+        // First write allocates
+        memory.store32(0x30010, 0x12345678);
+        assertEquals(0x12345678, memory.load32(0x30010));
+        assertEquals(0, otherMemory.load32(0x30010));
+        assertEquals(1, memory.getNumCommittedPages());
+
+        // A read page can still be mapped explicitly
+        memory.map(0x40000, 0x10000, true, true, true);
+        assertEquals(2, memory.getNumCommittedPages());
+
+        // Zero pages are saved without their contents
+        memory.loadUnsigned8(0x50000);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        memory.saveAllToStream(stream);
+        assertEquals(memory.getNumPages() + 2 * memory.getPageSize(), stream.size());
+
+        DebuggableMemory loadedMemory = new DebuggableMemory(false);
+        loadedMemory.loadAllFromStream(new ByteArrayInputStream(stream.toByteArray()));
+        assertEquals(0x12345678, loadedMemory.load32(0x30010));
+        assertEquals(3, loadedMemory.getNumUsedPages());
+        assertEquals(2, loadedMemory.getNumCommittedPages());
+        loadedMemory.store8(0x50000, 1);
+        assertEquals(1, loadedMemory.loadUnsigned8(0x50000));
+        assertEquals(0, memory.loadUnsigned8(0x50000));
+    }
+
+    public void testSnapshots() throws Exception {
+        DebuggableMemory memory = new DebuggableMemory(false);
+        memory.map(0x10000, 0x30000, true, true, true);
+        memory.store32(0x10000, 0x11111111);
+        memory.store32(0x20000, 0x22222222);
+        memory.changeProtection(0x30000, 0x10000, true, false, true);
+        memory.loadUnsigned8(0x50000);
+
+        PageSnapshot base = memory.takeSnapshot();
+        assertEquals(4, base.getNumChangedPages(null));
+
+        // Writes after a snapshot don't alter it
+        memory.store32(0x20000, 0x33333333);
+        memory.store8(0x60000, 1);
+        PageSnapshot snapshot = memory.takeSnapshot();
+        assertEquals(2, snapshot.getNumChangedPages(base));
+        assertFalse(snapshot.isPageChanged(1, base));
+        assertTrue(snapshot.isPageChanged(2, base));
+
+        // A delta only holds changed pages
+        ByteArrayOutputStream fullStream = new ByteArrayOutputStream();
+        base.write(new DataOutputStream(fullStream), null);
+        ByteArrayOutputStream deltaStream = new ByteArrayOutputStream();
+        snapshot.write(new DataOutputStream(deltaStream), base);
+        assertTrue(deltaStream.size() < fullStream.size());
+
+        PageSnapshot loadedBase = PageSnapshot.read(new DataInputStream(new ByteArrayInputStream(fullStream.toByteArray())), null);
+        PageSnapshot loadedSnapshot = PageSnapshot.read(new DataInputStream(new ByteArrayInputStream(deltaStream.toByteArray())), loadedBase);
+        DebuggableMemory loadedMemory = new DebuggableMemory(false);
+        loadedMemory.restoreSnapshot(loadedSnapshot);
+        assertEquals(0x11111111, loadedMemory.load32(0x10000));
+        assertEquals(0x33333333, loadedMemory.load32(0x20000));
+        assertEquals(1, loadedMemory.loadUnsigned8(0x60000));
+        assertEquals(0, loadedMemory.loadUnsigned8(0x50001));
+        try {
+            loadedMemory.store8(0x30000, 1);
+            fail("Write protection was lost");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+
+        // Restoring goes back in time, and can be done again
+        memory.restoreSnapshot(base);
+        memory.store32(0x20000, 0x44444444);
+        assertEquals(0x44444444, memory.load32(0x20000));
+        memory.restoreSnapshot(base);
+        assertEquals(0x22222222, memory.load32(0x20000));
+        assertEquals(0, memory.loadUnsigned8(0x60000));
+    }
+}
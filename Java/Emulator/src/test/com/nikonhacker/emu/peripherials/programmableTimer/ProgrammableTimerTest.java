@@ -0,0 +1,324 @@
+package com.nikonhacker.emu.peripherials.programmableTimer;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.disassembly.tx.TxCPUState;
+import com.nikonhacker.emu.Clockable;
+import com.nikonhacker.emu.MasterClock;
+import com.nikonhacker.emu.Platform;
+import com.nikonhacker.emu.peripherials.clock.fr.FrClockGenerator;
+import com.nikonhacker.emu.peripherials.clock.tx.TxClockGenerator;
+import com.nikonhacker.emu.peripherials.interruptController.DummyInterruptController;
+import com.nikonhacker.emu.peripherials.interruptController.SharedInterruptCircuit;
+import com.nikonhacker.emu.peripherials.interruptController.tx.TxInterruptController;
+import com.nikonhacker.emu.peripherials.programmableTimer.fr.FrReloadTimer;
+import com.nikonhacker.emu.peripherials.programmableTimer.fr.FrReloadTimer32;
+import com.nikonhacker.emu.peripherials.programmableTimer.tx.TxInputCaptureTimer;
+import com.nikonhacker.emu.peripherials.programmableTimer.tx.TxTimer;
+import junit.framework.TestCase;
+
+/**
+ * Skipping ticks must be invisible: each timer is run once ticking normally and once with skip-ahead, by a fake
+ * firmware reading and writing its registers, and both runs must see the same values and interrupts at the same times
+ */
+public class ProgrammableTimerTest extends TestCase {
+    private static final int NUM_STEPS = 400;
+
+    public void testFrReloadTimer() throws Exception {
+        assertSameWithSkipping(new FrReloadScenario(false), new FrReloadScenario(false));
+    }
+
+    public void testFrReloadTimer32() throws Exception {
+        assertSameWithSkipping(new FrReloadScenario(true), new FrReloadScenario(true));
+    }
+
+    public void testTxTimer() throws Exception {
+        assertSameWithSkipping(new TxTimerScenario(), new TxTimerScenario());
+    }
+
+    public void testTxInputCaptureTimer() throws Exception {
+        assertSameWithSkipping(new TxInputCaptureScenario(), new TxInputCaptureScenario());
+    }
+
+    private void assertSameWithSkipping(Scenario ticking, Scenario skipping) {
+        String expected = run(ticking, false);
+        String actual = run(skipping, true);
+        // Timers did something
+        assertTrue(expected, expected.contains(" request "));
+        assertEquals(expected, actual);
+        // While actually skipping ticks
+        assertTrue("Skipped " + skipping.skippedTicks, skipping.skippedTicks > 10 * NUM_STEPS);
+    }
+
+    private String run(Scenario scenario, boolean skipAhead) {
+        scenario.masterClock.setEventDriven(true);
+        scenario.masterClock.setSkipAhead(skipAhead);
+        // Added first, like emulators, so that it runs before a timer ticking at the same time
+        scenario.masterClock.add(scenario, -1, true, false);
+        scenario.masterClock.runInCurrentThread();
+        assertEquals(NUM_STEPS, scenario.step);
+        return scenario.log.toString();
+    }
+
+    /**
+     * A fake firmware driving a timer. At each step, it logs the timer state, then reads or writes registers
+     */
+    private abstract static class Scenario implements Clockable {
+        final MasterClock      masterClock = new MasterClock();
+        final Platform         platform    = new Platform(masterClock);
+        final StringBuilder    log         = new StringBuilder();
+        ProgrammableTimer timer;
+        int step;
+        long skippedTicks;
+
+        void log(String text) {
+            log.append(masterClock.getTotalElapsedTimePs()).append(' ').append(text).append('\n');
+        }
+
+        /** Called at each step, with the timer state already logged. Last step must stop the timer */
+        abstract void onStep(int step);
+
+        @Override
+        public Object onClockTick() throws Exception {
+            // Not reading the value first, so that toString() has to catch up by itself
+            log(timer.toString());
+            if (step == NUM_STEPS - 1) {
+                // Statistics are lost once the timer is stopped
+                skippedTicks = masterClock.getSkippedTickCounts().get(timer);
+            }
+            onStep(step);
+            step++;
+            return (step < NUM_STEPS) ? null : this;
+        }
+    }
+
+    private static class FrReloadScenario extends Scenario {
+        private static final int TMCSR_CSL_DIV4 = 0b00000010_00000000;
+
+        private final FrReloadTimer reloadTimer;
+
+        FrReloadScenario(boolean is32) {
+            FrClockGenerator clockGenerator = new FrClockGenerator();
+            clockGenerator.setPlatform(platform);
+            platform.setClockGenerator(clockGenerator);
+            platform.setInterruptController(new DummyInterruptController() {
+                @Override
+                public boolean request(int interruptNumber) {
+                    log("request " + interruptNumber);
+                    return true;
+                }
+            });
+            platform.setSharedInterruptCircuit(new SharedInterruptCircuit() {
+                @Override
+                public boolean request(int interruptNumber, int sourceNumber) {
+                    log("request " + interruptNumber + "/" + sourceNumber);
+                    return true;
+                }
+
+                @Override
+                public void removeRequest(int interruptNumber, int sourceNumber) {
+                }
+            });
+            reloadTimer = is32 ? new FrReloadTimer32(0, platform) : new FrReloadTimer(0, platform);
+            reloadTimer.setActive(true);
+            timer = reloadTimer;
+        }
+
+        @Override
+        public int getChip() {
+            return Constants.CHIP_FR;
+        }
+
+        @Override
+        public int getFrequencyHz() {
+            // About 67 timer ticks per step at PCLK/2, not a divisor of it
+            return ((FrClockGenerator) platform.getClockGenerator()).getPClkFrequency() / 134 + 7;
+        }
+
+        @Override
+        void onStep(int step) {
+            int running = FrReloadTimer.TMCSR_CNTE_MASK | FrReloadTimer.TMCSR_INTE_MASK | FrReloadTimer.TMCSR_RELD_MASK;
+            switch (step) {
+                case 0:
+                    reloadTimer.setTmrlra(1000);
+                    reloadTimer.setTmcsr(running | FrReloadTimer.TMCSR_TRG_MASK);
+                    break;
+                case 100:
+                    // Reload while counting
+                    reloadTimer.setTmcsr(running | FrReloadTimer.TMCSR_TRG_MASK);
+                    break;
+                case 150:
+                    // Slower clock
+                    reloadTimer.setTmcsr(running | TMCSR_CSL_DIV4);
+                    break;
+                case 200:
+                    // Only used at next underflow
+                    reloadTimer.setTmrlra(300);
+                    break;
+                case 250:
+                    // One shot: timer stops at next underflow
+                    reloadTimer.setTmcsr(FrReloadTimer.TMCSR_CNTE_MASK | FrReloadTimer.TMCSR_INTE_MASK | TMCSR_CSL_DIV4);
+                    break;
+                case 299:
+                    // Stopped by underflow, but still enabled in TMCSR
+                    reloadTimer.setTmcsr(0);
+                    break;
+                case 300:
+                    reloadTimer.setTmcsr(running | FrReloadTimer.TMCSR_TRG_MASK);
+                    break;
+                case NUM_STEPS - 1:
+                    reloadTimer.setTmcsr(0);
+                    break;
+                default:
+                    if ((reloadTimer.getTmcsr() & FrReloadTimer.TMCSR_UF_MASK) != 0) {
+                        // Acknowledge underflow
+                        reloadTimer.setTmcsr(reloadTimer.getTmcsr() & ~FrReloadTimer.TMCSR_UF_MASK);
+                    }
+            }
+            log("TMR=" + reloadTimer.getTmr() + " TMCSR=" + reloadTimer.getTmcsr());
+        }
+    }
+
+    /**
+     * Platform of the TX timers, logging interrupt requests
+     */
+    private abstract static class TxScenario extends Scenario {
+        TxScenario() {
+            platform.setCpuState(new TxCPUState());
+            TxClockGenerator clockGenerator = new TxClockGenerator();
+            clockGenerator.setPlatform(platform);
+            platform.setClockGenerator(clockGenerator);
+            platform.setInterruptController(new TxInterruptController(platform) {
+                @Override
+                public boolean request(int interruptNumber) {
+                    log("request " + interruptNumber);
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        public int getChip() {
+            return Constants.CHIP_TX;
+        }
+    }
+
+    private static class TxTimerScenario extends TxScenario {
+        private static final int TBMOD_T1 = 0b01;
+        private static final int TBMOD_T4 = 0b10;
+        private static final int RUNNING  = TxTimer.TBRUN_TBRUN_MASK | TxTimer.TBRUN_TBPRUN_MASK;
+
+        private final TxTimer txTimer;
+
+        TxTimerScenario() {
+            txTimer = new TxTimer(0, platform);
+            txTimer.setActive(true);
+            timer = txTimer;
+        }
+
+        @Override
+        public int getFrequencyHz() {
+            // About 397 timer ticks per step at T1, so that the 16-bit counter overflows during the run
+            return ((TxClockGenerator) platform.getClockGenerator()).getFt0Hz() / 2 / 397 + 3;
+        }
+
+        @Override
+        void onStep(int step) {
+            switch (step) {
+                case 0:
+                    txTimer.setTbmod(TBMOD_T1);
+                    txTimer.setTbrg0(5000);
+                    txTimer.setTbrg1(20000);
+                    txTimer.setTben(TxTimer.TBEN_TBEN_MASK);
+                    txTimer.setTbrun(RUNNING);
+                    break;
+                case 60:
+                    txTimer.performCapture0();
+                    log("TBCP0=" + txTimer.getTbcp0());
+                    break;
+                case 100:
+                    // Next match is now earlier
+                    txTimer.setTbrg1(txTimer.getTbuc() + 1000);
+                    break;
+                case 150:
+                    txTimer.setTbuc(100);
+                    break;
+                case 200:
+                    // Slower clock, clearing counter on RG1 match
+                    txTimer.setTbmod(TBMOD_T4 | TxTimer.TBMOD_TBCLE_MASK);
+                    break;
+                case 250:
+                    // Mask RG0 match interrupt
+                    txTimer.setTbim(TxTimer.TBIM_TBIMn0_MASK);
+                    break;
+                case 300:
+                    txTimer.setTbrun(0);
+                    break;
+                case 320:
+                    txTimer.setTbrun(RUNNING);
+                    break;
+                case NUM_STEPS - 1:
+                    txTimer.setTben(0);
+                    break;
+            }
+            log("TBUC=" + txTimer.getTbuc() + " TBST=" + txTimer.getTbst());
+        }
+    }
+
+    private static class TxInputCaptureScenario extends TxScenario {
+        private static final int RUNNING = TxInputCaptureTimer.TBTRUN_TBTRUN_MASK | TxInputCaptureTimer.TBTRUN_TBTPRUN_MASK;
+
+        private final TxInputCaptureTimer captureTimer;
+
+        TxInputCaptureScenario() {
+            captureTimer = new TxInputCaptureTimer(platform);
+            captureTimer.setActive(true);
+            timer = captureTimer;
+        }
+
+        @Override
+        public int getFrequencyHz() {
+            // About 151 timer ticks per step at T2
+            return ((TxClockGenerator) platform.getClockGenerator()).getFt0Hz() / 4 / 151 + 5;
+        }
+
+        @Override
+        void onStep(int step) {
+            switch (step) {
+                case 0:
+                    captureTimer.setTbtcr(0);
+                    captureTimer.setCmpctl(0, TxInputCaptureTimer.CMPCTL_CMPEN_MASK);
+                    captureTimer.setTccmp(0, 3000);
+                    captureTimer.setCmpctl(1, TxInputCaptureTimer.CMPCTL_CMPEN_MASK | TxInputCaptureTimer.CMPCTL_CMPRDE_MASK);
+                    captureTimer.setTccmp(1, 10000);
+                    captureTimer.setTcen(TxInputCaptureTimer.TCEN_TCEN_MASK);
+                    captureTimer.setTbtrun(RUNNING);
+                    break;
+                case 100:
+                    captureTimer.performCapture(0);
+                    log("TCCAP0=" + captureTimer.getTccap(0));
+                    break;
+                case 150:
+                    captureTimer.setTccmp(0, captureTimer.getCurrentValue() + 2000);
+                    // Buffered until next match
+                    captureTimer.setTccmp(1, 40000);
+                    break;
+                case 200:
+                    captureTimer.setTbtrun(RUNNING | TxInputCaptureTimer.TBTRUN_TBTCAP_MASK);
+                    log("TBTCAP=" + captureTimer.getTbtcap());
+                    break;
+                case 250:
+                    // Slower clock
+                    captureTimer.setTbtcr(1);
+                    break;
+                case 300:
+                    // Close to 32-bit overflow
+                    captureTimer.setCurrentValue(-5000);
+                    break;
+                case NUM_STEPS - 1:
+                    captureTimer.setTcen(0);
+                    break;
+            }
+            log("TBTRDCAP=" + captureTimer.getCurrentValue());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.nikonhacker.emu.trace;
+
+import com.nikonhacker.Constants;
+import com.nikonhacker.disassembly.OutputOption;
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.EnumSet;
+
+public class ExecutionTraceTest extends TestCase {
+    public void testRecordAndDecode() throws Exception {
+        File file = File.createTempFile("trace", ".trace");
+        file.deleteOnExit();
+
+        FrCPUState cpuState = new FrCPUState();
+        ExecutionTraceRecorder recorder = new ExecutionTraceRecorder(file, Constants.CHIP_FR, 0);
+        recorder.setRecordRegisters(true);
+        // NOP
+        recorder.recordInstruction(1000, 0x40000, 0, 0x9FA0, 2, cpuState);
+        recorder.recordInterrupt(2000, 0x19);
+        // LDI:32 #0x12345678, R4
+        cpuState.setReg(4, 0x55);
+        recorder.recordInstruction(3000, 0x40002, 0, 0x9F8412345678L, 6, cpuState);
+        recorder.close();
+
+        StringWriter writer = new StringWriter();
+        ExecutionTraceDecoder decoder = new ExecutionTraceDecoder(EnumSet.noneOf(OutputOption.class));
+        assertEquals(2, decoder.decode(file, writer));
+        String[] lines = writer.toString().split(System.lineSeparator());
+        // All standard registers first, then the instructions, the registers changed in between and the interrupt
+        int numRegisters = cpuState.getNumStdRegisters();
+        assertEquals(numRegisters + 4, lines.length);
+        assertEquals("    ; R4=0x00000000", lines[4]);
+        assertTrue(lines[numRegisters], lines[numRegisters].matches("0000.000001000ms 0x00040000 +NOP.*"));
+        assertEquals("0000.000002000ms ------------------------- Accepting InterruptRequest 0x19", lines[numRegisters + 1]);
+        assertEquals("      ; R4=0x00000055", lines[numRegisters + 2]);
+        // Indented after the interrupt
+        assertTrue(lines[numRegisters + 3], lines[numRegisters + 3].matches("0000.000003000ms 0x00040002   +LDI:32 +#0x12345678, ?R4.*"));
+    }
+
+    public void testRing() throws Exception {
+        File file = File.createTempFile("trace", ".trace");
+        file.deleteOnExit();
+
+        ExecutionTraceRecorder recorder = new ExecutionTraceRecorder(file, Constants.CHIP_FR, 2);
+        for (int i = 0; i < 5; i++) {
+            recorder.recordInstruction(i * 1000, 0x40000 + 2 * i, 0, 0x9FA0, 2, null);
+        }
+        recorder.close();
+
+        StringWriter writer = new StringWriter();
+        ExecutionTraceDecoder decoder = new ExecutionTraceDecoder(EnumSet.noneOf(OutputOption.class));
+        decoder.setIncludeTimestamp(false);
+        assertEquals(2, decoder.decode(file, writer));
+        String[] lines = writer.toString().split(System.lineSeparator());
+        // Only the last ones are kept, in order
+        assertTrue(lines[0], lines[0].startsWith("0x00040006 "));
+        assertTrue(lines[1], lines[1].startsWith("0x00040008 "));
+    }
+}
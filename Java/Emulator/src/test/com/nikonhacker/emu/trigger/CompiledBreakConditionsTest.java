@@ -0,0 +1,139 @@
+package com.nikonhacker.emu.trigger;
+
+import com.nikonhacker.disassembly.fr.FrCPUState;
+import com.nikonhacker.emu.memory.DebuggableMemory;
+import com.nikonhacker.emu.memory.listener.WatchpointActivityListener;
+import com.nikonhacker.emu.trigger.condition.AndCondition;
+import com.nikonhacker.emu.trigger.condition.BreakCondition;
+import com.nikonhacker.emu.trigger.condition.BreakPointCondition;
+import com.nikonhacker.emu.trigger.condition.MemoryValueBreakCondition;
+import com.nikonhacker.emu.trigger.condition.RegisterEqualityBreakCondition;
+import com.nikonhacker.emu.trigger.condition.fr.CCRBreakCondition;
+import com.nikonhacker.emu.trigger.condition.fr.ILMBreakCondition;
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class CompiledBreakConditionsTest extends TestCase {
+    /**
+     * Compiled conditions must select exactly the conditions that match when tested one by one
+     */
+    public void testSameMatchesAsSequentialEvaluation() throws Exception {
+        Random random = new Random(0);
+        List<BreakCondition> conditions = new ArrayList<BreakCondition>();
+        for (int i = 0; i < 200; i++) {
+            List<BreakCondition> parts = new ArrayList<BreakCondition>();
+            if (random.nextBoolean()) parts.add(new BreakPointCondition(random.nextInt(8) * 2, null));
+            if (random.nextBoolean()) parts.add(new RegisterEqualityBreakCondition(random.nextInt(3), random.nextInt(4), null));
+            if (random.nextBoolean()) parts.add(new RegisterEqualityBreakCondition(random.nextInt(3), random.nextInt(4), null));
+            if (random.nextBoolean()) parts.add(new CCRBreakCondition(random.nextInt(4), 3, null));
+            if (random.nextBoolean()) parts.add(new ILMBreakCondition(random.nextInt(4) + 14, 0x1F, null));
+            conditions.add(parts.size() == 1 ? parts.get(0) : new AndCondition(parts, null));
+        }
+        CompiledBreakConditions compiledBreakConditions = new CompiledBreakConditions(conditions);
+
+        FrCPUState cpuState = new FrCPUState();
+        for (int i = 0; i < 1000; i++) {
+            cpuState.pc = random.nextInt(8) * 2;
+            for (int r = 0; r < 3; r++) {
+                cpuState.setReg(r, random.nextInt(4));
+            }
+            cpuState.setCCR(random.nextInt(4));
+            cpuState.setILM(random.nextInt(4) + 14, false);
+
+            Set<BreakCondition> expected = new HashSet<BreakCondition>();
+            for (BreakCondition condition : conditions) {
+                if (condition.matches(cpuState, null)) {
+                    expected.add(condition);
+                }
+            }
+
+            Set<BreakCondition> actual = new HashSet<BreakCondition>();
+            addMatches(actual, compiledBreakConditions.getPcEntries(cpuState.pc), cpuState);
+            for (int r = 0; r < compiledBreakConditions.getNumWatchedRegisters(); r++) {
+                int value = cpuState.getReg(compiledBreakConditions.getWatchedRegister(r));
+                addMatches(actual, compiledBreakConditions.getRegisterEntries(r, value), cpuState);
+            }
+            addMatches(actual, compiledBreakConditions.getOtherEntries(), cpuState);
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testEmpty() throws Exception {
+        assertTrue(CompiledBreakConditions.EMPTY.isEmpty());
+        assertFalse(CompiledBreakConditions.EMPTY.hasNonPcConditions());
+        assertNull(CompiledBreakConditions.EMPTY.getPcEntries(0));
+
+        CompiledBreakConditions pcOnly = new CompiledBreakConditions(Arrays.<BreakCondition>asList(new BreakPointCondition(0x1000, null)));
+        assertFalse(pcOnly.isEmpty());
+        assertFalse(pcOnly.hasNonPcConditions());
+        assertTrue(pcOnly.hasPcCondition(0x1000));
+        assertFalse(pcOnly.hasPcCondition(0x1002));
+    }
+
+    public void testMemoryWatchpoints() throws Exception {
+        DebuggableMemory memory = new DebuggableMemory(false);
+        MemoryValueBreakCondition watched = new MemoryValueBreakCondition(null);
+        watched.setAddress(0x20000);
+        watched.setMask(0x0000FF00);
+        watched.setValue(0x00001200);
+        watched.setChangeDetection(false);
+        List<BreakCondition> parts = new ArrayList<BreakCondition>();
+        parts.add(watched);
+        CompiledBreakConditions compiledBreakConditions = new CompiledBreakConditions(Arrays.<BreakCondition>asList(new AndCondition(parts, null)), memory);
+
+        assertEquals(0, compiledBreakConditions.getOtherEntries().length);
+        assertEquals(1, compiledBreakConditions.getMemoryEntries().length);
+        // Only the byte selected by the mask is watched
+        assertTrue(Arrays.equals(new int[]{0x20002}, compiledBreakConditions.getWatchedAddresses()));
+
+        WatchpointActivityListener listener = new WatchpointActivityListener(compiledBreakConditions.getWatchedAddresses());
+        memory.addActivityListener(listener);
+        assertFalse(memory.isInstructionFetchObserved());
+
+        memory.store32(0x20004, 0x12345678);
+        memory.store8(0x20001, 0x12);
+        memory.store8(0x30002, 0x12);
+        assertFalse(listener.clearHit());
+
+        memory.store16(0x20002, 0x1234);
+        assertTrue(listener.clearHit());
+        assertFalse(listener.clearHit());
+        assertTrue(compiledBreakConditions.getMemoryEntries()[0].matches(null, memory));
+
+        memory.store32(0x20000, 0);
+        assertTrue(listener.clearHit());
+        assertFalse(compiledBreakConditions.getMemoryEntries()[0].matches(null, memory));
+
+        memory.fill(0x1FFF0, 0x20, 0x12, DebuggableMemory.AccessSource.DMA);
+        assertTrue(listener.clearHit());
+        assertTrue(compiledBreakConditions.getMemoryEntries()[0].matches(null, memory));
+
+        // Writes without access source are not seen by other listeners, but must be by watchpoints
+        memory.store8(0x20002, 0, null);
+        assertTrue(listener.clearHit());
+        memory.store32(0x20000, 0x00001200, null);
+        assertTrue(listener.clearHit());
+        memory.fill(0x20000, 4, 0, null);
+        assertTrue(listener.clearHit());
+        memory.copy(0x30000, 0x20000, 4, null);
+        assertTrue(listener.clearHit());
+        memory.copy(0x30000, 0x20010, 4, null);
+        assertFalse(listener.clearHit());
+
+        // As must contents replaced as a whole
+        memory.restoreSnapshot(memory.takeSnapshot());
+        assertTrue(listener.clearHit());
+    }
+
+    private void addMatches(Set<BreakCondition> matches, CompiledBreakConditions.Entry[] entries, FrCPUState cpuState) {
+        if (entries != null) {
+            for (CompiledBreakConditions.Entry entry : entries) {
+                if (entry.matches(cpuState, null)) {
+                    matches.add(entry.getBreakCondition());
+                }
+            }
+        }
+    }
+}